@@ -95,7 +95,7 @@ public class Launcher
 	
 		// open DB
 		DbTools.setDbName("googleplus");
-		DbTools.openDb(false);
+		DbTools.openDb();
 	
 		// init DB
 		DbTools.createTables();
@@ -0,0 +1,209 @@
+package tr.edu.gsu.googleplus.data;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import tr.edu.gsu.googleplus.tool.DbTools;
+
+/**
+ * Activity of a crawler node, i.e. a process
+ * retrieving the relationships. When several nodes
+ * share the same DB (through an H2 server), each one
+ * regularly records its progress in the NODE_STATS 
+ * table, which allows monitoring them from a single
+ * place.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class NodeStats
+{	
+	/////////////////////////////////////////////////////////////////
+	// DATA			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Unique name of the node */
+	private String id;
+	/** Number of threads used by the node */
+	private int threadNbr;
+	/** Time the node started (in ms) */
+	private long startTime;
+	/** Last time the node recorded its progress (in ms) */
+	private long lastUpdate;
+	/** Number of persons processed by the node */
+	private long processed;
+	
+	/**
+	 * Returns the unique name of the node.
+	 * 
+	 * @return
+	 * 		Name of the node.
+	 */
+	public String getId()
+	{	return id;
+	}
+	
+	/**
+	 * Returns the number of threads
+	 * used by the node.
+	 * 
+	 * @return
+	 * 		Number of threads.
+	 */
+	public int getThreadNbr()
+	{	return threadNbr;
+	}
+	
+	/**
+	 * Returns the time the node started.
+	 * 
+	 * @return
+	 * 		Start time (in ms).
+	 */
+	public long getStartTime()
+	{	return startTime;
+	}
+	
+	/**
+	 * Returns the last time the node
+	 * recorded its progress.
+	 * 
+	 * @return
+	 * 		Time of the last update (in ms).
+	 */
+	public long getLastUpdate()
+	{	return lastUpdate;
+	}
+	
+	/**
+	 * Returns the number of persons
+	 * processed by the node so far.
+	 * 
+	 * @return
+	 * 		Number of processed persons.
+	 */
+	public long getProcessed()
+	{	return processed;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// DATABASE		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Creates the table meant to contain
+	 * the node statistics, if it does not
+	 * exist yet.
+	 *  
+	 * @throws SQLException
+	 * 		Problem while accessign the DB.
+	 */
+	public static void createTable() throws SQLException
+	{	String query = 	"CREATE TABLE IF NOT EXISTS NODE_STATS (";
+		query = query + 	"ID VARCHAR(256) NOT NULL PRIMARY KEY,";
+		query = query + 	"THREAD_NBR INT NOT NULL,";
+		query = query + 	"START_TIME BIGINT NOT NULL,";
+		query = query + 	"LAST_UPDATE BIGINT NOT NULL,";
+		query = query + 	"PROCESSED BIGINT DEFAULT 0";
+		query = query + ")";
+		Statement statement = DbTools.getConnection().createStatement();
+		statement.execute(query);
+		statement.close();
+	}
+	
+	/**
+	 * Registers a new node.
+	 * 
+	 * @param id
+	 * 		Unique name of the node.
+	 * @param threadNbr
+	 * 		Number of threads used by the node.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static void register(String id, int threadNbr) throws SQLException
+	{	long time = System.currentTimeMillis();
+		String query = "MERGE INTO NODE_STATS (ID,THREAD_NBR,START_TIME,LAST_UPDATE,PROCESSED) KEY(ID) VALUES (?,?,?,?,0)";
+		PreparedStatement statement = DbTools.getConnection().prepareStatement(query);
+		statement.setString(1,id);
+		statement.setInt(2,threadNbr);
+		statement.setLong(3,time);
+		statement.setLong(4,time);
+		statement.executeUpdate();
+		statement.close();
+	}
+	
+	/**
+	 * Records the progress of a node.
+	 * 
+	 * @param id
+	 * 		Unique name of the node.
+	 * @param processed
+	 * 		Number of persons processed by the node so far.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static void update(String id, long processed) throws SQLException
+	{	PreparedStatement statement = DbTools.prepareStatement("UPDATE NODE_STATS SET LAST_UPDATE=?, PROCESSED=? WHERE ID=?");
+		statement.setLong(1,System.currentTimeMillis());
+		statement.setLong(2,processed);
+		statement.setString(3,id);
+		statement.executeUpdate();
+	}
+	
+	/**
+	 * Retrieves the statistics of all
+	 * the registered nodes, from the most
+	 * recently started one.
+	 * 
+	 * @return
+	 * 		List of node statistics.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static List<NodeStats> retrieveAll() throws SQLException
+	{	List<NodeStats> result = new ArrayList<NodeStats>();
+		Statement statement = DbTools.getConnection().createStatement();
+		ResultSet results = statement.executeQuery("SELECT ID,THREAD_NBR,START_TIME,LAST_UPDATE,PROCESSED FROM NODE_STATS ORDER BY START_TIME DESC");
+		while(results.next())
+		{	NodeStats stats = new NodeStats();
+			int c = 1;
+			stats.id = results.getString(c);c++;
+			stats.threadNbr = results.getInt(c);c++;
+			stats.startTime = results.getLong(c);c++;
+			stats.lastUpdate = results.getLong(c);c++;
+			stats.processed = results.getLong(c);c++;
+			result.add(stats);
+		}
+		results.close();
+		statement.close();
+		return result;
+	}
+}
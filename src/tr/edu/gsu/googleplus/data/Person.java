@@ -22,11 +22,16 @@ package tr.edu.gsu.googleplus.data;
  */
 
 import java.net.URL;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.h2.constant.ErrorCode;
 import org.h2.jdbc.JdbcSQLException;
@@ -320,29 +325,121 @@ public class Person implements Comparable<Person>
 	 */
 	public static void dropTable() throws SQLException
 	{	String query = 	"DROP TABLE PERSON";
-		Statement statement = DbTools.connection.createStatement();
+		Statement statement = DbTools.getConnection().createStatement();
 		statement.execute(query);
+		statement.execute("DROP TABLE IF EXISTS PERSON_LOCK");
 		statement.close();
 	}
 
 	/**
 	 * Creates the table meant to contain
-	 * the Person data.
+	 * the Person data. Each person gets a dense 
+	 * integer id when inserted, which is used as
+	 * primary key and by the RELATIONSHIP table. 
+	 * The Google+ id is stored as a number, with a 
+	 * unique index. Both are much more compact than
+	 * the strings used before (cf. {@link tr.edu.gsu.googleplus.postprocess.DbReformer},
+	 * which converts the former schema).
 	 *  
 	 * @throws SQLException
 	 * 		Problem while accessign the DB.
 	 */
 	public static void createTable() throws SQLException
 	{	String query = 	"CREATE TABLE PERSON (";
-		query = query + 	"ID VARCHAR(256) NOT NULL PRIMARY KEY,";
+		query = query + 	"ID INT NOT NULL AUTO_INCREMENT PRIMARY KEY,";
+		query = query + 	"GOOGLE_ID DECIMAL(22,0) NOT NULL UNIQUE,";
 		query = query + 	"DATE_RETRIEVED DATE NOT NULL,";
 		query = query + 	"FIRSTNAME VARCHAR(64),";
 		query = query + 	"LASTNAME VARCHAR(64),";
-		query = query + 	"PROCESSED SMALLINT DEFAULT 0";
+		query = query + 	"PROCESSED SMALLINT DEFAULT 0,";
+		query = query + 	"LEASE_OWNER VARCHAR(128),";
+		query = query + 	"LEASE_TIME BIGINT,";
+		query = query + 	"PRIORITY DOUBLE DEFAULT 0,";
+		query = query + 	"DISTANCE INT,";
+		query = query + 	"SEEN_NBR INT DEFAULT 0,";
+		query = query + 	"FOLLOWER_NBR INT,";
+		query = query + 	"CRAWL_TIME BIGINT,";
+		query = query + 	"PROFILED SMALLINT DEFAULT 0";
 		query = query + ")";
-		Statement statement = DbTools.connection.createStatement();
+		Statement statement = DbTools.getConnection().createStatement();
 		statement.execute(query);
 		statement.close();
+		createIndices();
+		createLockTable();
+	}
+	
+	/**
+	 * Adds the columns and indices introduced
+	 * after the creation of the PERSON table,
+	 * if they are missing. This allows using
+	 * an existing DB with the current version
+	 * of the program. The DB must store the Google+ 
+	 * ids as numbers: the string-based schemas, including
+	 * the one produced by the former version of {@link tr.edu.gsu.googleplus.postprocess.DbReformer},
+	 * must first be converted by its current version.
+	 *  
+	 * @throws SQLException
+	 * 		Problem while accessign the DB.
+	 */
+	public static void upgradeTable() throws SQLException
+	{	Statement statement = DbTools.getConnection().createStatement();
+		// a string Google+ id could not use the index of the numeric ones
+		ResultSet results = statement.executeQuery("SELECT TYPE_NAME FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME='PERSON' AND COLUMN_NAME='GOOGLE_ID'");
+		boolean numeric = results.next() && "DECIMAL".equals(results.getString(1));
+		results.close();
+		if(!numeric)
+		{	statement.close();
+			throw new SQLException("The DB still uses string ids: it must first be converted with DbReformer.reformDb()");
+		}
+		statement.execute("ALTER TABLE PERSON ADD COLUMN IF NOT EXISTS FIRSTNAME VARCHAR(64)");
+		statement.execute("ALTER TABLE PERSON ADD COLUMN IF NOT EXISTS LASTNAME VARCHAR(64)");
+		statement.execute("ALTER TABLE PERSON ADD COLUMN IF NOT EXISTS LEASE_OWNER VARCHAR(128)");
+		statement.execute("ALTER TABLE PERSON ADD COLUMN IF NOT EXISTS LEASE_TIME BIGINT");
+		statement.execute("ALTER TABLE PERSON ADD COLUMN IF NOT EXISTS PRIORITY DOUBLE DEFAULT 0");
+		statement.execute("ALTER TABLE PERSON ADD COLUMN IF NOT EXISTS DISTANCE INT");
+		statement.execute("ALTER TABLE PERSON ADD COLUMN IF NOT EXISTS SEEN_NBR INT DEFAULT 0");
+		statement.execute("ALTER TABLE PERSON ADD COLUMN IF NOT EXISTS FOLLOWER_NBR INT");
+		statement.execute("ALTER TABLE PERSON ADD COLUMN IF NOT EXISTS CRAWL_TIME BIGINT");
+		statement.execute("ALTER TABLE PERSON ADD COLUMN IF NOT EXISTS PROFILED SMALLINT DEFAULT 0");
+		statement.execute("DROP INDEX IF EXISTS PERSON_PROCESSED");
+		statement.close();
+		createIndices();
+		createLockTable();
+	}
+	
+	/**
+	 * Creates the indices used to look for the persons 
+	 * to be processed, by decreasing priority, for 
+	 * the expired leases, and for the persons whose
+	 * profile was not retrieved yet. The second one 
+	 * makes the table a disk-based priority queue.
+	 *  
+	 * @throws SQLException
+	 * 		Problem while accessign the DB.
+	 */
+	private static void createIndices() throws SQLException
+	{	Statement statement = DbTools.getConnection().createStatement();
+		statement.execute("CREATE INDEX IF NOT EXISTS PERSON_LEASE ON PERSON(PROCESSED,LEASE_TIME)");
+		statement.execute("CREATE INDEX IF NOT EXISTS PERSON_PRIORITY ON PERSON(PROCESSED,PRIORITY DESC)");
+		statement.execute("CREATE INDEX IF NOT EXISTS PERSON_PROFILED ON PERSON(PROFILED,GOOGLE_ID)");
+		statement.close();
+	}
+	
+	/**
+	 * Creates the table whose rows are used to serialize
+	 * the changes of the persons during a crawl
+	 * (cf. {@link #lockUpdates(PreparedStatement, int)}),
+	 * if it is missing.
+	 *  
+	 * @throws SQLException
+	 * 		Problem while accessign the DB.
+	 */
+	private static void createLockTable() throws SQLException
+	{	Statement statement = DbTools.getConnection().createStatement();
+		statement.execute("CREATE TABLE IF NOT EXISTS PERSON_LOCK (ID INT NOT NULL PRIMARY KEY, LOCK_TIME BIGINT)");
+		statement.execute("MERGE INTO PERSON_LOCK (ID,LOCK_TIME) KEY(ID) VALUES ("+STATE_LOCK+",0)");
+		statement.execute("MERGE INTO PERSON_LOCK (ID,LOCK_TIME) KEY(ID) VALUES ("+WRITE_LOCK+",0)");
+		statement.close();
 	}
 	
 	/**
@@ -354,7 +451,7 @@ public class Person implements Comparable<Person>
 	 */
 	public static void outputTable() throws SQLException
 	{	logger.log(".: PERSONS :.");
-    	Statement statement = DbTools.connection.createStatement();
+    	Statement statement = DbTools.getConnection().createStatement();
 	    ResultSet results = statement.executeQuery("SELECT * FROM PERSON");
 	    
 //String path = FileTools.OUT_FOLDER + File.separator + "persons.txt";
@@ -381,7 +478,7 @@ public class Person implements Comparable<Person>
 	    int r = 1;
 //int count = 0;
 	    while(results.next())
-	    {	int c = 1;
+	    {	int c = 2;	// the integer id is skipped
 	    	String id = results.getString(c);c++;
 	        Date dateRetrieved = results.getDate(c);c++;
 	        String firstname = results.getString(c);c++;
@@ -423,12 +520,11 @@ public class Person implements Comparable<Person>
 	 */
 	public static Person build(ResultSet resultSet) throws SQLException
 	{	Person result = new Person();
-		int c = 1;
-    	result.id = resultSet.getString(c);c++;
-        result.dateRetrieved = resultSet.getDate(c);c++;
-        result.firstname = resultSet.getString(c);c++;
-        result.lastname = resultSet.getString(c);c++;
-        result.state = PersonState.valueOf(resultSet.getInt(c));c++;
+    	result.id = resultSet.getString("GOOGLE_ID");
+        result.dateRetrieved = resultSet.getDate("DATE_RETRIEVED");
+        result.firstname = resultSet.getString("FIRSTNAME");
+        result.lastname = resultSet.getString("LASTNAME");
+        result.state = PersonState.valueOf(resultSet.getInt("PROCESSED"));
 		return result;
 	}
 
@@ -448,6 +544,29 @@ public class Person implements Comparable<Person>
 		return result;
 	}
 	
+	/**
+	 * Returns the number of persons currently
+	 * in the specified state. Thanks to the index
+	 * on the state, the table is not scanned.
+	 * 
+	 * @param state
+	 * 		The concerned state.
+	 * @return
+	 * 		Number of persons in this state.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static int getStateCount(PersonState state) throws SQLException
+	{	PreparedStatement statement = DbTools.prepareStatement("SELECT COUNT(*) FROM PERSON WHERE PROCESSED=?");
+		statement.setInt(1,state.ordinal());
+		ResultSet results = statement.executeQuery();
+		results.next();
+		int result = results.getInt(1);
+		results.close();
+		return result;
+	}
+	
 	/**
 	 * Insert a new person in
 	 * the database.
@@ -469,8 +588,8 @@ public class Person implements Comparable<Person>
 		do
 		{	Statement statement = null;
 			try
-			{	String query = 	"INSERT INTO PERSON (ID,DATE_RETRIEVED,PROCESSED) VALUES ('"+id+"','"+date+"','"+PersonState.UNPROCESSED.ordinal()+"')";
-				statement = DbTools.connection.createStatement();
+			{	String query = 	"INSERT INTO PERSON (GOOGLE_ID,DATE_RETRIEVED,PROCESSED) VALUES ('"+id+"','"+date+"','"+PersonState.UNPROCESSED.ordinal()+"')";
+				statement = DbTools.getConnection().createStatement();
 				statement.execute(query);
 				statement.close();
 				done = true;
@@ -491,6 +610,430 @@ public class Person implements Comparable<Person>
 		while(!done);
 	}
 	
+	/**
+	 * Inserts the specified persons in the
+	 * database, as unprocessed persons. The ids
+	 * already present in the DB are ignored, so 
+	 * this method can be used to resume an 
+	 * interrupted loading. All the insertions are
+	 * sent as a single batch, and committed at once,
+	 * which is much faster than calling 
+	 * {@link #insertDb(String)} for each id.
+	 * 
+	 * @param ids
+	 * 		The ids of the new persons. 
+	 * @return
+	 * 		Number of persons actually inserted.
+	 * 
+	 * @throws SQLException
+	 * 		If the insertion fails.
+	 */
+	public static int insertDb(Collection<String> ids) throws SQLException
+	{	java.sql.Date date = new java.sql.Date(System.currentTimeMillis());
+		String query = "INSERT INTO PERSON (GOOGLE_ID,DATE_RETRIEVED,PROCESSED) ";
+		query = query + "SELECT ?,?,"+PersonState.UNPROCESSED.ordinal()+" FROM DUAL ";
+		query = query + "WHERE NOT EXISTS (SELECT ID FROM PERSON WHERE GOOGLE_ID=?)";
+		
+		boolean autoCommit = DbTools.getConnection().getAutoCommit();
+		DbTools.getConnection().setAutoCommit(false);
+		PreparedStatement statement = DbTools.getConnection().prepareStatement(query);
+		int result = 0;
+		try
+		{	for(String id: ids)
+			{	statement.setString(1,id);
+				statement.setDate(2,date);
+				statement.setString(3,id);
+				statement.addBatch();
+			}
+			int[] counts = statement.executeBatch();
+			DbTools.getConnection().commit();
+			for(int count: counts)
+				result = result + count;
+		}
+		catch(SQLException e)
+		{	DbTools.getConnection().rollback();
+			throw e;
+		}
+		finally
+		{	statement.close();
+			DbTools.getConnection().setAutoCommit(autoCommit);
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns the ids of the persons whose profile
+	 * was not retrieved yet, by increasing id, starting
+	 * after the specified id. This keyset pagination
+	 * allows walking the whole table page by page,
+	 * without keeping a cursor open, and without
+	 * reading again the skipped rows (like OFFSET
+	 * would).
+	 * 
+	 * @param lastId
+	 * 		Last id of the previous page ({@code null} for the first page).
+	 * @param size
+	 * 		Maximal number of ids to return.
+	 * @return
+	 * 		The ids of the next page (empty if none remain).
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static List<String> retrieveUnprofiled(String lastId, int size) throws SQLException
+	{	List<String> result = new ArrayList<String>();
+		String query = "SELECT GOOGLE_ID FROM PERSON WHERE PROFILED=0";
+		if(lastId!=null)
+			query = query + " AND GOOGLE_ID>?";
+		query = query + " ORDER BY GOOGLE_ID LIMIT ?";
+		PreparedStatement statement = DbTools.getConnection().prepareStatement(query);
+		int c = 1;
+		if(lastId!=null)
+		{	statement.setString(c,lastId);c++;
+		}
+		statement.setInt(c,size);
+		ResultSet results = statement.executeQuery();
+		while(results.next())
+			result.add(results.getString(1));
+		results.close();
+		statement.close();
+		return result;
+	}
+	
+	/**
+	 * Records the specified profiles in the DB, and
+	 * marks the concerned persons as profiled, so that
+	 * they are skipped if the process is resumed. A 
+	 * {@code null} profile means the person has no
+	 * valid profile: it is only marked as profiled.
+	 * All the updates are sent as a single batch, 
+	 * and committed at once.
+	 * 
+	 * @param ids
+	 * 		Ids of the concerned persons.
+	 * @param profiles
+	 * 		Corresponding profiles (possibly {@code null}).
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static void updateProfiles(List<String> ids, List<Person> profiles) throws SQLException
+	{	String query = "UPDATE PERSON SET FIRSTNAME=COALESCE(?,FIRSTNAME), LASTNAME=COALESCE(?,LASTNAME), PROFILED=1 WHERE GOOGLE_ID=?";
+		boolean autoCommit = DbTools.getConnection().getAutoCommit();
+		DbTools.getConnection().setAutoCommit(false);
+		PreparedStatement statement = DbTools.getConnection().prepareStatement(query);
+		try
+		{	for(int i=0;i<ids.size();i++)
+			{	Person profile = profiles.get(i);
+				String firstname = null;
+				String lastname = null;
+				if(profile!=null)
+				{	firstname = profile.firstname;
+					lastname = profile.lastname;
+				}
+				statement.setString(1,firstname);
+				statement.setString(2,lastname);
+				statement.setString(3,ids.get(i));
+				statement.addBatch();
+			}
+			statement.executeBatch();
+			DbTools.getConnection().commit();
+		}
+		catch(SQLException e)
+		{	DbTools.getConnection().rollback();
+			throw e;
+		}
+		finally
+		{	statement.close();
+			DbTools.getConnection().setAutoCommit(autoCommit);
+		}
+	}
+	
+	/** Lock serializing the changes of the states of the persons (cf. {@link #lockUpdates(PreparedStatement, int)}) */
+	static final int STATE_LOCK = 0;
+	/** Lock serializing the insertions of the {@link RelationshipWriter}s (cf. {@link #lockUpdates(PreparedStatement, int)}) */
+	static final int WRITE_LOCK = 1;
+	/** Query locking one row of the PERSON_LOCK table (cf. {@link #lockUpdates(PreparedStatement, int)}) */
+	static final String LOCK_QUERY = "UPDATE PERSON_LOCK SET LOCK_TIME=? WHERE ID=?";
+	/** Locks making the threads of this process wait for each DB lock in turn */
+	private static final ReentrantLock[] UPDATE_LOCKS = {new ReentrantLock(true), new ReentrantLock(true)};
+	
+	/**
+	 * Serializes the transactions changing the persons 
+	 * during a crawl. With MVCC, H2 makes a statement conflicting
+	 * with another transaction sleep and retry, without releasing
+	 * the rows it already updated: two such statements can then
+	 * block each other until the lock timeout, and the retried
+	 * statement may not be applied correctly. Two locks are used:
+	 * <ul>
+	 * 		<li>{@link #STATE_LOCK}: statements updating the state of 
+	 * 		the persons, i.e. claims, leases, and the changes applied
+	 * 		by the {@link RelationshipWriter}s when they commit.</li>
+	 * 		<li>{@link #WRITE_LOCK}: whole transactions of the writers,
+	 * 		which could otherwise insert the same persons or relationships
+	 * 		in different orders, and wait for each other.</li>
+	 * </ul>
+	 * A transaction needing both must take the write lock first.<br/>
+	 * The locks must be shared by all the processes crawling
+	 * the same DB (cf. {@link tr.edu.gsu.googleplus.explorer.CrawlerNode}),
+	 * so they are held by the DB itself: the transaction updates 
+	 * a row of the PERSON_LOCK table, which makes the other
+	 * transactions doing so wait until it ends. H2 makes them 
+	 * poll the row at random times, so a transaction could wait
+	 * until the lock timeout if many were polling: the threads 
+	 * of this process therefore first wait for each other, in turn,
+	 * and a single one polls the DB at once. Still, the threads 
+	 * of a process can keep taking the lock in turn while 
+	 * another process polls it, so reaching the lock timeout
+	 * does not make the transaction fail: it just waits again.<br/>
+	 * The lock must be released by {@link #unlockUpdates(int)}
+	 * once the transaction is over, by the same thread.
+	 * 
+	 * @param lock
+	 * 		Statement prepared with {@link #LOCK_QUERY}, on the 
+	 * 		connection of the transaction (not in auto-commit mode).
+	 * @param row
+	 * 		{@link #STATE_LOCK} or {@link #WRITE_LOCK}.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	static void lockUpdates(PreparedStatement lock, int row) throws SQLException
+	{	UPDATE_LOCKS[row].lock();
+		try
+		{	boolean done = false;
+			do
+			{	lock.setLong(1,System.currentTimeMillis());
+				lock.setInt(2,row);
+				try
+				{	if(lock.executeUpdate()==0)
+						throw new SQLException("The PERSON_LOCK table is not initialized: the DB must first be upgraded with Person.upgradeTable()");
+					done = true;
+				}
+				catch(JdbcSQLException e)
+				{	// only the failed statement is rolled back, so the transaction can go on waiting
+					if(e.getErrorCode()==ErrorCode.LOCK_TIMEOUT_1)
+						logger.log("WARNING: lock "+row+" held by another crawler for a long time. Waiting again");
+					else
+						throw e;
+				}
+			}
+			while(!done);
+		}
+		catch(SQLException e)
+		{	UPDATE_LOCKS[row].unlock();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Lets the other threads of this process wait
+	 * for the specified DB lock, once the transaction
+	 * which held it is over (cf. {@link #lockUpdates(PreparedStatement, int)}).
+	 * 
+	 * @param row
+	 * 		{@link #STATE_LOCK} or {@link #WRITE_LOCK}.
+	 */
+	static void unlockUpdates(int row)
+	{	UPDATE_LOCKS[row].unlock();
+	}
+	
+	/**
+	 * Executes the specified update in its own
+	 * transaction, serialized with the other
+	 * updates of the states of the persons
+	 * (cf. {@link #lockUpdates(PreparedStatement, int)}).
+	 * 
+	 * @param statement
+	 * 		Update prepared on the connection of the calling thread.
+	 * @return
+	 * 		Number of updated rows.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	private static int executeLocked(PreparedStatement statement) throws SQLException
+	{	int result;
+		boolean autoCommit = DbTools.getConnection().getAutoCommit();
+		DbTools.getConnection().setAutoCommit(false);
+		try
+		{	lockUpdates(DbTools.prepareStatement(LOCK_QUERY),STATE_LOCK);
+			try
+			{	result = statement.executeUpdate();
+				DbTools.getConnection().commit();
+			}
+			catch(SQLException e)
+			{	DbTools.getConnection().rollback();
+				throw e;
+			}
+			finally
+			{	unlockUpdates(STATE_LOCK);
+			}
+		}
+		finally
+		{	DbTools.getConnection().setAutoCommit(autoCommit);
+		}
+		return result;
+	}
+	
+	/**
+	 * Atomically claims a batch of unprocessed persons
+	 * for the specified owner: they are marked as being
+	 * processed, and the lease owner and time are recorded.
+	 * Since the selection and the update are performed by
+	 * a single statement, and the claims of all the crawlers
+	 * are serialized (cf. {@link #lockUpdates(PreparedStatement, int)}),
+	 * two owners cannot claim the same person. The lock is
+	 * not taken when no person remains to be claimed, so that
+	 * idle crawlers do not delay the others. The persons with the highest priority 
+	 * are claimed first, and returned in this order.
+	 * <br/>
+	 * The persons are then retrieved through their lease 
+	 * owner, so the owner must be different for each claim 
+	 * (cf. {@link tr.edu.gsu.googleplus.explorer.WorkQueue}): 
+	 * otherwise, the persons of the previous claims which are
+	 * still being processed would be returned again.
+	 * 
+	 * @param owner
+	 * 		Unique name of this claim.
+	 * @param size
+	 * 		Maximal number of persons to claim.
+	 * @return
+	 * 		The claimed persons (empty list if none remains).
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static List<Person> claimBatch(String owner, int size) throws SQLException
+	{	List<Person> result = new ArrayList<Person>();
+		long time = System.currentTimeMillis();
+		int unprocessed = PersonState.UNPROCESSED.ordinal();
+		int processing = PersonState.PROCESSING.ordinal();
+		
+		// claim the persons (the unprocessed persons come first in the index, by decreasing priority:
+		// a condition on the state in the subquery would prevent H2 from using the index to sort them)
+		String query =	"UPDATE PERSON SET PROCESSED="+processing+", LEASE_OWNER=?, LEASE_TIME=? ";
+		query = query +	"WHERE PROCESSED="+unprocessed+" AND ID IN ";
+		query = query +	"(SELECT ID FROM PERSON ORDER BY PROCESSED, PRIORITY DESC LIMIT ?)";
+		PreparedStatement update = DbTools.prepareStatement(query);
+		update.setString(1,owner);
+		update.setLong(2,time);
+		update.setInt(3,size);
+		// nothing to claim (e.g. idle threads at the end of the crawl): the other claims must not wait for this one
+		int count = 0;
+		PreparedStatement check = DbTools.prepareStatement("SELECT ID FROM PERSON WHERE PROCESSED="+unprocessed+" LIMIT 1");
+		ResultSet results = check.executeQuery();
+		boolean available = results.next();
+		results.close();
+		if(available)
+			count = executeLocked(update);
+		
+		// retrieve them (the lease time cannot be used, since it may have been renewed in the meantime)
+		if(count>0)
+		{	query = "SELECT * FROM PERSON WHERE LEASE_OWNER=? AND PROCESSED="+processing+" ORDER BY PRIORITY DESC";
+			PreparedStatement select = DbTools.prepareStatement(query);
+			select.setString(1,owner);
+			results = select.executeQuery();
+			while(results.next())
+				result.add(build(results));
+			results.close();
+		}
+		return result;
+	}
+	
+	/**
+	 * Renews the leases of all the persons currently
+	 * processed by the owners whose names start with
+	 * the specified prefix (e.g. all the claims of 
+	 * a given worker).
+	 * 
+	 * @param ownerPrefix
+	 * 		Common prefix of the concerned owners.
+	 * @return
+	 * 		Number of renewed leases.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static int renewLeases(String ownerPrefix) throws SQLException
+	{	String query =	"UPDATE PERSON SET LEASE_TIME=? ";
+		query = query +	"WHERE PROCESSED="+PersonState.PROCESSING.ordinal()+" AND LEASE_OWNER LIKE ?";
+		PreparedStatement statement = DbTools.prepareStatement(query);
+		statement.setLong(1,System.currentTimeMillis());
+		statement.setString(2,ownerPrefix.replace("%","\\%").replace("_","\\_")+"%");
+		int result = executeLocked(statement);
+		return result;
+	}
+	
+	/**
+	 * Puts back in the unprocessed state all the persons
+	 * whose lease was not renewed since the specified
+	 * time, i.e. persons whose processing was interrupted.
+	 * Persons marked as being processed by a version of
+	 * the program not using leases are also concerned.
+	 * Thanks to the index on the state and lease time,
+	 * the rest of the table is not scanned.
+	 * 
+	 * @param expiry
+	 * 		Leases older than this time (in ms) are considered as expired.
+	 * @return
+	 * 		Number of recovered persons.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static int recoverExpiredLeases(long expiry) throws SQLException
+	{	int processing = PersonState.PROCESSING.ordinal();
+		String query =	"UPDATE PERSON SET PROCESSED="+PersonState.UNPROCESSED.ordinal()+", LEASE_OWNER=NULL, LEASE_TIME=NULL ";
+		query = query +	"WHERE (PROCESSED="+processing+" AND LEASE_TIME<?) OR (PROCESSED="+processing+" AND LEASE_TIME IS NULL)";
+		PreparedStatement statement = DbTools.getConnection().prepareStatement(query);
+		statement.setLong(1,expiry);
+		int result = executeLocked(statement);
+		statement.close();
+		return result;
+	}
+	
+	/**
+	 * Puts all the processed persons back in the
+	 * unprocessed state, so that they are processed 
+	 * again (e.g. to re-crawl the network).
+	 * 
+	 * @return
+	 * 		Number of concerned persons.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static int resetProcessed() throws SQLException
+	{	String query =	"UPDATE PERSON SET PROCESSED="+PersonState.UNPROCESSED.ordinal()+", LEASE_OWNER=NULL, LEASE_TIME=NULL ";
+		query = query +	"WHERE PROCESSED="+PersonState.PROCESSED.ordinal();
+		Statement statement = DbTools.getConnection().createStatement();
+		int result = statement.executeUpdate(query);
+		statement.close();
+		return result;
+	}
+	
+	/**
+	 * Recomputes the priority of all the persons
+	 * not processed yet, e.g. after the priority
+	 * policy was changed.
+	 * 
+	 * @param priority
+	 * 		SQL expression used to compute the priority.
+	 * @return
+	 * 		Number of updated persons.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static int updatePriorities(String priority) throws SQLException
+	{	String query = "UPDATE PERSON SET PRIORITY="+priority+" WHERE PROCESSED="+PersonState.UNPROCESSED.ordinal();
+		Statement statement = DbTools.getConnection().createStatement();
+		int result = statement.executeUpdate(query);
+		statement.close();
+		return result;
+	}
+	
 	/**
 	 * Update the data corresponding to this
 	 * Person in the DB, using the fields
@@ -500,24 +1043,18 @@ public class Person implements Comparable<Person>
 	 * 		Problem while accessing the DB.
 	 */
 	public void updateDb() throws SQLException
-	{	// build query	
+	{	// build query (the missing names are left unchanged)
 		String query =	"UPDATE PERSON ";
-		query = query +	"SET PROCESSED="+state.ordinal();
-		if(firstname!=null)
-		{	String fn = firstname.replace("'","''");
-			query = query + ", FIRSTNAME='"+fn+"'";
-		
-		}
-		if(lastname!=null)
-		{	String ln = lastname.replace("'","''");
-			query = query + ", LASTNAME='"+ln+"'";
-		}
-		query = query +	" WHERE ID='"+id+"'";
+		query = query +	"SET PROCESSED=?, FIRSTNAME=COALESCE(?,FIRSTNAME), LASTNAME=COALESCE(?,LASTNAME)";
+		query = query +	" WHERE GOOGLE_ID=?";
 		
 		// apply modification
-		Statement statement = DbTools.connection.createStatement();
-		statement.execute(query);
-		statement.close();
+		PreparedStatement statement = DbTools.prepareStatement(query);
+		statement.setInt(1,state.ordinal());
+		statement.setString(2,firstname);
+		statement.setString(3,lastname);
+		statement.setString(4,id);
+		statement.executeUpdate();
 	}
 	
 	/**
@@ -534,17 +1071,15 @@ public class Person implements Comparable<Person>
 	 */
 	public static Person retrieveFromId(String id) throws SQLException
 	{	// build query	
-		String query =	"SELECT * FROM PERSON ";
-		query = query +	"WHERE ID='"+id+"'";
+		PreparedStatement statement = DbTools.prepareStatement("SELECT * FROM PERSON WHERE GOOGLE_ID=?");
+		statement.setString(1,id);
 		
 		// get Person
-		Statement statement = DbTools.connection.createStatement();
-		statement.execute(query);
-        ResultSet results = statement.executeQuery(query);
+        ResultSet results = statement.executeQuery();
         Person result = null;
         if(results.next())
         	result = Person.build(results);
-		statement.close();
+		results.close();
     	
     	return result;
 	}
@@ -21,6 +21,7 @@ package tr.edu.gsu.googleplus.data;
  * 
  */
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -29,8 +30,6 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.h2.constant.ErrorCode;
 import org.h2.jdbc.JdbcSQLException;
@@ -38,6 +37,9 @@ import org.h2.jdbc.JdbcSQLException;
 import tr.edu.gsu.googleplus.tool.DbTools;
 import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
 import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+import tr.edu.gsu.googleplus.tool.metrics.Counter;
+import tr.edu.gsu.googleplus.tool.metrics.Histogram;
+import tr.edu.gsu.googleplus.tool.metrics.MetricsRegistry;
 
 /**
  * Represents a Google+ relationship
@@ -228,12 +230,10 @@ public class Relationship implements Comparable<Relationship>
 	/////////////////////////////////////////////////////////////////
 	// DATABASE			/////////////////////////////////////////////
 	/////////////////////////////////////////////////////////////////
-	/** for statistical purposes : average access time */
-	public static double insertDbAverageTime = 0;
-	/** for statistical purposes : number of calls to this function */
-	private static float insertDbCallCount = 0;
-	/** associated lock */
-	private static Lock insertDbLock = new ReentrantLock();
+	/** for statistical purposes : insertion times (in us) */
+	private static final Histogram insertDbTimer = MetricsRegistry.getTimer("db.relationship");
+	/** for statistical purposes : number of relationships already present in the DB */
+	private static final Counter duplicateCounter = MetricsRegistry.getCounter("db.duplicates");
 
 	/**
 	 * Returns the average time to insert 
@@ -243,10 +243,7 @@ public class Relationship implements Comparable<Relationship>
 	 * 		The average time in ms.
 	 */
 	public static double getInsertDbAverageTime()
-	{	double result;
-		insertDbLock.lock();
-		result = insertDbAverageTime;
-		insertDbLock.unlock();
+	{	double result = insertDbTimer.getMean() / 1000;
 		return result;
 	}
 
@@ -259,28 +256,34 @@ public class Relationship implements Comparable<Relationship>
 	 */
 	public static void dropTable() throws SQLException
 	{	String query = 	"DROP TABLE RELATIONSHIP";
-		Statement statement = DbTools.connection.createStatement();
+		Statement statement = DbTools.getConnection().createStatement();
 		statement.execute(query);
 		statement.close();
 	}
 
+	/** Query retrieving the relationships with the Google+ ids of their ends (to be completed by a condition) */
+	public static final String SELECT_QUERY = "SELECT S.GOOGLE_ID, T.GOOGLE_ID, R.DATE_RETRIEVED FROM RELATIONSHIP R JOIN PERSON S ON S.ID=R.SOURCE_ID JOIN PERSON T ON T.ID=R.TARGET_ID";
+	
 	/**
 	 * Creates the table meant to contain
-	 * the {@link Relationship} data.
+	 * the {@link Relationship} data. The persons
+	 * are represented by their integer ids (and not
+	 * their Google+ ids), which makes the primary key
+	 * index much smaller.
 	 *  
 	 * @throws SQLException
 	 * 		Problem while accessign the DB.
 	 */
 	public static void createTable() throws SQLException
 	{	String query =	"CREATE TABLE RELATIONSHIP (";
-		query = query + 	"SOURCE_ID VARCHAR(256) NOT NULL,";
-		query = query + 	"TARGET_ID VARCHAR(256) NOT NULL,";
+		query = query + 	"SOURCE_ID INT NOT NULL,";
+		query = query + 	"TARGET_ID INT NOT NULL,";
 		query = query + 	"DATE_RETRIEVED DATE NOT NULL,";
 		query = query + 	"PRIMARY KEY (SOURCE_ID, TARGET_ID),";
 		query = query + 	"FOREIGN KEY(SOURCE_ID) REFERENCES PERSON(ID),";
 		query = query + 	"FOREIGN KEY(TARGET_ID) REFERENCES PERSON(ID)";
 		query = query + ")";
-		Statement statement = DbTools.connection.createStatement();
+		Statement statement = DbTools.getConnection().createStatement();
 		statement.execute(query);
 		statement.close();
 	}
@@ -294,8 +297,8 @@ public class Relationship implements Comparable<Relationship>
 	 */
 	public static void displayTable() throws SQLException
 	{	logger.log(".: RELATIONSHIPS :.");
-		Statement statement = DbTools.connection.createStatement();
-	    ResultSet results = statement.executeQuery("SELECT * FROM RELATIONSHIP");
+		Statement statement = DbTools.getConnection().createStatement();
+	    ResultSet results = statement.executeQuery(SELECT_QUERY);
 	    ResultSetMetaData meta = results.getMetaData();
 	    int cols = meta.getColumnCount();
 	    logger.log("\t");
@@ -320,7 +323,9 @@ public class Relationship implements Comparable<Relationship>
 	 * Builds a {@ode Relationship} object
 	 * from the data retrieved from
 	 * the DB. This data is specified
-	 * through the {@code resultSet} parameter.
+	 * through the {@code resultSet} parameter,
+	 * and must have been retrieved using
+	 * {@link #SELECT_QUERY}.
 	 * 
 	 * @param resultSet
 	 * 		Data retrieved from the DB.
@@ -363,7 +368,7 @@ public class Relationship implements Comparable<Relationship>
 	 * 		If the insertion fails.
 	 */
 	public void insertDb() throws SQLException
-	{	long before = System.currentTimeMillis();
+	{	long before = System.nanoTime();
 		// check if both users exist
 		Person source = Person.retrieveFromId(sourceId);
 		if(source==null)
@@ -381,8 +386,9 @@ public class Relationship implements Comparable<Relationship>
 			String date = sqlDate.toString();
 			
 			// insertion
-			String query = 	"INSERT INTO RELATIONSHIP (SOURCE_ID,TARGET_ID,DATE_RETRIEVED) VALUES ('"+sourceId+"','"+targetId+"','"+date+"')";
-			statement = DbTools.connection.createStatement();
+			String query = 	"INSERT INTO RELATIONSHIP (SOURCE_ID,TARGET_ID,DATE_RETRIEVED) ";
+			query = query + "SELECT S.ID, T.ID, '"+date+"' FROM PERSON S, PERSON T WHERE S.GOOGLE_ID='"+sourceId+"' AND T.GOOGLE_ID='"+targetId+"'";
+			statement = DbTools.getConnection().createStatement();
 			statement.execute(query);
 			statement.close();
 		}
@@ -390,7 +396,9 @@ public class Relationship implements Comparable<Relationship>
 		{	statement.close();
 			//e.printStackTrace();
 			if(e.getErrorCode()==ErrorCode.DUPLICATE_KEY_1)
+			{	duplicateCounter.increment();
 				logger.log("WARNING: relationship ["+this+"] already present in the DB");
+			}
 			else
 				throw e;
 		}
@@ -400,14 +408,51 @@ public class Relationship implements Comparable<Relationship>
 //		catch (InterruptedException e)
 //		{	e.printStackTrace();
 //		}
-		long after = System.currentTimeMillis();
-
-		double elapsed = after-before;
-		insertDbLock.lock();
-		insertDbAverageTime = insertDbAverageTime*(insertDbCallCount/(insertDbCallCount+1)) 
-			+ elapsed/(insertDbCallCount+1);
-		insertDbCallCount++;
-		insertDbLock.unlock();
+		insertDbTimer.recordSince(before);
+	}
+	
+	/**
+	 * Removes this relationship
+	 * from the database.
+	 * 
+	 * @throws SQLException
+	 * 		If the deletion fails.
+	 */
+	public void deleteDb() throws SQLException
+	{	PreparedStatement statement = DbTools.prepareStatement("DELETE FROM RELATIONSHIP WHERE SOURCE_ID=(SELECT ID FROM PERSON WHERE GOOGLE_ID=?) AND TARGET_ID=(SELECT ID FROM PERSON WHERE GOOGLE_ID=?)");
+		statement.setString(1,sourceId);
+		statement.setString(2,targetId);
+		statement.executeUpdate();
+	}
+	
+	/**
+	 * Retrieves all the relationships
+	 * (incoming and outgoing) of the
+	 * specified person from the DB.
+	 * 
+	 * @param id
+	 * 		The G+ id of the concerned Person.
+	 * @return
+	 * 		The set of corresponding relationships.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static Set<Relationship> retrieveFromPerson(String id) throws SQLException
+	{	Set<Relationship> result = new TreeSet<Relationship>();
+		String queries[] = 
+		{	SELECT_QUERY + " WHERE R.SOURCE_ID=(SELECT ID FROM PERSON WHERE GOOGLE_ID=?)",
+			SELECT_QUERY + " WHERE R.TARGET_ID=(SELECT ID FROM PERSON WHERE GOOGLE_ID=?)"
+		};
+		for(String query: queries)
+		{	PreparedStatement statement = DbTools.prepareStatement(query);
+			statement.setString(1,id);
+			ResultSet results = statement.executeQuery();
+			while(results.next())
+				result.add(build(results));
+			results.close();
+		}
+		return result;
 	}
 	
 	/////////////////////////////////////////////////////////////////
@@ -0,0 +1,729 @@
+package tr.edu.gsu.googleplus.data;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+
+import tr.edu.gsu.googleplus.tool.DbTools;
+import tr.edu.gsu.googleplus.tool.metrics.Counter;
+import tr.edu.gsu.googleplus.tool.metrics.Histogram;
+import tr.edu.gsu.googleplus.tool.metrics.MetricsRegistry;
+
+/**
+ * Writes the whole neighborhood of a person
+ * in the DB at once, instead of inserting each
+ * {@link Relationship} separately (cf. 
+ * {@link Relationship#insertDb()}).<br/>
+ * The neighbors missing from the PERSON table
+ * are inserted by a single set-based statement,
+ * then the relationships are inserted by another
+ * one, ignoring those already present. Both 
+ * statements are prepared once and reused for all
+ * the persons. Each neighborhood is committed as a
+ * single transaction, or several neighborhoods can 
+ * be committed together (cf. {@link #writeAll(List)}).<br/>
+ * The writer can also mark the persons as processed and
+ * update the statistics of their neighbors in the same
+ * transaction as their relationships (cf. 
+ * {@link #markProcessed(Person, Integer, Collection, String)}).
+ * During a re-crawl, the changes of the neighborhoods
+ * and their records in the current snapshot are also
+ * part of this transaction (cf. {@link #writeChanges(int, Collection, Collection)}).<br/>
+ * The transactions of all the writers, including those 
+ * of the other processes crawling the same DB, are 
+ * serialized (cf. {@link Person#lockUpdates(PreparedStatement, int)}).
+ * Otherwise, two writers inserting the same persons or 
+ * relationships could each hold a row the other one needs,
+ * and wait for each other until the lock timeout. The
+ * claims of the crawlers only wait for the commits.<br/>
+ * A writer owns its connection to the DB, so it
+ * must be used by a single thread. It must be 
+ * closed once the processing is over.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class RelationshipWriter
+{	
+	/////////////////////////////////////////////////////////////////
+	// INIT			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Builds a new writer, using its own
+	 * connection to the DB.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public RelationshipWriter() throws SQLException
+	{	connection = DbTools.openConnection();
+		connection.setAutoCommit(false);
+		
+		// the ids are passed as arrays, and turned into tables
+		String query = "INSERT INTO PERSON (GOOGLE_ID,DATE_RETRIEVED,PROCESSED) ";
+		query = query + "SELECT N.GID,?,"+PersonState.UNPROCESSED.ordinal()+" FROM TABLE(GID DECIMAL(22,0)=?) N ";
+		query = query + "WHERE NOT EXISTS (SELECT P.ID FROM PERSON P WHERE P.GOOGLE_ID=N.GID)";
+		insertPersons = connection.prepareStatement(query);
+		query = "SELECT P.GOOGLE_ID FROM TABLE(GID DECIMAL(22,0)=?) N INNER JOIN PERSON P ON P.GOOGLE_ID=N.GID ";
+		query = query + "WHERE P.PROCESSED="+PersonState.UNPROCESSED.ordinal();
+		selectUnprocessed = connection.prepareStatement(query);
+		
+		// the Google+ ids are replaced by the integer ids of the persons
+		query = "INSERT INTO RELATIONSHIP (SOURCE_ID,TARGET_ID,DATE_RETRIEVED) ";
+		query = query + "SELECT S.ID,T.ID,? FROM TABLE(SOURCE_GID DECIMAL(22,0)=?, TARGET_GID DECIMAL(22,0)=?) N ";
+		query = query + "INNER JOIN PERSON S ON S.GOOGLE_ID=N.SOURCE_GID INNER JOIN PERSON T ON T.GOOGLE_ID=N.TARGET_GID ";
+		query = query + "WHERE NOT EXISTS (SELECT R.SOURCE_ID FROM RELATIONSHIP R WHERE R.SOURCE_ID=S.ID AND R.TARGET_ID=T.ID)";
+		insertRelationships = connection.prepareStatement(query);
+		
+		// statistics of the processed persons and of their neighbors
+		selectDistance = connection.prepareStatement("SELECT DISTANCE FROM PERSON WHERE GOOGLE_ID=?");
+		query = "UPDATE PERSON SET PROCESSED=?, FIRSTNAME=COALESCE(?,FIRSTNAME), LASTNAME=COALESCE(?,LASTNAME), FOLLOWER_NBR=COALESCE(?,FOLLOWER_NBR), CRAWL_TIME=? ";
+		query = query + "WHERE GOOGLE_ID=?";
+		updatePerson = connection.prepareStatement(query);
+		// each neighbor appears once, with the number of processed persons it is linked to and its smallest distance
+		// (the update is driven by the table of ids, and the join prevents MERGE from inserting any person)
+		query = "MERGE INTO PERSON (GOOGLE_ID,SEEN_NBR,DISTANCE) KEY(GOOGLE_ID) ";
+		query = query + "SELECT N.GID,P.SEEN_NBR+N.CNT,LEAST(COALESCE(P.DISTANCE,N.DIST),N.DIST) ";
+		query = query + "FROM TABLE(GID DECIMAL(22,0)=?, CNT INT=?, DIST INT=?) N INNER JOIN PERSON P ON P.GOOGLE_ID=N.GID";
+		updateNeighbors = connection.prepareStatement(query);
+	}
+	
+	/** Connection used to write the data */
+	private final Connection connection;
+	/** Statement inserting the missing persons */
+	private final PreparedStatement insertPersons;
+	/** Statement selecting the unprocessed persons among a set of persons */
+	private final PreparedStatement selectUnprocessed;
+	/** Statement inserting the missing relationships */
+	private final PreparedStatement insertRelationships;
+	/** Statement retrieving the distance of a person */
+	private final PreparedStatement selectDistance;
+	/** Statement marking a person as processed */
+	private final PreparedStatement updatePerson;
+	/** Statement updating the statistics of the neighbors of the processed persons */
+	private final PreparedStatement updateNeighbors;
+	/** Statement updating the priority of the neighbors of the processed persons (depends on the priority expression) */
+	private PreparedStatement updatePriorities = null;
+	/** Statement serializing the transactions with those of the other writers and crawlers (prepared on first use) */
+	private PreparedStatement lockPersons = null;
+	/** Whether the current transaction already holds each lock ({@link Person#STATE_LOCK}, {@link Person#WRITE_LOCK}) */
+	private final boolean[] locked = {false,false};
+	/** Priority expression used by {@link #updatePriorities} */
+	private String preparedPriority = null;
+	/** Priority expression of the last processed person */
+	private String priority = null;
+	/** Number of processed persons not written yet */
+	private int processedNbr = 0;
+	/** Neighbors of the processed persons not written yet: number of processed neighbors and smallest distance */
+	private final Map<String,int[]> neighborStats = new HashMap<String,int[]>();
+
+	/////////////////////////////////////////////////////////////////
+	// STATISTICS		/////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** for statistical purposes : time to write a neighborhood, without the commit (in us) */
+	private static final Histogram writeTimer = MetricsRegistry.getTimer("db.neighborhood");
+	/** for statistical purposes : time to commit a transaction (in us) */
+	private static final Histogram commitTimer = MetricsRegistry.getTimer("db.commit");
+	/** for statistical purposes : number of relationships already present in the DB */
+	private static final Counter duplicateCounter = MetricsRegistry.getCounter("db.duplicates");
+	/** for statistical purposes : number of persons discovered through the relationships */
+	private static final Counter newPersonCounter = MetricsRegistry.getCounter("db.new.persons");
+
+	/**
+	 * Returns the average time to write
+	 * the neighborhood of a person in the DB
+	 * (not including the commit).
+	 * 
+	 * @return
+	 * 		The average time in ms.
+	 */
+	public static double getWriteAverageTime()
+	{	double result = writeTimer.getMean() / 1000;
+		return result;
+	}
+
+	/////////////////////////////////////////////////////////////////
+	// PROCESSING		/////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Writes the specified relationships in the DB, 
+	 * as well as the persons they involve, if they 
+	 * are not already present. Everything is committed
+	 * at once: if the method fails, nothing is written.
+	 * 
+	 * @param relationships
+	 * 		Relationships to be written.
+	 * @return
+	 * 		Number of relationships actually inserted.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public int write(Collection<Relationship> relationships) throws SQLException
+	{	int result = 0;
+		try
+		{	result = insert(relationships);
+			commit();
+		}
+		catch(SQLException e)
+		{	rollback();
+			throw e;
+		}
+		return result;
+	}
+	
+	/**
+	 * Writes the neighborhoods of several persons
+	 * in a single transaction, which is much cheaper
+	 * than committing each one separately. If the 
+	 * method fails, nothing is written.
+	 * 
+	 * @param neighborhoods
+	 * 		Relationships of each person.
+	 * @return
+	 * 		Number of relationships actually inserted.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public int writeAll(List<? extends Collection<Relationship>> neighborhoods) throws SQLException
+	{	int result = 0;
+		try
+		{	result = insertAll(neighborhoods);
+			commit();
+		}
+		catch(SQLException e)
+		{	rollback();
+			throw e;
+		}
+		return result;
+	}
+	
+	/**
+	 * Inserts those of the specified persons which
+	 * are missing from the DB, and returns those which
+	 * are not processed yet. Both operations are performed
+	 * by set-based statements, and committed at once.
+	 * 
+	 * @param ids
+	 * 		G+ ids of the concerned persons.
+	 * @return
+	 * 		Ids of the unprocessed persons.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public Set<String> retrieveUnprocessed(Collection<String> ids) throws SQLException
+	{	Set<String> result = new HashSet<String>();
+		try
+		{	lock(Person.WRITE_LOCK);
+			Object[] gids = ids.toArray();
+			insertPersons.setDate(1,new Date(System.currentTimeMillis()));
+			insertPersons.setObject(2,gids);
+			int persons = insertPersons.executeUpdate();
+			newPersonCounter.add(persons);
+			
+			selectUnprocessed.setObject(1,gids);
+			ResultSet results = selectUnprocessed.executeQuery();
+			while(results.next())
+				result.add(results.getString(1));
+			results.close();
+			commit();
+		}
+		catch(SQLException e)
+		{	rollback();
+			throw e;
+		}
+		return result;
+	}
+	
+	/**
+	 * Inserts the specified relationships and
+	 * the persons they involve, without committing.
+	 * 
+	 * @param relationships
+	 * 		Relationships to be written.
+	 * @return
+	 * 		Number of relationships actually inserted.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	private int insert(Collection<Relationship> relationships) throws SQLException
+	{	long before = System.nanoTime();
+		Date date = new Date(System.currentTimeMillis());
+		int result = 0;
+		if(!relationships.isEmpty())
+		{	lock(Person.WRITE_LOCK);
+			
+			// persons
+			Set<String> ids = Relationship.getIdsFromRelationships(relationships);
+			insertPersons.setDate(1,date);
+			insertPersons.setObject(2,ids.toArray());
+			int persons = insertPersons.executeUpdate();
+			newPersonCounter.add(persons);
+		
+			// relationships
+			Object[] sources = new Object[relationships.size()];
+			Object[] targets = new Object[relationships.size()];
+			int i = 0;
+			for(Relationship relationship: relationships)
+			{	sources[i] = relationship.getSourceId();
+				targets[i] = relationship.getTargetId();
+				i++;
+			}
+			insertRelationships.setDate(1,date);
+			insertRelationships.setObject(2,sources);
+			insertRelationships.setObject(3,targets);
+			result = insertRelationships.executeUpdate();
+			duplicateCounter.add(relationships.size()-result);
+		}
+		writeTimer.recordSince(before);
+		return result;
+	}
+	
+	/**
+	 * Marks the specified person as processed,
+	 * records its number of followers and the 
+	 * processing time, and updates the statistics
+	 * of its neighbors (observed degree and distance).
+	 * The priority of the neighbors not processed yet
+	 * is then recomputed.<br/>
+	 * Nothing is written yet: the changes of all the persons 
+	 * are applied by two set-based statements when the 
+	 * current transaction is committed (cf. {@link #commit()}),
+	 * so the rows of the neighbors are locked only for the
+	 * duration of the commit.
+	 * 
+	 * @param person
+	 * 		The processed person.
+	 * @param followerNbr
+	 * 		Number of followers announced by Google+ ({@code null} if
+	 * 		unknown, e.g. at the border of an ego network).
+	 * @param neighbors
+	 * 		Ids of the persons linked to the processed one.
+	 * @param priority
+	 * 		SQL expression used to compute the priority.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public void markProcessed(Person person, Integer followerNbr, Collection<String> neighbors, String priority) throws SQLException
+	{	String id = person.getId();
+		this.priority = priority;
+		
+		// distance of the processed person (the initial persons have no distance)
+		int distance = 0;
+		selectDistance.setString(1,id);
+		ResultSet results = selectDistance.executeQuery();
+		if(results.next())
+			distance = results.getInt(1);
+		results.close();
+		
+		// processed person
+		updatePerson.setInt(1,PersonState.PROCESSED.ordinal());
+		updatePerson.setString(2,person.getFirstname());
+		updatePerson.setString(3,person.getLastname());
+		if(followerNbr==null)
+			updatePerson.setNull(4,Types.INTEGER);
+		else
+			updatePerson.setInt(4,followerNbr);
+		updatePerson.setLong(5,System.currentTimeMillis());
+		updatePerson.setString(6,id);
+		updatePerson.addBatch();
+		processedNbr++;
+		
+		// neighbors (the person itself is excluded)
+		for(String neighbor: neighbors)
+		{	if(!neighbor.equals(id))
+			{	int[] stats = neighborStats.get(neighbor);
+				if(stats==null)
+				{	stats = new int[]{0,distance+1};
+					neighborStats.put(neighbor,stats);
+				}
+				stats[0]++;
+				stats[1] = Math.min(stats[1],distance+1);
+			}
+		}
+	}
+	
+	/**
+	 * Applies the changes recorded by 
+	 * {@link #markProcessed(Person, Integer, Collection, String)}
+	 * since the last commit.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	private void flushProcessed() throws SQLException
+	{	// processed persons
+		if(processedNbr>0)
+		{	updatePerson.executeBatch();
+			processedNbr = 0;
+		}
+		
+		// neighbors
+		if(!neighborStats.isEmpty())
+		{	Object[] gids = new Object[neighborStats.size()];
+			Object[] counts = new Object[neighborStats.size()];
+			Object[] distances = new Object[neighborStats.size()];
+			int i = 0;
+			for(Entry<String,int[]> entry: neighborStats.entrySet())
+			{	gids[i] = entry.getKey();
+				counts[i] = entry.getValue()[0];
+				distances[i] = entry.getValue()[1];
+				i++;
+			}
+			updateNeighbors.setObject(1,gids);
+			updateNeighbors.setObject(2,counts);
+			updateNeighbors.setObject(3,distances);
+			updateNeighbors.executeUpdate();
+			// the priority must be computed from the updated statistics
+			PreparedStatement statement = getUpdatePriorities(priority);
+			statement.setObject(1,gids);
+			statement.executeUpdate();
+			neighborStats.clear();
+		}
+	}
+	
+	/**
+	 * Returns the statement updating the priority
+	 * of a set of persons, preparing it again if
+	 * the priority expression changed.
+	 * 
+	 * @param priority
+	 * 		SQL expression used to compute the priority.
+	 * @return
+	 * 		The corresponding statement.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	private PreparedStatement getUpdatePriorities(String priority) throws SQLException
+	{	if(!priority.equals(preparedPriority))
+		{	if(updatePriorities!=null)
+				updatePriorities.close();
+			String query = "MERGE INTO PERSON (GOOGLE_ID,PRIORITY) KEY(GOOGLE_ID) ";
+			query = query + "SELECT P.GOOGLE_ID,"+priority+" FROM TABLE(GID DECIMAL(22,0)=?) N INNER JOIN PERSON P ON P.GOOGLE_ID=N.GID ";
+			query = query + "WHERE P.PROCESSED="+PersonState.UNPROCESSED.ordinal();
+			updatePriorities = connection.prepareStatement(query);
+			preparedPriority = priority;
+		}
+		return updatePriorities;
+	}
+	
+	/**
+	 * Inserts the neighborhoods of several persons
+	 * without committing, so that other changes 
+	 * can be part of the same transaction (cf.
+	 * {@link #markProcessed(Person, Integer, Collection, String)}).
+	 * The transaction must then be ended by {@link #commit()} 
+	 * or {@link #rollback()}.
+	 * 
+	 * @param neighborhoods
+	 * 		Relationships of each person.
+	 * @return
+	 * 		Number of relationships actually inserted.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public int insertAll(List<? extends Collection<Relationship>> neighborhoods) throws SQLException
+	{	int result = 0;
+		for(Collection<Relationship> relationships: neighborhoods)
+			result = result + insert(relationships);
+		return result;
+	}
+	
+	/**
+	 * Commits the current transaction, after
+	 * having applied the pending changes of the
+	 * processed persons (cf. {@link #markProcessed(Person, Integer, Collection, String)}).
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public void commit() throws SQLException
+	{	long before = System.nanoTime();
+		if(processedNbr>0)
+		{	// the claims of the crawler threads (possibly in other processes) must not conflict with these changes
+			lock(Person.STATE_LOCK);
+			flushProcessed();
+		}
+		connection.commit();
+		unlock();
+		commitTimer.recordSince(before);
+	}
+	
+	/**
+	 * Makes the current transaction wait for those of
+	 * the other writers ({@link Person#WRITE_LOCK}), or for
+	 * the claims of the crawlers ({@link Person#STATE_LOCK}).
+	 * The write lock is taken before the first change of the
+	 * transaction, the state lock before the changes of the
+	 * states, and both are released when it ends.
+	 * 
+	 * @param row
+	 * 		The lock to take.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	private void lock(int row) throws SQLException
+	{	if(!locked[row])
+		{	if(lockPersons==null)
+				lockPersons = connection.prepareStatement(Person.LOCK_QUERY);
+			Person.lockUpdates(lockPersons,row);
+			locked[row] = true;
+		}
+	}
+	
+	/**
+	 * Releases the locks taken by {@link #lock(int)}, 
+	 * if any, once the transaction is over.
+	 */
+	private void unlock()
+	{	for(int row: new int[]{Person.STATE_LOCK,Person.WRITE_LOCK})
+		{	if(locked[row])
+			{	Person.unlockUpdates(row);
+				locked[row] = false;
+			}
+		}
+	}
+	
+	/**
+	 * Cancels the current transaction,
+	 * including the pending changes of 
+	 * the processed persons.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public void rollback() throws SQLException
+	{	updatePerson.clearBatch();
+		if(selectChanges!=null)
+		{	deleteRelationship.clearBatch();
+			insertChange.clearBatch();
+			deleteChange.clearBatch();
+		}
+		processedNbr = 0;
+		neighborStats.clear();
+		try
+		{	connection.rollback();
+		}
+		finally
+		{	unlock();
+		}
+	}
+	
+	/**
+	 * Releases the statements and
+	 * the connection used by this writer.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public void close() throws SQLException
+	{	insertPersons.close();
+		selectUnprocessed.close();
+		insertRelationships.close();
+		selectDistance.close();
+		updatePerson.close();
+		updateNeighbors.close();
+		if(updatePriorities!=null)
+			updatePriorities.close();
+		if(lockPersons!=null)
+			lockPersons.close();
+		if(selectChanges!=null)
+		{	selectOutgoing.close();
+			selectIncoming.close();
+			selectChanges.close();
+			deleteRelationship.close();
+			insertChange.close();
+			deleteChange.close();
+		}
+		connection.close();
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// RE-CRAWL			/////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Statement retrieving the outgoing relationships of a person */
+	private PreparedStatement selectOutgoing = null;
+	/** Statement retrieving the incoming relationships of a person */
+	private PreparedStatement selectIncoming = null;
+	/** Statement resolving the changed relationships, with their previous change in the snapshot */
+	private PreparedStatement selectChanges = null;
+	/** Statement removing a relationship */
+	private PreparedStatement deleteRelationship = null;
+	/** Statement recording a change in the snapshot */
+	private PreparedStatement insertChange = null;
+	/** Statement removing a change from the snapshot */
+	private PreparedStatement deleteChange = null;
+	
+	/**
+	 * Prepares the statements used during a re-crawl.
+	 * They are prepared on first use only, since the
+	 * snapshot tables might not exist during a regular crawl.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	private void prepareRecrawl() throws SQLException
+	{	if(selectChanges==null)
+		{	selectOutgoing = connection.prepareStatement(Relationship.SELECT_QUERY+" WHERE S.GOOGLE_ID=?");
+			selectIncoming = connection.prepareStatement(Relationship.SELECT_QUERY+" WHERE T.GOOGLE_ID=?");
+			String query = "SELECT S.ID,T.ID,N.ADDED,D.ADDED ";
+			query = query + "FROM TABLE(SOURCE_GID DECIMAL(22,0)=?, TARGET_GID DECIMAL(22,0)=?, ADDED BOOLEAN=?) N ";
+			query = query + "INNER JOIN PERSON S ON S.GOOGLE_ID=N.SOURCE_GID INNER JOIN PERSON T ON T.GOOGLE_ID=N.TARGET_GID ";
+			query = query + "LEFT JOIN RELATIONSHIP_DELTA D ON D.SOURCE_ID=S.ID AND D.TARGET_ID=T.ID AND D.SNAPSHOT_ID=?";
+			selectChanges = connection.prepareStatement(query);
+			deleteRelationship = connection.prepareStatement("DELETE FROM RELATIONSHIP WHERE SOURCE_ID=? AND TARGET_ID=?");
+			insertChange = connection.prepareStatement("INSERT INTO RELATIONSHIP_DELTA (SOURCE_ID,TARGET_ID,SNAPSHOT_ID,ADDED) VALUES (?,?,?,?)");
+			deleteChange = connection.prepareStatement("DELETE FROM RELATIONSHIP_DELTA WHERE SOURCE_ID=? AND TARGET_ID=? AND SNAPSHOT_ID=?");
+		}
+	}
+	
+	/**
+	 * Retrieves all the relationships (incoming
+	 * and outgoing) of the specified person, including
+	 * the changes not committed yet by this writer.
+	 * 
+	 * @param id
+	 * 		The G+ id of the concerned person.
+	 * @return
+	 * 		The set of corresponding relationships.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public Set<Relationship> retrieve(String id) throws SQLException
+	{	prepareRecrawl();
+		Set<Relationship> result = new TreeSet<Relationship>();
+		for(PreparedStatement statement: new PreparedStatement[]{selectOutgoing,selectIncoming})
+		{	statement.setString(1,id);
+			ResultSet results = statement.executeQuery();
+			while(results.next())
+				result.add(Relationship.build(results));
+			results.close();
+		}
+		return result;
+	}
+	
+	/**
+	 * Applies the changes observed in the neighborhood
+	 * of a person during a re-crawl, and records them in 
+	 * the specified snapshot, without committing (cf. 
+	 * {@link #commit()}). The changed relationships are
+	 * resolved by a single set-based statement, then the
+	 * removals and the records are applied by batches.<br/>
+	 * If a change cancels the one already recorded in
+	 * the same snapshot (e.g. a relationship added then
+	 * removed when processing its other end), the previous
+	 * record is removed, since the relationship is then 
+	 * in the same state as in the previous snapshot.
+	 * 
+	 * @param snapshot
+	 * 		Id of the current snapshot.
+	 * @param added
+	 * 		Relationships which appeared.
+	 * @param removed
+	 * 		Relationships which disappeared.
+	 * @return
+	 * 		Number of relationships actually inserted.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public int writeChanges(int snapshot, Collection<Relationship> added, Collection<Relationship> removed) throws SQLException
+	{	int result = insert(added);
+		int size = added.size() + removed.size();
+		if(size>0)
+		{	lock(Person.WRITE_LOCK);
+			prepareRecrawl();
+			Object[] sources = new Object[size];
+			Object[] targets = new Object[size];
+			Object[] flags = new Object[size];
+			int i = 0;
+			for(Relationship relationship: added)
+			{	sources[i] = relationship.getSourceId();
+				targets[i] = relationship.getTargetId();
+				flags[i] = true;
+				i++;
+			}
+			for(Relationship relationship: removed)
+			{	sources[i] = relationship.getSourceId();
+				targets[i] = relationship.getTargetId();
+				flags[i] = false;
+				i++;
+			}
+			selectChanges.setObject(1,sources);
+			selectChanges.setObject(2,targets);
+			selectChanges.setObject(3,flags);
+			selectChanges.setInt(4,snapshot);
+			ResultSet results = selectChanges.executeQuery();
+			while(results.next())
+			{	int sourceId = results.getInt(1);
+				int targetId = results.getInt(2);
+				boolean appeared = results.getBoolean(3);
+				Object previous = results.getObject(4);
+				if(!appeared)
+				{	deleteRelationship.setInt(1,sourceId);
+					deleteRelationship.setInt(2,targetId);
+					deleteRelationship.addBatch();
+				}
+				if(previous==null)
+				{	insertChange.setInt(1,sourceId);
+					insertChange.setInt(2,targetId);
+					insertChange.setInt(3,snapshot);
+					insertChange.setBoolean(4,appeared);
+					insertChange.addBatch();
+				}
+				else if(((Boolean)previous).booleanValue()!=appeared)
+				{	deleteChange.setInt(1,sourceId);
+					deleteChange.setInt(2,targetId);
+					deleteChange.setInt(3,snapshot);
+					deleteChange.addBatch();
+				}
+			}
+			results.close();
+			deleteRelationship.executeBatch();
+			insertChange.executeBatch();
+			deleteChange.executeBatch();
+		}
+		return result;
+	}
+}
@@ -0,0 +1,374 @@
+package tr.edu.gsu.googleplus.data;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import tr.edu.gsu.googleplus.tool.DbTools;
+import tr.edu.gsu.googleplus.tool.FileTools;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+
+/**
+ * Handles the successive snapshots of the network.
+ * Snapshot 0 corresponds to the initial crawl. Each
+ * re-crawl produces a new snapshot, but only the changes
+ * are recorded: the RELATIONSHIP table always contains
+ * the most recent state of the network, and the 
+ * RELATIONSHIP_DELTA table contains the relationships
+ * added or removed in each snapshot.<br/>
+ * Any snapshot can then be rebuilt from the current
+ * state, by reverting the changes made after it: the
+ * state of a relationship in snapshot {@code k} is given
+ * by the first change recorded after {@code k} (if it was
+ * a removal, the relationship was present), or by the
+ * current state if there is no such change.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class Snapshot
+{	
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+	
+	/////////////////////////////////////////////////////////////////
+	// TABLES		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Creates the tables meant to contain the
+	 * snapshots and the relationship changes,
+	 * if they do not exist yet. Snapshot 0 is 
+	 * registered at the same time.
+	 *  
+	 * @throws SQLException
+	 * 		Problem while accessign the DB.
+	 */
+	public static void createTable() throws SQLException
+	{	Statement statement = DbTools.getConnection().createStatement();
+		String query = 	"CREATE TABLE IF NOT EXISTS SNAPSHOT (";
+		query = query + 	"ID INT NOT NULL PRIMARY KEY,";
+		query = query + 	"START_TIME BIGINT NOT NULL,";
+		query = query + 	"END_TIME BIGINT";
+		query = query + ")";
+		statement.execute(query);
+		
+		query = 		"CREATE TABLE IF NOT EXISTS RELATIONSHIP_DELTA (";
+		query = query + 	"SOURCE_ID INT NOT NULL,";
+		query = query + 	"TARGET_ID INT NOT NULL,";
+		query = query + 	"SNAPSHOT_ID INT NOT NULL,";
+		query = query + 	"ADDED BOOLEAN NOT NULL,";
+		query = query + 	"PRIMARY KEY (SOURCE_ID, TARGET_ID, SNAPSHOT_ID),";
+		query = query + 	"FOREIGN KEY(SNAPSHOT_ID) REFERENCES SNAPSHOT(ID)";
+		query = query + ")";
+		statement.execute(query);
+		statement.execute("CREATE INDEX IF NOT EXISTS DELTA_SNAPSHOT ON RELATIONSHIP_DELTA(SNAPSHOT_ID)");
+		// a re-crawl retrieves the incoming relationships of each person
+		statement.execute("CREATE INDEX IF NOT EXISTS RELATIONSHIP_TARGET ON RELATIONSHIP(TARGET_ID)");
+		
+		// the initial crawl is snapshot 0
+		ResultSet results = statement.executeQuery("SELECT COUNT(*) FROM SNAPSHOT");
+		results.next();
+		if(results.getInt(1)==0)
+			statement.execute("INSERT INTO SNAPSHOT (ID,START_TIME) VALUES (0,"+System.currentTimeMillis()+")");
+		results.close();
+		statement.close();
+	}
+	
+	/**
+	 * Deletes the tables meant to contain
+	 * the snapshots and the relationship changes.
+	 *  
+	 * @throws SQLException
+	 * 		Problem while accessign the DB.
+	 */
+	public static void dropTable() throws SQLException
+	{	Statement statement = DbTools.getConnection().createStatement();
+		statement.execute("DROP TABLE IF EXISTS RELATIONSHIP_DELTA");
+		statement.execute("DROP TABLE IF EXISTS SNAPSHOT");
+		statement.close();
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// SNAPSHOTS	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Returns the id of the most recent snapshot.
+	 * 
+	 * @return
+	 * 		Id of the last snapshot.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static int getLastId() throws SQLException
+	{	Statement statement = DbTools.getConnection().createStatement();
+		ResultSet results = statement.executeQuery("SELECT MAX(ID) FROM SNAPSHOT");
+		results.next();
+		int result = results.getInt(1);
+		results.close();
+		statement.close();
+		return result;
+	}
+	
+	/**
+	 * Indicates whether the specified
+	 * snapshot is complete.
+	 * 
+	 * @param id
+	 * 		Id of the snapshot.
+	 * @return
+	 * 		{@code true} if the snapshot was marked as finished.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static boolean isFinished(int id) throws SQLException
+	{	PreparedStatement statement = DbTools.getConnection().prepareStatement("SELECT END_TIME FROM SNAPSHOT WHERE ID=?");
+		statement.setInt(1,id);
+		ResultSet results = statement.executeQuery();
+		boolean result = results.next() && results.getObject(1)!=null;
+		results.close();
+		statement.close();
+		return result;
+	}
+	
+	/**
+	 * Registers a new snapshot, 
+	 * following the last one.
+	 * 
+	 * @return
+	 * 		Id of the new snapshot.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static int start() throws SQLException
+	{	int result = getLastId() + 1;
+		PreparedStatement statement = DbTools.getConnection().prepareStatement("INSERT INTO SNAPSHOT (ID,START_TIME) VALUES (?,?)");
+		statement.setInt(1,result);
+		statement.setLong(2,System.currentTimeMillis());
+		statement.executeUpdate();
+		statement.close();
+		return result;
+	}
+	
+	/**
+	 * Marks the specified snapshot
+	 * as complete.
+	 * 
+	 * @param id
+	 * 		Id of the snapshot.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static void finish(int id) throws SQLException
+	{	PreparedStatement statement = DbTools.getConnection().prepareStatement("UPDATE SNAPSHOT SET END_TIME=? WHERE ID=?");
+		statement.setLong(1,System.currentTimeMillis());
+		statement.setInt(2,id);
+		statement.executeUpdate();
+		statement.close();
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// CHANGES		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Records a change in the specified snapshot.
+	 * If the same relationship was already changed
+	 * in this snapshot (e.g. when processing its
+	 * other end), and the new change cancels the
+	 * previous one, the previous one is removed:
+	 * the relationship is then in the same state as
+	 * in the previous snapshot.
+	 * 
+	 * @param id
+	 * 		Id of the snapshot.
+	 * @param relationship
+	 * 		The concerned relationship.
+	 * @param added
+	 * 		{@code true} if the relationship appeared,
+	 * 		{@code false} if it disappeared.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static void recordChange(int id, Relationship relationship, boolean added) throws SQLException
+	{	String query = "DELETE FROM RELATIONSHIP_DELTA WHERE SNAPSHOT_ID=? AND ADDED=? ";
+		query = query + "AND SOURCE_ID=(SELECT ID FROM PERSON WHERE GOOGLE_ID=?) AND TARGET_ID=(SELECT ID FROM PERSON WHERE GOOGLE_ID=?)";
+		PreparedStatement statement = DbTools.prepareStatement(query);
+		statement.setInt(1,id);
+		statement.setBoolean(2,!added);
+		statement.setString(3,relationship.getSourceId());
+		statement.setString(4,relationship.getTargetId());
+		int cancelled = statement.executeUpdate();
+		
+		if(cancelled==0)
+		{	query = "MERGE INTO RELATIONSHIP_DELTA (SOURCE_ID,TARGET_ID,SNAPSHOT_ID,ADDED) KEY(SOURCE_ID,TARGET_ID,SNAPSHOT_ID) ";
+			query = query + "SELECT S.ID,T.ID,?,? FROM PERSON S, PERSON T WHERE S.GOOGLE_ID=? AND T.GOOGLE_ID=?";
+			statement = DbTools.prepareStatement(query);
+			statement.setInt(1,id);
+			statement.setBoolean(2,added);
+			statement.setString(3,relationship.getSourceId());
+			statement.setString(4,relationship.getTargetId());
+			statement.executeUpdate();
+		}
+	}
+	
+	/**
+	 * Returns the number of changes
+	 * recorded in the specified snapshot.
+	 * 
+	 * @param id
+	 * 		Id of the snapshot.
+	 * @return
+	 * 		Number of added and removed relationships.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static int getChangeCount(int id) throws SQLException
+	{	PreparedStatement statement = DbTools.getConnection().prepareStatement("SELECT COUNT(*) FROM RELATIONSHIP_DELTA WHERE SNAPSHOT_ID=?");
+		statement.setInt(1,id);
+		ResultSet results = statement.executeQuery();
+		results.next();
+		int result = results.getInt(1);
+		results.close();
+		statement.close();
+		return result;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// REBUILD		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Rebuilds the specified snapshot and records
+	 * it as an edge list in the networks folder.
+	 * 
+	 * @param id
+	 * 		Id of the snapshot.
+	 * @return
+	 * 		Number of relationships in the snapshot.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 * @throws FileNotFoundException
+	 * 		Problem while creating the file.
+	 */
+	public static int export(int id) throws SQLException, FileNotFoundException
+	{	String path = FileTools.NETWORKS_FOLDER + File.separator + "snapshot." + id + ".edgelist";
+		int result = export(id,path);
+		return result;
+	}
+	
+	/**
+	 * Rebuilds the specified snapshot and records
+	 * it as an edge list (one relationship by line,
+	 * source and target ids separated by a tabulation).
+	 * The relationships not changed since the snapshot
+	 * are directly read from the RELATIONSHIP table, and
+	 * the other ones from the RELATIONSHIP_DELTA table.
+	 * 
+	 * @param id
+	 * 		Id of the snapshot.
+	 * @param path
+	 * 		Path of the file to create.
+	 * @return
+	 * 		Number of relationships in the snapshot.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 * @throws FileNotFoundException
+	 * 		Problem while creating the file.
+	 */
+	public static int export(int id, String path) throws SQLException, FileNotFoundException
+	{	logger.log("Rebuilding snapshot "+id+" in "+path);
+		logger.increaseOffset();
+		File file = new File(path);
+		File folder = file.getParentFile();
+		if(folder!=null)
+			folder.mkdirs();
+		PrintWriter writer = new PrintWriter(file);
+		int result = 0;
+		
+		// relationships not changed after the snapshot
+		String query =	"SELECT S.GOOGLE_ID, T.GOOGLE_ID FROM RELATIONSHIP R ";
+		query = query + "INNER JOIN PERSON S ON S.ID=R.SOURCE_ID INNER JOIN PERSON T ON T.ID=R.TARGET_ID ";
+		query = query + "WHERE NOT EXISTS (SELECT * FROM RELATIONSHIP_DELTA D ";
+		query = query + 	"WHERE D.SOURCE_ID=R.SOURCE_ID AND D.TARGET_ID=R.TARGET_ID AND D.SNAPSHOT_ID>?)";
+		result = result + writeRelationships(query,id,writer);
+		
+		// relationships removed after the snapshot (i.e. present in it)
+		query =			"SELECT S.GOOGLE_ID, T.GOOGLE_ID FROM RELATIONSHIP_DELTA D ";
+		query = query + "INNER JOIN PERSON S ON S.ID=D.SOURCE_ID INNER JOIN PERSON T ON T.ID=D.TARGET_ID ";
+		query = query + "WHERE D.SNAPSHOT_ID>? AND D.ADDED=FALSE AND D.SNAPSHOT_ID=";
+		query = query + 	"(SELECT MIN(F.SNAPSHOT_ID) FROM RELATIONSHIP_DELTA F ";
+		query = query + 	"WHERE F.SOURCE_ID=D.SOURCE_ID AND F.TARGET_ID=D.TARGET_ID AND F.SNAPSHOT_ID>"+id+")";
+		result = result + writeRelationships(query,id,writer);
+		
+		writer.close();
+		logger.decreaseOffset();
+		logger.log("Snapshot "+id+" rebuilt: "+result+" relationships");
+		return result;
+	}
+	
+	/**
+	 * Executes the specified query and
+	 * writes the resulting relationships.
+	 * 
+	 * @param query
+	 * 		Query returning source and target ids, with a snapshot parameter.
+	 * @param id
+	 * 		Id of the snapshot.
+	 * @param writer
+	 * 		Writer used to record the relationships.
+	 * @return
+	 * 		Number of written relationships.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	private static int writeRelationships(String query, int id, PrintWriter writer) throws SQLException
+	{	PreparedStatement statement = DbTools.getConnection().prepareStatement(query);
+		statement.setInt(1,id);
+		ResultSet results = statement.executeQuery();
+		int result = 0;
+		while(results.next())
+		{	writer.println(results.getString(1) + "\t" + results.getString(2));
+			result++;
+		}
+		results.close();
+		statement.close();
+		return result;
+	}
+}
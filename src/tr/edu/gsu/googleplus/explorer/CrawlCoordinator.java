@@ -0,0 +1,179 @@
+package tr.edu.gsu.googleplus.explorer;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.NumberFormat;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import tr.edu.gsu.googleplus.data.NodeStats;
+import tr.edu.gsu.googleplus.data.Person;
+import tr.edu.gsu.googleplus.data.PersonState;
+import tr.edu.gsu.googleplus.tool.DbTools;
+import tr.edu.gsu.googleplus.tool.TimeTools;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+
+/**
+ * Allows distributing the retrieval of the relationships
+ * over several machines. The coordinator runs on the machine
+ * containing the DB, and makes it available through an H2 server.
+ * Each crawler node (cf. {@link CrawlerNode}) connects to this 
+ * server, and claims persons exactly like local threads would
+ * (cf. {@link WorkQueue}): the leases already prevent two nodes
+ * from processing the same person, and the persons claimed by
+ * a node which crashed are recovered once their lease expired.
+ * Note the lease times are compared across machines, so their
+ * clocks must be synchronized (e.g. using NTP).<br/>
+ * The coordinator then regularly displays the progress of
+ * each node, as recorded in the NODE_STATS table.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class CrawlCoordinator
+{	
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+
+	/////////////////////////////////////////////////////////////////
+	// MONITORING	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Time after which a node which did not record its progress is considered as stopped (in ms) */
+	private static final long SILENCE_DURATION = 10*60*1000;
+	/** Last statistics displayed for each node */
+	private static Map<String,NodeStats> previousStats = new HashMap<String,NodeStats>();
+	
+	/**
+	 * Displays the progress of the active
+	 * crawler nodes, as well as the overall
+	 * progress of the retrieval.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static void displayProgress() throws SQLException
+	{	long now = System.currentTimeMillis();
+		NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
+		nf.setMaximumFractionDigits(2);
+		
+		// nodes
+		List<NodeStats> list = NodeStats.retrieveAll();
+		double totalRate = 0;
+		int activeNbr = 0;
+		int threadNbr = 0;
+		logger.log("Crawler nodes:");
+		logger.increaseOffset();
+		for(NodeStats stats: list)
+		{	if(now-stats.getLastUpdate()<SILENCE_DURATION)
+			{	activeNbr++;
+				threadNbr = threadNbr + stats.getThreadNbr();
+				// the nodes only record their progress when renewing their leases, so the rate is measured between two records
+				NodeStats previous = previousStats.get(stats.getId());
+				double rate;
+				if(previous!=null && previous.getLastUpdate()<stats.getLastUpdate())
+					rate = (stats.getProcessed()-previous.getProcessed()) * 3600000.0 / (stats.getLastUpdate()-previous.getLastUpdate());
+				else if(stats.getLastUpdate()>stats.getStartTime())
+					rate = stats.getProcessed() * 3600000.0 / (stats.getLastUpdate()-stats.getStartTime());
+				else
+					rate = 0;
+				totalRate = totalRate + rate;
+				if(previous==null || previous.getLastUpdate()<stats.getLastUpdate())
+					previousStats.put(stats.getId(),stats);
+				logger.log(stats.getId()+": "+stats.getThreadNbr()+" threads - processed: "+stats.getProcessed()+" - hourly rate: "+nf.format(rate)+" - last seen: "+TimeTools.formatDuration(now-stats.getLastUpdate())+" ago");
+			}
+		}
+		logger.decreaseOffset();
+		
+		// overall progress
+		int unprocessed = 0;
+		int claimed = 0;
+		{	Statement statement = DbTools.getConnection().createStatement();
+			String query = "SELECT PROCESSED, COUNT(*) FROM PERSON WHERE PROCESSED<>"+PersonState.PROCESSED.ordinal()+" GROUP BY PROCESSED";
+			ResultSet results = statement.executeQuery(query);
+			while(results.next())
+			{	if(results.getInt(1)==PersonState.UNPROCESSED.ordinal())
+					unprocessed = results.getInt(2);
+				else
+					claimed = claimed + results.getInt(2);
+			}
+			results.close();
+			statement.close();
+		}
+		String msg = "Active nodes: "+activeNbr+" ("+threadNbr+" threads) - hourly rate: "+nf.format(totalRate)+" - unprocessed: "+unprocessed+" - in progress: "+claimed;
+		if(totalRate>0)
+		{	long remainingTime = Math.round(unprocessed/totalRate*3600000);
+			msg = msg + " - estimated remaining time: "+TimeTools.formatDuration(remainingTime);
+		}
+		logger.log(msg);
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// MAIN			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Makes the DB available to the crawler nodes,
+	 * then displays their progress until the program
+	 * is stopped.
+	 * 
+	 * @param arg
+	 * 		Optional port of the DB server, and period
+	 * 		between two displays (in s).
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 * @throws ClassNotFoundException
+	 * 		Problem while loading the DB driver.
+	 * @throws InterruptedException
+	 * 		Problem while waiting between two displays.
+	 */
+	public static void main(String arg[]) throws ClassNotFoundException, SQLException, InterruptedException
+	{	logger.setName("Coordinator");
+		int port = DbTools.DEFAULT_PORT;
+		long period = 60;
+		if(arg.length>0)
+			port = Integer.parseInt(arg[0]);
+		if(arg.length>1)
+			period = Long.parseLong(arg[1]);
+		
+		// the first connection determines the DB mode, which must be the same for all nodes
+		DbTools.setDbName("googleplus");
+		DbTools.openDb();
+		Person.upgradeTable();
+		NodeStats.createTable();
+		DbTools.startServer(port);
+		
+		while(true)
+		{	displayProgress();
+			Thread.sleep(period*1000);
+		}
+	}
+}
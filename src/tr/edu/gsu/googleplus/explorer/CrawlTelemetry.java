@@ -0,0 +1,505 @@
+package tr.edu.gsu.googleplus.explorer;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import tr.edu.gsu.googleplus.parser.GooglePlusParser;
+import tr.edu.gsu.googleplus.parser.RateController;
+import tr.edu.gsu.googleplus.tool.TimeTools;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+import tr.edu.gsu.googleplus.tool.metrics.Counter;
+import tr.edu.gsu.googleplus.tool.metrics.HistogramSnapshot;
+import tr.edu.gsu.googleplus.tool.metrics.MetricsRegistry;
+
+/**
+ * Live monitoring of a running crawl. The telemetry
+ * periodically samples the counters maintained by the
+ * crawler, and computes the throughput (persons, 
+ * relationships and requests per second), the error
+ * rate and the remaining time over a moving window.
+ * Contrary to an average since the start, this window
+ * quickly reflects a change in the rate limit, or a 
+ * slowdown of the DB. The results are exposed through
+ * JMX and, optionally, through a plain-text HTTP endpoint.
+ * <br/>
+ * The worker threads only update lock-free counters
+ * and their own state (cf. {@link #setState(WorkerState, String)}),
+ * so the monitoring does not slow the crawl down.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class CrawlTelemetry implements CrawlTelemetryMBean
+{	
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+	/** Dedicated logger, so that the sampling thread does not rename the common one */
+	private static HierarchicalLogger samplerLogger = HierarchicalLoggerManager.getHierarchicalLogger("Telemetry");
+
+	/////////////////////////////////////////////////////////////////
+	// INIT			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Builds a new telemetry for a crawl
+	 * starting now.
+	 * 
+	 * @param unprocessed
+	 * 		Number of persons to process when the crawl starts.
+	 */
+	public CrawlTelemetry(int unprocessed)
+	{	this.unprocessed = unprocessed;
+		startTime = System.currentTimeMillis();
+		initialProcessed = RelationshipExtractor.getPersonsProcessed();
+		workers.clear();
+		takeSample();
+	}
+	
+	/** Number of persons to process when the crawl started */
+	private final int unprocessed;
+	/** Time the crawl started */
+	private final long startTime;
+	/** Number of persons already processed by this process when the crawl started */
+	private final int initialProcessed;
+
+	/////////////////////////////////////////////////////////////////
+	// WORKERS		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Current state of each worker thread */
+	private static final ConcurrentHashMap<Thread,WorkerStatus> workers = new ConcurrentHashMap<Thread,WorkerStatus>();
+	
+	/**
+	 * Records what the current thread is doing.
+	 * This method is meant to be called by the
+	 * worker threads, and does not block.
+	 * 
+	 * @param state
+	 * 		New state of the thread.
+	 * @param personId
+	 * 		Id of the concerned person ({@code null} if none).
+	 */
+	public static void setState(WorkerState state, String personId)
+	{	Thread thread = Thread.currentThread();
+		WorkerStatus status = workers.get(thread);
+		if(status==null)
+		{	status = new WorkerStatus();
+			WorkerStatus previous = workers.putIfAbsent(thread,status);
+			if(previous!=null)
+				status = previous;
+		}
+		status.update(state,personId);
+	}
+	
+	/**
+	 * State of a worker thread. It is written
+	 * only by the thread itself, and read by
+	 * the monitoring.
+	 */
+	private static class WorkerStatus
+	{	/** What the thread is doing */
+		private volatile WorkerState state;
+		/** Person concerned by the current state */
+		private volatile String personId;
+		/** Time the thread entered its current state */
+		private volatile long since;
+		
+		/**
+		 * Changes the state of the thread.
+		 * 
+		 * @param state
+		 * 		New state.
+		 * @param personId
+		 * 		Concerned person.
+		 */
+		public void update(WorkerState state, String personId)
+		{	this.state = state;
+			this.personId = personId;
+			since = System.currentTimeMillis();
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////
+	// SAMPLES		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Time between two samples (in ms) */
+	private static final long SAMPLE_PERIOD = 5*1000;
+	/** Number of samples in the moving window (5 minutes) */
+	private static final int WINDOW_SIZE = 60;
+	/** Number of samples between two progress logs (1 minute) */
+	private static final int LOG_PERIOD = 12;
+	/** Number of relationships retrieved so far */
+	private static final Counter edgeCounter = MetricsRegistry.getCounter("crawl.edges");
+	/** Number of failed requests so far */
+	private static final Counter failureCounter = MetricsRegistry.getCounter("http.failures");
+	/** Sampling times */
+	private final long[] times = new long[WINDOW_SIZE];
+	/** Number of processed persons, for each sample */
+	private final long[] persons = new long[WINDOW_SIZE];
+	/** Number of relationships, for each sample */
+	private final long[] edges = new long[WINDOW_SIZE];
+	/** Number of requests, for each sample */
+	private final long[] requests = new long[WINDOW_SIZE];
+	/** Number of failures, for each sample */
+	private final long[] failures = new long[WINDOW_SIZE];
+	/** Position of the next sample in the arrays */
+	private int next = 0;
+	/** Number of samples currently in the window */
+	private int sampleNbr = 0;
+	
+	/**
+	 * Records the current values of
+	 * the counters in the window, replacing
+	 * the oldest sample if it is full.
+	 */
+	private synchronized void takeSample()
+	{	times[next] = System.currentTimeMillis();
+		persons[next] = getPersonsProcessed();
+		edges[next] = edgeCounter.get();
+		requests[next] = GooglePlusParser.getTransport().getRequestCount();
+		failures[next] = failureCounter.get();
+		next = (next + 1) % WINDOW_SIZE;
+		if(sampleNbr<WINDOW_SIZE)
+			sampleNbr++;
+	}
+	
+	/**
+	 * Returns the position of the oldest
+	 * sample of the window.
+	 * 
+	 * @return
+	 * 		Position of the oldest sample.
+	 */
+	private int getOldest()
+	{	int result = (next - sampleNbr + WINDOW_SIZE) % WINDOW_SIZE;
+		return result;
+	}
+	
+	/**
+	 * Returns the rate of change of a counter
+	 * between the oldest sample of the window
+	 * and now.
+	 * 
+	 * @param samples
+	 * 		Sampled values of the counter.
+	 * @param current
+	 * 		Current value of the counter.
+	 * @return
+	 * 		Rate (per second).
+	 */
+	private synchronized double getRate(long[] samples, long current)
+	{	double result = 0;
+		int oldest = getOldest();
+		long elapsed = System.currentTimeMillis() - times[oldest];
+		// the counters restart when the transport is replaced
+		long diff = current - samples[oldest];
+		if(elapsed>0 && diff>0)
+			result = diff * 1000.0 / elapsed;
+		return result;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// MEASURES		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	@Override
+	public long getPersonsProcessed()
+	{	long result = RelationshipExtractor.getPersonsProcessed() - initialProcessed;
+		return result;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <br/>
+	 * The estimation only takes this process into 
+	 * account: when several crawler nodes share the
+	 * same DB, the actual number is lower (cf. 
+	 * {@link CrawlCoordinator} for a global view).
+	 */
+	@Override
+	public long getQueueDepth()
+	{	long result = Math.max(0,unprocessed-getPersonsProcessed());
+		return result;
+	}
+	
+	@Override
+	public int getPendingWrites()
+	{	int result = RelationshipExtractor.getPendingWrites();
+		return result;
+	}
+	
+	@Override
+	public int getRequestsInFlight()
+	{	int result = RelationshipExtractor.getEngine().getInFlight();
+		return result;
+	}
+	
+	@Override
+	public double getPersonsPerSecond()
+	{	double result = getRate(persons,getPersonsProcessed());
+		return result;
+	}
+	
+	@Override
+	public double getEdgesPerSecond()
+	{	double result = getRate(edges,edgeCounter.get());
+		return result;
+	}
+	
+	@Override
+	public double getRequestsPerSecond()
+	{	double result = getRate(requests,GooglePlusParser.getTransport().getRequestCount());
+		return result;
+	}
+	
+	@Override
+	public synchronized double getErrorRate()
+	{	double result = 0;
+		int oldest = getOldest();
+		long reqs = GooglePlusParser.getTransport().getRequestCount() - requests[oldest];
+		long fails = failureCounter.get() - failures[oldest];
+		if(reqs>0 && fails>0)
+			result = Math.min(1,fails/(double)reqs);
+		return result;
+	}
+	
+	@Override
+	public long getEta()
+	{	long result = -1;
+		double rate = getPersonsPerSecond();
+		if(rate>0)
+			result = Math.round(getQueueDepth()*1000/rate);
+		return result;
+	}
+	
+	@Override
+	public String[] getWorkerStates()
+	{	long now = System.currentTimeMillis();
+		List<String> list = new ArrayList<String>();
+		for(Entry<Thread,WorkerStatus> entry: workers.entrySet())
+		{	Thread thread = entry.getKey();
+			WorkerStatus status = entry.getValue();
+			WorkerState state = status.state;
+			String str = thread.getName() + ": ";
+			if(!thread.isAlive() && state!=WorkerState.FINISHED)
+				str = str + "DEAD";
+			else
+			{	str = str + state;
+				String personId = status.personId;
+				if(personId!=null)
+					str = str + " " + personId;
+				str = str + " (" + TimeTools.formatDuration(now-status.since) + ")";
+			}
+			list.add(str);
+		}
+		String[] result = list.toArray(new String[list.size()]);
+		return result;
+	}
+	
+	@Override
+	public String getReport()
+	{	NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
+		nf.setMaximumFractionDigits(2);
+		StringBuffer result = new StringBuffer();
+		String eol = "\n";
+		
+		// crawl
+		long now = System.currentTimeMillis();
+		result.append("started: "+TimeTools.getTime(startTime)+eol);
+		result.append("elapsed: "+TimeTools.formatDuration(now-startTime)+eol);
+		result.append("persons processed: "+getPersonsProcessed()+eol);
+		result.append("queue depth: "+getQueueDepth()+eol);
+		long eta = getEta();
+		if(eta<0)
+			result.append("eta: unknown"+eol);
+		else
+			result.append("eta: "+TimeTools.formatDuration(eta)+eol);
+		
+		// throughput
+		result.append("persons/s: "+nf.format(getPersonsPerSecond())+eol);
+		result.append("edges/s: "+nf.format(getEdgesPerSecond())+eol);
+		result.append("requests/s: "+nf.format(getRequestsPerSecond())+eol);
+		result.append("error rate: "+nf.format(getErrorRate()*100)+"%"+eol);
+		result.append("requests in flight: "+getRequestsInFlight()+eol);
+		result.append("pending writes: "+getPendingWrites()+eol);
+		RateController controller = GooglePlusParser.getRateController();
+		result.append("target rate: "+nf.format(controller.getRate())+eol);
+		
+		// workers
+		result.append(eol+"workers:"+eol);
+		for(String str: getWorkerStates())
+			result.append("  "+str+eol);
+		
+		// metrics
+		result.append(eol+"metrics:"+eol);
+		for(Counter counter: MetricsRegistry.getCounters())
+			result.append("  "+counter+eol);
+		for(HistogramSnapshot snapshot: MetricsRegistry.getSnapshots())
+			result.append("  "+snapshot+eol);
+		
+		return result.toString();
+	}
+
+	/////////////////////////////////////////////////////////////////
+	// SERVICE		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Name of the MBean */
+	private static final String MBEAN_NAME = "tr.edu.gsu.googleplus:type=CrawlTelemetry";
+	/** Thread taking the samples */
+	private Thread sampler = null;
+	/** Whether the telemetry should stop */
+	private volatile boolean stopped = false;
+	/** HTTP server ({@code null} if disabled) */
+	private HttpServer server = null;
+	
+	/**
+	 * Starts sampling the counters, and exposes the
+	 * telemetry through JMX and, if a port is specified,
+	 * through HTTP. The report is then available at 
+	 * {@code http://host:port/}.
+	 * 
+	 * @param port
+	 * 		Port of the HTTP endpoint ({@code 0} to disable it).
+	 * 
+	 * @throws IOException
+	 * 		Problem while starting the HTTP server.
+	 */
+	public void start(int port) throws IOException
+	{	// sampling
+		sampler = new Thread(new Runnable()
+		{	@Override
+			public void run()
+			{	int count = 0;
+				while(!stopped)
+				{	try
+					{	Thread.sleep(SAMPLE_PERIOD);
+						takeSample();
+						count++;
+						if(count%LOG_PERIOD==0)
+							logProgress(samplerLogger);
+					}
+					catch(InterruptedException e)
+					{	// stopped
+					}
+				}
+			}
+		},"crawl-telemetry");
+		sampler.setDaemon(true);
+		sampler.start();
+		
+		// jmx
+		try
+		{	MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(MBEAN_NAME);
+			if(mbs.isRegistered(name))
+				mbs.unregisterMBean(name);
+			mbs.registerMBean(this,name);
+		}
+		catch(JMException e)
+		{	logger.log("WARNING: could not register the telemetry MBean ("+e.getMessage()+")");
+		}
+		
+		// http
+		if(port>0)
+		{	server = HttpServer.create(new InetSocketAddress(port),0);
+			server.createContext("/",new HttpHandler()
+			{	@Override
+				public void handle(HttpExchange exchange) throws IOException
+				{	byte[] body = getReport().getBytes("UTF-8");
+					exchange.getResponseHeaders().set("Content-Type","text/plain; charset=UTF-8");
+					exchange.sendResponseHeaders(200,body.length);
+					OutputStream os = exchange.getResponseBody();
+					os.write(body);
+					os.close();
+				}
+			});
+			server.start();
+			logger.log("Telemetry available at http://localhost:"+server.getAddress().getPort()+"/");
+		}
+	}
+	
+	/**
+	 * Stops the sampling and 
+	 * the HTTP endpoint.
+	 */
+	public void stop()
+	{	stopped = true;
+		if(sampler!=null)
+			sampler.interrupt();
+		if(server!=null)
+			server.stop(0);
+		try
+		{	MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(MBEAN_NAME);
+			if(mbs.isRegistered(name))
+				mbs.unregisterMBean(name);
+		}
+		catch(JMException e)
+		{	logger.log("WARNING: could not unregister the telemetry MBean ("+e.getMessage()+")");
+		}
+	}
+	
+	/**
+	 * Logs a short summary of the
+	 * current throughput.
+	 */
+	public void logProgress()
+	{	logProgress(logger);
+	}
+	
+	/**
+	 * Logs a short summary of the current
+	 * throughput, using the specified logger.
+	 * 
+	 * @param logger
+	 * 		Logger of the calling thread.
+	 */
+	private void logProgress(HierarchicalLogger logger)
+	{	NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
+		nf.setMaximumFractionDigits(2);
+		long eta = getEta();
+		String etaStr = "unknown";
+		if(eta>=0)
+			etaStr = TimeTools.formatDuration(eta);
+		logger.log("Throughput: "+nf.format(getPersonsPerSecond())+" persons/s, "+nf.format(getEdgesPerSecond())+" edges/s, error rate "+nf.format(getErrorRate()*100)+"% - estimated remaining time: "+etaStr);
+	}
+}
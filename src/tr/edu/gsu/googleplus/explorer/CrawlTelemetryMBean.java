@@ -0,0 +1,136 @@
+package tr.edu.gsu.googleplus.explorer;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Management interface of the {@link CrawlTelemetry},
+ * allowing to watch a running crawl through JMX 
+ * (e.g. with {@code jconsole}). All the rates are
+ * measured over a moving window.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public interface CrawlTelemetryMBean
+{	
+	/**
+	 * Returns the number of persons processed
+	 * by this process since the crawl started.
+	 * 
+	 * @return
+	 * 		Number of processed persons.
+	 */
+	public long getPersonsProcessed();
+
+	/**
+	 * Returns the estimated number of persons
+	 * still to be processed.
+	 * 
+	 * @return
+	 * 		Number of remaining persons.
+	 */
+	public long getQueueDepth();
+
+	/**
+	 * Returns the number of persons retrieved
+	 * but not written in the DB yet.
+	 * 
+	 * @return
+	 * 		Number of persons waiting to be written.
+	 */
+	public int getPendingWrites();
+
+	/**
+	 * Returns the number of requests
+	 * currently sent and not answered yet.
+	 * 
+	 * @return
+	 * 		Number of requests in flight.
+	 */
+	public int getRequestsInFlight();
+
+	/**
+	 * Returns the number of persons
+	 * processed per second.
+	 * 
+	 * @return
+	 * 		Processing rate.
+	 */
+	public double getPersonsPerSecond();
+
+	/**
+	 * Returns the number of relationships
+	 * retrieved per second.
+	 * 
+	 * @return
+	 * 		Retrieval rate.
+	 */
+	public double getEdgesPerSecond();
+
+	/**
+	 * Returns the number of HTTP requests
+	 * sent per second.
+	 * 
+	 * @return
+	 * 		Request rate.
+	 */
+	public double getRequestsPerSecond();
+
+	/**
+	 * Returns the proportion of HTTP
+	 * requests which failed.
+	 * 
+	 * @return
+	 * 		Error rate (between 0 and 1).
+	 */
+	public double getErrorRate();
+
+	/**
+	 * Returns the estimated remaining time
+	 * (in ms) before all the persons are
+	 * processed, or {@code -1} if it cannot
+	 * be estimated yet.
+	 * 
+	 * @return
+	 * 		Estimated remaining time.
+	 */
+	public long getEta();
+
+	/**
+	 * Returns the state of each worker
+	 * thread, as a readable string.
+	 * 
+	 * @return
+	 * 		States of the worker threads.
+	 */
+	public String[] getWorkerStates();
+
+	/**
+	 * Returns the complete report, as
+	 * displayed by the HTTP endpoint.
+	 * 
+	 * @return
+	 * 		Textual report.
+	 */
+	public String getReport();
+}
@@ -0,0 +1,100 @@
+package tr.edu.gsu.googleplus.explorer;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.sql.SQLException;
+
+import org.codehaus.jettison.json.JSONException;
+
+import com.sun.jersey.api.client.UniformInterfaceException;
+
+import tr.edu.gsu.googleplus.tool.DbTools;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+
+/**
+ * Crawler process meant to run on one of the machines
+ * sharing the retrieval of the relationships. It connects
+ * to the DB made available by the {@link CrawlCoordinator},
+ * and processes the persons it claims until none remains.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class CrawlerNode
+{	
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+
+	/////////////////////////////////////////////////////////////////
+	// MAIN			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Retrieves the relationships of the persons
+	 * stored in the remote DB.
+	 * 
+	 * @param arg
+	 * 		Name of the machine running the coordinator, then 
+	 * 		optional port of the DB server and number of threads.
+	 * 
+	 * @throws ClassNotFoundException
+	 * 		Problem while loading the DB driver.
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 * @throws MalformedURLException
+	 * 		Problem while accessing Google+.
+	 * @throws UniformInterfaceException
+	 * 		Problem while accessing Google+.
+	 * @throws URISyntaxException
+	 * 		Problem while accessing Google+.
+	 * @throws InterruptedException
+	 * 		Problem while accessing Google+.
+	 * @throws JSONException
+	 * 		Problem while accessing Google+.
+	 */
+	public static void main(String arg[]) throws ClassNotFoundException, SQLException, MalformedURLException, UniformInterfaceException, URISyntaxException, InterruptedException, JSONException
+	{	logger.setName("CrawlerNode");
+		String host = arg[0];
+		int port = DbTools.DEFAULT_PORT;
+		int threadNbr = 32;
+		if(arg.length>1)
+			port = Integer.parseInt(arg[1]);
+		if(arg.length>2)
+			threadNbr = Integer.parseInt(arg[2]);
+		
+		// connect to the coordinator
+		DbTools.setDbName("googleplus");
+		DbTools.setServer(host,port);
+		DbTools.openDb();
+		
+		// process the persons
+		RelationshipExtractor.retrieveAllRelationships(threadNbr);
+		
+		DbTools.closeDb();
+	}
+}
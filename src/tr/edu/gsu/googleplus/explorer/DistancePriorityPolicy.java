@@ -0,0 +1,39 @@
+package tr.edu.gsu.googleplus.explorer;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Priority policy favoring the persons closest
+ * to the initial ones, which amounts to a
+ * breadth-first exploration of the network.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class DistancePriorityPolicy implements PriorityPolicy
+{	
+	@Override
+	public String getExpression()
+	{	return "-COALESCE(DISTANCE,0)";
+	}
+}
@@ -0,0 +1,176 @@
+package tr.edu.gsu.googleplus.explorer;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import tr.edu.gsu.googleplus.data.NodeStats;
+import tr.edu.gsu.googleplus.data.Person;
+import tr.edu.gsu.googleplus.tool.DbTools;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+
+/**
+ * Background thread periodically renewing the leases
+ * of the persons claimed by the workers of this process
+ * (cf. {@link WorkQueue}). Only the workers currently 
+ * registered are concerned: a worker must be unregistered
+ * when its thread stops, even because of an error. If a 
+ * worker or the whole process dies, its leases are not renewed 
+ * anymore and expire, so the concerned persons can be put
+ * back in the unprocessed state (cf. 
+ * {@link Person#recoverExpiredLeases(long)}). The heartbeat
+ * also performs this recovery, for the leases of other
+ * processes sharing the same DB. Finally, it records the
+ * progress of this process in the DB (cf. {@link NodeStats}),
+ * which allows monitoring all the crawler nodes from a
+ * single place.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class LeaseHeartbeat implements Runnable
+{	
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Dedicated logger, so that the heartbeat thread does not rename the common one */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger("Heartbeat");
+
+	/////////////////////////////////////////////////////////////////
+	// INIT			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Builds a heartbeat for the process whose
+	 * workers' names start with the specified prefix.
+	 * 
+	 * @param ownerPrefix
+	 * 		Common prefix of the owners of this process (also identifies the process).
+	 * @param leaseDuration
+	 * 		Time (in ms) after which a lease not renewed expires.
+	 */
+	public LeaseHeartbeat(String ownerPrefix, long leaseDuration)
+	{	this.ownerPrefix = ownerPrefix;
+		this.leaseDuration = leaseDuration;
+		initialProcessed = RelationshipExtractor.getPersonsProcessed();
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// PROCESS		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common prefix of the owners of this process */
+	private final String ownerPrefix;
+	/** Lease prefixes of the workers currently running */
+	private final Set<String> leasePrefixes = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+	/** Time after which a lease not renewed expires */
+	private final long leaseDuration;
+	/** Number of persons already processed by this process when the heartbeat was created */
+	private final int initialProcessed;
+	/** Thread running the heartbeat */
+	private Thread thread = null;
+	/** Whether the heartbeat should stop */
+	private volatile boolean stopped = false;
+	
+	/**
+	 * Starts the heartbeat in a
+	 * new daemon thread.
+	 */
+	public void start()
+	{	thread = new Thread(this,"lease-heartbeat");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Records the number of persons processed
+	 * by this process since the heartbeat was
+	 * created, in the NODE_STATS table.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public void reportProgress() throws SQLException
+	{	int processed = RelationshipExtractor.getPersonsProcessed() - initialProcessed;
+		NodeStats.update(ownerPrefix,processed);
+	}
+	
+	/**
+	 * Registers a running worker, whose
+	 * leases must be renewed.
+	 * 
+	 * @param queue
+	 * 		Queue of the worker.
+	 */
+	public void register(WorkQueue queue)
+	{	leasePrefixes.add(queue.getLeasePrefix());
+	}
+	
+	/**
+	 * Unregisters a worker whose thread
+	 * stopped: its leases will not be
+	 * renewed anymore.
+	 * 
+	 * @param queue
+	 * 		Queue of the worker.
+	 */
+	public void unregister(WorkQueue queue)
+	{	leasePrefixes.remove(queue.getLeasePrefix());
+	}
+	
+	/**
+	 * Stops the heartbeat.
+	 */
+	public void stop()
+	{	stopped = true;
+		if(thread!=null)
+			thread.interrupt();
+	}
+	
+	@Override
+	public void run()
+	{	// renewing several times per lease period allows missing a few beats
+		long period = leaseDuration / 4;
+		while(!stopped)
+		{	try
+			{	Thread.sleep(period);
+				int renewed = 0;
+				for(String leasePrefix: leasePrefixes)
+					renewed = renewed + Person.renewLeases(leasePrefix);
+				int recovered = Person.recoverExpiredLeases(System.currentTimeMillis()-leaseDuration);
+				reportProgress();
+				DbTools.releaseConnection();
+				if(recovered>0)
+					logger.log("Leases renewed: "+renewed+" - expired leases recovered: "+recovered);
+			}
+			catch(InterruptedException e)
+			{	// stopped
+			}
+			catch(SQLException e)
+			{	logger.log("WARNING: could not renew the leases ("+e.getMessage()+")");
+			}
+		}
+	}
+}
@@ -27,21 +27,25 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.net.MalformedURLException;
-import java.net.URISyntaxException;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.List;
-
-import org.codehaus.jettison.json.JSONException;
-
-import com.sun.jersey.api.client.UniformInterfaceException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import tr.edu.gsu.googleplus.data.Person;
-import tr.edu.gsu.googleplus.parser.GooglePlusParser;
-import tr.edu.gsu.googleplus.tool.DbTools;
+import tr.edu.gsu.googleplus.parser.FetchEngine;
+import tr.edu.gsu.googleplus.tool.ConcurrentGidSet;
+import tr.edu.gsu.googleplus.tool.FileDownloader;
 import tr.edu.gsu.googleplus.tool.FileTools;
 import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
 import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
@@ -79,8 +83,10 @@ public class PersonExtractor
 	 * 		Problem while accessing some URL or output file. 
 	 * @throws SQLException 
 	 * 		Problem while accessing the DB.
+	 * @throws InterruptedException 
+	 * 		Problem while waiting for the downloading threads.
 	 */
-	public static void retrieveAllPersons(int limit) throws IOException, SQLException
+	public static void retrieveAllPersons(int limit) throws IOException, SQLException, InterruptedException
 	{	// force to re-load cached files, even if they already exist
 		boolean force = false;
 		
@@ -177,13 +183,19 @@ public class PersonExtractor
 		return result;
 	}
 	
+	/** Number of sitemaps downloaded at the same time */
+	private static final int DOWNLOAD_THREAD_NBR = 8;
+	/** Number of attempts for each sitemap before giving up */
+	private static final int DOWNLOAD_ATTEMPTS = 5;
+	
 	/**
 	 * Download all sitemap files.
 	 * Each one contains a list of
 	 * Google+ user URLs.
 	 * If some file already exists locally,
 	 * it is not downloaded unless the {@code force}
-	 * parameter is set to {@code true}.
+	 * parameter is set to {@code true}. The files
+	 * are downloaded in parallel (cf. {@link FileDownloader}).
 	 * 
 	 * @param urlStrs
 	 * 		List of URLs to be processed.
@@ -194,36 +206,47 @@ public class PersonExtractor
 	 * 
 	 * @throws IOException
 	 * 		Problem while accessing the URL or output files.
+	 * @throws InterruptedException 
+	 * 		Problem while waiting for the downloading threads.
 	 */
-	private static List<String> downloadSitemaps(List<String> urlStrs, boolean force) throws IOException
+	private static List<String> downloadSitemaps(List<String> urlStrs, boolean force) throws IOException, InterruptedException
 	{	logger.log("Download sitemaps:");
 		logger.increaseOffset();
 		List<String> result = new ArrayList<String>();
-		int count = 0;
 		
         for(String urlStr: urlStrs)
-        {	logger.log("Download sitemap "+urlStr);
-			int index = urlStr.lastIndexOf('/');
+        {	int index = urlStr.lastIndexOf('/');
         	String fileName = urlStr.substring(index+1);
         	String pathStr = FileTools.IDS_FOLDER + File.separator + fileName;
         	result.add(pathStr);
-        	File file = new File(pathStr);
-        	if(force || !file.exists())
-        		FileTools.downloadFile(urlStr,pathStr);
-        	count++;
         }
+        FileDownloader downloader = new FileDownloader(DOWNLOAD_THREAD_NBR,DOWNLOAD_ATTEMPTS);
+        int count = downloader.download(urlStrs,result,force);
 		logger.decreaseOffset();
         
-        logger.log("Downloaded "+count+"/"+urlStrs.size()+" sitemaps");
+        logger.log("Downloaded "+count+"/"+urlStrs.size()+" sitemaps (the others were already present)");
 		return result;
 	}
 
+	/** Number of sitemaps parsed at the same time */
+	private static final int PARSE_THREAD_NBR = 4;
+	/** Maximal number of ids in a sitemap file */
+	private static final int SITEMAP_SIZE = 50000;
+	/** Number of ids inserted in the DB at once */
+	private static final int INSERT_BATCH_SIZE = 10000;
+	/** Maximal number of batches waiting for insertion */
+	private static final int INSERT_QUEUE_SIZE = 16;
+	
 	/**
 	 * Analyze all the sitemap files
 	 * in order to retrieve
 	 * the Google+ user URLs,
 	 * and then record all these
-	 * ids as new Persons in the DB.
+	 * ids as new Persons in the DB.<br/>
+	 * The files are parsed in parallel, and
+	 * the ids are deduplicated in memory before
+	 * being inserted by batches, while the next
+	 * files are parsed.
 	 * 
 	 * @param pathStrs
 	 * 		Paths of the downloaded sitemap files.
@@ -234,60 +257,161 @@ public class PersonExtractor
 	 * 		Problem while accessing an input file.
 	 * @throws SQLException
 	 * 		Problem while accessing the DB.
+	 * @throws InterruptedException 
+	 * 		Problem while waiting for the parsing threads.
 	 */
-	private static void parseSitemaps(List<String> pathStrs, int from) throws IOException, SQLException
-	{	int count = 0;
-		int idCount = 0;
+	private static void parseSitemaps(List<String> pathStrs, int from) throws IOException, SQLException, InterruptedException
+	{	long before = System.currentTimeMillis();
+		List<String> files = new ArrayList<String>();
 		boolean start = false;
-		
-		logger.increaseOffset();
 		for(String pathStr: pathStrs)
 		{	if(from==0 || pathStr.endsWith("sitemap-"+from+".txt"))
 				start = true;
 			if(start)
-			{	// open the file to be read
-				logger.log("Open file "+pathStr);
-				FileInputStream fin = new FileInputStream(pathStr);
-				DataInputStream in = new DataInputStream(fin);
-				InputStreamReader isr = new InputStreamReader(in);
-				BufferedReader br = new BufferedReader(isr);
-				
-				// read content line by line
-				logger.log("Start parsing:");
-				logger.increaseOffset();
-				String line;
-				while((line=br.readLine()) != null)
-				{	idCount++;
-					logger.log(line);
-					logger.increaseOffset();
-					
-					// NOTE at first, every user with a google profile automatically had a g+ profile too
-					// but this was changed later, which forces us to ignore google profile users here 
-					int index = line.lastIndexOf('/');
-					String id = line.substring(index+1);
-					if(line.contains("plus"))
-					{	logger.log(">>"+id);
-						Person.insertDb(id);
+				files.add(pathStr);
+		}
+		logger.log("Parsing "+files.size()+"/"+pathStrs.size()+" files using "+PARSE_THREAD_NBR+" threads");
+		logger.increaseOffset();
+		
+		// parse the files
+		final ConcurrentGidSet seen = new ConcurrentGidSet((long)files.size()*SITEMAP_SIZE,true);
+		final BlockingQueue<List<String>> queue = new ArrayBlockingQueue<List<String>>(INSERT_QUEUE_SIZE);
+		final AtomicInteger fileCount = new AtomicInteger();
+		final AtomicLong lineCount = new AtomicLong();
+		final AtomicLong ignoredCount = new AtomicLong();
+		ExecutorService executor = Executors.newFixedThreadPool(PARSE_THREAD_NBR);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for(final String pathStr: files)
+		{	Future<Void> future = executor.submit(new Callable<Void>()
+			{	@Override
+				public Void call() throws IOException, InterruptedException
+				{	parseSitemap(pathStr,seen,queue,lineCount,ignoredCount);
+					fileCount.incrementAndGet();
+					return null;
+				}
+			});
+			futures.add(future);
+		}
+		executor.shutdown();
+		
+		// insert the ids while the files are parsed
+		long idCount = 0;
+		long insertedCount = 0;
+		try
+		{	boolean done = false;
+			while(!done)
+			{	boolean finished = executor.isTerminated();
+				List<String> ids = queue.poll(100,TimeUnit.MILLISECONDS);
+				if(ids==null)
+					done = finished;
+				else
+				{	long previous = idCount/(10*INSERT_BATCH_SIZE);
+					idCount = idCount + ids.size();
+					insertedCount = insertedCount + Person.insertDb(ids);
+					if(idCount/(10*INSERT_BATCH_SIZE)>previous)
+						logger.log("Progress: "+fileCount.get()+"/"+files.size()+" files parsed, "+insertedCount+" persons inserted");
+				}
+			}
+			
+			for(Future<Void> future: futures)
+				future.get();
+		}
+		catch(ExecutionException e)
+		{	Throwable cause = e.getCause();
+			if(cause instanceof IOException)
+				throw (IOException)cause;
+			else
+				throw new RuntimeException(cause);
+		}
+		finally
+		{	// the parsing threads must not stay blocked on the queue
+			executor.shutdownNow();
+		}
+		
+		long elapsed = System.currentTimeMillis() - before;
+		NumberFormat nf = NumberFormat.getInstance();
+		nf.setMaximumFractionDigits(2);
+		logger.decreaseOffset();
+		logger.log("Parsed "+fileCount.get()+"/"+pathStrs.size()+" files (total: "+lineCount.get()+" lines, "+ignoredCount.get()+" ignored, "+idCount+" distinct ids, "+insertedCount+" new persons) in "+elapsed+" ms ("+nf.format(lineCount.get()*1000.0/Math.max(1,elapsed))+" lines/s)");
+	}
+	
+	/**
+	 * Parses a single sitemap file, and puts the ids
+	 * it contains in the specified queue, by batches.
+	 * The ids already met in the other files are
+	 * ignored.
+	 * 
+	 * @param pathStr
+	 * 		Path of the sitemap file.
+	 * @param seen
+	 * 		Ids already met.
+	 * @param queue
+	 * 		Queue of the ids to be inserted in the DB.
+	 * @param lineCount
+	 * 		Total number of lines read.
+	 * @param ignoredCount
+	 * 		Total number of lines ignored.
+	 * 
+	 * @throws IOException
+	 * 		Problem while accessing the file.
+	 * @throws InterruptedException
+	 * 		Problem while waiting for the DB.
+	 */
+	private static void parseSitemap(String pathStr, ConcurrentGidSet seen, BlockingQueue<List<String>> queue, AtomicLong lineCount, AtomicLong ignoredCount) throws IOException, InterruptedException
+	{	FileInputStream fin = new FileInputStream(pathStr);
+		InputStreamReader isr = new InputStreamReader(fin,"UTF-8");
+		BufferedReader br = new BufferedReader(isr,1024*1024);
+		try
+		{	List<String> ids = new ArrayList<String>(INSERT_BATCH_SIZE);
+			long lines = 0;
+			long ignored = 0;
+			String line;
+			while((line=br.readLine()) != null)
+			{	lines++;
+				// NOTE at first, every user with a google profile automatically had a g+ profile too
+				// but this was changed later, which forces us to ignore google profile users here 
+				line = line.trim();
+				if(line.endsWith("/"))
+					line = line.substring(0,line.length()-1);
+				int index = line.lastIndexOf('/');
+				String id = line.substring(index+1);
+				if(line.contains("plus"))
+				{	try
+					{	if(seen.add(id))
+						{	ids.add(id);
+							if(ids.size()==INSERT_BATCH_SIZE)
+							{	queue.put(ids);
+								ids = new ArrayList<String>(INSERT_BATCH_SIZE);
+							}
+						}
 					}
-					else
-					{	logger.log(">> "+id+" ignored (not a G+ profile)");
+					// not a numerical id
+					catch(IllegalArgumentException e)
+					{	ignored++;
 					}
-					
-					logger.decreaseOffset();
 				}
-				logger.decreaseOffset();
-			
-				// close the file
-				logger.log("Close file");
-				in.close();
-				count++;
+				// not a G+ profile
+				else
+					ignored++;
 			}
+			if(!ids.isEmpty())
+				queue.put(ids);
+			lineCount.addAndGet(lines);
+			ignoredCount.addAndGet(ignored);
+		}
+		finally
+		{	br.close();
 		}
-    	
-		logger.decreaseOffset();
-		logger.log("Parsed "+count+"/"+pathStrs.size()+" files (total: "+idCount+" ids");
 	}
 	
+	/////////////////////////////////////////////////////////////////
+	// PROFILES		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Default number of threads used to retrieve the profiles */
+	private static final int PROFILE_THREAD_NBR = 8;
+	/** Number of persons read from the DB (and updated) at once */
+	private static final int PROFILE_PAGE_SIZE = 1000;
+	
 	/**
 	 * For each Person in the DB,
 	 * retrieves its personal information
@@ -297,38 +421,115 @@ public class PersonExtractor
 	 * 
 	 * @throws SQLException
 	 * 		Problem while accessing the DB.
-	 * @throws JSONException 
-	 * 		Problem while accessing Google+.
 	 * @throws InterruptedException 
 	 * 		Problem while accessing Google+.
-	 * @throws URISyntaxException 
-	 * 		Problem while accessing Google+.
-	 * @throws MalformedURLException 
-	 * 		Problem while accessing Google+.
-	 * @throws UniformInterfaceException 
+	 */
+	public static void retrievePersonalData() throws SQLException, InterruptedException
+	{	retrievePersonalData(PROFILE_THREAD_NBR);
+	}
+	
+	/**
+	 * For each Person in the DB whose profile was
+	 * not retrieved yet, retrieves its personal 
+	 * information using the Google+ parser, and
+	 * updates the data contained in the DB.<br/>
+	 * The persons are read by pages, using keyset
+	 * pagination. The requests are sent through a
+	 * {@link FetchEngine}, and the profiles of a page
+	 * are written to the DB in a single batch while
+	 * the requests of the next page are in flight.
+	 * The profiled persons are marked in the DB, so 
+	 * the process can be interrupted and resumed.
+	 * A person whose request failed is not marked,
+	 * and will be processed again at the next run.
+	 * 
+	 * @param threadNbr
+	 * 		Number of concurrent requests.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 * @throws InterruptedException 
 	 * 		Problem while accessing Google+.
 	 */
-	public static void retrievePersonalData() throws SQLException, UniformInterfaceException, MalformedURLException, URISyntaxException, InterruptedException, JSONException
-	{	logger.increaseOffset();
+	public static void retrievePersonalData(int threadNbr) throws SQLException, InterruptedException
+	{	long before = System.currentTimeMillis();
+		Person.upgradeTable();
+		logger.log("Retrieving the profiles using "+threadNbr+" threads");
+		logger.increaseOffset();
+		
+		FetchEngine engine = new FetchEngine(threadNbr,threadNbr*2);
 		int count = 0;
-		int total = Person.getTableSize();
+		int failures = 0;
+		String lastId = null;
+		List<String> previousIds = new ArrayList<String>();
+		List<Future<Person>> previousFutures = new ArrayList<Future<Person>>();
+		try
+		{	boolean done = false;
+			while(!done)
+			{	// send the requests of the next page
+				List<String> ids = Person.retrieveUnprofiled(lastId,PROFILE_PAGE_SIZE);
+				List<Future<Person>> futures = new ArrayList<Future<Person>>();
+				for(String id: ids)
+					futures.add(engine.extractPerson(id));
+				if(ids.isEmpty())
+					done = true;
+				else
+					lastId = ids.get(ids.size()-1);
+				
+				// meanwhile, record the previous page
+				failures = failures + recordProfiles(previousIds,previousFutures);
+				count = count + previousIds.size();
+				previousIds = ids;
+				previousFutures = futures;
+				if(count>0 && !ids.isEmpty())
+				{	long elapsed = System.currentTimeMillis() - before;
+					NumberFormat nf = NumberFormat.getInstance();
+					nf.setMaximumFractionDigits(2);
+					logger.log("Progress: "+count+" persons ("+failures+" failures) - "+nf.format(count*1000.0/Math.max(1,elapsed))+" persons/s");
+				}
+			}
+		}
+		finally
+		{	engine.shutdown();
+		}
 		
-		Statement statement = DbTools.connection.createStatement();
-	    ResultSet results = statement.executeQuery("SELECT * FROM PERSON");
-	    while(results.next())
-	    {	count++;
-	    	Person person1 = Person.build(results);
-	    	Person person2 = GooglePlusParser.extractPerson(person1.getId());
-	    	boolean modified = person1.updateFrom(person2);
-	    	if(modified)
-	    		person1.updateDb();
-			logger.log(count+ "/"+total+": "+person1.getId());
-	    }
-	    
-	    results.close();
-	    statement.close();
-	    
 		logger.decreaseOffset();
-		logger.log("Processed: "+count);
+		logger.log("Processed: "+count+" ("+failures+" failures, to be retried at the next run)");
+	}
+	
+	/**
+	 * Waits for the specified profiles, and records
+	 * them in the DB, in a single batch.
+	 * 
+	 * @param ids
+	 * 		Ids of the concerned persons.
+	 * @param futures
+	 * 		Corresponding pending requests.
+	 * @return
+	 * 		Number of failed requests.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 * @throws InterruptedException 
+	 * 		Problem while waiting for the requests.
+	 */
+	private static int recordProfiles(List<String> ids, List<Future<Person>> futures) throws SQLException, InterruptedException
+	{	int result = 0;
+		List<String> retrieved = new ArrayList<String>();
+		List<Person> profiles = new ArrayList<Person>();
+		for(int i=0;i<ids.size();i++)
+		{	try
+			{	Person profile = futures.get(i).get();
+				retrieved.add(ids.get(i));
+				profiles.add(profile);
+			}
+			catch(ExecutionException e)
+			{	result++;
+				logger.log("WARNING: could not retrieve the profile of "+ids.get(i)+" ("+e.getCause()+")");
+			}
+		}
+		if(!retrieved.isEmpty())
+			Person.updateProfiles(retrieved,profiles);
+		return result;
 	}
 }
@@ -0,0 +1,54 @@
+package tr.edu.gsu.googleplus.explorer;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Policy used to decide in which order the persons
+ * of the DB are processed by the {@link RelationshipExtractor}:
+ * the persons with the highest priority are claimed first.<br/>
+ * The priority is expressed as an SQL expression over the
+ * columns of the PERSON table, so that the DB itself can
+ * (re)compute it and keep the unprocessed persons sorted
+ * through an index, whatever their number. The available
+ * statistics are the following:
+ * <ul>
+ * 		<li>{@code SEEN_NBR}: number of processed persons linked to this person (observed degree);</li>
+ * 		<li>{@code DISTANCE}: minimal number of hops from the initial persons ({@code NULL} for these);</li>
+ * 		<li>{@code FOLLOWER_NBR}: number of followers announced by Google+ ({@code NULL} if never processed);</li>
+ * 		<li>{@code CRAWL_TIME}: time of the last processing, in ms ({@code NULL} if never processed).</li>
+ * </ul>
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public interface PriorityPolicy
+{	
+	/**
+	 * Returns the SQL expression used to compute
+	 * the priority of a person.
+	 * 
+	 * @return
+	 * 		An SQL expression returning a number.
+	 */
+	public String getExpression();
+}
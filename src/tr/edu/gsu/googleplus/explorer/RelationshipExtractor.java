@@ -21,30 +21,51 @@ package tr.edu.gsu.googleplus.explorer;
  * 
  */
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
+import java.util.Queue;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.codehaus.jettison.json.JSONException;
 
 import com.sun.jersey.api.client.UniformInterfaceException;
 
+import tr.edu.gsu.googleplus.data.NodeStats;
 import tr.edu.gsu.googleplus.data.Person;
 import tr.edu.gsu.googleplus.data.PersonState;
 import tr.edu.gsu.googleplus.data.Relationship;
+import tr.edu.gsu.googleplus.data.RelationshipWriter;
+import tr.edu.gsu.googleplus.data.Snapshot;
+import tr.edu.gsu.googleplus.parser.FetchEngine;
 import tr.edu.gsu.googleplus.parser.GooglePlusParser;
+import tr.edu.gsu.googleplus.tool.ConcurrentGidSet;
 import tr.edu.gsu.googleplus.tool.DbTools;
 import tr.edu.gsu.googleplus.tool.TimeTools;
 import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
 import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+import tr.edu.gsu.googleplus.tool.metrics.Counter;
+import tr.edu.gsu.googleplus.tool.metrics.MetricsRegistry;
 
 /**
  * Explores the neighborhood of the 
@@ -66,51 +87,44 @@ public class RelationshipExtractor
 	// COUNTER			/////////////////////////////////////////////
 	/////////////////////////////////////////////////////////////////
 	/** Counts the number of users processed so far */
-	private static int personsProcessed = 0;
-	/** Associated lock */
-	private static Lock personsProcessedLock = new ReentrantLock();
+	private static final AtomicInteger personsProcessed = new AtomicInteger();
 	/** Counts the number of users yet to be processed */
-	private static int personsUnprocessed = 0;
-	/** Associated lock */
-	private static Lock personsUnprocessedLock = new ReentrantLock();
+	private static final AtomicInteger personsUnprocessed = new AtomicInteger();
+	/** Counts the number of relationships retrieved so far */
+	private static final Counter edgeCounter = MetricsRegistry.getCounter("crawl.edges");
 	/** Time the processed started */
 	private static long startTime = 0;
 	
 	/**
 	 * Adds 1 to the current count
 	 * of processed users.
-	 * The method is synchronized because
+	 * The counter is atomic because
 	 * several threads might try to access it
 	 * at the same time. 
 	 */
 	private static void incrementPersonsProcessed()
-	{	personsProcessedLock.lock();
-		personsProcessed++;
-		personsProcessedLock.unlock();
+	{	personsProcessed.incrementAndGet();
 	}
 	
 	/**
 	 * Returns the current count
 	 * of processed users.
-	 * The method is synchronized because
+	 * The counter is atomic because
 	 * several threads might try to access it
 	 * at the same time. 
 	 * 
 	 * @returns
 	 * 		Number of processed users.
 	 */
-	private static int getPersonsProcessed()
-	{	int result;
-		personsProcessedLock.lock();
-		result = personsProcessed;
-		personsProcessedLock.unlock();
+	static int getPersonsProcessed()
+	{	int result = personsProcessed.get();
 		return result;
 	}
 	
 	/**
 	 * Initializes the total count
 	 * of users remaining to process.
-	 * The method is synchronized because
+	 * The counter is atomic because
 	 * several threads might try to access it
 	 * at the same time. 
 	 * 
@@ -118,15 +132,13 @@ public class RelationshipExtractor
 	 * 		Number of users remaining to process.
 	 */
 	private static void setPersonsUnprocessed(int value)
-	{	personsUnprocessedLock.lock();
-		personsUnprocessed = value;
-		personsUnprocessedLock.unlock();
+	{	personsUnprocessed.set(value);
 	}
 	
 	/**
 	 * Returns the current count
 	 * of users remaining to process.
-	 * The method is synchronized because
+	 * The counter is atomic because
 	 * several threads might try to access it
 	 * at the same time. 
 	 * 
@@ -134,10 +146,7 @@ public class RelationshipExtractor
 	 * 		Number of users to process.
 	 */
 	private static int getPersonsUnprocessed()
-	{	int result;
-		personsUnprocessedLock.lock();
-		result = personsUnprocessed;
-		personsUnprocessedLock.unlock();
+	{	int result = personsUnprocessed.get();
 		return result;
 	}
 	
@@ -150,85 +159,210 @@ public class RelationshipExtractor
 	}
 
 	/////////////////////////////////////////////////////////////////
-	// PAUSE			/////////////////////////////////////////////
+	// FULL NETWORK		/////////////////////////////////////////////
 	/////////////////////////////////////////////////////////////////
-	/** Pause used to prevent trigerring G+ captcha mechanism */
-	private static long pauseDuration = 125;
+	/** Number of persons claimed at once by each thread */
+	private static int batchSize = 100;
+	/** Time a thread waits before trying again to claim persons, when some are still being processed (in ms) */
+	private static final long CLAIM_RETRY_DELAY = 1000;
 	
 	/**
-	 * Change the current pause duration.
+	 * Changes the number of persons each thread
+	 * claims at once in the DB. Larger batches
+	 * mean less accesses to the DB, but more
+	 * persons to be recovered if a thread fails.
 	 * 
-	 * @param pauseDuration
-	 * 		New value for the pause.
+	 * @param batchSize
+	 * 		The new batch size.
 	 */
-	public static void setPauseDuration(long pauseDuration)
-	{	RelationshipExtractor.pauseDuration = pauseDuration;
+	public static void setBatchSize(int batchSize)
+	{	RelationshipExtractor.batchSize = batchSize;
 	}
-
-	/////////////////////////////////////////////////////////////////
-	// FULL NETWORK		/////////////////////////////////////////////
-	/////////////////////////////////////////////////////////////////
-	/** Used to process the Persons */
-//	private static Scanner remainingPersons = null;
-	private static ResultSet remainingPersons = null;
-	/** Associated lock */
-	private static Lock remainingPersonsLock = new ReentrantLock();
 	
+	/** Time after which the lease of a person not renewed expires (in ms) */
+	private static long leaseDuration = 10*60*1000;
+	
+	/**
+	 * Changes the time after which a person
+	 * claimed by a thread which stopped responding
+	 * is considered as unprocessed again.
+	 * 
+	 * @param leaseDuration
+	 * 		The new lease duration (in ms).
+	 */
+	public static void setLeaseDuration(long leaseDuration)
+	{	RelationshipExtractor.leaseDuration = leaseDuration;
+	}
+	
+	/** Whether the profile of each processed person should also be retrieved */
+	private static boolean fetchProfiles = false;
+	
+	/**
+	 * Indicates whether the personal data of each
+	 * processed person should be retrieved together
+	 * with its relationships.
+	 * 
+	 * @param fetchProfiles
+	 * 		{@code true} to retrieve the profiles.
+	 */
+	public static void setFetchProfiles(boolean fetchProfiles)
+	{	RelationshipExtractor.fetchProfiles = fetchProfiles;
+	}
+	
+	/** Policy used to decide which persons are processed first */
+	private static PriorityPolicy priorityPolicy = new DegreePriorityPolicy();
+	/** Whether the priorities stored in the DB must be recomputed */
+	private static boolean priorityChanged = false;
+	
+	/**
+	 * Changes the policy used to decide in which
+	 * order the persons are processed. The priorities
+	 * already stored in the DB will be recomputed when
+	 * the process starts.
+	 * 
+	 * @param priorityPolicy
+	 * 		The new priority policy.
+	 */
+	public static void setPriorityPolicy(PriorityPolicy priorityPolicy)
+	{	RelationshipExtractor.priorityPolicy = priorityPolicy;
+		priorityChanged = true;
+	}
+	
+	/** Number of threads writing in the DB */
+	private static int writerNbr = 1;
+	/** Maximal number of persons waiting to be written in the DB */
+	private static int writeQueueSize = 200;
+	/** Maximal number of persons written in the DB in a single transaction */
+	private static final int WRITE_BATCH_SIZE = 50;
+	/** Stage writing the retrieved data in the DB ({@code null} when no crawl is running) */
+	private static WriteBehindStage stage = null;
+	
+	/**
+	 * Changes the number of threads writing the
+	 * retrieved data in the DB (cf. {@link WriteBehindStage}).
+	 * H2 handles the transactions one at a time, 
+	 * so more than one writer rarely helps.
+	 * 
+	 * @param writerNbr
+	 * 		The new number of writer threads.
+	 */
+	public static void setWriterNbr(int writerNbr)
+	{	RelationshipExtractor.writerNbr = writerNbr;
+	}
 	
+	/**
+	 * Changes the maximal number of persons retrieved
+	 * but not written in the DB yet. When this number
+	 * is reached, the crawler threads wait for the writers.
+	 * 
+	 * @param writeQueueSize
+	 * 		The new capacity of the write queue.
+	 */
+	public static void setWriteQueueSize(int writeQueueSize)
+	{	RelationshipExtractor.writeQueueSize = writeQueueSize;
+	}
 	
 	/**
-	 * Processes a G+ user in order to retrieve all
-	 * his relationships (both incoming and outgoing).
+	 * Returns the number of persons retrieved
+	 * but not written in the DB yet.
 	 * 
-	 * @param person
-	 * 		The {@code Person} to be processed.
 	 * @return
-	 * 		The set of retrieved {@code Relationship}.
+	 * 		Number of persons waiting to be written.
+	 */
+	static int getPendingWrites()
+	{	int result = 0;
+		WriteBehindStage s = stage;
+		if(s!=null)
+			result = s.getPending();
+		return result;
+	}
+	
+	/** Port of the telemetry HTTP endpoint ({@code 0} if disabled) */
+	private static int telemetryPort = 0;
+	
+	/**
+	 * Changes the port of the HTTP endpoint
+	 * displaying the progress of the crawl
+	 * (cf. {@link CrawlTelemetry}). The telemetry
+	 * is always available through JMX.
+	 * 
+	 * @param telemetryPort
+	 * 		The new port, or {@code 0} to disable the endpoint.
+	 */
+	public static void setTelemetryPort(int telemetryPort)
+	{	RelationshipExtractor.telemetryPort = telemetryPort;
+	}
+	
+	/**
+	 * Stores several G+ users whose data was already 
+	 * retrieved: the relationships (both incoming 
+	 * and outgoing) are inserted in the DB, the
+	 * priorities of their neighbors are updated, and the
+	 * users are marked as processed. During a re-crawl,
+	 * only the changes are applied to the DB, and recorded
+	 * in the current snapshot.<br/>
+	 * The relationships (or their changes) of all the users,
+	 * their state and the statistics of their neighbors are
+	 * committed in a single transaction. If the process stops
+	 * in between, the users are just processed again.
+	 * This method is called by the writer threads of the
+	 * {@link WriteBehindStage}.
+	 * 
+	 * @param entries
+	 * 		The retrieved data of each user.
+	 * @param writer
+	 * 		Object used to write the relationships in the DB.
 	 * 
 	 * @throws SQLException
 	 * 		Problem while accessing the DB.
-	 * @throws MalformedURLException
-	 * 		Problem while accessing Google+.
-	 * @throws UniformInterfaceException
-	 * 		Problem while accessing Google+.
-	 * @throws URISyntaxException
-	 * 		Problem while accessing Google+.
-	 * @throws InterruptedException
-	 * 		Problem while accessing Google+.
-	 * @throws JSONException
-	 * 		Problem while accessing Google+.
 	 */
-	private static Set<Relationship> processUser(Person person) throws SQLException, MalformedURLException, UniformInterfaceException, URISyntaxException, InterruptedException, JSONException
-	{	logger.log("Processing  #"+getPersonsProcessed()+"/"+getPersonsUnprocessed()+": "+person);
-		logger.increaseOffset();
-	
-		// mark as currently processed
-		person.setState(PersonState.PROCESSING);
-		person.updateDb();
-		
-		// retrieve and insert relationships
-		Set<Relationship> relationships = retrieveNeighborhood(person);
-		NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
+	static void storeUsers(List<WriteBehindStage.Entry> entries, RelationshipWriter writer) throws SQLException
+	{	NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
 		nf.setMaximumFractionDigits(2);
 		String avrgFlrsStr = nf.format(GooglePlusParser.getExtractFollowersAverageTime());
 		String avrgFlesStr = nf.format(GooglePlusParser.getExtractFolloweesAverageTime());
-		logger.log("Average time for internet access: flrs="+avrgFlrsStr+"ms fles="+avrgFlesStr+"ms");
-		insertRelationships(relationships);
-		String avrgDbStr = nf.format(Relationship.getInsertDbAverageTime());
+		logger.log("Storing "+entries.size()+" persons - average time for internet access: flrs="+avrgFlrsStr+"ms fles="+avrgFlesStr+"ms");
+		
+		List<Set<Relationship>> added = new ArrayList<Set<Relationship>>(entries.size());
+		try
+		{	// insert the relationships
+			if(snapshot<0)
+			{	for(WriteBehindStage.Entry entry: entries)
+					added.add(entry.relationships);
+				writer.insertAll(added);
+			}
+			else
+			{	for(WriteBehindStage.Entry entry: entries)
+					added.add(updateRelationships(entry.person.getId(),entry.relationships,entry.followerNbr,writer));
+			}
+			
+			// mark the persons as processed and update their neighbors
+			String priority = priorityPolicy.getExpression();
+			for(int i=0;i<entries.size();i++)
+			{	WriteBehindStage.Entry entry = entries.get(i);
+				Person person = entry.person;
+				person.updateFrom(entry.profile);
+				person.setState(PersonState.PROCESSED);
+				Set<String> neighbors = Relationship.getIdsFromRelationships(added.get(i));
+				writer.markProcessed(person,entry.followerNbr,neighbors,priority);
+			}
+			writer.commit();
+		}
+		catch(SQLException e)
+		{	writer.rollback();
+			throw e;
+		}
+		String avrgDbStr = nf.format(RelationshipWriter.getWriteAverageTime());
 		logger.log("Average time for db insertion: "+avrgDbStr+"ms");
 		
-		// mark as processed
-		person.setState(PersonState.PROCESSED);
-		person.updateDb();
+		// everything is committed
+		for(WriteBehindStage.Entry entry: entries)
+		{	logger.log("Processed #"+getPersonsProcessed()+"/"+getPersonsUnprocessed()+": "+entry.person);
+			edgeCounter.add(entry.relationships.size());
+			incrementPersonsProcessed();
+		}
 		
-		long currentTime = System.currentTimeMillis();
-		double elapsedTime = currentTime - startTime;
-		double msAverage = getPersonsProcessed()/elapsedTime;
-		double hAverage = msAverage * 3600000;
-		long remainingTime = Math.round(getPersonsUnprocessed()/msAverage);
-		logger.decreaseOffset();
-		logger.log("Hourly average: "+ nf.format(hAverage) + " estimated remaining time: " + TimeTools.formatDuration(remainingTime));
-		return relationships;
+		// the throughput and remaining time are periodically logged by the telemetry
 	}
 	
 	/**
@@ -255,14 +389,58 @@ public class RelationshipExtractor
 	public static void retrieveAllRelationships(int threadNbr) throws SQLException, MalformedURLException, UniformInterfaceException, URISyntaxException, InterruptedException, JSONException
 	{	initStartTime();
 		logger.log("Starting process at "+TimeTools.getTime(startTime));
+		
+		// prepare the DB
+		Person.upgradeTable();
+		// persons whose processing was interrupted (e.g. by a crash) are processed again
+		{	int recovered = Person.recoverExpiredLeases(System.currentTimeMillis()-leaseDuration);
+			logger.log("Recovered "+recovered+" persons with an expired lease");
+		}
+		if(priorityChanged)
+		{	int updated = Person.updatePriorities(priorityPolicy.getExpression());
+			logger.log("Recomputed the priority of "+updated+" persons");
+			priorityChanged = false;
+		}
+		{	Statement statement = DbTools.getConnection().createStatement();
+			String query = "SELECT COUNT(*) FROM PERSON WHERE PROCESSED="+PersonState.UNPROCESSED.ordinal();
+			ResultSet temp = statement.executeQuery(query);
+			if(temp.next())
+				setPersonsUnprocessed(temp.getInt(1));
+			temp.close();
+			statement.close();
+		}
+		initStartTime();
+		logger.log("Database all set at at "+TimeTools.getTime(startTime));
+		
+		initEngine(threadNbr);
+		
+		// the lease owners must be unique, even across successive runs
+		String prefix = ManagementFactory.getRuntimeMXBean().getName() + "/" + startTime + "/";
+		// the prefix also identifies this process among the crawler nodes sharing the DB
+		NodeStats.createTable();
+		NodeStats.register(prefix,threadNbr);
+		final LeaseHeartbeat heartbeat = new LeaseHeartbeat(prefix,leaseDuration);
+		heartbeat.start();
+		CrawlTelemetry telemetry = new CrawlTelemetry(getPersonsUnprocessed());
+		try
+		{	telemetry.start(telemetryPort);
+		}
+		catch(IOException e)
+		{	logger.log("WARNING: could not start the telemetry endpoint ("+e.getMessage()+")");
+		}
 	
+		stage = new WriteBehindStage(writerNbr,writeQueueSize,WRITE_BATCH_SIZE);
+		
 		// new thread(s)
+		List<Thread> threads = new ArrayList<Thread>();
 		for(int t=0;t<threadNbr-1;t++)
-		{	Runnable runnable = new Runnable()
+		{	final WorkQueue queue = new WorkQueue(prefix+t,batchSize);
+			heartbeat.register(queue);
+			Runnable runnable = new Runnable()
 			{	@Override
 				public void run()
 				{	try
-					{	threadProcess();
+					{	threadProcess(queue);
 					}
 					catch (MalformedURLException e)
 					{	e.printStackTrace();
@@ -282,22 +460,74 @@ public class RelationshipExtractor
 					catch (JSONException e)
 					{	e.printStackTrace();
 					}
+					finally
+					{	// the leases of a dead thread must expire
+						heartbeat.unregister(queue);
+					}
 				}
 			};
 			Thread thread = new Thread(runnable);
 			thread.start();
+			threads.add(thread);
 			Thread.sleep(500);	// to ensure consistent numbering between threads and loggers
 		}
 	
 		// existing thread
-		threadProcess();
+		WorkQueue queue = new WorkQueue(prefix+(threadNbr-1),batchSize);
+		heartbeat.register(queue);
+		boolean completed = false;
+		try
+		{	try
+			{	threadProcess(queue);
+			}
+			finally
+			{	heartbeat.unregister(queue);
+			}
+			completed = true;
+		}
+		finally
+		{	try
+			{	// the other threads must not add persons to a closed stage
+				for(Thread thread: threads)
+				{	if(!completed)
+						thread.interrupt();
+					thread.join();
+				}
+				// the data already retrieved is written even if the crawl failed
+				stage.close();
+			}
+			finally
+			{	stage = null;
+				telemetry.stop();
+			}
+		}
+		
+		// stop renewing the leases
+		telemetry.logProgress();
+		heartbeat.stop();
+		heartbeat.reportProgress();
+		GooglePlusParser.getTransport().logStatistics();
+		MetricsRegistry.logStatistics();
 	}
 	
 	/**
 	 * Implements the processing
 	 * of a single thread retrieving
-	 * relationship data.
+	 * relationship data. The requests
+	 * concerning the next person are sent
+	 * while the current person is handed
+	 * to the writer threads, which store it
+	 * in the DB (cf. {@link WriteBehindStage}).
+	 * <br/>
+	 * The thread stops only when all the persons
+	 * of the DB are processed: if nothing can be
+	 * claimed but some persons are still being
+	 * processed, it waits in case their lease 
+	 * expires and they are put back in the DB.
 	 *  
+	 * @param queue
+	 * 		Local queue of the thread.
+	 * 
 	 * @throws SQLException
 	 * 		Problem while accessing the DB.
 	 * @throws MalformedURLException
@@ -311,95 +541,264 @@ public class RelationshipExtractor
 	 * @throws JSONException
 	 * 		Problem while accessing Google+.
 	 */
-	private static void threadProcess() throws SQLException, MalformedURLException, UniformInterfaceException, URISyntaxException, InterruptedException, JSONException
+	private static void threadProcess(WorkQueue queue) throws SQLException, MalformedURLException, UniformInterfaceException, URISyntaxException, InterruptedException, JSONException
 	{	//personsProcessed = 0;
-		Person person = getNextPerson();
+		Person person = waitForPerson(queue);
+		Neighborhood current = null;
+		if(person!=null)
+			current = new Neighborhood(person.getId(),fetchProfiles);
 		while(person!=null)
-		{	processUser(person);
-			person = getNextPerson();
-			incrementPersonsProcessed();
+		{	CrawlTelemetry.setState(WorkerState.FETCHING,person.getId());
+			Set<Relationship> relationships = current.getRelationships();
+			int followerNbr = current.getFollowerNbr();
+			Person profile = current.getProfile();
+			
+			// prefetch the next person (without waiting, since the current one is not handed yet)
+			CrawlTelemetry.setState(WorkerState.CLAIMING,null);
+			Person next = queue.next();
+			DbTools.releaseConnection();
+			Neighborhood following = null;
+			if(next!=null)
+				following = new Neighborhood(next.getId(),fetchProfiles);
+			
+			// waits only if the writer threads are late
+			CrawlTelemetry.setState(WorkerState.STORING,person.getId());
+			logger.log("Retrieved "+person.getId()+": "+relationships.size()+" relationships");
+			stage.put(person,profile,relationships,followerNbr);
+			
+			// nothing could be prefetched: wait for the persons still being processed
+			if(next==null)
+			{	next = waitForPerson(queue);
+				if(next!=null)
+					following = new Neighborhood(next.getId(),fetchProfiles);
+			}
+			person = next;
+			current = following;
 		}
+		CrawlTelemetry.setState(WorkerState.FINISHED,null);
 	}
 	
 	/**
-	 * Fetches the next non-processed Person
-	 * of the DB.
+	 * Returns the next person to be processed by the
+	 * thread using the specified queue. If none can be
+	 * claimed but some are still being processed (by this
+	 * process or by another one), the method periodically
+	 * tries again, until a person can be claimed or all
+	 * the persons are processed. The calling thread must
+	 * not hold any person not handed to the writer threads,
+	 * otherwise the threads might wait for each other.
 	 * 
+	 * @param queue
+	 * 		Local queue of the thread.
 	 * @return
-	 * 		The next Person to be processed.
+	 * 		The next person, or {@code null} if all the persons are processed.
 	 * 
 	 * @throws SQLException
 	 * 		Problem while accessing the DB.
+	 * @throws InterruptedException
+	 * 		The thread was interrupted while waiting.
 	 */
-	private static synchronized Person getNextPerson() throws SQLException
-	{	Person result = null;
-		PersonState state = PersonState.UNPROCESSED;
-		remainingPersonsLock.lock();
-		try
-		{	if(remainingPersons==null)
-			{	setPersonsUnprocessed(0);
-				
-				// retrieve the total number of persons yet to be processed
-				{	Statement statement = DbTools.connection.createStatement();
-					String query = "SELECT COUNT(*) FROM PERSON WHERE PROCESSED='"+state.ordinal()+"'";
-					ResultSet temp = statement.executeQuery(query);
-					if(temp.next())
-						setPersonsUnprocessed(temp.getInt(1));
-				}		
-				// retrieving these persons
-				{	//File file = new File("/home/vlabatut/eclipse/workspaces/Extraction/GooglePlusBis/res/list.txt");
-					//FileInputStream fis = new FileInputStream(file);
-					//InputStreamReader isr = new InputStreamReader(fis);
-					//remainingPersons = new Scanner(isr);
-					
-					Statement statement = DbTools.connection.createStatement();
-					String query = "SELECT * FROM PERSON WHERE PROCESSED='"+state.ordinal()+"'";
-					remainingPersons = statement.executeQuery(query);
-				}
-				
-				initStartTime();
-				logger.log("Database all set at at "+TimeTools.getTime(startTime));
-			}
+	private static Person waitForPerson(WorkQueue queue) throws SQLException, InterruptedException
+	{	CrawlTelemetry.setState(WorkerState.CLAIMING,null);
+		Person result = queue.next();
+		while(result==null && !queue.isExhausted())
+		{	// the persons discarded by a failed writer thread would never be processed
+			stage.checkFailure();
+			DbTools.releaseConnection();
+			Thread.sleep(CLAIM_RETRY_DELAY);
+			result = queue.next();
+		}
+		// the connection is needed only to claim the persons
+		DbTools.releaseConnection();
+		return result;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// RE-CRAWL			/////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Snapshot currently built by a re-crawl ({@code -1} for a regular crawl) */
+	private static int snapshot = -1;
+	
+	/**
+	 * Processes again all the users already present in
+	 * the DB, in order to build a new snapshot of the network.
+	 * Only the relationships added or removed since the previous
+	 * crawl are written to the DB (cf. {@link Snapshot}). If the
+	 * last snapshot was not completed, it is resumed instead of
+	 * starting a new one.
+	 * 
+	 * @param threadNbr 
+	 * 		Number of threads to be used to perform the task.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 * @throws MalformedURLException
+	 * 		Problem while accessing Google+.
+	 * @throws UniformInterfaceException
+	 * 		Problem while accessing Google+.
+	 * @throws URISyntaxException
+	 * 		Problem while accessing Google+.
+	 * @throws InterruptedException
+	 * 		Problem while accessing Google+.
+	 * @throws JSONException
+	 * 		Problem while accessing Google+.
+	 */
+	public static void recrawlAllRelationships(int threadNbr) throws SQLException, MalformedURLException, UniformInterfaceException, URISyntaxException, InterruptedException, JSONException
+	{	// prepare the DB
+		Person.upgradeTable();
+		Snapshot.createTable();
+		int id = Snapshot.getLastId();
+		if(id>0 && !Snapshot.isFinished(id))
+			logger.log("Resuming snapshot "+id);
+		else
+		{	if(!Snapshot.isFinished(id))
+				Snapshot.finish(id);
+			id = Snapshot.start();
+			int reset = Person.resetProcessed();
+			logger.log("Starting snapshot "+id+": "+reset+" persons to process again");
+			// the statistics used by the priority policy changed since the last crawl
+			priorityChanged = true;
+		}
 		
-			if(!remainingPersons.isClosed() && remainingPersons.next())
-			{	//result = new Person();
-				//String id = remainingPersons.next();
-				//result.setId(id);
-				result = Person.build(remainingPersons);
-			}
-			else
-			{	remainingPersons.close();
-			}
+		// process all the persons again
+		snapshot = id;
+		try
+		{	retrieveAllRelationships(threadNbr);
 		}
 		finally
-		{	remainingPersonsLock.unlock();
+		{	snapshot = -1;
 		}
 		
-		// force the thread to sleep a bit, in order not
-		// to trigger G+ new captcha security mechanism
-		try
-		{	Thread.sleep(pauseDuration);
+		// the snapshot is complete only if no person remains (a thread might have failed)
+		Statement statement = DbTools.getConnection().createStatement();
+		String query = "SELECT COUNT(*) FROM PERSON WHERE PROCESSED<>"+PersonState.PROCESSED.ordinal();
+		ResultSet results = statement.executeQuery(query);
+		results.next();
+		int remaining = results.getInt(1);
+		results.close();
+		statement.close();
+		if(remaining==0)
+		{	Snapshot.finish(id);
+			logger.log("Snapshot "+id+" complete: "+Snapshot.getChangeCount(id)+" changed relationships");
+		}
+		else
+			logger.log("WARNING: snapshot "+id+" not complete ("+remaining+" persons remaining), it will be resumed next time");
+	}
+	
+	/**
+	 * Compares the relationships just retrieved for
+	 * the specified user with those stored in the DB,
+	 * and applies the differences to the DB, recording
+	 * them in the current snapshot. Nothing is committed:
+	 * the changes are part of the writer's transaction.<br/>
+	 * A relationship missing from the retrieved ones is
+	 * removed only if the concerned list (followers or 
+	 * followees) seems complete: users can hide their
+	 * lists, and Google+ does not always return all the
+	 * followers it announces.
+	 * 
+	 * @param id
+	 * 		Id of the concerned user.
+	 * @param relationships
+	 * 		Relationships just retrieved.
+	 * @param followerNbr
+	 * 		Number of followers announced by Google+.
+	 * @param writer
+	 * 		Object used to write the relationships in the DB.
+	 * @return
+	 * 		The added relationships.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	private static Set<Relationship> updateRelationships(String id, Set<Relationship> relationships, int followerNbr, RelationshipWriter writer) throws SQLException
+	{	Set<Relationship> result = new TreeSet<Relationship>();
+		// the changes of the persons of the same transaction must be taken into account
+		Set<Relationship> stored = writer.retrieve(id);
+		
+		// new relationships
+		int followers = 0;
+		int followees = 0;
+		for(Relationship relationship: relationships)
+		{	if(relationship.getTargetId().equals(id))
+				followers++;
+			else
+				followees++;
+			if(!stored.contains(relationship))
+				result.add(relationship);
 		}
-		catch (InterruptedException e)
-		{	e.printStackTrace();
-		}		
 		
+		// removed relationships
+		boolean followersComplete = followers>0 && followers>=followerNbr;
+		boolean followeesComplete = followees>0;
+		Set<Relationship> removed = new TreeSet<Relationship>();
+		for(Relationship relationship: stored)
+		{	if(!relationships.contains(relationship))
+			{	boolean incoming = relationship.getTargetId().equals(id);
+				if(incoming && followersComplete || !incoming && followeesComplete)
+					removed.add(relationship);
+			}
+		}
+		
+		writer.writeChanges(snapshot,result,removed);
+		logger.log("Changes in snapshot "+snapshot+": "+result.size()+" added, "+removed.size()+" removed");
 		return result;
 	}
 	
 	/////////////////////////////////////////////////////////////////
 	// EGO-CENTRED		/////////////////////////////////////////////
 	/////////////////////////////////////////////////////////////////
+	/** Default number of threads used to process an ego network */
+	private static final int EGO_THREAD_NBR = 16;
+	/** Initial size of the set of visited persons (it grows if needed) */
+	private static final int EGO_EXPECTED_SIZE = 100000;
+	
+	/**
+	 * Gets the ego network centered on the specified
+	 * user with specified maximal radius, using the
+	 * default number of threads. 
+	 * 
+	 * @param id
+	 * 		Id of the central user.
+	 * @param radius
+	 * 		Radius of the network.
+	 * 
+	 * @throws UniformInterfaceException
+	 * 		Problem while accessing Google+.
+	 * @throws MalformedURLException
+	 * 		Problem while accessing Google+.
+	 * @throws URISyntaxException
+	 * 		Problem while accessing Google+.
+	 * @throws InterruptedException
+	 * 		Problem while accessing Google+.
+	 * @throws JSONException
+	 * 		Problem while accessing Google+.
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static void retrieveEgoNetwork(String id, int radius) throws UniformInterfaceException, MalformedURLException, URISyntaxException, InterruptedException, JSONException, SQLException
+	{	retrieveEgoNetwork(id,radius,EGO_THREAD_NBR);
+	}
+	
 	/**
 	 * Gets the ego network centered on the specified
 	 * user with specified maximal radius. The processing
 	 * is supposed to start from an empty DB, and
-	 * was implemented just for testing purposes.
+	 * was implemented just for testing purposes.<br/>
+	 * The network is explored level by level (breadth-first).
+	 * The persons of a level are processed in parallel,
+	 * the ids already encountered are stored in memory, 
+	 * and the ids discovered by all threads are merged
+	 * in a lock-free queue to form the next level. Each 
+	 * thread writes the relationships through its own
+	 * {@link RelationshipWriter}, taken from a shared pool.
 	 * 
 	 * @param id
 	 * 		Id of the central user.
 	 * @param radius
 	 * 		Radius of the network.
+	 * @param threadNbr
+	 * 		Number of threads used to process each level.
 	 * 
 	 * @throws UniformInterfaceException
 	 * 		Problem while accessing Google+.
@@ -414,23 +813,56 @@ public class RelationshipExtractor
 	 * @throws SQLException
 	 * 		Problem while accessing the DB.
 	 */
-	public static void retrieveEgoNetwork(String id, int radius) throws UniformInterfaceException, MalformedURLException, URISyntaxException, InterruptedException, JSONException, SQLException
-	{	logger.log("Retrieving ego network for user "+id+" and radius "+radius);
-		Set<String> personsLeft = new TreeSet<String>();
-		personsLeft.add(id);
-		processUsers(radius,personsLeft);
+	public static void retrieveEgoNetwork(String id, int radius, int threadNbr) throws UniformInterfaceException, MalformedURLException, URISyntaxException, InterruptedException, JSONException, SQLException
+	{	logger.log("Retrieving ego network for user "+id+" and radius "+radius+" ("+threadNbr+" threads)");
+		logger.increaseOffset();
+		initEngine(threadNbr);
+		ConcurrentGidSet visited = new ConcurrentGidSet(EGO_EXPECTED_SIZE);
+		visited.add(id);
+		List<String> frontier = new ArrayList<String>();
+		frontier.add(id);
+		
+		ExecutorService executor = Executors.newFixedThreadPool(threadNbr);
+		BlockingQueue<RelationshipWriter> writers = new ArrayBlockingQueue<RelationshipWriter>(threadNbr);
+		try
+		{	for(int t=0;t<threadNbr;t++)
+				writers.add(new RelationshipWriter());
+			int r = radius;
+			while(!frontier.isEmpty())
+			{	logger.log("Processing radius "+r+": "+frontier.size()+" persons");
+				Queue<String> next = processLevel(executor,r,frontier,visited,writers);
+				frontier = new ArrayList<String>(next);
+				r--;
+			}
+		}
+		finally
+		{	executor.shutdown();
+			// the tasks of a failed level may still be running
+			executor.awaitTermination(Long.MAX_VALUE,TimeUnit.MILLISECONDS);
+			for(RelationshipWriter writer: writers)
+				writer.close();
+		}
+		logger.decreaseOffset();
+		logger.log("Ego network complete: "+visited.size()+" persons");
 	}
 	
 	/**
-	 * Explore the listed ids in order to
-	 * complete an ego network. The {@code radius}
-	 * parameter is used as a limite for
-	 * the exploration of the network.
+	 * Processes in parallel all the persons
+	 * of the current level of the exploration, and
+	 * returns the persons of the next level.
 	 * 
+	 * @param executor
+	 * 		Threads used to process the persons.
 	 * @param radius
 	 * 		Current radius limit.
-	 * @param personsLeft
-	 * 		List of ids remaining to be processed.
+	 * @param frontier
+	 * 		Ids of the persons of the current level.
+	 * @param visited
+	 * 		Ids encountered so far (shared by all threads).
+	 * @param writers
+	 * 		Writers available to the threads.
+	 * @return
+	 * 		Ids of the persons of the next level.
 	 * 
 	 * @throws UniformInterfaceException
 	 * 		Problem while accessing Google+.
@@ -445,79 +877,199 @@ public class RelationshipExtractor
 	 * @throws SQLException
 	 * 		Problem while accessing the DB.
 	 */
-	private static void processUsers(int radius, Set<String> personsLeft) throws UniformInterfaceException, MalformedURLException, URISyntaxException, InterruptedException, JSONException, SQLException
-	{	logger.log("Processing radius "+radius);
-		logger.increaseOffset();
-		Set<String> neighbors = new TreeSet<String>();
+	private static Queue<String> processLevel(ExecutorService executor, final int radius, List<String> frontier, final ConcurrentGidSet visited, final BlockingQueue<RelationshipWriter> writers) throws UniformInterfaceException, MalformedURLException, URISyntaxException, InterruptedException, JSONException, SQLException
+	{	final Queue<String> result = new ConcurrentLinkedQueue<String>();
 		
-		for(String id: personsLeft)
-		{	Person person1 = Person.retrieveFromId(id);
-			if(person1==null)
-			{	person1 = new Person();
-				person1.setId(id);
-				Person.insertDb(id);
+		// the states of the whole level are loaded at once (the missing persons, e.g. the central one, are inserted)
+		Set<String> unprocessed;
+		{	RelationshipWriter writer = writers.take();
+			try
+			{	unprocessed = writer.retrieveUnprocessed(frontier);
+			}
+			finally
+			{	writers.put(writer);
 			}
-			if(person1.getState()==PersonState.UNPROCESSED)
-			{	logger.log("Processing person "+person1.getId());
-				logger.increaseOffset();
-				
-				// personal info
-				Person person2 = GooglePlusParser.extractPerson(person1.getId());
-		    	person1.updateFrom(person2);
-				logger.log("Processing personal info: "+person1);
-				
-			    // relationship info
-				String msg = "Processing relational info: ";
-				if(radius>0)
-				{	Set<Relationship> relationships = retrieveNeighborhood(person1);
-					insertRelationships(relationships);
-					Set<String> temp = Relationship.getIdsFromRelationships(relationships);
-					temp.remove(id);
-					neighbors.addAll(temp);
-					msg = msg + temp.size()+" neighbors";
+		}
+		
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(unprocessed.size());
+		for(final String id: frontier)
+		{	if(!unprocessed.contains(id))
+				continue;
+			Future<Void> future = executor.submit(new Callable<Void>()
+			{	@Override
+				public Void call() throws Exception
+				{	// a writer is used by a single thread at once
+					RelationshipWriter writer = writers.take();
+					try
+					{	processEgoUser(id,radius,visited,result,writer);
+					}
+					finally
+					{	writers.put(writer);
+					}
+					return null;
 				}
-				else
-					msg = msg + "radius reached";
-				logger.log(msg);
-				
-			
-				// update DB
-				logger.log("Update DB");
-				logger.decreaseOffset();
-				person1.setState(PersonState.PROCESSED);
-				person1.updateDb();
+			});
+			futures.add(future);
+		}
+		
+		// wait for the whole level to be processed
+		for(Future<Void> future: futures)
+		{	try
+			{	future.get();
+			}
+			catch(ExecutionException e)
+			{	for(Future<Void> f: futures)
+					f.cancel(true);
+				if(e.getCause() instanceof SQLException)
+					throw (SQLException)e.getCause();
+				getResult(future);
 			}
 		}
+		return result;
+	}
+	
+	/**
+	 * Processes a single unprocessed person of an
+	 * ego network. Its relationships and its state are
+	 * committed in a single transaction. Its neighbors
+	 * which were not encountered before are added to 
+	 * the next level.
+	 * 
+	 * @param id
+	 * 		Id of the person.
+	 * @param radius
+	 * 		Current radius limit.
+	 * @param visited
+	 * 		Ids encountered so far (shared by all threads).
+	 * @param next
+	 * 		Ids of the next level (shared by all threads).
+	 * @param writer
+	 * 		Writer used to store the relationships.
+	 * 
+	 * @throws UniformInterfaceException
+	 * 		Problem while accessing Google+.
+	 * @throws MalformedURLException
+	 * 		Problem while accessing Google+.
+	 * @throws URISyntaxException
+	 * 		Problem while accessing Google+.
+	 * @throws InterruptedException
+	 * 		Problem while accessing Google+.
+	 * @throws JSONException
+	 * 		Problem while accessing Google+.
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	private static void processEgoUser(String id, int radius, ConcurrentGidSet visited, Queue<String> next, RelationshipWriter writer) throws UniformInterfaceException, MalformedURLException, URISyntaxException, InterruptedException, JSONException, SQLException
+	{	Person person1 = new Person();
+		person1.setId(id);
+		logger.log("Processing person "+person1.getId());
+		logger.increaseOffset();
+		
+		// send all the requests at once
+		Neighborhood neighborhood = null;
+		Future<Person> profile = null;
+		if(radius>0)
+			neighborhood = new Neighborhood(person1.getId(),true);
+		else
+			profile = getEngine().extractPerson(person1.getId());
+		
+		// personal info
+		Person person2;
+		if(neighborhood!=null)
+			person2 = neighborhood.getProfile();
+		else
+			person2 = getResult(profile);
+    	person1.updateFrom(person2);
+		logger.log("Processing personal info: "+person1);
+		
+	    // relationship info
+		String msg = "Processing relational info: ";
+		Set<Relationship> relationships = new TreeSet<Relationship>();
+		Set<String> neighbors = new TreeSet<String>();
+		Integer followerNbr = null;
+		if(radius>0)
+		{	relationships = neighborhood.getRelationships();
+			neighbors = Relationship.getIdsFromRelationships(relationships);
+			followerNbr = neighborhood.getFollowerNbr();
+			msg = msg + neighbors.size()+" neighbors";
+		}
+		else
+			msg = msg + "radius reached";
+		logger.log(msg);
 		
+		// update DB (in the same transaction as the relationships)
+		logger.log("Update DB");
+		try
+		{	writer.insertAll(Collections.singletonList(relationships));
+			person1.setState(PersonState.PROCESSED);
+			writer.markProcessed(person1,followerNbr,neighbors,priorityPolicy.getExpression());
+			writer.commit();
+		}
+		catch(SQLException e)
+		{	writer.rollback();
+			throw e;
+		}
+		
+		// next level
+		int count = 0;
+		for(String neighbor: neighbors)
+		{	// the set is thread-safe, so only one thread can add a given neighbor
+			if(visited.add(neighbor))
+			{	next.add(neighbor);
+				count++;
+			}
+		}
+		logger.log(count+" new neighbors");
 		logger.decreaseOffset();
-		if(!neighbors.isEmpty())
-			processUsers(radius-1,neighbors);
 	}
 
 	/////////////////////////////////////////////////////////////////
 	// COMMON			/////////////////////////////////////////////
 	/////////////////////////////////////////////////////////////////
+	/** Engine used to send the requests to Google+ */
+	private static FetchEngine engine = null;
+	
 	/**
-	 * Get the users connected to the specified user.
-	 * The method returns them under the form of
-	 * a set of {@link Relationship} objects.</br>
-	 * Normally, retrieving only the incoming xor outgoing
-	 * links for all users should be enough to get a 
-	 * complete representation of the graph. However,
-	 * now users can hide some of their followees and/or
-	 * all their followers. Using both followers and followees
-	 * allow cross-checking relationships and minimizing the
-	 * number of links not retrieved.
-	 *  
-	 * @param person
-	 * 		The user's whose connections are required.
-	 * @return 
-	 * 		The corresponding set of {@code Relationship} objects.
+	 * Returns the engine used to send the requests
+	 * to Google+, creating a default one if needed.
+	 * 
+	 * @return
+	 * 		The current fetch engine.
+	 */
+	static synchronized FetchEngine getEngine()
+	{	if(engine==null)
+			engine = new FetchEngine(3,6);
+		return engine;
+	}
+	
+	/**
+	 * Replaces the engine used to send the requests 
+	 * to Google+ by a new one, adapted to the specified
+	 * number of processing threads: each thread can have
+	 * its followers, followees and profile requests in flight, 
+	 * plus those of the next person.
+	 * 
+	 * @param threadNbr
+	 * 		Number of threads processing the persons.
+	 */
+	private static synchronized void initEngine(int threadNbr)
+	{	if(engine!=null)
+			engine.shutdown();
+		engine = new FetchEngine(threadNbr*3,threadNbr*6);
+	}
+	
+	/**
+	 * Waits for the specified request and returns its
+	 * result. If the request failed, the original exception
+	 * is thrown again.
+	 * 
+	 * @param future
+	 * 		The pending request.
+	 * @return
+	 * 		Its result.
 	 * 
 	 * @throws MalformedURLException
 	 * 		Problem while using the Google+ parser.
-	 * @throws UniformInterfaceException
-	 * 		Problem while using the Google+ parser.
 	 * @throws URISyntaxException
 	 * 		Problem while using the Google+ parser.
 	 * @throws InterruptedException
@@ -525,25 +1077,157 @@ public class RelationshipExtractor
 	 * @throws JSONException
 	 * 		Problem while using the Google+ parser.
 	 */
-	private static Set<Relationship> retrieveNeighborhood(Person person) throws MalformedURLException, UniformInterfaceException, URISyntaxException, InterruptedException, JSONException
-	{	String id = person.getId();
-		Set<Relationship> result = GooglePlusParser.extractFollowers(id);
-		result.addAll(GooglePlusParser.extractFollowees(id));
+	private static <T> T getResult(Future<T> future) throws MalformedURLException, URISyntaxException, InterruptedException, JSONException
+	{	T result;
+		try
+		{	result = future.get();
+		}
+		catch(ExecutionException e)
+		{	Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			else if(cause instanceof Error)
+				throw (Error)cause;
+			else if(cause instanceof MalformedURLException)
+				throw (MalformedURLException)cause;
+			else if(cause instanceof URISyntaxException)
+				throw (URISyntaxException)cause;
+			else if(cause instanceof InterruptedException)
+				throw (InterruptedException)cause;
+			else if(cause instanceof JSONException)
+				throw (JSONException)cause;
+			else
+				throw new RuntimeException(cause);
+		}
 		return result;
 	}
-
+	
 	/**
-	 * Inserts all the specified relationships
-	 * in the DB.
-	 * 
-	 * @param relationships
-	 * 		Relationships to be inserted.
+	 * Requests concerning the neighborhood of a user,
+	 * sent concurrently to Google+ as soon as this 
+	 * object is created.<br/>
+	 * Normally, retrieving only the incoming xor outgoing
+	 * links for all users should be enough to get a 
+	 * complete representation of the graph. However,
+	 * now users can hide some of their followees and/or
+	 * all their followers. Using both followers and followees
+	 * allow cross-checking relationships and minimizing the
+	 * number of links not retrieved.
 	 * 
-	 * @throws SQLException
-	 * 		Problem while accessing the DB.
+	 * @since 1
+	 * @version 1
+	 * @author Vincent Labatut
 	 */
-	private static void insertRelationships(Set<Relationship> relationships) throws SQLException
-	{	for(Relationship relationship: relationships)
-			relationship.insertDb();
+	private static class Neighborhood
+	{	
+		/**
+		 * Sends the requests concerning the
+		 * specified user.
+		 * 
+		 * @param id
+		 * 		Id of the concerned user.
+		 * @param profile
+		 * 		Whether the personal data should be retrieved too.
+		 * 
+		 * @throws InterruptedException
+		 * 		Problem while submitting the requests.
+		 */
+		public Neighborhood(final String id, boolean profile) throws InterruptedException
+		{	FetchEngine engine = getEngine();
+			followers = engine.submit(new Callable<Integer>()
+			{	@Override
+				public Integer call() throws Exception
+				{	int result = GooglePlusParser.extractFollowers(id,followerSet);
+					return result;
+				}
+			});
+			followees = engine.extractFollowees(id);
+			if(profile)
+				this.profile = engine.extractPerson(id);
+			else
+				this.profile = null;
+		}
+		
+		/** Pending request for the followers (gives their total number) */
+		private final Future<Integer> followers;
+		/** Followers retrieved by the above request */
+		private final Set<Relationship> followerSet = new TreeSet<Relationship>();
+		/** Pending request for the followees */
+		private final Future<Set<Relationship>> followees;
+		/** Pending request for the profile ({@code null} if not requested) */
+		private final Future<Person> profile;
+		
+		/**
+		 * Waits for both relationship requests
+		 * and returns their merged results. The
+		 * followees are added to the set of followers,
+		 * in order not to hold two copies of the 
+		 * relationships in memory.
+		 * 
+		 * @return
+		 * 		Followers and followees of the user.
+		 * 
+		 * @throws MalformedURLException
+		 * 		Problem while using the Google+ parser.
+		 * @throws URISyntaxException
+		 * 		Problem while using the Google+ parser.
+		 * @throws InterruptedException
+		 * 		Problem while using the Google+ parser.
+		 * @throws JSONException
+		 * 		Problem while using the Google+ parser.
+		 */
+		public Set<Relationship> getRelationships() throws MalformedURLException, URISyntaxException, InterruptedException, JSONException
+		{	getResult(followers);
+			Set<Relationship> result = followerSet;
+			result.addAll(getResult(followees));
+			return result;
+		}
+		
+		/**
+		 * Waits for the follower request and returns
+		 * the number of followers announced by Google+
+		 * (which can be larger than the number of 
+		 * followers actually retrieved).
+		 * 
+		 * @return
+		 * 		Total number of followers.
+		 * 
+		 * @throws MalformedURLException
+		 * 		Problem while using the Google+ parser.
+		 * @throws URISyntaxException
+		 * 		Problem while using the Google+ parser.
+		 * @throws InterruptedException
+		 * 		Problem while using the Google+ parser.
+		 * @throws JSONException
+		 * 		Problem while using the Google+ parser.
+		 */
+		public int getFollowerNbr() throws MalformedURLException, URISyntaxException, InterruptedException, JSONException
+		{	int result = getResult(followers);
+			return result;
+		}
+		
+		/**
+		 * Waits for the profile request
+		 * and returns its result.
+		 * 
+		 * @return
+		 * 		The retrieved personal data, or {@code null}
+		 * 		if it was not requested or not available.
+		 * 
+		 * @throws MalformedURLException
+		 * 		Problem while using the Google+ parser.
+		 * @throws URISyntaxException
+		 * 		Problem while using the Google+ parser.
+		 * @throws InterruptedException
+		 * 		Problem while using the Google+ parser.
+		 * @throws JSONException
+		 * 		Problem while using the Google+ parser.
+		 */
+		public Person getProfile() throws MalformedURLException, URISyntaxException, InterruptedException, JSONException
+		{	Person result = null;
+			if(profile!=null)
+				result = getResult(profile);
+			return result;
+		}
 	}
 }
@@ -0,0 +1,180 @@
+package tr.edu.gsu.googleplus.explorer;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.sql.SQLException;
+import java.util.LinkedList;
+import java.util.List;
+
+import tr.edu.gsu.googleplus.data.Person;
+import tr.edu.gsu.googleplus.data.PersonState;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+
+/**
+ * Local queue of persons to be processed by
+ * a single worker thread. When the queue is empty,
+ * it claims a new batch of unprocessed persons in
+ * the DB (cf. {@link Person#claimBatch(String, int)}).
+ * The workers therefore access the shared DB only
+ * once for each batch, instead of once for each person,
+ * and no cursor is kept open during the whole process.
+ * <br/>
+ * Each claim is recorded in the DB under its own lease
+ * owner, made of the name of the worker, {@link #CLAIM_SEPARATOR}
+ * and the number of the claim. So only the persons just claimed
+ * are retrieved, while the leases of all the claims of the worker
+ * can be renewed at once (cf. {@link #getLeasePrefix()}).
+ * <br/>
+ * This class is not thread-safe: each worker must
+ * use its own queue.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class WorkQueue
+{	
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+
+	/////////////////////////////////////////////////////////////////
+	// INIT			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Builds a new queue for the specified worker.
+	 * 
+	 * @param owner
+	 * 		Unique name of the worker, used as prefix of the lease owners recorded in the DB.
+	 * @param batchSize
+	 * 		Number of persons claimed at once.
+	 */
+	public WorkQueue(String owner, int batchSize)
+	{	this.owner = owner;
+		this.batchSize = batchSize;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// QUEUE		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Separates the name of the worker from the number of the claim, in the lease owners */
+	public static final String CLAIM_SEPARATOR = "#";
+	/** Unique name of the worker */
+	private final String owner;
+	/** Number of claims performed so far */
+	private int claimNbr = 0;
+	/** Number of persons claimed at once */
+	private final int batchSize;
+	/** Persons claimed but not processed yet */
+	private final LinkedList<Person> queue = new LinkedList<Person>();
+	/** Whether no person remains to be processed in the DB */
+	private boolean exhausted = false;
+	
+	/**
+	 * Returns the name of the worker
+	 * owning this queue.
+	 * 
+	 * @return
+	 * 		Name of the worker.
+	 */
+	public String getOwner()
+	{	return owner;
+	}
+	
+	/**
+	 * Returns the prefix common to the lease
+	 * owners of all the claims of this queue.
+	 * 
+	 * @return
+	 * 		Prefix of the lease owners.
+	 */
+	public String getLeasePrefix()
+	{	String result = owner + CLAIM_SEPARATOR;
+		return result;
+	}
+	
+	/**
+	 * Indicates whether all the persons of the
+	 * DB are processed: no person remains to be
+	 * claimed, and none is being processed, by
+	 * this process or by another one.
+	 * 
+	 * @return
+	 * 		{@code true} iff the work is over.
+	 */
+	public boolean isExhausted()
+	{	return exhausted;
+	}
+	
+	/**
+	 * Returns the next person to be processed,
+	 * claiming a new batch if the queue is empty.
+	 * The method does not wait: if nothing can be 
+	 * claimed right now, but some persons are still
+	 * being processed (and might be put back if their 
+	 * lease expires), {@code null} is returned and 
+	 * {@link #isExhausted()} stays {@code false}.
+	 * 
+	 * @return
+	 * 		The next person, or {@code null} if
+	 * 		no person can be claimed currently.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public Person next() throws SQLException
+	{	if(queue.isEmpty() && !exhausted)
+		{	List<Person> batch = claim();
+			// another worker may have claimed the remaining persons first
+			while(batch.isEmpty() && Person.getStateCount(PersonState.UNPROCESSED)>0)
+				batch = claim();
+			if(batch.isEmpty() && Person.getStateCount(PersonState.PROCESSING)==0)
+			{	exhausted = true;
+				logger.log("No more person to process for "+owner);
+			}
+			queue.addAll(batch);
+		}
+		
+		Person result = queue.poll();
+		return result;
+	}
+	
+	/**
+	 * Claims a new batch of persons in the
+	 * DB, under a new lease owner.
+	 * 
+	 * @return
+	 * 		The claimed persons (possibly none).
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	private List<Person> claim() throws SQLException
+	{	List<Person> result = Person.claimBatch(getLeasePrefix()+claimNbr,batchSize);
+		claimNbr++;
+		return result;
+	}
+
+}
@@ -0,0 +1,340 @@
+package tr.edu.gsu.googleplus.explorer;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import tr.edu.gsu.googleplus.data.Person;
+import tr.edu.gsu.googleplus.data.Relationship;
+import tr.edu.gsu.googleplus.data.RelationshipWriter;
+import tr.edu.gsu.googleplus.tool.DbTools;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+import tr.edu.gsu.googleplus.tool.metrics.Histogram;
+import tr.edu.gsu.googleplus.tool.metrics.MetricsRegistry;
+
+/**
+ * Decouples the crawler threads, which access Google+,
+ * from the DB writes. The crawler threads push the
+ * neighborhoods they retrieved on a bounded queue, and
+ * return to fetching immediately. Dedicated writer threads
+ * drain the queue and store several persons per transaction
+ * (cf. {@link RelationshipExtractor#storeUsers(List, RelationshipWriter)}).
+ * <br/>
+ * When the queue is full, the crawler threads wait: the
+ * crawl cannot get ahead of the DB by more than the queue
+ * capacity, so the memory used stays bounded. The persons
+ * waiting in the queue are still leased by their crawler
+ * thread (cf. {@link LeaseHeartbeat}), so they are processed
+ * again if the process dies before they are written.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class WriteBehindStage
+{	
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Dedicated logger, so that the writer threads do not rename the common one */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger("db-writer");
+
+	/////////////////////////////////////////////////////////////////
+	// INIT			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Builds a new stage and starts its writer threads.
+	 * 
+	 * @param writerNbr
+	 * 		Number of writer threads.
+	 * @param capacity
+	 * 		Maximal number of persons waiting to be written.
+	 * @param batchSize
+	 * 		Maximal number of persons written in a single transaction.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while connecting to the DB.
+	 */
+	public WriteBehindStage(int writerNbr, int capacity, int batchSize) throws SQLException
+	{	queue = new ArrayBlockingQueue<Entry>(capacity);
+		this.batchSize = batchSize;
+		
+		// the connections are opened here, so that a DB problem is detected right away
+		for(int i=0;i<writerNbr;i++)
+		{	final RelationshipWriter writer = new RelationshipWriter();
+			Runnable runnable = new Runnable()
+			{	@Override
+				public void run()
+				{	writerProcess(writer);
+				}
+			};
+			Thread thread = new Thread(runnable,"db-writer-"+i);
+			threads.add(thread);
+		}
+		for(Thread thread: threads)
+			thread.start();
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// ENTRIES		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Data retrieved for a person, waiting
+	 * to be written in the DB.
+	 */
+	static class Entry
+	{	/**
+		 * Builds a new entry.
+		 * 
+		 * @param person
+		 * 		The processed person.
+		 * @param profile
+		 * 		The retrieved personal data (can be {@code null}).
+		 * @param relationships
+		 * 		The retrieved relationships.
+		 * @param followerNbr
+		 * 		Number of followers announced by Google+.
+		 */
+		public Entry(Person person, Person profile, Set<Relationship> relationships, int followerNbr)
+		{	this.person = person;
+			this.profile = profile;
+			this.relationships = relationships;
+			this.followerNbr = followerNbr;
+		}
+		
+		/** The processed person */
+		final Person person;
+		/** The retrieved personal data */
+		final Person profile;
+		/** The retrieved relationships */
+		final Set<Relationship> relationships;
+		/** Number of followers announced by Google+ */
+		final int followerNbr;
+	}
+	
+	/** Marks the end of the processing (one per writer thread) */
+	private static final Entry END = new Entry(null,null,null,0);
+	
+	/////////////////////////////////////////////////////////////////
+	// STATISTICS	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** for statistical purposes : time the crawler threads spend waiting for room in the queue (in us) */
+	private static final Histogram waitTimer = MetricsRegistry.getTimer("db.queue.wait");
+	/** for statistical purposes : number of persons written in a single transaction */
+	private static final Histogram batchHistogram = MetricsRegistry.getHistogram("db.batch.size","persons");
+	
+	/**
+	 * Returns the number of persons currently
+	 * waiting to be written in the DB.
+	 * 
+	 * @return
+	 * 		Number of persons in the queue.
+	 */
+	public int getPending()
+	{	int result = queue.size();
+		return result;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// PROCESS		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Persons waiting to be written */
+	private final BlockingQueue<Entry> queue;
+	/** Maximal number of persons written in a single transaction */
+	private final int batchSize;
+	/** Writer threads */
+	private final List<Thread> threads = new ArrayList<Thread>();
+	/** First problem met by a writer thread ({@code null} if none) */
+	private volatile Throwable failure = null;
+	/** Whether the stage was closed (no more persons can be added) */
+	private boolean closed = false;
+	/** Prevents the stage from being closed while persons are being added */
+	private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+	
+	/**
+	 * Adds the data retrieved for a person to the queue.
+	 * If the queue is full, the method waits until a writer 
+	 * thread makes some room.
+	 * 
+	 * @param person
+	 * 		The processed person.
+	 * @param profile
+	 * 		The retrieved personal data (can be {@code null}).
+	 * @param relationships
+	 * 		The retrieved relationships.
+	 * @param followerNbr
+	 * 		Number of followers announced by Google+.
+	 * 
+	 * @throws SQLException
+	 * 		A writer thread could not access the DB.
+	 * @throws InterruptedException
+	 * 		The thread was interrupted while waiting.
+	 * @throws IllegalStateException
+	 * 		The stage was already closed.
+	 */
+	public void put(Person person, Person profile, Set<Relationship> relationships, int followerNbr) throws SQLException, InterruptedException
+	{	checkFailure();
+		closeLock.readLock().lock();
+		try
+		{	// a person added after the end markers would never be written
+			if(closed)
+				throw new IllegalStateException("The stage is closed, "+person.getId()+" cannot be written");
+			long before = System.nanoTime();
+			queue.put(new Entry(person,profile,relationships,followerNbr));
+			waitTimer.recordSince(before);
+		}
+		finally
+		{	closeLock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Waits until all the queued persons
+	 * are written, then stops the writer threads.
+	 * Once the stage is closed, no more person
+	 * can be added.
+	 * 
+	 * @throws SQLException
+	 * 		A writer thread could not access the DB.
+	 * @throws InterruptedException
+	 * 		The thread was interrupted while waiting.
+	 */
+	public void close() throws SQLException, InterruptedException
+	{	// waits for the persons currently being added
+		closeLock.writeLock().lock();
+		try
+		{	closed = true;
+		}
+		finally
+		{	closeLock.writeLock().unlock();
+		}
+		
+		for(int i=0;i<threads.size();i++)
+			queue.put(END);
+		for(Thread thread: threads)
+			thread.join();
+		checkFailure();
+	}
+	
+	/**
+	 * Throws the first exception met by
+	 * a writer thread, if any.
+	 * 
+	 * @throws SQLException
+	 * 		The problem met by the writer thread.
+	 */
+	void checkFailure() throws SQLException
+	{	if(failure!=null)
+			throw new SQLException("A DB writer thread failed",failure);
+	}
+	
+	/**
+	 * Implements the processing of a single
+	 * writer thread: it waits for some persons,
+	 * takes all the queued ones (up to the batch
+	 * size) and writes them in a single transaction.
+	 * 
+	 * @param writer
+	 * 		Object used by this thread to write in the DB.
+	 */
+	private void writerProcess(RelationshipWriter writer)
+	{	List<Entry> batch = new ArrayList<Entry>(batchSize);
+		boolean done = false;
+		try
+		{	while(!done)
+			{	batch.add(queue.take());
+				queue.drainTo(batch,batchSize-1);
+				// the end markers come last, and those of the other threads must be put back
+				int ends = 0;
+				while(batch.remove(END))
+					ends++;
+				done = ends>0;
+				for(int i=1;i<ends;i++)
+					queue.put(END);
+				if(!batch.isEmpty())
+				{	batchHistogram.record(batch.size());
+					RelationshipExtractor.storeUsers(batch,writer);
+					DbTools.releaseConnection();
+				}
+				batch.clear();
+			}
+		}
+		catch(InterruptedException e)
+		{	// the persons still queued will not be written, so the crawler threads must stop too
+			failure = e;
+			logger.log("ERROR: writer thread interrupted");
+			e.printStackTrace();
+			drainAfterFailure(done);
+			Thread.currentThread().interrupt();
+		}
+		catch(Throwable e)
+		{	// any problem (not only a DB one) would otherwise block the crawler threads
+			failure = e;
+			logger.log("ERROR: could not write in the DB ("+e+")");
+			e.printStackTrace();
+			// keep draining the queue until the end marker
+			drainAfterFailure(done);
+		}
+		finally
+		{	try
+			{	writer.close();
+				DbTools.releaseConnection();
+			}
+			catch(SQLException e)
+			{	e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Empties the queue after a writer thread
+	 * failed, so that the crawler threads do not
+	 * wait forever. They stop at their next
+	 * attempt to add a person. If the thread is
+	 * interrupted meanwhile, it keeps draining,
+	 * and the interruption is restored at the end.
+	 * 
+	 * @param done
+	 * 		Whether the end marker was already received.
+	 */
+	private void drainAfterFailure(boolean done)
+	{	boolean interrupted = false;
+		while(!done)
+		{	try
+			{	done = queue.take()==END;
+			}
+			catch(InterruptedException e)
+			{	interrupted = true;
+			}
+		}
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+}
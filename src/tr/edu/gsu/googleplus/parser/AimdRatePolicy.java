@@ -0,0 +1,148 @@
+package tr.edu.gsu.googleplus.parser;
+
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Additive-increase/multiplicative-decrease rate policy.
+ * Each successful request slightly increases the rate,
+ * until the remote side starts failing or slowing down:
+ * the rate is then divided by a constant factor. This is
+ * the same principle as TCP congestion control, and it lets
+ * the crawler find by itself the highest rate Google+ tolerates.
+ * <br/>
+ * Like in TCP, the rate is decreased at most once per window
+ * (the smoothed latency, or {@link #MIN_WINDOW} if larger): when
+ * several concurrent requests fail because of the same congestion
+ * episode, only the first one reduces the rate.
+ * <br/>
+ * The policy keeps some state, so it must not be shared
+ * by several {@link RateController} objects.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class AimdRatePolicy implements RatePolicy
+{	
+	/**
+	 * Builds an AIMD policy with default parameters:
+	 * the rate increases by 1 request/s every time
+	 * as many requests as the current rate succeeded, it is
+	 * halved on failure and reduced by 10% when the latency
+	 * exceeds 5 seconds.
+	 */
+	public AimdRatePolicy()
+	{	this(1,0.5,5000,0.9);
+	}
+	
+	/**
+	 * Builds an AIMD policy with the specified parameters.
+	 * 
+	 * @param increase
+	 * 		Rate increase (in requests/s) obtained after a full second of successful requests.
+	 * @param decrease
+	 * 		Factor applied to the rate after a failure (between 0 and 1).
+	 * @param latencyThreshold
+	 * 		Latency (in ms) above which a successful request is considered as a congestion signal.
+	 * @param latencyDecrease
+	 * 		Factor applied to the rate after a slow request (between 0 and 1).
+	 */
+	public AimdRatePolicy(double increase, double decrease, long latencyThreshold, double latencyDecrease)
+	{	this.increase = increase;
+		this.decrease = decrease;
+		this.latencyThreshold = latencyThreshold;
+		this.latencyDecrease = latencyDecrease;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// PARAMETERS	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Rate increase (in requests/s) obtained after a full second of successful requests */
+	private final double increase;
+	/** Factor applied to the rate after a failure */
+	private final double decrease;
+	/** Latency (in ms) above which a request is considered as a congestion signal */
+	private final long latencyThreshold;
+	/** Factor applied to the rate after a slow request */
+	private final double latencyDecrease;
+	
+	/////////////////////////////////////////////////////////////////
+	// WINDOW		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Minimal time between two decreases (in ms) */
+	private static final long MIN_WINDOW = 1000;
+	/** Weight of the last latency in the smoothed latency (same value as TCP) */
+	private static final double LATENCY_WEIGHT = 0.125;
+	/** Smoothed latency (in ms, {@code 0} until the first success) */
+	private double smoothedLatency = 0;
+	/** Time of the last decrease (in ms) */
+	private long lastDecrease = 0;
+	
+	/**
+	 * Applies the specified decrease factor to
+	 * the rate, unless the rate was already decreased
+	 * during the current window.
+	 * 
+	 * @param rate
+	 * 		Current rate (in requests per second).
+	 * @param factor
+	 * 		Decrease factor.
+	 * @return
+	 * 		The new rate (in requests per second).
+	 */
+	private double decrease(double rate, double factor)
+	{	double result = rate;
+		long now = System.currentTimeMillis();
+		long window = Math.max(MIN_WINDOW,Math.round(smoothedLatency));
+		if(now-lastDecrease>=window)
+		{	result = rate * factor;
+			lastDecrease = now;
+		}
+		return result;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// POLICY		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	@Override
+	public double onSuccess(double rate, long latency)
+	{	double result;
+		if(smoothedLatency==0)
+			smoothedLatency = latency;
+		else
+			smoothedLatency = (1-LATENCY_WEIGHT)*smoothedLatency + LATENCY_WEIGHT*latency;
+		
+		if(latency>latencyThreshold)
+			result = decrease(rate,latencyDecrease);
+		else
+			// spread the increase over one second worth of requests
+			result = rate + increase/Math.max(rate,1);
+		return result;
+	}
+
+	@Override
+	public double onFailure(double rate)
+	{	double result = decrease(rate,decrease);
+		return result;
+	}
+}
@@ -0,0 +1,313 @@
+package tr.edu.gsu.googleplus.parser;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codehaus.jettison.json.JSONException;
+
+import tr.edu.gsu.googleplus.data.Person;
+import tr.edu.gsu.googleplus.parser.GooglePlusParser.Mode;
+import tr.edu.gsu.googleplus.parser.ResponseArchive.Endpoint;
+import tr.edu.gsu.googleplus.parser.ResponseArchive.Entry;
+import tr.edu.gsu.googleplus.tool.FileTools;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+
+/**
+ * Parses again the responses stored in a
+ * {@link ResponseArchive}, without accessing
+ * the network. The segments of the archive
+ * are processed in parallel, each one by a
+ * single thread reading it sequentially. 
+ * The profiles are parsed like in 
+ * {@link GooglePlusParser#extractPerson(String)}
+ * and the relationships using a 
+ * {@link RelationshipStreamParser}, so any change
+ * in these parsers is taken into account.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class ArchiveReplayer
+{
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+
+	/////////////////////////////////////////////////////////////////
+	// INIT			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Builds a replayer for the specified archive,
+	 * using as many threads as available processors.
+	 * 
+	 * @param archive
+	 * 		Archive to be replayed.
+	 */
+	public ArchiveReplayer(ResponseArchive archive)
+	{	this(archive,Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Builds a replayer for the specified archive,
+	 * using the specified number of threads.
+	 * 
+	 * @param archive
+	 * 		Archive to be replayed.
+	 * @param threadNbr
+	 * 		Number of parsing threads.
+	 */
+	public ArchiveReplayer(ResponseArchive archive, int threadNbr)
+	{	this.archive = archive;
+		this.threadNbr = threadNbr;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// DATA			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Archive to be replayed */
+	private final ResponseArchive archive;
+	/** Number of parsing threads */
+	private final int threadNbr;
+	/** Number of responses parsed so far */
+	private final AtomicLong responseCount = new AtomicLong(0);
+	/** Number of responses which could not be parsed */
+	private final AtomicLong errorCount = new AtomicLong(0);
+
+	/**
+	 * Returns the number of responses
+	 * parsed during the last replay.
+	 * 
+	 * @return
+	 * 		Number of parsed responses.
+	 */
+	public long getResponseCount()
+	{	return responseCount.get();
+	}
+	
+	/**
+	 * Returns the number of responses
+	 * which could not be parsed during
+	 * the last replay.
+	 * 
+	 * @return
+	 * 		Number of erroneous responses.
+	 */
+	public long getErrorCount()
+	{	return errorCount.get();
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// PROCESSING	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Parses all the responses contained in the archive
+	 * and sends the resulting data to the specified handler.
+	 * The order in which the responses are processed is
+	 * not specified.
+	 * 
+	 * @param handler
+	 * 		Object receiving the parsed data (must be thread-safe).
+	 * 
+	 * @throws IOException
+	 * 		Problem while reading the archive.
+	 * @throws InterruptedException
+	 * 		Problem while waiting for the parsing threads.
+	 */
+	public void replay(final ReplayHandler handler) throws IOException, InterruptedException
+	{	logger.log("Replaying the archive using "+threadNbr+" threads");
+		logger.increaseOffset();
+		long before = System.currentTimeMillis();
+		responseCount.set(0);
+		errorCount.set(0);
+		
+		// group the entries by segment
+		List<Entry> entries = archive.readIndex();
+		Map<Integer,List<Entry>> segments = new TreeMap<Integer,List<Entry>>();
+		for(Entry entry: entries)
+		{	List<Entry> list = segments.get(entry.segment);
+			if(list==null)
+			{	list = new ArrayList<Entry>();
+				segments.put(entry.segment,list);
+			}
+			list.add(entry);
+		}
+		logger.log(entries.size()+" responses in "+segments.size()+" segments");
+		
+		// process each segment separately
+		ExecutorService executor = Executors.newFixedThreadPool(threadNbr);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for(final Map.Entry<Integer,List<Entry>> segment: segments.entrySet())
+		{	Future<Void> future = executor.submit(new Callable<Void>()
+			{	@Override
+				public Void call() throws IOException
+				{	replaySegment(segment.getKey(),segment.getValue(),handler);
+					return null;
+				}
+			});
+			futures.add(future);
+		}
+		executor.shutdown();
+		
+		try
+		{	for(Future<Void> future: futures)
+				future.get();
+		}
+		catch(ExecutionException e)
+		{	executor.shutdownNow();
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException)
+				throw (IOException)cause;
+			else
+				throw new RuntimeException(cause);
+		}
+		
+		long elapsed = System.currentTimeMillis() - before;
+		NumberFormat nf = NumberFormat.getInstance();
+		nf.setMaximumFractionDigits(2);
+		logger.log(responseCount.get()+" responses parsed ("+errorCount.get()+" errors) in "+elapsed+" ms ("+nf.format(responseCount.get()*1000.0/Math.max(1,elapsed))+" responses/s)");
+		logger.decreaseOffset();
+	}
+	
+	/**
+	 * Parses all the specified entries, which
+	 * all belong to the specified segment.
+	 * 
+	 * @param segment
+	 * 		Number of the segment.
+	 * @param entries
+	 * 		Entries to be parsed.
+	 * @param handler
+	 * 		Object receiving the parsed data.
+	 * 
+	 * @throws IOException
+	 * 		Problem while reading the archive.
+	 */
+	private void replaySegment(int segment, List<Entry> entries, ReplayHandler handler) throws IOException
+	{	// read the segment sequentially
+		Collections.sort(entries,new Comparator<Entry>()
+		{	@Override
+			public int compare(Entry e1, Entry e2)
+			{	int result = 0;
+				if(e1.offset<e2.offset)
+					result = -1;
+				else if(e1.offset>e2.offset)
+					result = 1;
+				return result;
+			}
+		});
+		
+		RandomAccessFile file = new RandomAccessFile(archive.getSegmentFile(segment),"r");
+		try
+		{	for(Entry entry: entries)
+			{	byte[] body = ResponseArchive.load(file,entry);
+				try
+				{	if(entry.endpoint==Endpoint.PROFILE)
+					{	Person person = GooglePlusParser.parsePerson(entry.id,body);
+						if(person!=null)
+							handler.handlePerson(person);
+					}
+					else
+					{	Mode mode;
+						if(entry.endpoint==Endpoint.FOLLOWER)
+							mode = Mode.FOLLOWER;
+						else
+							mode = Mode.FOLLOWEE;
+						RelationshipStreamParser parser = new RelationshipStreamParser(new ByteArrayInputStream(body),entry.id,mode);
+						parser.parse(handler);
+					}
+					responseCount.incrementAndGet();
+				}
+				catch(JSONException e)
+				{	errorCount.incrementAndGet();
+					logger.log("WARNING: could not parse the "+entry.endpoint+" response for GID "+entry.id+" ("+e.getMessage()+")");
+				}
+				catch(IOException e)
+				{	errorCount.incrementAndGet();
+					logger.log("WARNING: could not parse the "+entry.endpoint+" response for GID "+entry.id+" ("+e.getMessage()+")");
+				}
+			}
+		}
+		finally
+		{	file.close();
+		}
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// MAIN			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Replays the default archive and counts
+	 * the persons and relationships it contains.
+	 * 
+	 * @param arg
+	 * 		Optional archive folder.
+	 * 
+	 * @throws IOException
+	 * 		Problem while reading the archive.
+	 * @throws InterruptedException
+	 * 		Problem while waiting for the parsing threads.
+	 */
+	public static void main(String arg[]) throws IOException, InterruptedException
+	{	logger.setName("Replay");
+		String folder = FileTools.ARCHIVE_FOLDER;
+		if(arg.length>0)
+			folder = arg[0];
+		
+		ResponseArchive archive = new ResponseArchive(folder);
+		final AtomicLong personCount = new AtomicLong(0);
+		final AtomicLong relationshipCount = new AtomicLong(0);
+		ArchiveReplayer replayer = new ArchiveReplayer(archive);
+		replayer.replay(new ReplayHandler()
+		{	@Override
+			public void handleRelationship(String sourceId, String targetId, Float strength)
+			{	relationshipCount.incrementAndGet();
+			}
+			
+			@Override
+			public void handlePerson(Person person)
+			{	personCount.incrementAndGet();
+			}
+		});
+		archive.close();
+		logger.log("Persons: "+personCount.get()+" - relationships: "+relationshipCount.get());
+	}
+}
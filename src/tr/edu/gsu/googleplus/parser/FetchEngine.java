@@ -0,0 +1,248 @@
+package tr.edu.gsu.googleplus.parser;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import tr.edu.gsu.googleplus.data.Person;
+import tr.edu.gsu.googleplus.data.Relationship;
+
+/**
+ * Asynchronous front-end for {@link GooglePlusParser}.
+ * Requests are submitted to a small pool of fetching
+ * threads, and the caller immediately gets a {@link Future}
+ * instead of waiting for the response. The number of
+ * requests in flight (i.e. queued or running) is bounded:
+ * once the limit is reached, the submitting thread waits
+ * until some request completes, which provides a natural
+ * backpressure on the crawler threads.<br/>
+ * Note the underlying Jersey transport is blocking, so
+ * the pool size is the actual network concurrency, whereas
+ * the in-flight limit controls how much work can be queued
+ * ahead of it.
+ *
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class FetchEngine
+{
+	/////////////////////////////////////////////////////////////////
+	// INIT			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Builds a new fetch engine, using the specified
+	 * number of fetching threads and the specified
+	 * maximal number of requests in flight.
+	 *
+	 * @param threadNbr
+	 * 		Number of threads performing the network accesses.
+	 * @param maxInFlight
+	 * 		Maximal number of requests submitted but not completed yet.
+	 */
+	public FetchEngine(int threadNbr, int maxInFlight)
+	{	this.threadNbr = threadNbr;
+		this.maxInFlight = maxInFlight;
+		inFlight = new Semaphore(maxInFlight);
+		executor = Executors.newFixedThreadPool(threadNbr,new ThreadFactory()
+		{	private final AtomicInteger count = new AtomicInteger(0);
+			@Override
+			public Thread newThread(Runnable runnable)
+			{	Thread result = new Thread(runnable,"fetch-"+count.getAndIncrement());
+				result.setDaemon(true);
+				return result;
+			}
+		});
+	}
+
+	/////////////////////////////////////////////////////////////////
+	// SETTINGS		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Number of threads performing the network accesses */
+	private final int threadNbr;
+	/** Maximal number of requests in flight */
+	private final int maxInFlight;
+
+	/**
+	 * Returns the number of threads
+	 * performing the network accesses.
+	 *
+	 * @return
+	 * 		Number of fetching threads.
+	 */
+	public int getThreadNbr()
+	{	return threadNbr;
+	}
+
+	/**
+	 * Returns the maximal number of
+	 * requests which can be in flight
+	 * at the same time.
+	 *
+	 * @return
+	 * 		Maximal number of requests in flight.
+	 */
+	public int getMaxInFlight()
+	{	return maxInFlight;
+	}
+
+	/**
+	 * Returns the number of requests
+	 * currently in flight.
+	 *
+	 * @return
+	 * 		Number of requests submitted but not completed yet.
+	 */
+	public int getInFlight()
+	{	int result = maxInFlight - inFlight.availablePermits();
+		return result;
+	}
+
+	/////////////////////////////////////////////////////////////////
+	// PROCESSING	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Pool of threads performing the network accesses */
+	private final ExecutorService executor;
+	/** Permits corresponding to the requests which can still be submitted */
+	private final Semaphore inFlight;
+
+	/**
+	 * Submits a task to the fetching threads.
+	 * If the maximal number of requests in
+	 * flight is reached, the method waits
+	 * until one of them completes.
+	 *
+	 * @param task
+	 * 		Task to be performed.
+	 * @return
+	 * 		A {@code Future} representing the result of the task.
+	 *
+	 * @throws InterruptedException
+	 * 		Problem while waiting for a free slot.
+	 */
+	public <T> Future<T> submit(final Callable<T> task) throws InterruptedException
+	{	inFlight.acquire();
+		Callable<T> wrapper = new Callable<T>()
+		{	@Override
+			public T call() throws Exception
+			{	try
+				{	T result = task.call();
+					return result;
+				}
+				finally
+				{	inFlight.release();
+				}
+			}
+		};
+
+		Future<T> result;
+		try
+		{	result = executor.submit(wrapper);
+		}
+		catch(RuntimeException e)
+		{	inFlight.release();
+			throw e;
+		}
+		return result;
+	}
+
+	/**
+	 * Asynchronous version of {@link GooglePlusParser#extractPerson(String)}.
+	 *
+	 * @param id
+	 * 		G+ id of the person of interest.
+	 * @return
+	 * 		A {@code Future} representing the retrieved person.
+	 *
+	 * @throws InterruptedException
+	 * 		Problem while waiting for a free slot.
+	 */
+	public Future<Person> extractPerson(final String id) throws InterruptedException
+	{	Future<Person> result = submit(new Callable<Person>()
+		{	@Override
+			public Person call() throws Exception
+			{	Person result = GooglePlusParser.extractPerson(id);
+				return result;
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Asynchronous version of {@link GooglePlusParser#extractFollowers(String)}.
+	 *
+	 * @param target
+	 * 		Google+ id of the considered user.
+	 * @return
+	 * 		A {@code Future} representing the set of people following the considered user.
+	 *
+	 * @throws InterruptedException
+	 * 		Problem while waiting for a free slot.
+	 */
+	public Future<Set<Relationship>> extractFollowers(final String target) throws InterruptedException
+	{	Future<Set<Relationship>> result = submit(new Callable<Set<Relationship>>()
+		{	@Override
+			public Set<Relationship> call() throws Exception
+			{	Set<Relationship> result = GooglePlusParser.extractFollowers(target);
+				return result;
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Asynchronous version of {@link GooglePlusParser#extractFollowees(String)}.
+	 *
+	 * @param source
+	 * 		Google+ id of the considered user.
+	 * @return
+	 * 		A {@code Future} representing the set of people the considered user follows.
+	 *
+	 * @throws InterruptedException
+	 * 		Problem while waiting for a free slot.
+	 */
+	public Future<Set<Relationship>> extractFollowees(final String source) throws InterruptedException
+	{	Future<Set<Relationship>> result = submit(new Callable<Set<Relationship>>()
+		{	@Override
+			public Set<Relationship> call() throws Exception
+			{	Set<Relationship> result = GooglePlusParser.extractFollowees(source);
+				return result;
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Stops the fetching threads once
+	 * all submitted requests are completed.
+	 */
+	public void shutdown()
+	{	executor.shutdown();
+	}
+}
@@ -0,0 +1,46 @@
+package tr.edu.gsu.googleplus.parser;
+
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Rate policy which never changes the
+ * rate, whatever happens. It corresponds 
+ * to the former behavior of the crawler,
+ * which used constant pauses.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class FixedRatePolicy implements RatePolicy
+{	
+	@Override
+	public double onSuccess(double rate, long latency)
+	{	return rate;
+	}
+
+	@Override
+	public double onFailure(double rate)
+	{	return rate;
+	}
+}
@@ -26,17 +26,18 @@ package tr.edu.gsu.googleplus.parser;
  * 
  */
 
-import java.io.ByteArrayInputStream;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-import java.util.regex.Pattern;
-
 import com.sun.jersey.api.client.ClientHandlerException;
 import com.sun.jersey.api.client.ClientRequest;
 import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.filter.ClientFilter;
 
 /**
+ * Jersey filter cleaning the Google+ JSON responses,
+ * so that they can be parsed by Jettison. The cleaning
+ * itself is performed on the fly by a {@link GoogleJSONInputStream}
+ * wrapped around the entity stream: the response is
+ * not loaded as a string nor processed by regular expressions
+ * anymore.
  * 
  * @since 1
  * @version 1
@@ -44,49 +45,12 @@ import com.sun.jersey.api.client.filter.ClientFilter;
  */
 public class GoogleJSONFilter extends ClientFilter
 {
-	/** Google+ URL */
-	public static final Logger LOG = Logger.getLogger("com.googleplus");
-	/** */
-	private static final Pattern pre = Pattern.compile("([\\[{,]),");
-	/** */
-	private static final Pattern post = Pattern.compile(",([\\]},])");
-	
-	/**
-	 * 
-	 * @param s
-	 * @return
-	 */
-// TODO modified	
-	private static final String cleanJSON(String s){
-		String result = null;
-		try
-		{	result = s.substring(5);
-			result = pre.matcher(result).replaceAll("$1null,");
-			result = post.matcher(result).replaceAll(",null$1");
-		}
-		catch(StringIndexOutOfBoundsException e)
-		{	//e.printStackTrace();
-			result = "";
-		}
-		// jason s was also un-escaping \\'s - what for?
-		return result;
-	}
-
 	@Override
 	public ClientResponse handle(ClientRequest req) throws ClientHandlerException {
 		
         ClientResponse clientResponse = getNext().handle(req);
-        
-        String response = clientResponse.getEntity(String.class);
-        LOG.logp(Level.FINE, "GoogleJSONFilter", "handle", "Response before cleaning", response);
-        
-        response = cleanJSON(response);
-        
-        LOG.logp(Level.FINE, "GoogleJSONFilter", "handle", "Response after cleaning", response);
-        
-        ByteArrayInputStream bais = new ByteArrayInputStream(response.getBytes());
-        clientResponse.setEntityInputStream(bais);
+        clientResponse.setEntityInputStream(new GoogleJSONInputStream(clientResponse.getEntityInputStream()));
         
         return clientResponse;
 	}
-}
+}
\ No newline at end of file
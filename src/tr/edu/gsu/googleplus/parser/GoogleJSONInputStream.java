@@ -0,0 +1,254 @@
+package tr.edu.gsu.googleplus.parser;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stream cleaning the JSON responses sent by Google+
+ * on the fly. It skips the anti-XSSI prefix ({@code )]}'})
+ * and inserts {@code null} in the empty slots of the sparse
+ * arrays (e.g. {@code [,,"a",]} becomes {@code [null,null,"a",null]}),
+ * so that the result can be processed by a standard JSON parser.
+ * Unlike the former regex-based cleaning, the response is read only
+ * once, is never entirely copied in memory, and the content of the
+ * strings is left untouched.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class GoogleJSONInputStream extends FilterInputStream
+{	
+	/**
+	 * Builds a cleaning stream on top
+	 * of the specified raw stream.
+	 * 
+	 * @param in
+	 * 		Raw Google+ response.
+	 */
+	public GoogleJSONInputStream(InputStream in)
+	{	super(in);
+	}
+
+	/////////////////////////////////////////////////////////////////
+	// STATE		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Value inserted in the empty slots */
+	private static final byte[] NULL = {'n','u','l','l'};
+	/** Size of the input buffer */
+	private static final int BUFFER_SIZE = 8192;
+	/** Input buffer */
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	/** Position of the next byte in the input buffer */
+	private int position = 0;
+	/** Number of bytes in the input buffer */
+	private int limit = 0;
+	/** Whether the prefix was already processed */
+	private boolean prefixSkipped = false;
+	/** Last significant character outside strings */
+	private int previous = -1;
+	/** Whether we are currently inside a string */
+	private boolean inString = false;
+	/** Whether the previous character was a backslash (inside a string) */
+	private boolean escaped = false;
+	/** Bytes to be sent before reading further */
+	private final byte[] pending = new byte[NULL.length+1];
+	/** Position of the next pending byte */
+	private int pendingPosition = 0;
+	/** Number of pending bytes */
+	private int pendingLimit = 0;
+	
+	/////////////////////////////////////////////////////////////////
+	// READING		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Returns the next raw byte,
+	 * or -1 if the end was reached.
+	 * 
+	 * @return
+	 * 		The next raw byte.
+	 * 
+	 * @throws IOException
+	 * 		Problem while reading the underlying stream.
+	 */
+	private int next() throws IOException
+	{	if(position==limit)
+		{	limit = in.read(buffer,0,BUFFER_SIZE);
+			position = 0;
+			if(limit<=0)
+			{	limit = 0;
+				return -1;
+			}
+		}
+		int result = buffer[position] & 0xFF;
+		position++;
+		return result;
+	}
+	
+	/**
+	 * Skips the anti-XSSI prefix, i.e. the
+	 * first line if it starts with {@code )]}'}.
+	 * 
+	 * @throws IOException
+	 * 		Problem while reading the underlying stream.
+	 */
+	private void skipPrefix() throws IOException
+	{	prefixSkipped = true;
+		int c = next();
+		if(c==')')
+		{	while(c!=-1 && c!='\n')
+				c = next();
+		}
+		else if(c!=-1)
+			position--;
+	}
+	
+	/**
+	 * Processes the next raw byte, and returns
+	 * the next cleaned byte. When an empty slot
+	 * is detected, {@code null} is returned first
+	 * and the raw byte is put in the pending bytes.
+	 * 
+	 * @return
+	 * 		The next cleaned byte, or -1 if the end was reached.
+	 * 
+	 * @throws IOException
+	 * 		Problem while reading the underlying stream.
+	 */
+	private int clean() throws IOException
+	{	if(!prefixSkipped)
+			skipPrefix();
+		
+		int result = next();
+		if(result!=-1)
+		{	if(inString)
+			{	if(escaped)
+					escaped = false;
+				else if(result=='\\')
+					escaped = true;
+				else if(result=='"')
+					inString = false;
+			}
+			else
+			{	int c = result;
+				switch(c)
+				{	case ',':
+						if(previous=='[' || previous=='{' || previous==',')
+							result = insertNull(c);
+						break;
+					case ']':
+					case '}':
+						if(previous==',')
+							result = insertNull(c);
+						break;
+					case '"':
+						inString = true;
+						break;
+				}
+				if(c!=' ' && c!='\t' && c!='\r' && c!='\n')
+					previous = c;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Puts {@code null} followed by the specified
+	 * byte in the pending bytes, and returns the first
+	 * pending byte.
+	 * 
+	 * @param c
+	 * 		The byte to be sent after {@code null}.
+	 * @return
+	 * 		The first byte of {@code null}.
+	 */
+	private int insertNull(int c)
+	{	System.arraycopy(NULL,0,pending,0,NULL.length);
+		pending[NULL.length] = (byte)c;
+		pendingPosition = 1;
+		pendingLimit = NULL.length + 1;
+		int result = pending[0];
+		return result;
+	}
+	
+	@Override
+	public int read() throws IOException
+	{	int result;
+		if(pendingPosition<pendingLimit)
+		{	result = pending[pendingPosition] & 0xFF;
+			pendingPosition++;
+			if(pendingPosition==pendingLimit)
+				pendingPosition = pendingLimit = 0;
+		}
+		else
+			result = clean();
+		return result;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException
+	{	int result = 0;
+		int c = 0;
+		while(result<len && c!=-1)
+		{	c = read();
+			if(c!=-1)
+			{	b[off+result] = (byte)c;
+				result++;
+			}
+		}
+		if(result==0 && len>0)
+			result = -1;
+		return result;
+	}
+	
+	@Override
+	public long skip(long n) throws IOException
+	{	long result = 0;
+		while(result<n && read()!=-1)
+			result++;
+		return result;
+	}
+	
+	@Override
+	public int available() throws IOException
+	{	int result = (pendingLimit - pendingPosition) + (limit - position);
+		return result;
+	}
+	
+	@Override
+	public boolean markSupported()
+	{	return false;
+	}
+	
+	@Override
+	public synchronized void mark(int readlimit)
+	{	// not supported
+	}
+	
+	@Override
+	public synchronized void reset() throws IOException
+	{	throw new IOException("mark/reset not supported");
+	}
+}
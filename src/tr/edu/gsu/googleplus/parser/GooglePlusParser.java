@@ -21,6 +21,10 @@ package tr.edu.gsu.googleplus.parser;
  * 
  */
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -29,20 +33,24 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.codehaus.jettison.json.JSONArray;
 import org.codehaus.jettison.json.JSONException;
 import org.codehaus.jettison.json.JSONObject;
+import org.codehaus.jettison.json.JSONTokener;
 
 import tr.edu.gsu.googleplus.data.Person;
 import tr.edu.gsu.googleplus.data.Relationship;
+import tr.edu.gsu.googleplus.parser.ResponseArchive.Endpoint;
+import tr.edu.gsu.googleplus.tool.metrics.Counter;
+import tr.edu.gsu.googleplus.tool.metrics.Histogram;
+import tr.edu.gsu.googleplus.tool.metrics.MetricsRegistry;
 import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
 import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
 
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.UniformInterfaceException;
 import com.sun.jersey.api.client.WebResource;
 
@@ -74,23 +82,146 @@ public class GooglePlusParser
 	/////////////////////////////////////////////////////////////////
 	// CLIENT		/////////////////////////////////////////////////
 	/////////////////////////////////////////////////////////////////
+	/** Transport layer used by the clients (connection pool, timeouts, compression) */
+	private static HttpTransport transport = new HttpTransport();
 	/** Rest client used to retrieve the G+ data */
-	private static final Client restClient = new Client();
-	static
-	{	restClient.addFilter(new GoogleJSONFilter());
+	private static Client restClient = transport.createClient(new GoogleJSONFilter());
+	/** Rest client used to retrieve the raw responses, to be processed by streaming parsers */
+	private static Client rawClient = transport.createClient(null);
+	/** Root of the service URLs (can be changed to target a local stub server) */
+	private static String serviceRoot = "https://plus.google.com";
+	
+	/**
+	 * Changes the root of the URLs used to
+	 * access the service. By default, it is
+	 * the actual Google+ server, but it can
+	 * be changed for testing purposes.
+	 * 
+	 * @param serviceRoot
+	 * 		The new service root, e.g. {@code http://localhost:8080}.
+	 */
+	public static void setServiceRoot(String serviceRoot)
+	{	GooglePlusParser.serviceRoot = serviceRoot;
+	}
+	
+	/**
+	 * Returns the transport layer currently
+	 * used to access the service.
+	 * 
+	 * @return
+	 * 		The current transport.
+	 */
+	public static HttpTransport getTransport()
+	{	return transport;
+	}
+	
+	/**
+	 * Changes the transport layer used to access
+	 * the service, e.g. to use other timeouts or
+	 * connection limits. This must be done before
+	 * the crawl is started.
+	 * 
+	 * @param transport
+	 * 		The new transport.
+	 */
+	public static void setTransport(HttpTransport transport)
+	{	GooglePlusParser.transport = transport;
+		restClient = transport.createClient(new GoogleJSONFilter());
+		rawClient = transport.createClient(null);
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// RATE			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Controller shared by all threads, used to avoid trigerring the G+ captcha mechanism */
+	private static RateController rateController = new RateController(new AimdRatePolicy(),10,0.1,200,10);
+	
+	/**
+	 * Returns the rate controller shared
+	 * by all the threads accessing Google+.
+	 * 
+	 * @return
+	 * 		The current rate controller.
+	 */
+	public static RateController getRateController()
+	{	return rateController;
+	}
+	
+	/**
+	 * Changes the rate controller shared
+	 * by all the threads accessing Google+.
+	 * 
+	 * @param rateController
+	 * 		The new rate controller.
+	 */
+	public static void setRateController(RateController rateController)
+	{	GooglePlusParser.rateController = rateController;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// ARCHIVE		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Archive receiving the raw responses ({@code null} if archiving is disabled) */
+	private static ResponseArchive archive = null;
+	
+	/**
+	 * Returns the archive receiving
+	 * the raw responses, or {@code null}
+	 * if archiving is disabled.
+	 * 
+	 * @return
+	 * 		The current archive.
+	 */
+	public static ResponseArchive getArchive()
+	{	return archive;
+	}
+	
+	/**
+	 * Enables the archiving of the raw responses
+	 * sent by Google+, so that they can be parsed
+	 * again later (cf. {@link ArchiveReplayer}).
+	 * Archiving is disabled if the parameter is
+	 * {@code null}.
+	 * 
+	 * @param archive
+	 * 		The new archive, or {@code null} to disable archiving.
+	 */
+	public static void setArchive(ResponseArchive archive)
+	{	GooglePlusParser.archive = archive;
+	}
+	
+	/**
+	 * Stores the specified response in the archive. 
+	 * A failure is only logged, since it should not
+	 * prevent the crawl from continuing.
+	 * 
+	 * @param archive
+	 * 		Archive receiving the response.
+	 * @param id
+	 * 		Google+ id of the concerned user.
+	 * @param endpoint
+	 * 		Service which sent the response.
+	 * @param body
+	 * 		Raw response.
+	 */
+	private static void archive(ResponseArchive archive, String id, Endpoint endpoint, byte[] body)
+	{	try
+		{	archive.store(id,endpoint,body);
+		}
+		catch(IOException e)
+		{	logger.log("WARNING: could not archive the "+endpoint+" response for GID "+id+" ("+e.getMessage()+")");
+		}
 	}
 	
 	/////////////////////////////////////////////////////////////////
 	// INDIVIDUAL	/////////////////////////////////////////////////
 	/////////////////////////////////////////////////////////////////
 	/** Template URL to retrieve individual data describing some user of interest  */
-	private static final String individualUrlTemplate = "https://plus.google.com/_/profiles/get/%1$s";
-	/** for statistical purposes : average access time */
-	public static double extractPersonAverageTime = 0;
-	/** for statistical purposes : number of calls to this function */
-	public static int extractPersonCallCount = 0;
-	/** associated lock */
-	private static Lock extractPersonLock = new ReentrantLock();
+	private static final String individualUrlTemplate = "/_/profiles/get/%1$s";
+	/** for statistical purposes : access times (in us) */
+	private static final Histogram extractPersonTimer = MetricsRegistry.getTimer("parser.profile");
+	/** for statistical purposes : time to parse a profile (in us) */
+	private static final Histogram parsePersonTimer = MetricsRegistry.getTimer("parse.profile");
 
 	/**
 	 * Returns the average time to get 
@@ -100,10 +231,7 @@ public class GooglePlusParser
 	 * 		The average time in ms.
 	 */
 	public static double getExtractPersonAverageTime()
-	{	double result;
-		extractPersonLock.lock();
-		result = extractPersonAverageTime;
-		extractPersonLock.unlock();
+	{	double result = extractPersonTimer.getMean() / 1000;
 		return result;
 	}
 	
@@ -131,26 +259,78 @@ public class GooglePlusParser
 	 * 		Problem while retrieving the data.
 	 */
 	public static Person extractPerson(final String id) throws UniformInterfaceException, MalformedURLException, URISyntaxException, InterruptedException, JSONException
-	{	long before = System.currentTimeMillis();
+	{	long before = System.nanoTime();
 		URL url = buildURL(individualUrlTemplate,id);
-		JSONArray json = getJSON(url);
-		Person result = null;
+		ResponseArchive archive = GooglePlusParser.archive;
+		JSONArray json;
+		if(archive==null)
+			json = getJSON(url);
+		else
+		{	byte[] body = getBody(url);
+			json = null;
+			if(body!=null)
+			{	archive(archive,id,Endpoint.PROFILE,body);
+				long start = System.nanoTime();
+				json = parseJSON(body);
+				parsePersonTimer.recordSince(start);
+			}
+		}
+		Person result = parsePerson(id,json);
+		extractPersonTimer.recordSince(before);
+		
+		return result;
+	}
+
+	/**
+	 * Parses a raw profile, as sent by Google+
+	 * (or read from an archive), and returns the
+	 * corresponding {@link Person} object.
+	 * 
+	 * @param id
+	 * 		G+ id of the person of interest.
+	 * @param body
+	 * 		Raw response.
+	 * @return
+	 * 		A {@code Person} object representing the parsed data,
+	 * 		or {@code null} if the id is invalid.
+	 * 
+	 * @throws JSONException
+	 * 		Problem with the received JSON array.
+	 * @throws MalformedURLException
+	 * 		Problem with an URL contained in the profile.
+	 */
+	static Person parsePerson(String id, byte[] body) throws JSONException, MalformedURLException
+	{	JSONArray json = parseJSON(body);
+		Person result = parsePerson(id,json);
+		return result;
+	}
+	
+	/**
+	 * Checks if the specified JSON array corresponds
+	 * to a valid profile and parses it.
+	 * 
+	 * @param id
+	 * 		G+ id of the person of interest.
+	 * @param json
+	 * 		The received JSON array (can be {@code null}).
+	 * @return
+	 * 		A {@code Person} object representing the parsed data,
+	 * 		or {@code null} if the id is invalid.
+	 * 
+	 * @throws JSONException
+	 * 		Problem with the received JSON array.
+	 * @throws MalformedURLException
+	 * 		Problem with an URL contained in the profile.
+	 */
+	private static Person parsePerson(String id, JSONArray json) throws JSONException, MalformedURLException
+	{	Person result = null;
 		if(json!=null && getFromArray(json,0,1)!=null)	// for some reason, some of the ids do not exist, which results in a null json object
 			result = parsePerson(json);
 		else
 			logger.log("WARNING: GID "+id+" does not correspond to a valid G+ account");
-		long after = System.currentTimeMillis();
-		
-		long elapsed = after-before;
-		extractPersonLock.lock();
-		extractPersonAverageTime = extractPersonAverageTime*(extractPersonCallCount/(extractPersonCallCount+1)) 
-			+ elapsed/(extractPersonCallCount+1);
-		extractPersonCallCount++;
-		extractPersonLock.unlock();
-		
 		return result;
 	}
-
+	
 	/**
 	 * Parse a JSON array to extract
 	 * meaningful data describing
@@ -215,23 +395,19 @@ public class GooglePlusParser
 	// RELATIONSHIPS		/////////////////////////////////////////
 	/////////////////////////////////////////////////////////////////
 	/** Template URL to retrieve data describing the users followed by some user of interest */
-	private static final String followeeUrlTemplate =	"https://plus.google.com/_/socialgraph/lookup/visible/?o=%%5Bnull%%2Cnull%%2C%%22%1$s%%22%%5D";
+	private static final String followeeUrlTemplate =	"/_/socialgraph/lookup/visible/?o=%%5Bnull%%2Cnull%%2C%%22%1$s%%22%%5D";
 	/** Template URL to retrieve data describing the users following some user of interest */
-	private static final String followerUrlTemplate =	"https://plus.google.com/_/socialgraph/lookup/incoming/?o=%%5Bnull%%2Cnull%%2C%%22%1$s%%22%%5D&n=1000000";
-	/** Enum class used internally to switch between follower and followee */
-	private enum Mode {FOLLOWER, FOLLOWEE}
-	/** for statistical purposes : average access time */
-	public static double extractFollowersAverageTime = 0;
-	/** for statistical purposes : number of calls to this function */
-	private static float extractFollowersCallCount = 0;
-	/** associated lock */
-	private static Lock extractFollowersLock = new ReentrantLock();
-	/** for statistical purposes : average access time */
-	public static double extractFolloweesAverageTime = 0;
-	/** for statistical purposes : number of calls to this function */
-	private static float extractFolloweesCallCount = 0;
-	/** associated lock */
-	private static Lock extractFolloweesLock = new ReentrantLock();
+	private static final String followerUrlTemplate =	"/_/socialgraph/lookup/incoming/?o=%%5Bnull%%2Cnull%%2C%%22%1$s%%22%%5D&n=1000000";
+	/** Enum class used to switch between follower and followee (also needed to use a {@link RelationshipStreamParser}) */
+	public enum Mode {FOLLOWER, FOLLOWEE}
+	/** for statistical purposes : access times for the followers (in us) */
+	private static final Histogram extractFollowersTimer = MetricsRegistry.getTimer("parser.followers");
+	/** for statistical purposes : access times for the followees (in us) */
+	private static final Histogram extractFolloweesTimer = MetricsRegistry.getTimer("parser.followees");
+	/** for statistical purposes : time to read, clean and parse a list of relationships (in us) */
+	private static final Histogram parseRelationshipsTimer = MetricsRegistry.getTimer("parse.relationships");
+	/** for statistical purposes : number of relationships read */
+	private static final Counter relationshipCounter = MetricsRegistry.getCounter("parse.relationships");
 	
 	/**
 	 * Returns the average time to get 
@@ -241,10 +417,7 @@ public class GooglePlusParser
 	 * 		The average time in ms.
 	 */
 	public static double getExtractFollowersAverageTime()
-	{	double result;
-		extractFollowersLock.lock();
-		result = extractFollowersAverageTime;
-		extractFollowersLock.unlock();
+	{	double result = extractFollowersTimer.getMean() / 1000;
 		return result;
 	}
 	
@@ -269,20 +442,38 @@ public class GooglePlusParser
 	 * 		Problem while retrieving the data.
 	 */
 	public static Set<Relationship> extractFollowers(String target) throws MalformedURLException, UniformInterfaceException, URISyntaxException, InterruptedException, JSONException
-	{	long before = System.currentTimeMillis();
-		URL url = buildURL(followerUrlTemplate,target);
-		JSONArray json = getJSON(url);
-		//Thread.sleep(10000);
-		
-		Set<Relationship> result = parseRelationships(json,target,Mode.FOLLOWER);
-		long after = System.currentTimeMillis();
-		
-		double elapsed = after-before;
-		extractFollowersLock.lock(); //2587.25*4
-		extractFollowersAverageTime = extractFollowersAverageTime*(extractFollowersCallCount/(extractFollowersCallCount+1)) 
-			+ elapsed/(extractFollowersCallCount+1);
-		extractFollowersCallCount++;
-		extractFollowersLock.unlock();
+	{	Set<Relationship> result = new TreeSet<Relationship>();
+		extractFollowers(target,result);
+		return result;
+	}
+	
+	/**
+	 * Retrieves the incoming relationships
+	 * for the specified target, and adds them
+	 * to the specified set.
+	 * 
+	 * @param target
+	 * 		Google+ id of the considered user.
+	 * @param relationships
+	 * 		Set receiving the people following the considered user.
+	 * @return
+	 * 		The total number of followers announced by Google+.
+	 * 
+	 * @throws MalformedURLException
+	 * 		Problem while retrieving the data.
+	 * @throws UniformInterfaceException
+	 * 		Problem while retrieving the data.
+	 * @throws URISyntaxException
+	 * 		Problem while retrieving the data.
+	 * @throws InterruptedException
+	 * 		Problem while retrieving the data.
+	 * @throws JSONException
+	 * 		Problem while retrieving the data.
+	 */
+	public static int extractFollowers(String target, Set<Relationship> relationships) throws MalformedURLException, UniformInterfaceException, URISyntaxException, InterruptedException, JSONException
+	{	long before = System.nanoTime();
+		int result = streamFollowers(target,new RelationshipCollector(relationships));
+		extractFollowersTimer.recordSince(before);
 		
 		return result;
 	}
@@ -295,10 +486,7 @@ public class GooglePlusParser
 	 * 		The average time in ms.
 	 */
 	public static double getExtractFolloweesAverageTime()
-	{	double result;
-		extractFolloweesLock.lock();
-		result = extractFolloweesAverageTime;
-		extractFolloweesLock.unlock();
+	{	double result = extractFolloweesTimer.getMean() / 1000;
 		return result;
 	}
 	
@@ -323,137 +511,218 @@ public class GooglePlusParser
 	 * 		Problem while retrieving the data.
 	 */
 	public static Set<Relationship> extractFollowees(String source) throws MalformedURLException, UniformInterfaceException, URISyntaxException, InterruptedException, JSONException
-	{	long before = System.currentTimeMillis();
-		URL url = buildURL(followeeUrlTemplate,source);
-		JSONArray json = getJSON(url);
-		
-		Set<Relationship> result = parseRelationships(json,source,Mode.FOLLOWEE);
-		long after = System.currentTimeMillis();
-		
-		double elapsed = after-before;
-		extractFolloweesLock.lock();
-		extractFolloweesAverageTime = extractFolloweesAverageTime*(extractFolloweesCallCount/(extractFolloweesCallCount+1)) 
-			+ elapsed/(extractFolloweesCallCount+1);
-		extractFolloweesCallCount++;
-		extractFolloweesLock.unlock();
+	{	long before = System.nanoTime();
+		Set<Relationship> result = new TreeSet<Relationship>();
+		streamFollowees(source,new RelationshipCollector(result));
+		extractFolloweesTimer.recordSince(before);
 		
 		return result;
 	}
 
 	/**
-	 * Parses a JSON array in order
-	 * to retrieve the list of relationships
-	 * it contains. The method returns a
-	 * set of {@code Relationship} objects
-	 * whose initialization depends on the 
-	 * mode parameter.  
+	 * Retrieves the incoming relationships for
+	 * the specified target, and sends them to the
+	 * specified handler as soon as they are read,
+	 * without building the whole list in memory.
 	 * 
-	 * @param json
-	 * 		The JSON array object to be parsed.
+	 * @param target
+	 * 		Google+ id of the considered user.
+	 * @param handler
+	 * 		Object receiving the relationships.
+	 * @return
+	 * 		The total number of followers announced by Google+.
+	 * 
+	 * @throws MalformedURLException
+	 * 		Problem while retrieving the data.
+	 * @throws URISyntaxException
+	 * 		Problem while retrieving the data.
+	 * @throws InterruptedException
+	 * 		Problem while retrieving the data.
+	 */
+	public static int streamFollowers(String target, RelationshipHandler handler) throws MalformedURLException, URISyntaxException, InterruptedException
+	{	URL url = buildURL(followerUrlTemplate,target);
+		int result = streamRelationships(url,target,Mode.FOLLOWER,handler);
+		return result;
+	}
+	
+	/**
+	 * Retrieves the outgoing relationships for
+	 * the specified source, and sends them to the
+	 * specified handler as soon as they are read,
+	 * without building the whole list in memory.
+	 * 
+	 * @param source
+	 * 		Google+ id of the considered user.
+	 * @param handler
+	 * 		Object receiving the relationships.
+	 * @return
+	 * 		The number of followees read.
+	 * 
+	 * @throws MalformedURLException
+	 * 		Problem while retrieving the data.
+	 * @throws URISyntaxException
+	 * 		Problem while retrieving the data.
+	 * @throws InterruptedException
+	 * 		Problem while retrieving the data.
+	 */
+	public static int streamFollowees(String source, RelationshipHandler handler) throws MalformedURLException, URISyntaxException, InterruptedException
+	{	URL url = buildURL(followeeUrlTemplate,source);
+		int result = streamRelationships(url,source,Mode.FOLLOWEE,handler);
+		return result;
+	}
+	
+	/**
+	 * Sends the request to the specified URL and
+	 * parses the response on the fly, using a
+	 * {@link RelationshipStreamParser}. Like for
+	 * {@link #getJSON(URL)}, each attempt is authorized
+	 * by the shared {@link RateController}.
+	 * 
+	 * @param url
+	 * 		The targeted url.
 	 * @param id
 	 * 		The id of the considered Google+ user.
 	 * @param mode
 	 * 		The type of relationship (follower/followee)
+	 * @param handler
+	 * 		Object receiving the relationships.
 	 * @return
-	 * 		A set containing all the retrieved relationships.
+	 * 		For followers, the total number announced by Google+, 
+	 * 		for followees, the number of relationships read.
 	 * 
-	 * @throws JSONException
-	 * 		Problem while parsing the JSON object.
+	 * @throws URISyntaxException
+	 * 		Problem while retrieving the data.
+	 * @throws InterruptedException
+	 * 		Problem while waiting for the rate controller.
 	 */
-	private static Set<Relationship> parseRelationships(JSONArray json, String id, Mode mode) throws JSONException
-	{	Set<Relationship> result = new TreeSet<Relationship>();
-//		JSONArray personList = (JSONArray)getFromArray(json,0,2);	// NOTE v0
-//		JSONArray personList = (JSONArray)getFromArray(json,2);		// NOTE v1
-		JSONArray personList = (JSONArray)getFromArray(json,0,2);
-		
-		int size = 0;
-		if(mode==Mode.FOLLOWER)
-		{	if(json.length()==5) 
-				size = json.getInt(4);
-			// else: no followers
+	private static int streamRelationships(final URL url, String id, Mode mode, RelationshipHandler handler) throws URISyntaxException, InterruptedException
+	{	URI uri = url.toURI();
+		WebResource webRes = rawClient.resource(uri);
+		RateController controller = rateController;
+		ResponseArchive archive = GooglePlusParser.archive;
+		RelationshipStreamParser parser = null;
+		boolean retry;
+		int retried = 0;
+		do
+		{	retry = false;
+			retried++;
+			controller.acquire();
+			long before = System.nanoTime();
+			ClientResponse response = null;
+			try
+			{	response = webRes.get(ClientResponse.class);
+				long latency = (System.nanoTime()-before) / 1000000;
+				httpTimer.recordSince(before);
+				if(response.getStatus()!=ClientResponse.Status.OK.getStatusCode())
+				{	controller.reportFailure();
+					httpFailureCounter.increment();
+					retry = true;
+				}
+				else
+				{	long start = System.nanoTime();
+					InputStream in = response.getEntityInputStream();
+					byte[] body = null;
+					if(archive!=null)
+					{	body = readBody(in);
+						in = new ByteArrayInputStream(body);
+					}
+					parser = new RelationshipStreamParser(in,id,mode);
+					parser.parse(handler);
+					parseRelationshipsTimer.recordSince(start);
+					relationshipCounter.add(parser.getCount());
+					controller.reportSuccess(latency);
+					if(archive!=null)
+					{	Endpoint endpoint;
+						if(mode==Mode.FOLLOWER)
+							endpoint = Endpoint.FOLLOWER;
+						else
+							endpoint = Endpoint.FOLLOWEE;
+						archive(archive,id,endpoint,body);
+					}
+				}
+			}
+			catch(ClientHandlerException e)
+			{	controller.reportFailure();
+				httpFailureCounter.increment();
+				retry = true;		
+			}
+			catch(IOException e)
+			{	controller.reportFailure();
+				httpFailureCounter.increment();
+				retry = true;		
+			}
+			finally
+			{	if(response!=null)
+					response.close();
+			}
 		}
-		int count;
+		while(retry && retried<50);
 		
-		for(count=0;count<personList.length();count++)
-		{	JSONArray array = personList.getJSONArray(count);
-			Relationship relationship = parseRelationship(array,id,mode);
-			if(relationship!=null)	// in case it is a self-relation (we ignore it)
-				result.add(relationship);
-		}
+		if(retry)
+			throw new ClientHandlerException("Could not retrieve "+url+" after "+retried+" attempts");
 		
-		String text = "retrieved: " + count;
+		int result;
+		String text = "retrieved: " + parser.getCount();
 		if(mode==Mode.FOLLOWER)
-			text = text + "/" + size;
+		{	result = parser.getTotal();
+			text = text + "/" + result;
+		}
+		else
+			result = parser.getCount();
 		logger.log(text);
-		
 		return result;
 	}
-
+	
 	/**
-	 * Parses a JSON array in order
-	 * to retrieve the relationship
-	 * it contains. The method returns a
-	 * {@code Relationship} object
-	 * whose initialization depends on the 
-	 * mode parameter.
-	 * If the relationship involves twice the
-	 * same node, then {@code null} is returned.
-	 * 
-	 * @param json
-	 * 		The JSON array object to be parsed.
-	 * @param id1
-	 * 		The id of the considered Google+ user.
-	 * @param mode
-	 * 		The type of relationship (follower/followee)
-	 * @return
-	 * 		The retrieved relationship, or {@code null} if
-	 * 		it is a self-relationship. 
+	 * Handler simply storing the relationships
+	 * in a set of {@link Relationship} objects.
 	 * 
-	 * @throws JSONException
-	 * 		Problem while parsing the JSON object.
+	 * @since 1
+	 * @version 1
+	 * @author Vincent Labatut
 	 */
-	private static Relationship parseRelationship(JSONArray json, String id1, Mode mode) throws JSONException
-	{	Relationship result = null;
-		String id2 = (String)getFromArray(json,0,2);
-		
-		if(id1.equals(id2))
-			logger.log("WARNING: self-relationship between"+id1+" (and itself) detected");
-		else
-		{	result = new Relationship();
-			// date retrieved
-			result.setDateRetrieved(new Date());
-	
-			// source
-			if(mode==Mode.FOLLOWEE)
-				result.setSourceId(id1);
-			else
-				result.setSourceId(id2);
-			
-			// target
-			if(mode==Mode.FOLLOWER)
-				result.setTargetId(id1);
-			else
-				result.setTargetId(id2);
-			
-			// strength
-			Object temp = getFromArray(json,2,3);
-			if(temp!=null)
-			{	String strengthStr = (String) temp;
-				Float strength = new Float(strengthStr);
-				result.setStrength(strength);
-			}
+	private static class RelationshipCollector implements RelationshipHandler
+	{	
+		/**
+		 * Builds a collector filling
+		 * the specified set.
+		 * 
+		 * @param relationships
+		 * 		Set to be filled.
+		 */
+		public RelationshipCollector(Set<Relationship> relationships)
+		{	this.relationships = relationships;
+			date = new Date();
 		}
 		
-		return result;
+		/** Set to be filled */
+		private final Set<Relationship> relationships;
+		/** Date of retrieval */
+		private final Date date;
+		
+		@Override
+		public void handleRelationship(String sourceId, String targetId, Float strength)
+		{	Relationship relationship = new Relationship();
+			relationship.setDateRetrieved(date);
+			relationship.setSourceId(sourceId);
+			relationship.setTargetId(targetId);
+			relationship.setStrength(strength);
+			relationships.add(relationship);
+		}
 	}
 	
 	/////////////////////////////////////////////////////////////////
 	// COMMON		/////////////////////////////////////////////////
 	/////////////////////////////////////////////////////////////////
+	/** for statistical purposes : time to obtain the response headers (in us) */
+	private static final Histogram httpTimer = MetricsRegistry.getTimer("http.response");
+	/** for statistical purposes : number of failed requests */
+	private static final Counter httpFailureCounter = MetricsRegistry.getCounter("http.failures");
+	
 	/**
 	 * Builds the appropriate URL using
-	 * the specified template and Google+
-	 * user id.
+	 * the service root, the specified 
+	 * template and Google+ user id.
 	 * 
 	 * @param template
 	 * 		URL template.
@@ -466,7 +735,7 @@ public class GooglePlusParser
 	 * 		Problem while building the URL.
 	 */
 	private static URL buildURL(final String template, final String id) throws MalformedURLException
-	{	String urlStr = String.format(template,id);
+	{	String urlStr = serviceRoot + String.format(template,id);
 		URL result = new URL(urlStr);
 		return result;
 	}
@@ -474,7 +743,10 @@ public class GooglePlusParser
 	/**
 	 * Send the request to the specified URL,
 	 * get the response and converts it into
-	 * a JSON array object.
+	 * a JSON array object. Each attempt first
+	 * waits for the authorization of the shared
+	 * {@link RateController}, and then reports
+	 * its outcome to this controller.
 	 * 
 	 * @param url
 	 * 		The targeted url.
@@ -486,36 +758,169 @@ public class GooglePlusParser
 	 * @throws URISyntaxException
 	 * 		Problem while retrieving the data.
 	 * @throws InterruptedException
-	 * 		Problem while sleeping.
+	 * 		Problem while waiting for the rate controller.
 	 */
 	private static JSONArray getJSON(final URL url) throws UniformInterfaceException, URISyntaxException, InterruptedException
 	{	URI uri = url.toURI();
 		WebResource webRes = restClient.resource(uri);
+		RateController controller = rateController;
 		JSONArray result = null;
 		boolean retry;
 		int retried = 0;
-// TODO inserer ici un chrono	
-// TODO modified		
 		do
 		{	retry = false;
 			retried++;
+			controller.acquire();
+			long before = System.nanoTime();
+			ClientResponse response = null;
 			try
-			{	result = webRes.get(JSONArray.class);
+			{	response = webRes.get(ClientResponse.class);
+				// the latency is measured up to the first byte, the parsing time would distort it
+				long latency = (System.nanoTime()-before) / 1000000;
+				httpTimer.recordSince(before);
+				if(response.getStatus()!=ClientResponse.Status.OK.getStatusCode())
+				{	controller.reportFailure();
+					httpFailureCounter.increment();
+					retry = true;
+				}
+				else
+				{	// the response is cleaned on the fly while being parsed
+					long start = System.nanoTime();
+					result = response.getEntity(JSONArray.class);
+					parsePersonTimer.recordSince(start);
+					controller.reportSuccess(latency);
+				}
 			}
 			catch(UniformInterfaceException e)
-			{	retry = true;		
+			{	controller.reportFailure();
+				httpFailureCounter.increment();
+				retry = true;		
 			}
 			catch(ClientHandlerException e)
-			{	retry = true;		
+			{	controller.reportFailure();
+				httpFailureCounter.increment();
+				retry = true;		
 			}
 			finally
-			{	Thread.sleep(50); // per Jason S, probably a good idea to sleep a while...
+			{	if(response!=null)
+					response.close();
 			}
 		}
 		while(retry && retried<50);
 		return result;
 	}
 
+	/**
+	 * Sends the request to the specified URL and
+	 * returns the raw response, without any cleaning.
+	 * Like for {@link #getJSON(URL)}, each attempt is
+	 * authorized by the shared {@link RateController}.
+	 * 
+	 * @param url
+	 * 		The targeted url.
+	 * @return
+	 * 		The raw response, or {@code null} if it could not be retrieved.
+	 * 
+	 * @throws URISyntaxException
+	 * 		Problem while retrieving the data.
+	 * @throws InterruptedException
+	 * 		Problem while waiting for the rate controller.
+	 */
+	private static byte[] getBody(final URL url) throws URISyntaxException, InterruptedException
+	{	URI uri = url.toURI();
+		WebResource webRes = rawClient.resource(uri);
+		RateController controller = rateController;
+		byte[] result = null;
+		boolean retry;
+		int retried = 0;
+		do
+		{	retry = false;
+			retried++;
+			controller.acquire();
+			long before = System.nanoTime();
+			ClientResponse response = null;
+			try
+			{	response = webRes.get(ClientResponse.class);
+				long latency = (System.nanoTime()-before) / 1000000;
+				httpTimer.recordSince(before);
+				if(response.getStatus()!=ClientResponse.Status.OK.getStatusCode())
+				{	controller.reportFailure();
+					httpFailureCounter.increment();
+					retry = true;
+				}
+				else
+				{	result = readBody(response.getEntityInputStream());
+					controller.reportSuccess(latency);
+				}
+			}
+			catch(ClientHandlerException e)
+			{	controller.reportFailure();
+				httpFailureCounter.increment();
+				retry = true;		
+			}
+			catch(IOException e)
+			{	controller.reportFailure();
+				httpFailureCounter.increment();
+				retry = true;		
+			}
+			finally
+			{	if(response!=null)
+					response.close();
+			}
+		}
+		while(retry && retried<50);
+		return result;
+	}
+	
+	/**
+	 * Reads the whole content of the specified stream.
+	 * 
+	 * @param in
+	 * 		The stream to read.
+	 * @return
+	 * 		Its content.
+	 * 
+	 * @throws IOException
+	 * 		Problem while reading the stream.
+	 */
+	private static byte[] readBody(InputStream in) throws IOException
+	{	ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while((n=in.read(buffer))!=-1)
+			out.write(buffer,0,n);
+		byte[] result = out.toByteArray();
+		return result;
+	}
+	
+	/**
+	 * Cleans a raw response (cf. {@link GoogleJSONInputStream})
+	 * and converts it into a JSON array object.
+	 * 
+	 * @param body
+	 * 		The raw response.
+	 * @return
+	 * 		A {@code JSONArray} object representing the response,
+	 * 		or {@code null} if the response is empty.
+	 * 
+	 * @throws JSONException
+	 * 		Problem while parsing the response.
+	 */
+	private static JSONArray parseJSON(byte[] body) throws JSONException
+	{	JSONArray result = null;
+		try
+		{	InputStream in = new GoogleJSONInputStream(new ByteArrayInputStream(body));
+			String str = new String(readBody(in),"UTF-8");
+			if(str.trim().length()>0)
+				result = new JSONArray(new JSONTokener(str));
+		}
+		catch(IOException e)
+		{	// cannot happen with an in-memory stream
+			throw new JSONException(e);
+		}
+		return result;
+	}
+	
 	/**
 	 * Returns the object located at the
 	 * specified position in the specified
@@ -0,0 +1,558 @@
+package tr.edu.gsu.googleplus.parser;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.config.DefaultClientConfig;
+import com.sun.jersey.api.client.filter.ClientFilter;
+import com.sun.jersey.api.client.filter.GZIPContentEncodingFilter;
+import com.sun.jersey.client.urlconnection.HttpURLConnectionFactory;
+import com.sun.jersey.client.urlconnection.URLConnectionClientHandler;
+
+/**
+ * Transport layer used by the parser to access Google+.
+ * It builds Jersey clients which:
+ * <ul> <li>keep the connections alive between requests, 
+ * 			up to a certain number of idle connections
+ * 			for each host;</li>
+ * 		<li>limit the number of simultaneous requests
+ * 			sent to each host;</li>
+ * 		<li>use connect and read timeouts, so that a 
+ * 			stalled request does not block its thread
+ * 			forever;</li>
+ * 		<li>ask for gzip-compressed responses, and
+ * 			transparently decode them.</li>
+ * </ul>
+ * It also counts the number of requests, of opened
+ * connections, and of bytes received before and after
+ * decompression. Note the JDK does not tell when a
+ * connection is reused, so only the secured (i.e. Google+)
+ * connections are counted, when the SSL socket is created.<br/>
+ * The JDK pool of idle connections is configured through
+ * system properties, which are read when the first connection
+ * is opened: the transport must therefore be created before
+ * accessing the network.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class HttpTransport
+{
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+
+	/////////////////////////////////////////////////////////////////
+	// INIT			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Builds a transport with the default
+	 * settings: 100 connections for each host,
+	 * 10 s to connect, 2 min to read
+	 * and compressed responses.
+	 */
+	public HttpTransport()
+	{	this(100,10000,120000,true);
+	}
+	
+	/**
+	 * Builds a new transport.
+	 * 
+	 * @param maxConnections
+	 * 		Maximal number of simultaneous requests, as well as
+	 * 		of idle connections kept alive, for each host.
+	 * @param connectTimeout
+	 * 		Maximal time to open a connection (in ms).
+	 * @param readTimeout
+	 * 		Maximal time to wait for data once connected (in ms).
+	 * @param compression
+	 * 		Whether the responses should be compressed.
+	 */
+	public HttpTransport(int maxConnections, int connectTimeout, int readTimeout, boolean compression)
+	{	this.maxConnections = maxConnections;
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+		this.compression = compression;
+		
+		// configure the JDK connection pool, unless it was done on the command line
+		if(System.getProperty("http.keepAlive")==null)
+			System.setProperty("http.keepAlive","true");
+		if(System.getProperty("http.maxConnections")==null)
+			System.setProperty("http.maxConnections",Integer.toString(maxConnections));
+		
+		socketFactory = new CountingSocketFactory(HttpsURLConnection.getDefaultSSLSocketFactory());
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// SETTINGS		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Maximal number of simultaneous requests for each host */
+	private final int maxConnections;
+	/** Maximal time to open a connection (in ms) */
+	private final int connectTimeout;
+	/** Maximal time to wait for data once connected (in ms) */
+	private final int readTimeout;
+	/** Whether the responses should be compressed */
+	private final boolean compression;
+	
+	/**
+	 * Returns the maximal number of
+	 * simultaneous requests for each host.
+	 * 
+	 * @return
+	 * 		Maximal number of connections.
+	 */
+	public int getMaxConnections()
+	{	return maxConnections;
+	}
+	
+	/**
+	 * Returns the maximal time allowed
+	 * to open a connection.
+	 * 
+	 * @return
+	 * 		Connect timeout (in ms).
+	 */
+	public int getConnectTimeout()
+	{	return connectTimeout;
+	}
+	
+	/**
+	 * Returns the maximal time allowed
+	 * to wait for data once connected.
+	 * 
+	 * @return
+	 * 		Read timeout (in ms).
+	 */
+	public int getReadTimeout()
+	{	return readTimeout;
+	}
+	
+	/**
+	 * Indicates whether the responses
+	 * are requested in compressed form.
+	 * 
+	 * @return
+	 * 		{@code true} if the responses are compressed.
+	 */
+	public boolean isCompression()
+	{	return compression;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// CLIENTS		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Number of requests currently allowed for each host */
+	private final ConcurrentMap<String,Semaphore> hostPermits = new ConcurrentHashMap<String,Semaphore>();
+	/** Socket factory counting the opened secured connections */
+	private final CountingSocketFactory socketFactory;
+	
+	/**
+	 * Builds a new Jersey client using this
+	 * transport. The specified filter, if any,
+	 * receives the decompressed responses.
+	 * 
+	 * @param contentFilter
+	 * 		Filter processing the content of the responses, or {@code null} if none.
+	 * @return
+	 * 		The new client.
+	 */
+	public Client createClient(ClientFilter contentFilter)
+	{	URLConnectionClientHandler handler = new URLConnectionClientHandler(new HttpURLConnectionFactory()
+		{	@Override
+			public HttpURLConnection getHttpURLConnection(URL url) throws IOException
+			{	HttpURLConnection result = (HttpURLConnection)url.openConnection();
+				// the connections are pooled by factory, so the same instance must always be used
+				if(result instanceof HttpsURLConnection)
+					((HttpsURLConnection)result).setSSLSocketFactory(socketFactory);
+				return result;
+			}
+		});
+		Client result = new Client(handler,new DefaultClientConfig());
+		result.setConnectTimeout(connectTimeout);
+		result.setReadTimeout(readTimeout);
+		
+		// the last added filter is the first to process the request, and the last to process the response
+		result.addFilter(new CountingFilter(true));
+		if(compression)
+			result.addFilter(new GZIPContentEncodingFilter(false));
+		result.addFilter(new CountingFilter(false));
+		if(contentFilter!=null)
+			result.addFilter(contentFilter);
+		return result;
+	}
+	
+	/**
+	 * Returns the semaphore controlling the
+	 * number of simultaneous requests sent to
+	 * the specified host.
+	 * 
+	 * @param host
+	 * 		Name and port of the host.
+	 * @return
+	 * 		The corresponding semaphore.
+	 */
+	private Semaphore getPermits(String host)
+	{	Semaphore result = hostPermits.get(host);
+		if(result==null)
+		{	Semaphore permits = new Semaphore(maxConnections,true);
+			result = hostPermits.putIfAbsent(host,permits);
+			if(result==null)
+				result = permits;
+		}
+		return result;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// COUNTERS		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Number of requests sent so far */
+	private final AtomicLong requestCount = new AtomicLong(0);
+	/** Number of secured requests sent so far */
+	private final AtomicLong securedCount = new AtomicLong(0);
+	/** Number of secured connections opened so far */
+	private final AtomicLong connectionCount = new AtomicLong(0);
+	/** Number of bytes received (possibly compressed) */
+	private final AtomicLong wireBytes = new AtomicLong(0);
+	/** Number of bytes obtained after decompression */
+	private final AtomicLong decodedBytes = new AtomicLong(0);
+	
+	/**
+	 * Returns the number of requests
+	 * sent so far.
+	 * 
+	 * @return
+	 * 		Number of requests.
+	 */
+	public long getRequestCount()
+	{	return requestCount.get();
+	}
+	
+	/**
+	 * Returns the number of secured
+	 * connections opened so far.
+	 * 
+	 * @return
+	 * 		Number of connections.
+	 */
+	public long getConnectionCount()
+	{	return connectionCount.get();
+	}
+	
+	/**
+	 * Returns the proportion of secured
+	 * requests which did not need to open
+	 * a new connection.
+	 * 
+	 * @return
+	 * 		Connection reuse ratio (between 0 and 1).
+	 */
+	public double getReuseRatio()
+	{	double result = 0;
+		long secured = securedCount.get();
+		if(secured>0)
+			result = Math.max(0,1 - connectionCount.get()/(double)secured);
+		return result;
+	}
+	
+	/**
+	 * Returns the number of bytes received,
+	 * before decompression.
+	 * 
+	 * @return
+	 * 		Number of bytes on the wire.
+	 */
+	public long getWireBytes()
+	{	return wireBytes.get();
+	}
+	
+	/**
+	 * Returns the number of bytes obtained
+	 * after decompression.
+	 * 
+	 * @return
+	 * 		Number of decoded bytes.
+	 */
+	public long getDecodedBytes()
+	{	return decodedBytes.get();
+	}
+	
+	/**
+	 * Logs the counters of this transport.
+	 */
+	public void logStatistics()
+	{	NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
+		nf.setMaximumFractionDigits(2);
+		long wire = wireBytes.get();
+		long decoded = decodedBytes.get();
+		String msg = "Transport: "+requestCount.get()+" requests";
+		if(securedCount.get()>0)
+			msg = msg + " - "+connectionCount.get()+" secured connections (reuse ratio: "+nf.format(getReuseRatio())+")";
+		msg = msg + " - "+nf.format(wire/1048576.0)+" MB received, "+nf.format(decoded/1048576.0)+" MB decoded";
+		if(wire>0)
+			msg = msg + " (ratio: "+nf.format(decoded/(double)wire)+")";
+		logger.log(msg);
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// FILTER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Jersey filter counting the bytes of the
+	 * responses. The filter placed before
+	 * decompression also counts the requests,
+	 * and limits the number of simultaneous
+	 * requests for each host: the permit is
+	 * released once the response is closed.
+	 * 
+	 * @since 1
+	 * @version 1
+	 * @author Vincent Labatut
+	 */
+	private class CountingFilter extends ClientFilter
+	{	
+		/**
+		 * Builds a new filter.
+		 * 
+		 * @param wire
+		 * 		{@code true} if the filter receives the responses
+		 * 		before decompression.
+		 */
+		public CountingFilter(boolean wire)
+		{	this.wire = wire;
+		}
+		
+		/** Whether the filter receives the responses before decompression */
+		private final boolean wire;
+		
+		@Override
+		public ClientResponse handle(ClientRequest req) throws ClientHandlerException
+		{	ClientResponse result;
+			if(wire)
+			{	URL url;
+				try
+				{	url = req.getURI().toURL();
+				}
+				catch(IOException e)
+				{	throw new ClientHandlerException(e);
+				}
+				requestCount.incrementAndGet();
+				if(url.getProtocol().equals("https"))
+					securedCount.incrementAndGet();
+				
+				Semaphore permits = getPermits(url.getAuthority());
+				try
+				{	permits.acquire();
+				}
+				catch(InterruptedException e)
+				{	throw new ClientHandlerException(e);
+				}
+				try
+				{	result = getNext().handle(req);
+				}
+				catch(ClientHandlerException e)
+				{	permits.release();
+					throw e;
+				}
+				catch(RuntimeException e)
+				{	permits.release();
+					throw e;
+				}
+				InputStream in = result.getEntityInputStream();
+				if(in==null)
+					permits.release();
+				else
+					result.setEntityInputStream(new CountingInputStream(in,wireBytes,permits));
+			}
+			else
+			{	result = getNext().handle(req);
+				InputStream in = result.getEntityInputStream();
+				if(in!=null)
+					result.setEntityInputStream(new CountingInputStream(in,decodedBytes,null));
+			}
+			return result;
+		}
+	}
+	
+	/**
+	 * Stream counting the bytes read through it,
+	 * and possibly releasing a permit when closed.
+	 * 
+	 * @since 1
+	 * @version 1
+	 * @author Vincent Labatut
+	 */
+	private static class CountingInputStream extends FilterInputStream
+	{	
+		/**
+		 * Builds a new counting stream.
+		 * 
+		 * @param in
+		 * 		Underlying stream.
+		 * @param counter
+		 * 		Counter to update.
+		 * @param permits
+		 * 		Semaphore to release when the stream is closed,
+		 * 		or {@code null} if none.
+		 */
+		public CountingInputStream(InputStream in, AtomicLong counter, Semaphore permits)
+		{	super(in);
+			this.counter = counter;
+			this.permits = permits;
+		}
+		
+		/** Counter to update */
+		private final AtomicLong counter;
+		/** Semaphore to release when the stream is closed */
+		private final Semaphore permits;
+		/** Whether the stream was already closed */
+		private final AtomicBoolean closed = new AtomicBoolean(false);
+		
+		@Override
+		public int read() throws IOException
+		{	int result = super.read();
+			if(result>=0)
+				counter.incrementAndGet();
+			return result;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{	int result = super.read(b,off,len);
+			if(result>0)
+				counter.addAndGet(result);
+			return result;
+		}
+		
+		@Override
+		public void close() throws IOException
+		{	try
+			{	super.close();
+			}
+			finally
+			{	if(closed.compareAndSet(false,true) && permits!=null)
+					permits.release();
+			}
+		}
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// SOCKETS		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * SSL socket factory counting the
+	 * created sockets, i.e. the opened
+	 * secured connections.
+	 * 
+	 * @since 1
+	 * @version 1
+	 * @author Vincent Labatut
+	 */
+	private class CountingSocketFactory extends SSLSocketFactory
+	{	
+		/**
+		 * Builds a counting factory.
+		 * 
+		 * @param factory
+		 * 		Factory actually creating the sockets.
+		 */
+		public CountingSocketFactory(SSLSocketFactory factory)
+		{	this.factory = factory;
+		}
+		
+		/** Factory actually creating the sockets */
+		private final SSLSocketFactory factory;
+		
+		@Override
+		public String[] getDefaultCipherSuites()
+		{	return factory.getDefaultCipherSuites();
+		}
+		
+		@Override
+		public String[] getSupportedCipherSuites()
+		{	return factory.getSupportedCipherSuites();
+		}
+		
+		@Override
+		public Socket createSocket() throws IOException
+		{	connectionCount.incrementAndGet();
+			return factory.createSocket();
+		}
+		
+		@Override
+		public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException
+		{	connectionCount.incrementAndGet();
+			return factory.createSocket(s,host,port,autoClose);
+		}
+		
+		@Override
+		public Socket createSocket(String host, int port) throws IOException
+		{	connectionCount.incrementAndGet();
+			return factory.createSocket(host,port);
+		}
+		
+		@Override
+		public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException
+		{	connectionCount.incrementAndGet();
+			return factory.createSocket(host,port,localHost,localPort);
+		}
+		
+		@Override
+		public Socket createSocket(InetAddress host, int port) throws IOException
+		{	connectionCount.incrementAndGet();
+			return factory.createSocket(host,port);
+		}
+		
+		@Override
+		public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException
+		{	connectionCount.incrementAndGet();
+			return factory.createSocket(address,port,localAddress,localPort);
+		}
+	}
+}
@@ -0,0 +1,286 @@
+package tr.edu.gsu.googleplus.parser;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+
+/**
+ * Token bucket shared by all the threads accessing
+ * Google+. Each request must first take a token,
+ * and tokens are produced at a certain rate. This rate
+ * is not fixed: it is adapted after each request
+ * by a {@link RatePolicy}, depending on the observed
+ * errors and latencies. This replaces the constant
+ * pauses previously used to avoid triggering the
+ * G+ captcha mechanism.
+ *
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class RateController
+{
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+
+	/////////////////////////////////////////////////////////////////
+	// INIT			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Builds a new controller.
+	 *
+	 * @param policy
+	 * 		Policy used to adapt the rate.
+	 * @param initialRate
+	 * 		Initial rate (in requests per second).
+	 * @param minRate
+	 * 		Minimal rate (in requests per second).
+	 * @param maxRate
+	 * 		Maximal rate (in requests per second).
+	 * @param burst
+	 * 		Maximal number of tokens which can be accumulated.
+	 */
+	public RateController(RatePolicy policy, double initialRate, double minRate, double maxRate, int burst)
+	{	this.policy = policy;
+		this.rate = initialRate;
+		this.minRate = minRate;
+		this.maxRate = maxRate;
+		this.burst = burst;
+		tokens = burst;
+		lastRefill = System.nanoTime();
+		lastSample = System.currentTimeMillis();
+	}
+
+	/////////////////////////////////////////////////////////////////
+	// RATE			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Policy used to adapt the rate */
+	private RatePolicy policy;
+	/** Current rate (in requests per second) */
+	private double rate;
+	/** Minimal rate (in requests per second) */
+	private final double minRate;
+	/** Maximal rate (in requests per second) */
+	private final double maxRate;
+
+	/**
+	 * Returns the current target rate.
+	 *
+	 * @return
+	 * 		Current rate (in requests per second).
+	 */
+	public synchronized double getRate()
+	{	return rate;
+	}
+
+	/**
+	 * Changes the policy used to
+	 * adapt the rate.
+	 *
+	 * @param policy
+	 * 		New rate policy.
+	 */
+	public synchronized void setPolicy(RatePolicy policy)
+	{	this.policy = policy;
+	}
+
+	/**
+	 * Changes the rate, making sure it
+	 * stays between the min and max values.
+	 *
+	 * @param newRate
+	 * 		Proposed new rate.
+	 */
+	private void updateRate(double newRate)
+	{	refill();
+		rate = Math.max(minRate,Math.min(maxRate,newRate));
+	}
+
+	/**
+	 * Must be called after each successful request.
+	 *
+	 * @param latency
+	 * 		Time needed to obtain the response headers (in ms).
+	 */
+	public synchronized void reportSuccess(long latency)
+	{	successes.incrementAndGet();
+		updateRate(policy.onSuccess(rate,latency));
+	}
+
+	/**
+	 * Must be called after each failed request.
+	 */
+	public synchronized void reportFailure()
+	{	failures.incrementAndGet();
+		updateRate(policy.onFailure(rate));
+	}
+
+	/////////////////////////////////////////////////////////////////
+	// TOKENS		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Maximal number of tokens which can be accumulated */
+	private final int burst;
+	/** Number of tokens currently available */
+	private double tokens;
+	/** Last time the tokens were refilled (in ns) */
+	private long lastRefill;
+
+	/**
+	 * Produces the tokens corresponding
+	 * to the time elapsed since the last
+	 * refill.
+	 */
+	private void refill()
+	{	long now = System.nanoTime();
+		double elapsed = (now - lastRefill) / 1e9;
+		tokens = Math.min(burst,tokens + elapsed*rate);
+		lastRefill = now;
+	}
+
+	/**
+	 * Takes a token, waiting if none is
+	 * currently available. This method must
+	 * be called before each request.
+	 *
+	 * @throws InterruptedException
+	 * 		Problem while waiting for a token.
+	 */
+	public void acquire() throws InterruptedException
+	{	long wait;
+		do
+		{	synchronized(this)
+			{	refill();
+				if(tokens>=1)
+				{	tokens--;
+					wait = 0;
+				}
+				else
+					wait = (long)Math.ceil((1-tokens)/rate*1000);
+			}
+			if(wait>0)
+				Thread.sleep(wait);
+		}
+		while(wait>0);
+
+		granted.incrementAndGet();
+		sample();
+	}
+
+	/////////////////////////////////////////////////////////////////
+	// COUNTERS		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Period between two logged samples (in ms) */
+	private static final long SAMPLE_PERIOD = 60000;
+	/** Number of tokens granted so far */
+	private final AtomicLong granted = new AtomicLong(0);
+	/** Number of successful requests so far */
+	private final AtomicLong successes = new AtomicLong(0);
+	/** Number of failed requests so far */
+	private final AtomicLong failures = new AtomicLong(0);
+	/** Time of the last sample (in ms) */
+	private long lastSample;
+	/** Number of granted tokens at the time of the last sample */
+	private long lastGranted = 0;
+	/** Number of failures at the time of the last sample */
+	private long lastFailures = 0;
+	/** Effective rate measured during the last sampling period */
+	private double effectiveRate = 0;
+
+	/**
+	 * Returns the number of tokens
+	 * granted since the creation of
+	 * this controller.
+	 *
+	 * @return
+	 * 		Number of granted tokens.
+	 */
+	public long getGranted()
+	{	return granted.get();
+	}
+
+	/**
+	 * Returns the number of successful
+	 * requests reported so far.
+	 *
+	 * @return
+	 * 		Number of successful requests.
+	 */
+	public long getSuccesses()
+	{	return successes.get();
+	}
+
+	/**
+	 * Returns the number of failed
+	 * requests reported so far.
+	 *
+	 * @return
+	 * 		Number of failed requests.
+	 */
+	public long getFailures()
+	{	return failures.get();
+	}
+
+	/**
+	 * Returns the effective rate, i.e. the
+	 * number of tokens actually granted per second,
+	 * measured over the last sampling period.
+	 *
+	 * @return
+	 * 		Effective rate (in requests per second).
+	 */
+	public synchronized double getEffectiveRate()
+	{	return effectiveRate;
+	}
+
+	/**
+	 * Updates the effective rate and logs the
+	 * counters, if the sampling period is over.
+	 */
+	private void sample()
+	{	String msg = null;
+		synchronized(this)
+		{	long now = System.currentTimeMillis();
+			long elapsed = now - lastSample;
+			if(elapsed>=SAMPLE_PERIOD)
+			{	long g = granted.get();
+				long f = failures.get();
+				effectiveRate = (g-lastGranted) * 1000.0 / elapsed;
+				NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
+				nf.setMaximumFractionDigits(2);
+				msg = "Request rate: target="+nf.format(rate)+"/s effective="+nf.format(effectiveRate)+"/s failures="+(f-lastFailures)+" (total: "+g+" requests, "+f+" failures)";
+				lastSample = now;
+				lastGranted = g;
+				lastFailures = f;
+			}
+		}
+		if(msg!=null)
+			logger.log(msg);
+	}
+}
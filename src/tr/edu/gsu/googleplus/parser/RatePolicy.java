@@ -0,0 +1,61 @@
+package tr.edu.gsu.googleplus.parser;
+
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Policy used by a {@link RateController} to adapt
+ * its request rate, depending on the outcome of the
+ * requests previously sent to Google+.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public interface RatePolicy
+{	
+	/**
+	 * Returns the new rate to be used after
+	 * a request was successfully processed.
+	 * 
+	 * @param rate
+	 * 		Current rate (in requests per second).
+	 * @param latency
+	 * 		Time needed to obtain the response headers (in ms),
+	 * 		i.e. without reading nor parsing the response body.
+	 * @return
+	 * 		The new rate (in requests per second).
+	 */
+	public double onSuccess(double rate, long latency);
+	
+	/**
+	 * Returns the new rate to be used after
+	 * a request failed (error code, captcha,
+	 * connection problem, etc.).
+	 * 
+	 * @param rate
+	 * 		Current rate (in requests per second).
+	 * @return
+	 * 		The new rate (in requests per second).
+	 */
+	public double onFailure(double rate);
+}
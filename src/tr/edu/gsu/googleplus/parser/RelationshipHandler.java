@@ -0,0 +1,53 @@
+package tr.edu.gsu.googleplus.parser;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Receives the relationships read by a
+ * {@link RelationshipStreamParser}, one at a time,
+ * as soon as they are parsed. This allows processing
+ * very large lists of followers without keeping the
+ * whole response in memory.<br/>
+ * Note that if a request has to be sent again
+ * (e.g. because the connection was lost in the middle
+ * of the response), some relationships might be
+ * notified twice.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public interface RelationshipHandler
+{	
+	/**
+	 * Called for each relationship read
+	 * in the response.
+	 * 
+	 * @param sourceId
+	 * 		Id of the follower.
+	 * @param targetId
+	 * 		Id of the followee.
+	 * @param strength
+	 * 		Strength of the relationship, or {@code null} if not specified.
+	 */
+	public void handleRelationship(String sourceId, String targetId, Float strength);
+}
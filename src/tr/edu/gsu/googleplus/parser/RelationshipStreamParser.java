@@ -0,0 +1,401 @@
+package tr.edu.gsu.googleplus.parser;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+import tr.edu.gsu.googleplus.parser.GooglePlusParser.Mode;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+
+/**
+ * Streaming parser for the follower/followee lists
+ * returned by Google+. Instead of building the whole
+ * response as a {@code String}, cleaning it and converting
+ * it to a JSON tree, the bytes are tokenized on the fly and
+ * each relationship is sent to a {@link RelationshipHandler}
+ * as soon as it is read. The parser directly handles the
+ * anti-XSSI prefix and the sparse arrays used by Google+
+ * (e.g. {@code [,,"id"]}), since holes are simply elements
+ * without value. Its memory usage does not depend on the
+ * number of relationships.<br/>
+ * The parser only keeps track of the position of the current
+ * token in the nested arrays. In the current layout, the id of
+ * the i<sup>th</sup> neighbor is located at {@code [0][2][i][0][2]},
+ * its strength at {@code [0][2][i][2][3]}, and the total number
+ * of followers at {@code [4]} (in the v1 layout, the list was
+ * directly located at {@code [2]}).
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class RelationshipStreamParser
+{	
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+	
+	/////////////////////////////////////////////////////////////////
+	// INIT			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Builds a parser for the specified response.
+	 * 
+	 * @param in
+	 * 		Stream containing the raw response (possibly including the anti-XSSI prefix).
+	 * @param id
+	 * 		Id of the considered Google+ user.
+	 * @param mode
+	 * 		The type of relationship (follower/followee).
+	 */
+	public RelationshipStreamParser(InputStream in, String id, Mode mode)
+	{	this.in = in;
+		this.id = id;
+		this.mode = mode;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// DATA			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Id of the considered Google+ user */
+	private final String id;
+	/** The type of relationship (follower/followee) */
+	private final Mode mode;
+	/** Total number of followers announced in the response */
+	private int total = 0;
+	/** Number of neighbors read in the response */
+	private int count = 0;
+	
+	/**
+	 * Returns the total number of followers
+	 * announced in the response (only for
+	 * follower lists, 0 otherwise).
+	 * 
+	 * @return
+	 * 		Announced number of followers.
+	 */
+	public int getTotal()
+	{	return total;
+	}
+
+	/**
+	 * Returns the number of neighbors
+	 * read in the response (including 
+	 * self-relationships, which are not 
+	 * notified to the handler).
+	 * 
+	 * @return
+	 * 		Number of neighbors read.
+	 */
+	public int getCount()
+	{	return count;
+	}
+
+	/////////////////////////////////////////////////////////////////
+	// INPUT		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Size of the read buffer */
+	private static final int BUFFER_SIZE = 8192;
+	/** Stream containing the response */
+	private final InputStream in;
+	/** Read buffer */
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	/** Position of the next byte in the buffer */
+	private int position = 0;
+	/** Number of bytes in the buffer */
+	private int limit = 0;
+	
+	/**
+	 * Returns the next byte of the response,
+	 * or -1 if the end was reached.
+	 * 
+	 * @return
+	 * 		The next byte.
+	 * 
+	 * @throws IOException
+	 * 		Problem while reading the stream.
+	 */
+	private int read() throws IOException
+	{	if(position==limit)
+		{	limit = in.read(buffer,0,BUFFER_SIZE);
+			position = 0;
+			if(limit<=0)
+			{	limit = 0;
+				return -1;
+			}
+		}
+		int result = buffer[position] & 0xFF;
+		position++;
+		return result;
+	}
+	
+	/**
+	 * Puts back the last read byte, so that
+	 * it is returned by the next call to {@link #read()}.
+	 */
+	private void unread()
+	{	position--;
+	}
+
+	/////////////////////////////////////////////////////////////////
+	// PARSING		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Maximal nesting level */
+	private static final int MAX_DEPTH = 64;
+	/** Position of the current token in each nesting level */
+	private final int[] path = new int[MAX_DEPTH];
+	/** Current nesting level */
+	private int depth = 0;
+	/** Id of the neighbor currently read */
+	private String neighborId = null;
+	/** Strength of the relationship currently read */
+	private Float strength = null;
+	/** Buffer used to read strings */
+	private byte[] stringBuffer = new byte[64];
+
+	/**
+	 * Parses the whole response and notifies
+	 * the handler of each relationship.
+	 * 
+	 * @param handler
+	 * 		Object receiving the relationships.
+	 * 
+	 * @throws IOException
+	 * 		Problem while reading the stream, or malformed response.
+	 */
+	public void parse(RelationshipHandler handler) throws IOException
+	{	// skip the prefix
+		int c;
+		do
+			c = read();
+		while(c!=-1 && c!='[');
+		
+		while(c!=-1)
+		{	switch(c)
+			{	case '[':
+				case '{':
+					if(depth==MAX_DEPTH)
+						throw new IOException("Nesting level too high in the response");
+					path[depth] = 0;
+					depth++;
+					break;
+				case ']':
+				case '}':
+					if(depth==4 && isNeighborLevel())
+						endNeighbor(handler);
+					depth--;
+					if(depth==0)
+						return;
+					break;
+				case ',':
+					if(depth>0)
+						path[depth-1]++;
+					break;
+				case '"':
+					readString();
+					break;
+				case ' ':
+				case '\t':
+				case '\r':
+				case '\n':
+				case ':':
+					break;
+				default:
+					readLiteral(c);
+			}
+			c = read();
+		}
+		if(depth>0)
+			throw new IOException("Truncated response");
+	}
+	
+	/**
+	 * Checks if the current position corresponds
+	 * to the neighbor list, i.e. {@code [0][2]}.
+	 * 
+	 * @return
+	 * 		{@code true} iff we are inside the neighbor list.
+	 */
+	private boolean isNeighborLevel()
+	{	boolean result = path[0]==0 && path[1]==2;
+		return result;
+	}
+	
+	/**
+	 * Reads a string value. It is decoded only
+	 * if it is located at a relevant position.
+	 * 
+	 * @throws IOException
+	 * 		Problem while reading the stream.
+	 */
+	private void readString() throws IOException
+	{	boolean isId = depth==5 && isNeighborLevel() && path[3]==0 && path[4]==2;
+		boolean isStrength = depth==5 && isNeighborLevel() && path[3]==2 && path[4]==3;
+		boolean keep = isId || isStrength;
+		
+		int length = 0;
+		int c = read();
+		while(c!='"')
+		{	if(c==-1)
+				throw new IOException("Truncated response");
+			boolean escaped = c=='\\';
+			if(escaped)
+			{	c = read();
+				switch(c)
+				{	case 'n': c = '\n'; break;
+					case 't': c = '\t'; break;
+					case 'r': c = '\r'; break;
+					case 'b': c = '\b'; break;
+					case 'f': c = '\f'; break;
+					case 'u':
+					{	int code = 0;
+						for(int i=0;i<4;i++)
+							code = code*16 + Character.digit(read(),16);
+						c = code;
+						break;
+					}
+					case -1:
+						throw new IOException("Truncated response");
+					// default: the character itself ('"', '\\', '/', etc.)
+				}
+			}
+			if(keep)
+			{	if(length+3>stringBuffer.length)
+				{	byte[] temp = new byte[stringBuffer.length*2];
+					System.arraycopy(stringBuffer,0,temp,0,length);
+					stringBuffer = temp;
+				}
+				if(escaped)
+					length = appendChar(c,length);
+				else
+					stringBuffer[length++] = (byte)c;
+			}
+			c = read();
+		}
+		
+		if(isId)
+			neighborId = decode(length);
+		else if(isStrength)
+			strength = Float.valueOf(decode(length));
+	}
+	
+	/**
+	 * Appends a character coming from an escape
+	 * sequence to the string buffer, using the
+	 * UTF-8 encoding (the other bytes are already
+	 * encoded, and are copied as is).
+	 * 
+	 * @param c
+	 * 		The character.
+	 * @param length
+	 * 		Current length of the string buffer.
+	 * @return
+	 * 		New length of the string buffer.
+	 */
+	private int appendChar(int c, int length)
+	{	if(c<0x80)
+			stringBuffer[length++] = (byte)c;
+		else if(c<0x800)
+		{	stringBuffer[length++] = (byte)(0xC0 | (c>>6));
+			stringBuffer[length++] = (byte)(0x80 | (c & 0x3F));
+		}
+		else
+		{	stringBuffer[length++] = (byte)(0xE0 | (c>>12));
+			stringBuffer[length++] = (byte)(0x80 | ((c>>6) & 0x3F));
+			stringBuffer[length++] = (byte)(0x80 | (c & 0x3F));
+		}
+		return length;
+	}
+	
+	/**
+	 * Converts the content of the string buffer.
+	 * 
+	 * @param length
+	 * 		Length of the string buffer.
+	 * @return
+	 * 		The corresponding string.
+	 * 
+	 * @throws UnsupportedEncodingException
+	 * 		Problem with the UTF-8 encoding.
+	 */
+	private String decode(int length) throws UnsupportedEncodingException
+	{	String result = new String(stringBuffer,0,length,"UTF-8");
+		return result;
+	}
+	
+	/**
+	 * Reads a literal value (number, {@code true}, 
+	 * {@code false} or {@code null}). Only the total
+	 * number of followers is actually recorded.
+	 * 
+	 * @param first
+	 * 		First character of the literal.
+	 * 
+	 * @throws IOException
+	 * 		Problem while reading the stream.
+	 */
+	private void readLiteral(int first) throws IOException
+	{	boolean isTotal = depth==1 && path[0]==4;
+		long value = 0;
+		boolean numeric = true;
+		int c = first;
+		while(c!=-1 && c!=',' && c!=']' && c!='}' && c!=' ' && c!='\r' && c!='\n' && c!='\t')
+		{	if(c>='0' && c<='9')
+				value = value*10 + (c-'0');
+			else
+				numeric = false;
+			c = read();
+		}
+		if(c!=-1)
+			unread();
+		
+		if(isTotal && numeric)
+			total = (int)value;
+	}
+	
+	/**
+	 * Called at the end of each element
+	 * of the neighbor list, in order to
+	 * notify the handler.
+	 * 
+	 * @param handler
+	 * 		Object receiving the relationships.
+	 */
+	private void endNeighbor(RelationshipHandler handler)
+	{	if(neighborId!=null)
+		{	count++;
+			if(id.equals(neighborId))
+				logger.log("WARNING: self-relationship between"+id+" (and itself) detected");
+			else if(mode==Mode.FOLLOWEE)
+				handler.handleRelationship(id,neighborId,strength);
+			else
+				handler.handleRelationship(neighborId,id,strength);
+		}
+		neighborId = null;
+		strength = null;
+	}
+}
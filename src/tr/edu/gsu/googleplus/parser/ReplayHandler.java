@@ -0,0 +1,47 @@
+package tr.edu.gsu.googleplus.parser;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import tr.edu.gsu.googleplus.data.Person;
+
+/**
+ * Receives the data obtained when parsing 
+ * an archive of raw Google+ responses
+ * (cf. {@link ArchiveReplayer}). Since the archive
+ * is processed by several threads, the implementations
+ * of this interface must be thread-safe.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public interface ReplayHandler extends RelationshipHandler
+{
+	/**
+	 * Called for each valid profile
+	 * found in the archive.
+	 * 
+	 * @param person
+	 * 		The parsed person.
+	 */
+	public void handlePerson(Person person);
+}
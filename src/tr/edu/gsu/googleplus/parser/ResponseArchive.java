@@ -0,0 +1,356 @@
+package tr.edu.gsu.googleplus.parser;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+
+/**
+ * Archive of the raw responses sent by Google+.
+ * Each response is compressed independently as a
+ * complete gzip member and appended to the current
+ * segment file, so any record can be read directly
+ * from its offset (and a whole segment can still be
+ * read with standard tools such as {@code zcat}).
+ * Once a segment exceeds a certain size, a new one
+ * is started.<br/>
+ * An index file lists, for each record, the concerned
+ * Google+ id, the endpoint, the segment, the offset and
+ * the length of the compressed data. The responses can
+ * therefore be parsed again later (cf. {@link ArchiveReplayer}),
+ * for instance after a change in the G+ format, without
+ * crawling the network again.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class ResponseArchive
+{
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+	
+	/////////////////////////////////////////////////////////////////
+	// INIT			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Default maximal size of a segment (in bytes) */
+	public static final long DEFAULT_SEGMENT_SIZE = 256*1024*1024;
+	
+	/**
+	 * Opens the archive located in the specified
+	 * folder, using the default segment size. 
+	 * 
+	 * @param folder
+	 * 		Folder containing the archive.
+	 * 
+	 * @throws IOException
+	 * 		Problem while opening the archive.
+	 */
+	public ResponseArchive(String folder) throws IOException
+	{	this(folder,DEFAULT_SEGMENT_SIZE);
+	}
+	
+	/**
+	 * Opens the archive located in the specified
+	 * folder. If the folder does not exist, it is
+	 * created. Otherwise, the new responses will be
+	 * appended to the existing archive.
+	 * 
+	 * @param folder
+	 * 		Folder containing the archive.
+	 * @param segmentSize
+	 * 		Maximal size of a segment (in bytes).
+	 * 
+	 * @throws IOException
+	 * 		Problem while opening the archive.
+	 */
+	public ResponseArchive(String folder, long segmentSize) throws IOException
+	{	this.folder = new File(folder);
+		this.segmentSize = segmentSize;
+		this.folder.mkdirs();
+		
+		// look for the last existing segment
+		segment = 0;
+		while(getSegmentFile(segment+1).exists())
+			segment++;
+		File file = getSegmentFile(segment);
+		offset = file.length();
+		segmentOut = new FileOutputStream(file,true);
+		
+		File indexFile = new File(this.folder,INDEX_FILE);
+		indexOut = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(indexFile,true),"UTF-8"));
+		logger.log("Archive opened in "+this.folder+" (segment "+segment+", offset "+offset+")");
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// ENDPOINTS	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Google+ services whose 
+	 * responses can be archived.
+	 * 
+	 * @since 1
+	 * @version 1
+	 * @author Vincent Labatut
+	 */
+	public enum Endpoint
+	{	/** Profile of a user */
+		PROFILE,
+		/** Users following a user */
+		FOLLOWER,
+		/** Users followed by a user */
+		FOLLOWEE;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// FILES		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Name of the index file */
+	private static final String INDEX_FILE = "index.txt";
+	/** Prefix of the segment files */
+	private static final String SEGMENT_PREFIX = "segment-";
+	/** Suffix of the segment files */
+	private static final String SEGMENT_SUFFIX = ".gz";
+	/** Folder containing the archive */
+	private final File folder;
+	/** Maximal size of a segment */
+	private final long segmentSize;
+	/** Number of the current segment */
+	private int segment;
+	/** Size of the current segment */
+	private long offset;
+	/** Stream used to write the current segment */
+	private FileOutputStream segmentOut;
+	/** Stream used to write the index */
+	private BufferedWriter indexOut;
+	
+	/**
+	 * Returns the file corresponding
+	 * to the specified segment.
+	 * 
+	 * @param segment
+	 * 		Number of the segment.
+	 * @return
+	 * 		The corresponding file.
+	 */
+	File getSegmentFile(int segment)
+	{	String name = SEGMENT_PREFIX + String.format("%05d",segment) + SEGMENT_SUFFIX;
+		File result = new File(folder,name);
+		return result;
+	}
+	
+	/**
+	 * Closes the files used by this archive.
+	 * 
+	 * @throws IOException
+	 * 		Problem while closing the files.
+	 */
+	public synchronized void close() throws IOException
+	{	segmentOut.close();
+		indexOut.close();
+		logger.log("Archive closed");
+	}
+
+	/////////////////////////////////////////////////////////////////
+	// WRITING		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Compresses the specified response and appends
+	 * it to the archive. The compression is performed 
+	 * before locking the archive, so several threads
+	 * can store their responses concurrently.
+	 * 
+	 * @param id
+	 * 		Google+ id of the concerned user.
+	 * @param endpoint
+	 * 		Service which sent the response.
+	 * @param body
+	 * 		Raw response.
+	 * 
+	 * @throws IOException
+	 * 		Problem while writing the archive.
+	 */
+	public void store(String id, Endpoint endpoint, byte[] body) throws IOException
+	{	ByteArrayOutputStream buffer = new ByteArrayOutputStream(body.length/4+64);
+		GZIPOutputStream gzip = new GZIPOutputStream(buffer);
+		gzip.write(body);
+		gzip.close();
+		byte[] compressed = buffer.toByteArray();
+		long time = System.currentTimeMillis();
+		
+		synchronized(this)
+		{	if(offset>0 && offset+compressed.length>segmentSize)
+			{	segmentOut.close();
+				segment++;
+				offset = 0;
+				segmentOut = new FileOutputStream(getSegmentFile(segment),true);
+			}
+			segmentOut.write(compressed);
+			indexOut.write(id+"\t"+endpoint+"\t"+segment+"\t"+offset+"\t"+compressed.length+"\t"+time);
+			indexOut.newLine();
+			indexOut.flush();
+			offset = offset + compressed.length;
+		}
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// READING		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Reads the index of the archive. The entries
+	 * are listed in the order they were stored.
+	 * 
+	 * @return
+	 * 		List of the archived responses.
+	 * 
+	 * @throws IOException
+	 * 		Problem while reading the index.
+	 */
+	public List<Entry> readIndex() throws IOException
+	{	List<Entry> result = new ArrayList<Entry>();
+		synchronized(this)
+		{	indexOut.flush();
+		}
+		File indexFile = new File(folder,INDEX_FILE);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile),"UTF-8"));
+		try
+		{	String line;
+			while((line=reader.readLine())!=null)
+			{	String[] fields = line.split("\t");
+				if(fields.length==6)
+				{	Entry entry = new Entry();
+					entry.id = fields[0];
+					entry.endpoint = Endpoint.valueOf(fields[1]);
+					entry.segment = Integer.parseInt(fields[2]);
+					entry.offset = Long.parseLong(fields[3]);
+					entry.length = Integer.parseInt(fields[4]);
+					entry.time = Long.parseLong(fields[5]);
+					result.add(entry);
+				}
+				else
+					logger.log("WARNING: ignoring malformed index line '"+line+"'");
+			}
+		}
+		finally
+		{	reader.close();
+		}
+		return result;
+	}
+	
+	/**
+	 * Reads and uncompresses the response
+	 * corresponding to the specified entry,
+	 * using an already opened segment file.
+	 * 
+	 * @param file
+	 * 		Segment containing the response.
+	 * @param entry
+	 * 		Index entry of the response.
+	 * @return
+	 * 		The raw response.
+	 * 
+	 * @throws IOException
+	 * 		Problem while reading the archive.
+	 */
+	public static byte[] load(RandomAccessFile file, Entry entry) throws IOException
+	{	byte[] compressed = new byte[entry.length];
+		file.seek(entry.offset);
+		file.readFully(compressed);
+		
+		GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed));
+		ByteArrayOutputStream out = new ByteArrayOutputStream(entry.length*4);
+		byte[] buffer = new byte[8192];
+		int n;
+		while((n=gzip.read(buffer))!=-1)
+			out.write(buffer,0,n);
+		gzip.close();
+		byte[] result = out.toByteArray();
+		return result;
+	}
+	
+	/**
+	 * Reads and uncompresses the response
+	 * corresponding to the specified entry.
+	 * 
+	 * @param entry
+	 * 		Index entry of the response.
+	 * @return
+	 * 		The raw response.
+	 * 
+	 * @throws IOException
+	 * 		Problem while reading the archive.
+	 */
+	public byte[] load(Entry entry) throws IOException
+	{	synchronized(this)
+		{	segmentOut.flush();
+		}
+		RandomAccessFile file = new RandomAccessFile(getSegmentFile(entry.segment),"r");
+		try
+		{	byte[] result = load(file,entry);
+			return result;
+		}
+		finally
+		{	file.close();
+		}
+	}
+	
+	/**
+	 * Entry of the archive index.
+	 * 
+	 * @since 1
+	 * @version 1
+	 * @author Vincent Labatut
+	 */
+	public static class Entry
+	{	/** Google+ id of the concerned user */
+		public String id;
+		/** Service which sent the response */
+		public Endpoint endpoint;
+		/** Number of the segment containing the response */
+		public int segment;
+		/** Position of the response in the segment */
+		public long offset;
+		/** Length of the compressed response */
+		public int length;
+		/** Time the response was stored (in ms) */
+		public long time;
+	}
+}
@@ -27,16 +27,17 @@ import java.io.FileOutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
-import java.sql.Date;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.text.NumberFormat;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.Locale;
 
+import tr.edu.gsu.googleplus.data.Person;
+import tr.edu.gsu.googleplus.data.Relationship;
+import tr.edu.gsu.googleplus.data.Snapshot;
 import tr.edu.gsu.googleplus.tool.DbTools;
 import tr.edu.gsu.googleplus.tool.FileTools;
 import tr.edu.gsu.googleplus.tool.TimeTools;
@@ -44,10 +45,28 @@ import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
 import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
 
 /**
- * This class was supposed to be used to convert the
- * string-based DB into an integer-based one, for speed
- * and memory reasons. It was too slow, so a purely file-based
- * approach was finally used, implemented in {@link IdConverter}.
+ * Converts a DB created by the former versions
+ * of the program, which identified the persons 
+ * by their Google+ ids stored as strings, into 
+ * the current integer-based schema (cf. 
+ * {@link Person#createTable()}).<br/>
+ * The conversion is performed by set-based SQL
+ * statements: the persons are copied in the order
+ * of their Google+ ids, which allocates their integer
+ * ids, then the relationships are translated by joining
+ * them with the new PERSON table. Both copies proceed
+ * by chunks, each one committed together with its
+ * position in a checkpoint table, so an interrupted
+ * conversion is resumed where it stopped.<br/>
+ * The DBs produced by the former version of this class,
+ * which already used integer ids but kept the Google+ ids
+ * as strings, are converted in place: the Google+ ids are
+ * copied by chunks in a numeric column, which then replaces
+ * the string one.
+ * <br/>
+ * The purely file-based approach implemented in 
+ * {@link IdConverter} remains available for the 
+ * exported edge lists.
  *  
  * @since 1
  * @version 1
@@ -64,231 +83,559 @@ public class DbReformer
 	/////////////////////////////////////////////////////////////////
 	// PROCESS			/////////////////////////////////////////////
 	/////////////////////////////////////////////////////////////////
-	/** Part of the cache used when reforming the DB: cache size */
-	private static final Integer CACHE_SIZE = 10000;
-	/** Part of the cache used when reforming the DB: maps of known ids */ 
-	private static final HashMap<String,Integer> CACHE_MAP = new HashMap<String, Integer>(CACHE_SIZE);
-	/** Part of the cache used when reforming the DB ordered list of */ 
-	private static final LinkedList<String> CACHE_FIFO = new LinkedList<String>();
+	/** Number of persons copied in each transaction */
+	private static final int PERSON_CHUNK = 2000;
+	/** Number of persons whose Google+ id is converted in each transaction */
+	private static final int ID_CHUNK = 2000;
+	/** Approximate number of relationships copied in each transaction (with MVCC, the cost of a row grows with the size of its transaction) */
+	private static final int RELATIONSHIP_CHUNK = 2000;
+	/** Columns copied from the former PERSON table, when present (the ids are processed separately) */
+	private static final String[] PERSON_COLUMNS = 
+	{	"DATE_RETRIEVED","FIRSTNAME","LASTNAME","PROCESSED",
+		"LEASE_OWNER","LEASE_TIME","PRIORITY","DISTANCE",
+		"SEEN_NBR","FOLLOWER_NBR","CRAWL_TIME","PROFILED"
+	};
+	/** Indices of the former tables, whose names are reused by the new ones */
+	private static final String[] OLD_INDICES = {"PERSON_LEASE","PERSON_PRIORITY","PERSON_PROFILED","DELTA_SNAPSHOT"};
+	/** Conversion step: in-place conversion of the Google+ ids */
+	private static final String STEP_GOOGLE_IDS = "GOOGLE_IDS";
+	/** Conversion step: copy of the persons */
+	private static final String STEP_PERSONS = "PERSONS";
+	/** Conversion step: copy of the relationships */
+	private static final String STEP_RELATIONSHIPS = "RELATIONSHIPS";
+	/** Conversion step: copy of the snapshot changes */
+	private static final String STEP_DELTAS = "DELTAS";
+	/** Position recorded once a step is complete */
+	private static final String DONE = "DONE";
 
 	/**
-	 * The initial DB structure turns out to be very inefficient
-	 * due to the use of Strings as ids. This method is an attempt 
-	 * at converting this DB into a better one, relying on actual
-	 * integer ids.
+	 * Converts the DB from the string-based schema
+	 * to the integer-based one. The former tables are
+	 * renamed with an {@code _OLD} suffix, the new ones
+	 * are filled, and the former ones are finally dropped.
+	 * If the conversion was interrupted, it is resumed
+	 * from the last checkpoint. If the DB already uses
+	 * integer ids but stores the Google+ ids as strings,
+	 * only these are converted. If it already uses the
+	 * current schema, nothing is done.
 	 * 
 	 * @throws SQLException
 	 * 		Problem while accessing the DB.
 	 */
 	public static void reformDb() throws SQLException
-	{	NumberFormat timeNf = NumberFormat.getInstance(Locale.ENGLISH);
-		timeNf.setMaximumFractionDigits(2);
-		int persNbr = 80080893; //Person.getTableSize();
-		int relNbr = 473106758; //DbTools.getTableSize("RELATIONSHIP_OLD");
-	    logger.log(persNbr+" persons");
-		logger.log(relNbr+" relationships");
-		
-		// rename old tables
-		{	logger.log("rename PERSON to PERSON_OLD");
-    		String query = "ALTER TABLE PERSON RENAME TO PERSON_OLD";
-			Statement statement = DbTools.connection.createStatement();
-			statement.execute(query);
-			statement.close();
-			
-			logger.log("rename RELATIONSHIP to RELATIONSHIP_OLD");
-    		query = "ALTER TABLE RELATIONSHIP RENAME TO RELATIONSHIP_OLD";
-			statement = DbTools.connection.createStatement();
-			statement.execute(query);
-			statement.close();
+	{	if(tableExists("REFORM_CHECKPOINT"))
+		{	logger.log("Resuming the conversion of the DB");
+			reform();
 		}
-		
-		// create new tables
-		{	logger.log("create new PERSON table");
-    		String query = 	"CREATE TABLE PERSON (";
-			query = query + 	"ID INTEGER NOT NULL AUTO_INCREMENT PRIMARY KEY,";
-			query = query + 	"GOOGLE_ID VARCHAR(22) NOT NULL,";
-			query = query + 	"DATE_RETRIEVED DATE NOT NULL,";
-			query = query + 	"PROCESSED SMALLINT DEFAULT 0";
-			query = query + ")";
-			Statement statement = DbTools.connection.createStatement();
-			statement.execute(query);
-			statement.close();
-			
-			logger.log("create new RELATIONSHIP table");
-    		query =	"CREATE TABLE RELATIONSHIP (";
-			query = query + 	"SOURCE_ID INTEGER NOT NULL,";
-			query = query + 	"TARGET_ID INTEGER NOT NULL,";
-			query = query + 	"DATE_RETRIEVED DATE NOT NULL,";
-			query = query + 	"PRIMARY KEY (SOURCE_ID, TARGET_ID),";
-			query = query + 	"FOREIGN KEY(SOURCE_ID) REFERENCES PERSON(ID),";
-			query = query + 	"FOREIGN KEY(TARGET_ID) REFERENCES PERSON(ID)";
-			query = query + ")";
-			statement = DbTools.connection.createStatement();
-			statement.execute(query);
-			statement.close();
+		else if(hasStringIds("PERSON","ID"))
+		{	logger.log("Converting the DB to integer ids");
+			reform();
 		}
-		
-		// copy old persons in new table
-		{	logger.log("copy existing persons");
-			// init time-related variables
-			int NBR = 1000;
-			int index = 0;
-			long durations[] = new long[NBR];
-			Arrays.fill(durations,0l);
-				
-			// start process
-	    	Statement statement = DbTools.connection.createStatement();
-		    ResultSet results = statement.executeQuery("SELECT * FROM PERSON_OLD");
-		    int r = 1;
-		    while(results.next())
-		    {	long before = System.currentTimeMillis();
-				
-		    	// get data
-		    	int c = 1;
-		    	String googleId = results.getString(c);c++;
-		        Date dateRetrieved = results.getDate(c);c++;
-		        String firstName = results.getString(c);c++;
-		        String lastName = results.getString(c);c++;
-		        int state = results.getInt(c);c++;
-		        
-		    	// insert data
-		    	{	String query = 	"INSERT INTO PERSON (GOOGLE_ID,DATE_RETRIEVED,PROCESSED) VALUES ('"+googleId+"','"+dateRetrieved+"','"+state+"')";
-		    		Statement statement2 = DbTools.connection.createStatement();
-					statement2.execute(query);
-					statement2.close();		    		
-		    	}
-				long after = System.currentTimeMillis();
-
-				// log
-				long elapsed = after - before;
-				durations[index] = elapsed;
-				index = (index + 1) % NBR;
-				double total = 0;
-				for(int i=0;i<NBR;i++) total = total + durations[i];
-				double avrgTime = total / NBR;
-				String avrgTimeStr = timeNf.format(avrgTime);
-				long expectedTime = Math.round((relNbr-r) * avrgTime);
-				String expectedTimeStr = TimeTools.formatDuration(expectedTime);
-				logger.log("..[" + avrgTimeStr + " ms - " + expectedTimeStr + "] " + r + "/" + relNbr + ".\t" 
-	        		+ googleId + "\t\t" 
-	        		+ firstName + "\t\t" 
-	        		+ lastName + "\t\t" 
-	        		+ dateRetrieved + "\t\t" 
-	        		+ state);
-		    	
-		        r++;
-		        
-		    }
-		    results.close();
-		    statement.close();
+		else if(hasStringIds("PERSON","GOOGLE_ID"))
+		{	logger.log("Converting the Google+ ids of the DB to numbers");
+			reform();
+		}
+		else
+			logger.log("The DB already uses the current schema: nothing to convert");
+	}
+	
+	/**
+	 * Performs (or resumes) all the
+	 * steps of the conversion.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	private static void reform() throws SQLException
+	{	long start = System.currentTimeMillis();
+		logger.increaseOffset();
+		Connection connection = DbTools.connection;
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		try
+		{	prepareTables();
+			convertGoogleIds();
+			copyPersons();
+			copyRelationships();
+			copyDeltas();
+			dropOldTables();
+		}
+		catch(SQLException e)
+		{	connection.rollback();
+			throw e;
 		}
+		finally
+		{	connection.setAutoCommit(autoCommit);
+		}
+		logger.decreaseOffset();
+		logger.log("Conversion complete in "+TimeTools.formatDuration(System.currentTimeMillis()-start));
+	}
+	
+	/**
+	 * Creates the checkpoint table, renames the former
+	 * tables and creates the new ones. Each operation is
+	 * performed only if it was not already, so that this
+	 * method can be called again after an interruption.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	private static void prepareTables() throws SQLException
+	{	Connection connection = DbTools.connection;
+		Statement statement = connection.createStatement();
 		
-		// copy old relationships in new table
-		{	logger.log("copy existing relationships");
-			CACHE_MAP.clear();
-			CACHE_FIFO.clear();
-			// init time-related variables
-			int NBR = 1000;
-			int index = 0;
-			long durations[] = new long[NBR];
-			Arrays.fill(durations,0l);
+		// checkpoints
+		if(!tableExists("REFORM_CHECKPOINT"))
+		{	statement.execute("CREATE TABLE REFORM_CHECKPOINT (STEP VARCHAR(32) NOT NULL PRIMARY KEY, POSITION VARCHAR(256))");
+			for(String step: new String[]{STEP_GOOGLE_IDS,STEP_PERSONS,STEP_RELATIONSHIPS,STEP_DELTAS})
+				statement.execute("INSERT INTO REFORM_CHECKPOINT (STEP) VALUES ('"+step+"')");
+			connection.commit();
+		}
 		
-	    	Statement statement = DbTools.connection.createStatement();
-		    ResultSet results = statement.executeQuery("SELECT * FROM RELATIONSHIP_OLD");
-		    int r = 1;
-		    while(results.next())
-		    {	long before = System.currentTimeMillis();
-			
-	    		// get data
-		    	int c = 1;
-		    	String sourceGoogleId = results.getString(c);c++;
-		    	String targetGoogleId = results.getString(c);c++;
-		        Date date = results.getDate(c);c++;
-		        logger.log(r + ".\t" + sourceGoogleId + "\t\t" + targetGoogleId + "\t\t" + date);
-		        // get ids
-		        int sourceId = getId(sourceGoogleId);
-		        int targetId =  getId(targetGoogleId);
-		         // insert data
-		    	{	String query = 	"INSERT INTO RELATIONSHIP (SOURCE_ID,TARGET_ID,DATE_RETRIEVED) VALUES ('"+sourceId+"','"+targetId+"','"+date+"')";
-		    		Statement statement2 = DbTools.connection.createStatement();
-					statement2.execute(query);
-					statement2.close();
-		    	}
-				long after = System.currentTimeMillis();
-				
-				// log
-				long elapsed = after - before;
-				durations[index] = elapsed;
-				index = (index + 1) % NBR;
-				double total = 0;
-				for(int i=0;i<NBR;i++) total = total + durations[i];
-				double avrgTime = total / NBR;
-				String avrgTimeStr = timeNf.format(avrgTime);
-				long expectedTime = Math.round((relNbr-r) * avrgTime);
-				String expectedTimeStr = TimeTools.formatDuration(expectedTime);
-				logger.log("..[" + avrgTimeStr + " ms - " + expectedTimeStr + "] " + r + "/" + persNbr + ".\t" 
-	        		+ sourceId + " (" + sourceGoogleId + ")" + "\t\t" 
-	        		+ targetId + " (" + targetGoogleId + ")");
-		    	
-		        r++;
-		    }
-		    results.close();
-		    statement.close();
+		// former tables (the indices must be dropped first, since the new tables reuse their names)
+		String tables[][] = {{"PERSON","ID"},{"RELATIONSHIP","SOURCE_ID"},{"RELATIONSHIP_DELTA","SOURCE_ID"}};
+		boolean first = true;
+		for(String[] table: tables)
+		{	if(hasStringIds(table[0],table[1]))
+			{	if(first)
+				{	for(String index: OLD_INDICES)
+						statement.execute("DROP INDEX IF EXISTS "+index);
+					first = false;
+				}
+				logger.log("Rename "+table[0]+" to "+table[0]+"_OLD");
+				statement.execute("ALTER TABLE "+table[0]+" RENAME TO "+table[0]+"_OLD");
+			}
 		}
 		
-		// remove old tables
-		{	// remove relationship table
-			{	logger.log("remove RELATIONSHIP_OLD table");
-				String query = 	"DROP TABLE RELATIONSHIP_OLD";
-				Statement statement = DbTools.connection.createStatement();
-				statement.execute(query);
-				statement.close();		
+		// new tables
+		if(!tableExists("PERSON"))
+		{	logger.log("Create the new PERSON table");
+			Person.createTable();
+		}
+		if(!tableExists("RELATIONSHIP"))
+		{	logger.log("Create the new RELATIONSHIP table");
+			Relationship.createTable();
+		}
+		statement.close();
+		connection.commit();
+	}
+	
+	/**
+	 * Converts in place the Google+ ids of a DB which
+	 * already uses integer ids, but stores the Google+ 
+	 * ids as strings. They are copied in a new numeric
+	 * column, by chunks of integer ids, each one committed
+	 * together with its position. The string column is 
+	 * then replaced by the numeric one, and the missing
+	 * columns and indices are added. Each of these last
+	 * operations is performed only if it was not already.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	private static void convertGoogleIds() throws SQLException
+	{	String position = getCheckpoint(STEP_GOOGLE_IDS);
+		if(!DONE.equals(position) && (position!=null || hasStringIds("PERSON","GOOGLE_ID")))
+		{	Connection connection = DbTools.connection;
+			Statement statement = connection.createStatement();
+			int total = DbTools.getTableSize("PERSON");
+			logger.log("Convert the Google+ ids of "+total+" persons");
+			logger.increaseOffset();
+			
+			// the numeric column takes the place of the string one in the current schema
+			statement.execute("ALTER TABLE PERSON ADD COLUMN IF NOT EXISTS GOOGLE_ID_NUM DECIMAL(22,0) BEFORE DATE_RETRIEVED");
+			int last = 0;
+			if(position!=null)
+				last = Integer.parseInt(position);
+			else
+			{	setCheckpoint(STEP_GOOGLE_IDS,Integer.toString(last));
+				connection.commit();
 			}
 			
-			// remove person table
-			{	logger.log("remove PERSON_OLD table");
-				String query = 	"DROP TABLE PERSON_OLD";
-				Statement statement = DbTools.connection.createStatement();
-				statement.execute(query);
-				statement.close();
+			// copy of the ids
+			if(columnExists("PERSON","GOOGLE_ID_NUM") && hasStringIds("PERSON","GOOGLE_ID"))
+			{	PreparedStatement update = connection.prepareStatement("UPDATE PERSON SET GOOGLE_ID_NUM=CAST(GOOGLE_ID AS DECIMAL(22,0)) WHERE ID>? AND ID<=?");
+				ResultSet results = statement.executeQuery("SELECT MAX(ID) FROM PERSON");
+				results.next();
+				int max = results.getInt(1);
+				results.close();
+				long start = System.currentTimeMillis();
+				int initial = last;
+				while(last<max)
+				{	int next = Math.min(max,last+ID_CHUNK);
+					update.setInt(1,last);
+					update.setInt(2,next);
+					update.executeUpdate();
+					setCheckpoint(STEP_GOOGLE_IDS,Integer.toString(next));
+					connection.commit();
+					last = next;
+					logProgress(last,initial,max,start);
+				}
+				update.close();
 			}
-		}		
+			
+			// replacement of the string column (the indices using it must be dropped first)
+			if(hasStringIds("PERSON","GOOGLE_ID"))
+			{	logger.log("Replace the string ids");
+				statement.execute("DROP INDEX IF EXISTS PERSON_PROFILED");
+				statement.execute("ALTER TABLE PERSON DROP COLUMN GOOGLE_ID");
+			}
+			if(columnExists("PERSON","GOOGLE_ID_NUM"))
+				statement.execute("ALTER TABLE PERSON ALTER COLUMN GOOGLE_ID_NUM RENAME TO GOOGLE_ID");
+			statement.execute("ALTER TABLE PERSON ALTER COLUMN GOOGLE_ID SET NOT NULL");
+			logger.log("Index the numeric ids");
+			statement.execute("CREATE UNIQUE INDEX IF NOT EXISTS PERSON_GOOGLE_ID ON PERSON(GOOGLE_ID)");
+			statement.close();
+			Person.upgradeTable();
+			setCheckpoint(STEP_GOOGLE_IDS,DONE);
+			connection.commit();
+			logger.decreaseOffset();
+		}
 	}
 	
-	private static int getId(String gid) throws SQLException
-    {	// check if the id is already in the cache
-		Integer result = CACHE_MAP.get(gid);
-		if(result!=null)
-		{	// just update the cache
-			CACHE_FIFO.remove(gid);
-			CACHE_FIFO.offer(gid);
+	/**
+	 * Copies the persons in the new table, by
+	 * increasing Google+ id, so that the integer 
+	 * ids are allocated in the same order. Each 
+	 * chunk is copied by a single statement.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	private static void copyPersons() throws SQLException
+	{	String position = getCheckpoint(STEP_PERSONS);
+		if(!DONE.equals(position) && tableExists("PERSON_OLD"))
+		{	Connection connection = DbTools.connection;
+			int total = DbTools.getTableSize("PERSON_OLD");
+			logger.log("Copy "+total+" persons");
+			logger.increaseOffset();
+			
+			// only the columns present in the former table are copied
+			String columns = "";
+			for(String column: PERSON_COLUMNS)
+			{	if(columnExists("PERSON_OLD",column))
+					columns = columns + "," + column;
+			}
+			String query = "INSERT INTO PERSON (GOOGLE_ID"+columns+") ";
+			query = query + "SELECT ID"+columns+" FROM PERSON_OLD WHERE ID>? AND ID<=? ORDER BY ID";
+			PreparedStatement insert = connection.prepareStatement(query);
+			query = "INSERT INTO PERSON (GOOGLE_ID"+columns+") ";
+			query = query + "SELECT ID"+columns+" FROM PERSON_OLD WHERE ID>? ORDER BY ID";
+			PreparedStatement insertLast = connection.prepareStatement(query);
+			// upper bound of the next chunk
+			PreparedStatement bound = connection.prepareStatement("SELECT ID FROM PERSON_OLD WHERE ID>? ORDER BY ID LIMIT 1 OFFSET "+(PERSON_CHUNK-1));
+			
+			long start = System.currentTimeMillis();
+			int initial = DbTools.getTableSize("PERSON");
+			String last = position;
+			if(last==null)
+				last = "";
+			boolean done = false;
+			while(!done)
+			{	bound.setString(1,last);
+				ResultSet results = bound.executeQuery();
+				String next = null;
+				if(results.next())
+					next = results.getString(1);
+				results.close();
+				
+				// copy the chunk and record its end in the same transaction
+				if(next==null)
+				{	insertLast.setString(1,last);
+					insertLast.executeUpdate();
+					next = DONE;
+					done = true;
+				}
+				else
+				{	insert.setString(1,last);
+					insert.setString(2,next);
+					insert.executeUpdate();
+				}
+				setCheckpoint(STEP_PERSONS,next);
+				connection.commit();
+				last = next;
+				logProgress(DbTools.getTableSize("PERSON"),initial,total,start);
+			}
+			insert.close();
+			insertLast.close();
+			bound.close();
+			logger.decreaseOffset();
 		}
-		
-    	// otherwise, retrieve it from the DB and update the cache
-		else
-		{	// query the DB
-			String query =	"SELECT ID FROM PERSON WHERE GOOGLE_ID='"+gid+"'";
-			Statement statement = DbTools.connection.createStatement();
-		    ResultSet results = statement.executeQuery(query);
-		    results.next();
-		    result = results.getInt(1);
+	}
+	
+	/**
+	 * Copies the relationships in the new table,
+	 * replacing the Google+ ids by the integer ids.
+	 * The relationships are processed by chunks of
+	 * source persons (in the order of their integer
+	 * ids), and translated by joining them with the 
+	 * new PERSON table. The number of source persons
+	 * in a chunk depends on their mean number of
+	 * relationships.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	private static void copyRelationships() throws SQLException
+	{	String position = getCheckpoint(STEP_RELATIONSHIPS);
+		if(!DONE.equals(position) && tableExists("RELATIONSHIP_OLD"))
+		{	Connection connection = DbTools.connection;
+			int total = DbTools.getTableSize("RELATIONSHIP_OLD");
+			logger.log("Copy "+total+" relationships");
+			logger.increaseOffset();
+			
+			// the cast allows using the primary key of the former table
+			String query = "INSERT INTO RELATIONSHIP (SOURCE_ID,TARGET_ID,DATE_RETRIEVED) ";
+			query = query + "SELECT S.ID,T.ID,R.DATE_RETRIEVED FROM PERSON S ";
+			query = query + "INNER JOIN RELATIONSHIP_OLD R ON R.SOURCE_ID=CAST(S.GOOGLE_ID AS VARCHAR) ";
+			query = query + "INNER JOIN PERSON T ON T.GOOGLE_ID=R.TARGET_ID ";
+			query = query + "WHERE S.ID>? AND S.ID<=?";
+			PreparedStatement insert = connection.prepareStatement(query);
+			Statement statement = connection.createStatement();
+			ResultSet results = statement.executeQuery("SELECT MAX(ID) FROM PERSON");
+			results.next();
+			int max = results.getInt(1);
+			results.close();
 			statement.close();
+			int chunk = (int)Math.max(1,RELATIONSHIP_CHUNK*(long)max/Math.max(1,total));
 			
-			// possibly make some room
-			if(CACHE_FIFO.size()==CACHE_SIZE)
-			{	String temp = CACHE_FIFO.poll();
-				CACHE_FIFO.remove(temp);
+			long start = System.currentTimeMillis();
+			int initial = DbTools.getTableSize("RELATIONSHIP");
+			int last = 0;
+			if(position!=null)
+				last = Integer.parseInt(position);
+			while(last<max)
+			{	int next = Math.min(max,last+chunk);
+				insert.setInt(1,last);
+				insert.setInt(2,next);
+				insert.executeUpdate();
+				setCheckpoint(STEP_RELATIONSHIPS,Integer.toString(next));
+				connection.commit();
+				last = next;
+				logProgress(DbTools.getTableSize("RELATIONSHIP"),initial,total,start);
 			}
-			// cache the value
-			CACHE_MAP.put(gid,result);
-			CACHE_FIFO.offer(gid);
+			setCheckpoint(STEP_RELATIONSHIPS,DONE);
+			connection.commit();
+			insert.close();
+			logger.decreaseOffset();
 		}
-		
-///		logger.log("CACHE: "+gid+" >> "+result);
-		
+	}
+	
+	/**
+	 * Copies the changes recorded for the
+	 * snapshots, if any, in a single statement
+	 * (this table is much smaller than the others).
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	private static void copyDeltas() throws SQLException
+	{	String position = getCheckpoint(STEP_DELTAS);
+		if(!DONE.equals(position))
+		{	Connection connection = DbTools.connection;
+			if(tableExists("RELATIONSHIP_DELTA_OLD"))
+			{	logger.log("Copy the snapshot changes");
+				Snapshot.createTable();
+				String query = "INSERT INTO RELATIONSHIP_DELTA (SOURCE_ID,TARGET_ID,SNAPSHOT_ID,ADDED) ";
+				query = query + "SELECT S.ID,T.ID,D.SNAPSHOT_ID,D.ADDED FROM RELATIONSHIP_DELTA_OLD D ";
+				query = query + "INNER JOIN PERSON S ON S.GOOGLE_ID=D.SOURCE_ID ";
+				query = query + "INNER JOIN PERSON T ON T.GOOGLE_ID=D.TARGET_ID";
+				Statement statement = connection.createStatement();
+				int count = statement.executeUpdate(query);
+				statement.close();
+				logger.log(count+" changes copied");
+			}
+			setCheckpoint(STEP_DELTAS,DONE);
+			connection.commit();
+		}
+	}
+	
+	/**
+	 * Removes the former tables and the
+	 * checkpoint table, once everything
+	 * has been copied.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	private static void dropOldTables() throws SQLException
+	{	Statement statement = DbTools.connection.createStatement();
+		String tables[] = {"RELATIONSHIP_DELTA_OLD","RELATIONSHIP_OLD","PERSON_OLD","REFORM_CHECKPOINT"};
+		for(String table: tables)
+		{	logger.log("Drop "+table);
+			statement.execute("DROP TABLE IF EXISTS "+table);
+		}
+		statement.close();
+		DbTools.connection.commit();
+	}
+	
+	/**
+	 * Logs the progress of a copy,
+	 * and the estimated remaining time.
+	 * 
+	 * @param count
+	 * 		Number of rows in the new table.
+	 * @param initial
+	 * 		Number of rows when the copy was (re)started.
+	 * @param total
+	 * 		Number of rows to copy.
+	 * @param start
+	 * 		Time the copy was (re)started.
+	 */
+	private static void logProgress(int count, int initial, int total, long start)
+	{	NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
+		nf.setMaximumFractionDigits(2);
+		long elapsed = System.currentTimeMillis() - start;
+		double rate = (count-initial)*1000.0/Math.max(1,elapsed);
+		String eta = "unknown";
+		if(rate>0)
+			eta = TimeTools.formatDuration(Math.round(Math.max(0,total-count)*1000/rate));
+		logger.log(count+"/"+total+" rows ("+nf.format(rate)+" rows/s - remaining: "+eta+")");
+	}
+
+	/////////////////////////////////////////////////////////////////
+	// CHECKPOINTS		/////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Returns the position recorded for
+	 * the specified step of the conversion.
+	 * 
+	 * @param step
+	 * 		The concerned step.
+	 * @return
+	 * 		Its position ({@code null} if not started, {@link #DONE} if complete).
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	private static String getCheckpoint(String step) throws SQLException
+	{	PreparedStatement statement = DbTools.connection.prepareStatement("SELECT POSITION FROM REFORM_CHECKPOINT WHERE STEP=?");
+		statement.setString(1,step);
+		ResultSet results = statement.executeQuery();
+		String result = null;
+		if(results.next())
+			result = results.getString(1);
+		results.close();
+		statement.close();
+		return result;
+	}
+	
+	/**
+	 * Records the position reached for the
+	 * specified step of the conversion. It is 
+	 * committed with the current transaction.
+	 * 
+	 * @param step
+	 * 		The concerned step.
+	 * @param position
+	 * 		Its new position.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	private static void setCheckpoint(String step, String position) throws SQLException
+	{	PreparedStatement statement = DbTools.connection.prepareStatement("UPDATE REFORM_CHECKPOINT SET POSITION=? WHERE STEP=?");
+		statement.setString(1,position);
+		statement.setString(2,step);
+		statement.executeUpdate();
+		statement.close();
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// SCHEMA			/////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Checks whether the specified
+	 * table exists in the DB.
+	 * 
+	 * @param table
+	 * 		Name of the table.
+	 * @return
+	 * 		{@code true} iff the table exists.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	private static boolean tableExists(String table) throws SQLException
+	{	PreparedStatement statement = DbTools.connection.prepareStatement("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME=?");
+		statement.setString(1,table);
+		ResultSet results = statement.executeQuery();
+		results.next();
+		boolean result = results.getInt(1)>0;
+		results.close();
+		statement.close();
+		return result;
+	}
+	
+	/**
+	 * Checks whether the specified
+	 * column exists in the specified table.
+	 * 
+	 * @param table
+	 * 		Name of the table.
+	 * @param column
+	 * 		Name of the column.
+	 * @return
+	 * 		{@code true} iff the column exists.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	private static boolean columnExists(String table, String column) throws SQLException
+	{	boolean result = getColumnType(table,column)!=null;
+		return result;
+	}
+	
+	/**
+	 * Checks whether the specified table exists
+	 * and identifies the persons by their Google+ 
+	 * ids stored as strings (former schema).
+	 * 
+	 * @param table
+	 * 		Name of the table.
+	 * @param column
+	 * 		Name of a column containing person ids.
+	 * @return
+	 * 		{@code true} iff the table uses the former schema.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	private static boolean hasStringIds(String table, String column) throws SQLException
+	{	boolean result = "VARCHAR".equals(getColumnType(table,column));
+		return result;
+	}
+	
+	/**
+	 * Returns the SQL type of the
+	 * specified column.
+	 * 
+	 * @param table
+	 * 		Name of the table.
+	 * @param column
+	 * 		Name of the column.
+	 * @return
+	 * 		Name of the type, or {@code null} if the column does not exist.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	private static String getColumnType(String table, String column) throws SQLException
+	{	PreparedStatement statement = DbTools.connection.prepareStatement("SELECT TYPE_NAME FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME=? AND COLUMN_NAME=?");
+		statement.setString(1,table);
+		statement.setString(2,column);
+		ResultSet results = statement.executeQuery();
+		String result = null;
+		if(results.next())
+			result = results.getString(1);
+		results.close();
+		statement.close();
 		return result;
 	}
 
+	/////////////////////////////////////////////////////////////////
+	// EXPORT			/////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
 	/**
 	 * Exports the full content of
 	 * the reformed RELATIONSHIP table
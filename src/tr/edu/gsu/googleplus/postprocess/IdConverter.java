@@ -36,6 +36,7 @@ import java.util.concurrent.locks.ReentrantLock;
 
 import com.sun.jersey.api.client.UniformInterfaceException;
 
+import tr.edu.gsu.googleplus.tool.GidMap;
 import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
 import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
 
@@ -72,7 +73,7 @@ public class IdConverter
 		
 		// create common structures
 		logger.log("Create structures");
-		fullMap = new HashMap<String, Integer>(ID_NBR);
+		fullMap = new GidMap(ID_NBR);
 		cacheMap = new HashMap<String, Integer>(CACHE_SIZE);
 		cacheFifo = new LinkedList<String>();
 		
@@ -115,8 +116,8 @@ public class IdConverter
 	/////////////////////////////////////////////////////////////////
 	// PERSONS			/////////////////////////////////////////////
 	/////////////////////////////////////////////////////////////////
-	/** Complete map of ids */
-	private static HashMap<String, Integer>	fullMap;
+	/** Complete map of ids (compact structure, since it contains tens of millions of ids) */
+	private static GidMap fullMap;
 	/** Part of the cache used when reforming the DB: cache size */
 	private static final Integer CACHE_SIZE = 10000;
 	/** Part of the cache used when reforming the DB: maps of known ids */ 
@@ -155,7 +156,7 @@ public class IdConverter
 			{	String parts[] = line.split("\\t");
 //				String key = parts[0].substring(1,parts[0].length()-1); // for the old table format which included ""
 				String key = parts[0];
-				Integer value = Integer.parseInt(parts[1]);
+				int value = Integer.parseInt(parts[1]);
 				fullMap.put(key,value);
 				if(count%1000000 == 0)
 					logger.log("Progress: "+count+"/"+ID_NBR);
@@ -195,7 +196,7 @@ public class IdConverter
 		    	// otherwise, retrieve it from the full map and update the cache
 				else
 				{	// query the full map
-					result = fullMap.get(gid);
+					result = (int)fullMap.get(gid,-1);
 					
 					// possibly make some room in the cache
 					if(cacheFifo.size()==CACHE_SIZE)
@@ -213,7 +214,7 @@ public class IdConverter
 		}
     	
     	else
-    		result = fullMap.get(gid);
+    		result = (int)fullMap.get(gid,-1);
 		
     	logger.decreaseOffset();
 		return result;
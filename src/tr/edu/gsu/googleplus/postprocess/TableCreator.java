@@ -28,9 +28,6 @@ import java.io.FileOutputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Scanner;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
@@ -38,6 +35,7 @@ import java.util.concurrent.locks.ReentrantLock;
 
 import com.sun.jersey.api.client.UniformInterfaceException;
 
+import tr.edu.gsu.googleplus.tool.GidMap;
 import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
 import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
 
@@ -74,7 +72,7 @@ public class TableCreator
 		
 		// create common structures
 		logger.log("Create structures");
-		fullMap = new HashMap<String, Integer>(NODE_NBR);
+		fullMap = new GidMap(NODE_NBR);
 		
 		// start the threads
 		int threads = 32;
@@ -111,8 +109,8 @@ public class TableCreator
 	/////////////////////////////////////////////////////////////////
 	// PERSONS			/////////////////////////////////////////////
 	/////////////////////////////////////////////////////////////////
-	/** Complete map of ids */
-	private static Map<String, Integer>	fullMap;
+	/** Complete map of ids (compact structure, since it contains tens of millions of ids) */
+	private static GidMap fullMap;
 	/** Current id */
 	private static int currentId = 0;
 	/** Lock associated to the above objects */
@@ -129,16 +127,11 @@ public class TableCreator
     {	logger.increaseOffset();
     	
     	idLock.lock();
-    	{	// check if already present in map
-			Integer id = fullMap.get(gid);
-			// otherwise: add it
-			if(id==null)
-			{	// determine new id
-				id = currentId;
+    	{	// insert in map if not already present
+			long id = fullMap.putIfAbsent(gid,currentId);
+			// if inserted: determine the next id
+			if(id==currentId)
 				currentId++;
-				// insert in map
-				fullMap.put(gid,id);
-			}
     	}
     	idLock.unlock();
 		
@@ -165,11 +158,12 @@ public class TableCreator
 		// write each entry in the table
 		logger.increaseOffset();
 		int count = 0;
-		for(Entry<String,Integer> e: fullMap.entrySet())
+		GidMap.MapCursor cursor = fullMap.cursor();
+		while(cursor.next())
 		{	count++;
 			// record the entry
-			String gid = e.getKey();
-			Integer id = e.getValue();
+			String gid = cursor.getGid();
+			long id = cursor.getValue();
 			writer.println(gid + "\t" + id);
 
 			// log process
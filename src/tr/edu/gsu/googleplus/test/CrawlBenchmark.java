@@ -0,0 +1,183 @@
+package tr.edu.gsu.googleplus.test;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.sql.SQLException;
+import java.text.NumberFormat;
+import java.util.Locale;
+
+import org.codehaus.jettison.json.JSONException;
+
+import com.sun.jersey.api.client.UniformInterfaceException;
+
+import tr.edu.gsu.googleplus.data.Person;
+import tr.edu.gsu.googleplus.explorer.RelationshipExtractor;
+import tr.edu.gsu.googleplus.parser.FixedRatePolicy;
+import tr.edu.gsu.googleplus.parser.GooglePlusParser;
+import tr.edu.gsu.googleplus.parser.RateController;
+import tr.edu.gsu.googleplus.tool.DbTools;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+
+/**
+ * Measures the throughput of the whole relationship
+ * retrieval process ({@link RelationshipExtractor}, parser,
+ * DB insertions), using a {@link GraphStubServer} instead
+ * of Google+. All the users of the synthetic graph are 
+ * first inserted in a dedicated DB, like the sitemap ids
+ * would be, then crawled. The benchmark finally checks
+ * all the edges of the graph were retrieved, and each
+ * user was fetched exactly once.
+ *
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class CrawlBenchmark
+{
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+
+	/////////////////////////////////////////////////////////////////
+	// PROCESSING	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Mean number of followees in the synthetic graph */
+	private static final double MEAN_DEGREE = 10;
+	/** Exponent of the degree distribution */
+	private static final double EXPONENT = 2.1;
+	/** Seed used to generate the graph and the errors */
+	private static final long SEED = 0;
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param arg
+	 * 		Optional number of users, number of threads,
+	 * 		server latency (in ms), error rate and port
+	 * 		of the telemetry endpoint.
+	 *
+	 * @throws IOException
+	 * 		Problem while starting the stub server.
+	 * @throws ClassNotFoundException
+	 * 		Problem while loading the DB driver.
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 * @throws UniformInterfaceException
+	 * 		Problem while retrieving the network.
+	 * @throws URISyntaxException
+	 * 		Problem while retrieving the network.
+	 * @throws InterruptedException
+	 * 		Problem while retrieving the network.
+	 * @throws JSONException
+	 * 		Problem while retrieving the network.
+	 */
+	public static void main(String arg[]) throws IOException, ClassNotFoundException, SQLException, UniformInterfaceException, URISyntaxException, InterruptedException, JSONException
+	{	logger.setName("CrawlBenchmark");
+		int nodeNbr = 2000;
+		int threadNbr = 8;
+		long latency = 20;
+		double errorRate = 0.01;
+		if(arg.length>0)
+			nodeNbr = Integer.parseInt(arg[0]);
+		if(arg.length>1)
+			threadNbr = Integer.parseInt(arg[1]);
+		if(arg.length>2)
+			latency = Long.parseLong(arg[2]);
+		if(arg.length>3)
+			errorRate = Double.parseDouble(arg[3]);
+		if(arg.length>4)
+			RelationshipExtractor.setTelemetryPort(Integer.parseInt(arg[4]));
+		
+		// start the server
+		SyntheticGraph graph = new SyntheticGraph(nodeNbr,MEAN_DEGREE,EXPONENT,SEED);
+		GraphStubServer server = new GraphStubServer(0,latency,graph);
+		server.setErrorRate(errorRate,SEED);
+		server.start();
+		GooglePlusParser.setServiceRoot(server.getRoot());
+		// no throttling: we want to measure the crawler itself
+		GooglePlusParser.setRateController(new RateController(new FixedRatePolicy(),1e6,1e6,1e6,1000));
+		
+		// init the DB
+		DbTools.setDbName("benchmark");
+		DbTools.openDb();
+		try
+		{	DbTools.removeTables();
+		}
+		catch(SQLException e)
+		{	// first run: the tables do not exist yet
+		}
+		DbTools.createTables();
+		for(int i=0;i<nodeNbr;i++)
+			Person.insertDb(graph.getId(i));
+		
+		// crawl
+		long start = System.currentTimeMillis();
+		RelationshipExtractor.retrieveAllRelationships(threadNbr);
+		long elapsed = System.currentTimeMillis() - start;
+		
+		// results
+		NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
+		nf.setMaximumFractionDigits(2);
+		int edgeNbr = DbTools.getTableSize("RELATIONSHIP");
+		logger.log("Users: "+nodeNbr+" - threads: "+threadNbr+" - server latency: "+latency+" ms - error rate: "+errorRate);
+		logger.increaseOffset();
+		logger.log("Elapsed time: "+nf.format(elapsed/1000.0)+" s");
+		logger.log("Users/s: "+nf.format(nodeNbr*1000.0/elapsed)+" - edges/s: "+nf.format(edgeNbr*1000.0/elapsed));
+		logger.log("Requests: "+server.getRequestCount()+" - errors: "+server.getErrorCount()+" - connections: "+server.getConnectionCount());
+		boolean valid = true;
+		if(edgeNbr==graph.getEdgeNbr())
+			logger.log("All the "+edgeNbr+" edges were retrieved");
+		else
+		{	logger.log("ERROR: "+edgeNbr+" edges retrieved instead of "+graph.getEdgeNbr());
+			valid = false;
+		}
+		// a user fetched several times means the claims overlap
+		int duplicateNbr = 0;
+		int missingNbr = 0;
+		for(int i=0;i<nodeNbr;i++)
+		{	int count = server.getFetchCount(graph.getId(i));
+			if(count==0)
+				missingNbr++;
+			else if(count>1)
+			{	duplicateNbr++;
+				logger.log("ERROR: user "+graph.getId(i)+" was fetched "+count+" times");
+			}
+		}
+		if(duplicateNbr==0 && missingNbr==0)
+			logger.log("All the "+nodeNbr+" users were fetched exactly once");
+		else
+		{	logger.log("ERROR: "+duplicateNbr+" users fetched several times, "+missingNbr+" users never fetched");
+			valid = false;
+		}
+		logger.decreaseOffset();
+		
+		DbTools.closeDb();
+		server.stop();
+		if(!valid)
+			throw new IllegalStateException("The crawl did not retrieve the expected network");
+	}
+}
@@ -0,0 +1,275 @@
+package tr.edu.gsu.googleplus.test;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.jettison.json.JSONException;
+
+import com.sun.jersey.api.client.UniformInterfaceException;
+
+import tr.edu.gsu.googleplus.data.NodeStats;
+import tr.edu.gsu.googleplus.data.Person;
+import tr.edu.gsu.googleplus.explorer.CrawlCoordinator;
+import tr.edu.gsu.googleplus.explorer.CrawlerNode;
+import tr.edu.gsu.googleplus.explorer.RelationshipExtractor;
+import tr.edu.gsu.googleplus.parser.FixedRatePolicy;
+import tr.edu.gsu.googleplus.parser.GooglePlusParser;
+import tr.edu.gsu.googleplus.parser.RateController;
+import tr.edu.gsu.googleplus.tool.DbTools;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+
+/**
+ * Checks several crawler processes can share the
+ * same DB, like the {@link CrawlerNode}s of a
+ * {@link CrawlCoordinator}. This process plays the
+ * part of the coordinator: it inserts all the users
+ * of a synthetic graph in a dedicated DB, makes it
+ * available through an H2 server, and serves the graph
+ * with a {@link GraphStubServer}. It then starts several
+ * nodes, each one in its own JVM, so that their claims
+ * and writes are not serialized by the program itself.
+ * Once they are all over, the test checks all the edges
+ * of the graph were retrieved, and each user was fetched
+ * exactly once.
+ *
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class CrawlerNodeTest
+{
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+	
+	/////////////////////////////////////////////////////////////////
+	// PROCESSING	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Name of the DB shared by the nodes */
+	private static final String DB_NAME = "nodetest";
+	/** Mean number of followees in the synthetic graph */
+	private static final double MEAN_DEGREE = 10;
+	/** Exponent of the degree distribution */
+	private static final double EXPONENT = 2.1;
+	/** Seed used to generate the graph and the errors */
+	private static final long SEED = 0;
+	/** Option making the program run as a node */
+	private static final String NODE_OPTION = "-node";
+	
+	/**
+	 * Runs the test. When its first parameter is
+	 * {@link #NODE_OPTION}, the program runs as
+	 * one of the nodes started by the test.
+	 *
+	 * @param arg
+	 * 		Optional number of users, number of nodes,
+	 * 		number of threads by node, server latency
+	 * 		(in ms), error rate and port of the DB server.
+	 * 		For a node: port of the DB server, root of
+	 * 		the stub server and number of threads.
+	 *
+	 * @throws IOException
+	 * 		Problem while starting the stub server or a node.
+	 * @throws ClassNotFoundException
+	 * 		Problem while loading the DB driver.
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 * @throws UniformInterfaceException
+	 * 		Problem while retrieving the network.
+	 * @throws URISyntaxException
+	 * 		Problem while retrieving the network.
+	 * @throws InterruptedException
+	 * 		Problem while waiting for the nodes.
+	 * @throws JSONException
+	 * 		Problem while retrieving the network.
+	 */
+	public static void main(String arg[]) throws IOException, ClassNotFoundException, SQLException, UniformInterfaceException, URISyntaxException, InterruptedException, JSONException
+	{	if(arg.length>0 && arg[0].equals(NODE_OPTION))
+			runNode(Integer.parseInt(arg[1]),arg[2],Integer.parseInt(arg[3]));
+		else
+			runTest(arg);
+	}
+	
+	/**
+	 * Starts the servers and the nodes,
+	 * then checks the retrieved network.
+	 *
+	 * @param arg
+	 * 		Parameters of the program (cf. {@link #main(String[])}).
+	 *
+	 * @throws IOException
+	 * 		Problem while starting the stub server or a node.
+	 * @throws ClassNotFoundException
+	 * 		Problem while loading the DB driver.
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 * @throws InterruptedException
+	 * 		Problem while waiting for the nodes.
+	 */
+	private static void runTest(String arg[]) throws IOException, ClassNotFoundException, SQLException, InterruptedException
+	{	logger.setName("CrawlerNodeTest");
+		int userNbr = 2000;
+		int nodeNbr = 2;
+		int threadNbr = 8;
+		long latency = 20;
+		double errorRate = 0.01;
+		int port = DbTools.DEFAULT_PORT;
+		if(arg.length>0)
+			userNbr = Integer.parseInt(arg[0]);
+		if(arg.length>1)
+			nodeNbr = Integer.parseInt(arg[1]);
+		if(arg.length>2)
+			threadNbr = Integer.parseInt(arg[2]);
+		if(arg.length>3)
+			latency = Long.parseLong(arg[3]);
+		if(arg.length>4)
+			errorRate = Double.parseDouble(arg[4]);
+		if(arg.length>5)
+			port = Integer.parseInt(arg[5]);
+		
+		// start the stub server
+		SyntheticGraph graph = new SyntheticGraph(userNbr,MEAN_DEGREE,EXPONENT,SEED);
+		GraphStubServer server = new GraphStubServer(0,latency,graph);
+		server.setErrorRate(errorRate,SEED);
+		server.start();
+		
+		// init the DB, then share it like the coordinator does
+		DbTools.setDbName(DB_NAME);
+		DbTools.openDb();
+		try
+		{	DbTools.removeTables();
+		}
+		catch(SQLException e)
+		{	// first run: the tables do not exist yet
+		}
+		DbTools.createTables();
+		NodeStats.createTable();
+		for(int i=0;i<userNbr;i++)
+			Person.insertDb(graph.getId(i));
+		DbTools.startServer(port);
+		
+		// start the nodes, each one in its own JVM
+		logger.log("Starting "+nodeNbr+" nodes of "+threadNbr+" threads");
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		String classPath = System.getProperty("java.class.path");
+		List<Process> nodes = new ArrayList<Process>();
+		for(int i=0;i<nodeNbr;i++)
+		{	ProcessBuilder builder = new ProcessBuilder(java,"-cp",classPath,CrawlerNodeTest.class.getName(),
+					NODE_OPTION,Integer.toString(port),server.getRoot(),Integer.toString(threadNbr));
+			builder.inheritIO();
+			nodes.add(builder.start());
+		}
+		boolean valid = true;
+		for(int i=0;i<nodeNbr;i++)
+		{	int status = nodes.get(i).waitFor();
+			if(status!=0)
+			{	logger.log("ERROR: node "+i+" ended with status "+status);
+				valid = false;
+			}
+		}
+		
+		// results
+		int edgeNbr = DbTools.getTableSize("RELATIONSHIP");
+		logger.log("Users: "+userNbr+" - nodes: "+nodeNbr+" - threads by node: "+threadNbr+" - server latency: "+latency+" ms - error rate: "+errorRate);
+		logger.increaseOffset();
+		logger.log("Requests: "+server.getRequestCount()+" - errors: "+server.getErrorCount()+" - connections: "+server.getConnectionCount());
+		if(edgeNbr==graph.getEdgeNbr())
+			logger.log("All the "+edgeNbr+" edges were retrieved");
+		else
+		{	logger.log("ERROR: "+edgeNbr+" edges retrieved instead of "+graph.getEdgeNbr());
+			valid = false;
+		}
+		// a user fetched several times means the claims of the nodes overlap
+		int duplicateNbr = 0;
+		int missingNbr = 0;
+		for(int i=0;i<userNbr;i++)
+		{	int count = server.getFetchCount(graph.getId(i));
+			if(count==0)
+				missingNbr++;
+			else if(count>1)
+			{	duplicateNbr++;
+				logger.log("ERROR: user "+graph.getId(i)+" was fetched "+count+" times");
+			}
+		}
+		if(duplicateNbr==0 && missingNbr==0)
+			logger.log("All the "+userNbr+" users were fetched exactly once");
+		else
+		{	logger.log("ERROR: "+duplicateNbr+" users fetched several times, "+missingNbr+" users never fetched");
+			valid = false;
+		}
+		logger.decreaseOffset();
+		
+		DbTools.stopServer();
+		DbTools.closeDb();
+		server.stop();
+		if(!valid)
+			throw new IllegalStateException("The nodes did not retrieve the expected network");
+	}
+	
+	/**
+	 * Crawls the shared DB like a {@link CrawlerNode},
+	 * but using the stub server instead of Google+.
+	 *
+	 * @param port
+	 * 		Port of the DB server.
+	 * @param root
+	 * 		Root of the stub server.
+	 * @param threadNbr
+	 * 		Number of crawler threads.
+	 *
+	 * @throws ClassNotFoundException
+	 * 		Problem while loading the DB driver.
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 * @throws UniformInterfaceException
+	 * 		Problem while retrieving the network.
+	 * @throws URISyntaxException
+	 * 		Problem while retrieving the network.
+	 * @throws InterruptedException
+	 * 		Problem while retrieving the network.
+	 * @throws JSONException
+	 * 		Problem while retrieving the network.
+	 * @throws IOException
+	 * 		Problem while retrieving the network.
+	 */
+	private static void runNode(int port, String root, int threadNbr) throws ClassNotFoundException, SQLException, UniformInterfaceException, URISyntaxException, InterruptedException, JSONException, IOException
+	{	logger.setName("CrawlerNodeTest.node");
+		GooglePlusParser.setServiceRoot(root);
+		// no throttling: the nodes must be as concurrent as possible
+		GooglePlusParser.setRateController(new RateController(new FixedRatePolicy(),1e6,1e6,1e6,1000));
+		
+		DbTools.setDbName(DB_NAME);
+		DbTools.setServer("localhost",port);
+		DbTools.openDb();
+		RelationshipExtractor.retrieveAllRelationships(threadNbr);
+		DbTools.closeDb();
+	}
+}
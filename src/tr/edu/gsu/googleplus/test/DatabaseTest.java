@@ -114,7 +114,7 @@ public class DatabaseTest
 	 */
 	public static void testDisplay() throws ClassNotFoundException, SQLException
 	{	// open the database
-		DbTools.openDb(false);
+		DbTools.openDb();
 		
 		// create the empty tables
 //		DbTools.createTables();
@@ -149,7 +149,7 @@ public class DatabaseTest
 	 */
 	public static void testReform() throws ClassNotFoundException, SQLException, FileNotFoundException, UnsupportedEncodingException
 	{	// open the database
-		DbTools.openDb(false);
+		DbTools.openDb();
 		
 		// create the empty tables
 		DbTools.createTables();
@@ -186,7 +186,7 @@ public class DatabaseTest
 	 */
 	public static void testCount() throws ClassNotFoundException, SQLException
 	{	// open the database
-		DbTools.openDb(false);
+		DbTools.openDb();
 		
 		// create the empty tables
 //		DbTools.createTables();
@@ -224,7 +224,7 @@ public class DatabaseTest
 	 */
 	public static void testOutput() throws FileNotFoundException, UnsupportedEncodingException, ClassNotFoundException, SQLException
 	{	// open the database
-		DbTools.openDb(false);
+		DbTools.openDb();
 		
 		// create the empty tables
 //		DbTools.createTables();
@@ -255,7 +255,7 @@ public class DatabaseTest
 	 */
 	public static void testImport() throws ClassNotFoundException, SQLException
 	{	// open the database
-		DbTools.openDb(false);
+		DbTools.openDb();
 		
 		// NOTE: the DB must be new
 		
@@ -119,7 +119,7 @@ public class ExtractorTest
 	 */
 	public static void testEgoNetwork() throws ClassNotFoundException, SQLException, UniformInterfaceException, MalformedURLException, URISyntaxException, InterruptedException, JSONException, FileNotFoundException, UnsupportedEncodingException
 	{	DbTools.setDbName("googleplus.ego");
-		DbTools.openDb(false);
+		DbTools.openDb();
 		
 		// init DB
 //		DbTools.createTables();
@@ -162,7 +162,7 @@ public class ExtractorTest
 	 */
 	public static void testFullNetwork() throws ClassNotFoundException, SQLException, IOException, UniformInterfaceException, URISyntaxException, InterruptedException, JSONException
 	{	DbTools.setDbName("googleplus.full");
-		DbTools.openDb(false);
+		DbTools.openDb();
 	
 		// init DB
 //		DbTools.createTables();
@@ -0,0 +1,152 @@
+package tr.edu.gsu.googleplus.test;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.io.IOException;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import tr.edu.gsu.googleplus.parser.FetchEngine;
+import tr.edu.gsu.googleplus.parser.FixedRatePolicy;
+import tr.edu.gsu.googleplus.parser.GooglePlusParser;
+import tr.edu.gsu.googleplus.parser.RateController;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+
+/**
+ * Measures the throughput and latency of the
+ * {@link FetchEngine} against a local {@link StubServer},
+ * for various levels of concurrency.
+ *
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class FetchBenchmark
+{
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+
+	/////////////////////////////////////////////////////////////////
+	// PROCESSING	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Concurrency levels to be tested */
+	private static final int[] CONCURRENCY = {1, 4, 16, 64, 128};
+	/** Number of requests sent for each concurrency level */
+	private static int requestNbr = 500;
+	/** Latency of the stub server (in ms) */
+	private static final long LATENCY = 20;
+	/** Number of neighbors returned by the stub server */
+	private static final int NEIGHBOR_NBR = 100;
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param arg
+	 * 		Optional number of requests per concurrency level.
+	 *
+	 * @throws IOException
+	 * 		Problem while starting the stub server.
+	 * @throws InterruptedException
+	 * 		Problem while waiting for the requests.
+	 * @throws ExecutionException
+	 * 		Problem while processing a request.
+	 */
+	public static void main(String arg[]) throws IOException, InterruptedException, ExecutionException
+	{	logger.setName("FetchBenchmark");
+		if(arg.length>0)
+			requestNbr = Integer.parseInt(arg[0]);
+		StubServer server = new StubServer(0,LATENCY,NEIGHBOR_NBR);
+		server.start();
+		GooglePlusParser.setServiceRoot(server.getRoot());
+		// no throttling: we want to measure the engine itself
+		GooglePlusParser.setRateController(new RateController(new FixedRatePolicy(),1e6,1e6,1e6,1000));
+
+		// warm up
+		runLevel(4,requestNbr/10);
+
+		logger.log("Requests: "+requestNbr+" - server latency: "+LATENCY+" ms");
+		logger.increaseOffset();
+		for(int concurrency: CONCURRENCY)
+			runLevel(concurrency,requestNbr);
+		logger.decreaseOffset();
+
+		server.stop();
+	}
+
+	/**
+	 * Sends the specified number of follower
+	 * requests with the specified concurrency,
+	 * and logs the observed throughput and latency.
+	 *
+	 * @param concurrency
+	 * 		Number of fetching threads.
+	 * @param requestNbr
+	 * 		Number of requests to send.
+	 *
+	 * @throws InterruptedException
+	 * 		Problem while waiting for the requests.
+	 * @throws ExecutionException
+	 * 		Problem while processing a request.
+	 */
+	private static void runLevel(int concurrency, int requestNbr) throws InterruptedException, ExecutionException
+	{	FetchEngine engine = new FetchEngine(concurrency,concurrency*2);
+		List<Future<Long>> futures = new ArrayList<Future<Long>>(requestNbr);
+
+		long start = System.nanoTime();
+		for(int i=0;i<requestNbr;i++)
+		{	final String id = StubServer.formatId(i);
+			final long submitted = System.nanoTime();
+			Future<Long> future = engine.submit(new Callable<Long>()
+			{	@Override
+				public Long call() throws Exception
+				{	GooglePlusParser.extractFollowers(id);
+					long result = System.nanoTime() - submitted;
+					return result;
+				}
+			});
+			futures.add(future);
+		}
+		long latencies[] = new long[requestNbr];
+		for(int i=0;i<requestNbr;i++)
+			latencies[i] = futures.get(i).get();
+		long elapsed = System.nanoTime() - start;
+		engine.shutdown();
+
+		Arrays.sort(latencies);
+		double throughput = requestNbr / (elapsed/1e9);
+		double p50 = latencies[requestNbr/2] / 1e6;
+		double p99 = latencies[(int)Math.min(requestNbr-1,Math.ceil(requestNbr*0.99))] / 1e6;
+		NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
+		nf.setMaximumFractionDigits(2);
+		logger.log("concurrency="+concurrency+"\trequests/s="+nf.format(throughput)+"\tp50="+nf.format(p50)+"ms\tp99="+nf.format(p99)+"ms");
+	}
+}
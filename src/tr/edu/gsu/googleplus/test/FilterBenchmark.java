@@ -0,0 +1,250 @@
+package tr.edu.gsu.googleplus.test;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import tr.edu.gsu.googleplus.parser.GoogleJSONInputStream;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+
+/**
+ * Compares the former regex-based cleaning of the
+ * Google+ JSON responses with the streaming
+ * {@link GoogleJSONInputStream}, for various
+ * response sizes. For each size, the time and
+ * (when supported by the JVM) the memory allocated
+ * per response are logged, after a warm-up phase.
+ *
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class FilterBenchmark
+{
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+
+	/////////////////////////////////////////////////////////////////
+	// PROCESSING	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Numbers of neighbors in the tested responses */
+	private static final int[] SIZES = {10, 100, 1000, 10000, 100000};
+	/** Minimal duration of each measure (in ms) */
+	private static final long DURATION = 2000;
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param arg
+	 * 		Not used.
+	 *
+	 * @throws IOException
+	 * 		Problem while reading a response.
+	 */
+	public static void main(String arg[]) throws IOException
+	{	logger.setName("FilterBenchmark");
+		logger.log("Comparing regex and streaming cleaning");
+		logger.increaseOffset();
+		for(int size: SIZES)
+		{	byte[] response = buildResponse(size);
+			
+			// both methods must give the same result
+			byte[] expected = cleanRegex(response);
+			byte[] actual = cleanStream(response);
+			if(!Arrays.equals(expected,actual))
+				throw new IllegalStateException("Different results for size "+size);
+			
+			// warm up
+			measure(response,false,DURATION/4);
+			measure(response,true,DURATION/4);
+			
+			double regex[] = measure(response,false,DURATION);
+			double stream[] = measure(response,true,DURATION);
+			NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
+			nf.setMaximumFractionDigits(2);
+			logger.log("neighbors="+size+"\tbytes="+response.length
+				+"\tregex: "+nf.format(regex[0]/1000)+"us "+nf.format(regex[1]/1024)+"KB"
+				+"\tstream: "+nf.format(stream[0]/1000)+"us "+nf.format(stream[1]/1024)+"KB"
+				+"\tspeedup="+nf.format(regex[0]/stream[0]));
+		}
+		logger.decreaseOffset();
+	}
+	
+	/**
+	 * Cleans the specified response repeatedly during
+	 * the specified duration, and returns the average
+	 * time and allocated memory per response.
+	 * 
+	 * @param response
+	 * 		Raw response.
+	 * @param streaming
+	 * 		{@code true} for the streaming cleaning, {@code false} for the regex one.
+	 * @param duration
+	 * 		Duration of the measure (in ms).
+	 * @return
+	 * 		Average time (in ns) and allocated memory (in bytes, -1 if not supported).
+	 * 
+	 * @throws IOException
+	 * 		Problem while reading the response.
+	 */
+	private static double[] measure(byte[] response, boolean streaming, long duration) throws IOException
+	{	long allocStart = getAllocatedBytes();
+		long start = System.nanoTime();
+		long end = start + duration*1000000;
+		long now;
+		int count = 0;
+		int checksum = 0;
+		do
+		{	byte[] cleaned;
+			if(streaming)
+				cleaned = cleanStream(response);
+			else
+				cleaned = cleanRegex(response);
+			checksum = checksum + cleaned.length;
+			count++;
+			now = System.nanoTime();
+		}
+		while(now<end);
+		long allocEnd = getAllocatedBytes();
+		
+		double result[] = new double[2];
+		result[0] = (now-start) / (double)count;
+		if(allocStart<0 || checksum==0)
+			result[1] = -1;
+		else
+			result[1] = (allocEnd-allocStart) / (double)count;
+		return result;
+	}
+	
+	/**
+	 * Returns the number of bytes allocated so far
+	 * by the current thread, or -1 if the JVM does
+	 * not support this measure.
+	 * 
+	 * @return
+	 * 		Number of allocated bytes.
+	 */
+	private static long getAllocatedBytes()
+	{	long result = -1;
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(bean instanceof com.sun.management.ThreadMXBean)
+		{	com.sun.management.ThreadMXBean b = (com.sun.management.ThreadMXBean)bean;
+			if(b.isThreadAllocatedMemorySupported() && b.isThreadAllocatedMemoryEnabled())
+				result = b.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return result;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// CLEANING		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Empty slots after an opening character */
+	private static final Pattern PRE = Pattern.compile("([\\[{,]),");
+	/** Empty slots before a closing character */
+	private static final Pattern POST = Pattern.compile(",([\\]},])");
+	/** Buffer used to read the cleaned streams */
+	private static final byte[] BUFFER = new byte[8192];
+	
+	/**
+	 * Former cleaning method: the whole response is
+	 * decoded as a string, processed by two regular
+	 * expressions, then encoded again.
+	 * 
+	 * @param response
+	 * 		Raw response.
+	 * @return
+	 * 		Cleaned response.
+	 * 
+	 * @throws IOException
+	 * 		Problem while decoding the response.
+	 */
+	private static byte[] cleanRegex(byte[] response) throws IOException
+	{	String str = new String(response,"UTF-8");
+		str = str.substring(5);
+		str = PRE.matcher(str).replaceAll("$1null,");
+		str = POST.matcher(str).replaceAll(",null$1");
+		byte[] result = str.getBytes("UTF-8");
+		return result;
+	}
+	
+	/**
+	 * New cleaning method, relying on
+	 * {@link GoogleJSONInputStream}.
+	 * 
+	 * @param response
+	 * 		Raw response.
+	 * @return
+	 * 		Cleaned response.
+	 * 
+	 * @throws IOException
+	 * 		Problem while reading the response.
+	 */
+	private static byte[] cleanStream(byte[] response) throws IOException
+	{	InputStream in = new GoogleJSONInputStream(new ByteArrayInputStream(response));
+		ByteArrayOutputStream out = new ByteArrayOutputStream(response.length+response.length/4);
+		int n;
+		while((n=in.read(BUFFER))!=-1)
+			out.write(BUFFER,0,n);
+		in.close();
+		byte[] result = out.toByteArray();
+		return result;
+	}
+	
+	/**
+	 * Builds a raw follower list similar to
+	 * those sent by Google+.
+	 * 
+	 * @param neighborNbr
+	 * 		Number of followers in the list.
+	 * @return
+	 * 		Raw response, including the prefix.
+	 * 
+	 * @throws IOException
+	 * 		Problem while encoding the response.
+	 */
+	private static byte[] buildResponse(int neighborNbr) throws IOException
+	{	StringBuffer str = new StringBuffer();
+		str.append(")]}'\n[[\"sg.lv\",,[");
+		for(int i=0;i<neighborNbr;i++)
+		{	if(i>0)
+				str.append(",");
+			String neighbor = StubServer.formatId(i);
+			str.append("[[,,\""+neighbor+"\"],,[,,,\"0.5\",[],,{}]]");
+		}
+		str.append("]],,,,"+neighborNbr+"]");
+		byte[] result = str.toString().getBytes("UTF-8");
+		return result;
+	}
+}
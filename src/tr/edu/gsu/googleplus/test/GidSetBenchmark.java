@@ -0,0 +1,279 @@
+package tr.edu.gsu.googleplus.test;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.text.NumberFormat;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TreeSet;
+
+import tr.edu.gsu.googleplus.tool.ConcurrentGidSet;
+import tr.edu.gsu.googleplus.tool.GidBloomFilter;
+import tr.edu.gsu.googleplus.tool.GidSet;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+
+/**
+ * Compares the memory footprint and the throughput of
+ * the JDK collections and of the compact gid structures
+ * ({@link GidSet}, {@link ConcurrentGidSet}, {@link GidBloomFilter}),
+ * when used to store a large number of Google+ ids.<br/>
+ * The JVM heap must be large enough for the JDK collections,
+ * and the direct memory large enough for the off-heap set, e.g.
+ * {@code -Xmx4g -XX:MaxDirectMemorySize=1g} for 5,000,000 ids.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class GidSetBenchmark
+{
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+	
+	/////////////////////////////////////////////////////////////////
+	// PROCESSING	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Number of ids inserted in each structure */
+	private static int idNbr = 1000000;
+	/** Ids inserted in the structures */
+	private static String[] present;
+	/** Ids never inserted in the structures */
+	private static String[] absent;
+	/** Used to format the results */
+	private static NumberFormat nf;
+	
+	/**
+	 * Runs the benchmark.
+	 * 
+	 * @param arg
+	 * 		Optional number of ids.
+	 */
+	public static void main(String arg[])
+	{	logger.setName("GidSetBenchmark");
+		if(arg.length>0)
+			idNbr = Integer.parseInt(arg[0]);
+		nf = NumberFormat.getInstance(Locale.ENGLISH);
+		nf.setMaximumFractionDigits(2);
+		
+		// generate the ids (21 digits, like actual G+ ids)
+		logger.log("Generate "+idNbr+" ids");
+		Random random = new Random(0);
+		present = new String[idNbr];
+		absent = new String[idNbr];
+		for(int i=0;i<idNbr;i++)
+		{	present[i] = generateId(random);
+			absent[i] = generateId(random);
+		}
+		
+		logger.log("Results (memory is the retained heap, or the allocated direct memory)");
+		logger.log("Note the JDK figures do not include the String objects themselves, which must be kept in these collections");
+		logger.increaseOffset();
+		{	// JDK collections
+			benchCollection("HashSet<String>",new HashSet<String>());
+			benchCollection("TreeSet<String>",new TreeSet<String>());
+			
+			// compact sets
+			benchGidSet("GidSet (heap)",false);
+			benchGidSet("GidSet (direct)",true);
+			benchConcurrentGidSet();
+			
+			// approximate set
+			benchBloomFilter(0.01);
+		}
+		logger.decreaseOffset();
+	}
+	
+	/**
+	 * Generates a random 21-digit id,
+	 * starting with 1 like the G+ ids.
+	 * 
+	 * @param random
+	 * 		Random number generator.
+	 * @return
+	 * 		A new id.
+	 */
+	private static String generateId(Random random)
+	{	StringBuilder result = new StringBuilder(21);
+		result.append('1');
+		for(int i=0;i<20;i++)
+			result.append((char)('0'+random.nextInt(10)));
+		return result.toString();
+	}
+	
+	/**
+	 * Returns the heap currently used,
+	 * after a few garbage collections.
+	 * 
+	 * @return
+	 * 		Used heap (in bytes).
+	 */
+	private static long getUsedHeap()
+	{	Runtime runtime = Runtime.getRuntime();
+		for(int i=0;i<3;i++)
+			System.gc();
+		long result = runtime.totalMemory() - runtime.freeMemory();
+		return result;
+	}
+	
+	/**
+	 * Logs the results obtained for a structure.
+	 * 
+	 * @param name
+	 * 		Name of the structure.
+	 * @param memory
+	 * 		Memory used by the structure (in bytes).
+	 * @param insertTime
+	 * 		Time needed to insert all the ids (in ns).
+	 * @param lookupTime
+	 * 		Time needed to look all the present and absent ids up (in ns).
+	 * @param errors
+	 * 		Number of wrong answers to the lookups.
+	 */
+	private static void logResults(String name, long memory, long insertTime, long lookupTime, int errors)
+	{	double bytesPerId = memory / (double)idNbr;
+		double inserts = idNbr / (insertTime/1e9);
+		double lookups = 2 * idNbr / (lookupTime/1e9);
+		logger.log(name+"\tmemory="+nf.format(memory/1048576.0)+"MB ("+nf.format(bytesPerId)+" bytes/id)"
+			+"\tinserts/s="+nf.format(inserts)+"\tlookups/s="+nf.format(lookups)+"\terrors="+errors);
+	}
+	
+	/**
+	 * Benchmarks a JDK collection.
+	 * 
+	 * @param name
+	 * 		Name of the collection.
+	 * @param collection
+	 * 		The (empty) collection.
+	 */
+	private static void benchCollection(String name, Collection<String> collection)
+	{	long before = getUsedHeap();
+		long start = System.nanoTime();
+		for(String id: present)
+			collection.add(id);
+		long insertTime = System.nanoTime() - start;
+		long memory = getUsedHeap() - before;
+		
+		int errors = 0;
+		start = System.nanoTime();
+		for(int i=0;i<idNbr;i++)
+		{	if(!collection.contains(present[i]))
+				errors++;
+			if(collection.contains(absent[i]))
+				errors++;
+		}
+		long lookupTime = System.nanoTime() - start;
+		logResults(name,memory,insertTime,lookupTime,errors);
+	}
+	
+	/**
+	 * Benchmarks a {@link GidSet}.
+	 * 
+	 * @param name
+	 * 		Name of the set.
+	 * @param offHeap
+	 * 		Whether the set should be stored outside of the heap.
+	 */
+	private static void benchGidSet(String name, boolean offHeap)
+	{	long before = getUsedHeap();
+		long start = System.nanoTime();
+		// the set starts small, so that the cost of growing is included
+		GidSet set = new GidSet(16,offHeap);
+		for(String id: present)
+			set.add(id);
+		long insertTime = System.nanoTime() - start;
+		long memory;
+		if(offHeap)
+			memory = set.getMemorySize();
+		else
+			memory = getUsedHeap() - before;
+		
+		int errors = 0;
+		start = System.nanoTime();
+		for(int i=0;i<idNbr;i++)
+		{	if(!set.contains(present[i]))
+				errors++;
+			if(set.contains(absent[i]))
+				errors++;
+		}
+		long lookupTime = System.nanoTime() - start;
+		logResults(name,memory,insertTime,lookupTime,errors);
+	}
+	
+	/**
+	 * Benchmarks a {@link ConcurrentGidSet}
+	 * (from a single thread, so this measures
+	 * the overhead of the locks).
+	 */
+	private static void benchConcurrentGidSet()
+	{	long before = getUsedHeap();
+		long start = System.nanoTime();
+		ConcurrentGidSet set = new ConcurrentGidSet(16);
+		for(String id: present)
+			set.add(id);
+		long insertTime = System.nanoTime() - start;
+		long memory = getUsedHeap() - before;
+		
+		int errors = 0;
+		start = System.nanoTime();
+		for(int i=0;i<idNbr;i++)
+		{	if(!set.contains(present[i]))
+				errors++;
+			if(set.contains(absent[i]))
+				errors++;
+		}
+		long lookupTime = System.nanoTime() - start;
+		logResults("ConcurrentGidSet",memory,insertTime,lookupTime,errors);
+	}
+	
+	/**
+	 * Benchmarks a {@link GidBloomFilter}.
+	 * Here, the errors are the false positives.
+	 * 
+	 * @param falsePositiveRate
+	 * 		Desired false positive probability.
+	 */
+	private static void benchBloomFilter(double falsePositiveRate)
+	{	long start = System.nanoTime();
+		GidBloomFilter filter = new GidBloomFilter(idNbr,falsePositiveRate);
+		for(String id: present)
+			filter.put(id);
+		long insertTime = System.nanoTime() - start;
+		long memory = filter.getMemorySize();
+		
+		int errors = 0;
+		start = System.nanoTime();
+		for(int i=0;i<idNbr;i++)
+		{	if(!filter.mightContain(present[i]))
+				errors++;
+			if(filter.mightContain(absent[i]))
+				errors++;
+		}
+		long lookupTime = System.nanoTime() - start;
+		logResults("GidBloomFilter (p="+falsePositiveRate+")",memory,insertTime,lookupTime,errors);
+	}
+}
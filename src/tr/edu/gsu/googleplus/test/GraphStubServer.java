@@ -0,0 +1,146 @@
+package tr.edu.gsu.googleplus.test;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.io.IOException;
+
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+
+/**
+ * Stub server whose answers are based on a 
+ * {@link SyntheticGraph}: the followers and followees
+ * of a user are its neighbors in the graph, so crawling
+ * the server produces a consistent network, with realistic
+ * (i.e. heavy-tailed) neighborhood sizes. Users which do not
+ * belong to the graph have no neighbor.
+ *
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class GraphStubServer extends StubServer
+{
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+
+	/////////////////////////////////////////////////////////////////
+	// INIT			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Builds a new stub server based
+	 * on the specified graph.
+	 *
+	 * @param port
+	 * 		Port to listen on (0 for any free port).
+	 * @param latency
+	 * 		Time (in ms) the server waits before answering.
+	 * @param graph
+	 * 		Graph describing the users and their relationships.
+	 *
+	 * @throws IOException
+	 * 		Problem while opening the server socket.
+	 */
+	public GraphStubServer(int port, long latency, SyntheticGraph graph) throws IOException
+	{	super(port,latency,0);
+		this.graph = graph;
+	}
+
+	/////////////////////////////////////////////////////////////////
+	// CONTENT		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Graph describing the users and their relationships */
+	private final SyntheticGraph graph;
+
+	/**
+	 * Returns the graph used by
+	 * this server.
+	 *
+	 * @return
+	 * 		The underlying graph.
+	 */
+	public SyntheticGraph getGraph()
+	{	return graph;
+	}
+
+	@Override
+	protected String buildRelationships(String id, boolean followers)
+	{	int index = graph.getIndex(id);
+		String neighbors[];
+		if(index<0)
+			neighbors = new String[0];
+		else
+		{	int indices[];
+			if(followers)
+				indices = graph.getFollowers(index);
+			else
+				indices = graph.getFollowees(index);
+			neighbors = new String[indices.length];
+			for(int i=0;i<indices.length;i++)
+				neighbors[i] = graph.getId(indices[i]);
+		}
+		String result = formatRelationships(neighbors,followers);
+		return result;
+	}
+
+	/////////////////////////////////////////////////////////////////
+	// MAIN			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Launches a stand-alone stub server.
+	 *
+	 * @param arg
+	 * 		Optional port, number of users, mean number of
+	 * 		followees, latency, error rate and seed.
+	 *
+	 * @throws IOException
+	 * 		Problem while opening the server socket.
+	 */
+	public static void main(String arg[]) throws IOException
+	{	logger.setName("GraphStubServer");
+		int port = 8080;
+		int nodeNbr = 100000;
+		double meanDegree = 20;
+		long latency = 0;
+		double errorRate = 0;
+		long seed = 0;
+		if(arg.length>0)
+			port = Integer.parseInt(arg[0]);
+		if(arg.length>1)
+			nodeNbr = Integer.parseInt(arg[1]);
+		if(arg.length>2)
+			meanDegree = Double.parseDouble(arg[2]);
+		if(arg.length>3)
+			latency = Long.parseLong(arg[3]);
+		if(arg.length>4)
+			errorRate = Double.parseDouble(arg[4]);
+		if(arg.length>5)
+			seed = Long.parseLong(arg[5]);
+		SyntheticGraph graph = new SyntheticGraph(nodeNbr,meanDegree,2.1,seed);
+		GraphStubServer server = new GraphStubServer(port,latency,graph);
+		server.setErrorRate(errorRate,seed);
+		server.start();
+	}
+}
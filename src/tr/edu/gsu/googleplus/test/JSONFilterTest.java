@@ -0,0 +1,289 @@
+package tr.edu.gsu.googleplus.test;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.regex.Pattern;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+
+import tr.edu.gsu.googleplus.parser.GoogleJSONFilter;
+import tr.edu.gsu.googleplus.parser.GoogleJSONInputStream;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+
+/**
+ * Checks the cleaning performed by the {@link GoogleJSONFilter}
+ * (i.e. by a {@link GoogleJSONInputStream}). For regular responses,
+ * the result must be identical to that of the former regex-based
+ * cleaning. When strings contain delimiters, their content must be 
+ * left untouched (which the former cleaning did not do), including
+ * when they contain escaped quotes or backslashes. Empty slots 
+ * surrounded by spaces must also be filled. The result must not 
+ * depend on the size of the buffer used to read the stream, nor on the
+ * presence of the anti-XSSI prefix. An exception is thrown at the first
+ * difference.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class JSONFilterTest
+{	
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+
+	/////////////////////////////////////////////////////////////////
+	// RESPONSES	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Anti-XSSI prefix sent by Google+ */
+	private static final String PREFIX = ")]}'\n";
+	/** Regular responses (no delimiters in the strings, no spaces around the empty slots) */
+	private static final String[] REGULAR =
+	{	"[[\"sg.lv\",,[[[,,\"100000000000000000002\"],,[,,,\"0.5\",[],,{}]],[[,,\"100000000000000000003\"],,[,,,\"1.25\",[],,{}]]]],,,,2]",
+		"[[\"sg.lv\",,[]],,,,0]",
+		"[,,,]",
+		"[[,],{},[,[,,[,]],,],\"a\"]",
+		"[\"\\u00e9t\\u00e9\",\"\\\\\",[\"a\\\"b\"],,{\"k\":[,1]}]",
+	};
+	/** Responses not handled correctly by the former cleaning, and the expected results */
+	private static final String[][] SPECIAL =
+	{	{	"[[\"sg.lv\" , , [ [ , , \"1\" , ] ] ] , , 1 ]",
+			"[[\"sg.lv\" , null, [ [ null, null, \"1\" , null] ] ] , null, 1 ]"
+		},
+		{	"[\"a,,b\",,\"[,\",\",]\"]",
+			"[\"a,,b\",null,\"[,\",\",]\"]"
+		},
+		{	"[\"x\\\",,y\",,[\"{,\"],]",
+			"[\"x\\\",,y\",null,[\"{,\"],null]"
+		},
+		{	"[\"a\\\\\",,\"\\\\\\\",,\",]",
+			"[\"a\\\\\",null,\"\\\\\\\",,\",null]"
+		},
+		{	"[[\"sg.lv\",,[[[,,\"100000000000000000002\",\"Jo \\\"[,Bob,]\\\" ,,\"],,[,,,\"0.5\",[\",,\"],,{\"k\":\"v,}\"}]]]],,,,1]",
+			"[[\"sg.lv\",null,[[[null,null,\"100000000000000000002\",\"Jo \\\"[,Bob,]\\\" ,,\"],null,[null,null,null,\"0.5\",[\",,\"],null,{\"k\":\"v,}\"}]]]],null,null,null,1]"
+		},
+	};
+	/** Sizes of the buffers used to read the cleaned stream */
+	private static final int[] BUFFER_SIZES = {1, 2, 3, 7, 8192};
+
+	/////////////////////////////////////////////////////////////////
+	// PROCESSING	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Cleans each response and checks the result.
+	 * 
+	 * @param arg
+	 * 		Not used.
+	 * 
+	 * @throws IOException
+	 * 		Problem while reading a response.
+	 * @throws JSONException
+	 * 		Problem while parsing a cleaned response.
+	 */
+	public static void main(String arg[]) throws IOException, JSONException
+	{	logger.setName("JSONFilterTest");
+		
+		logger.log("Comparing with the former cleaning");
+		logger.increaseOffset();
+		for(String response: REGULAR)
+		{	String expected = cleanRegex(PREFIX+response);
+			checkAll(response,expected);
+			logger.log(response+": OK");
+		}
+		{	String response = new String(buildResponse(1000),"UTF-8");
+			String expected = cleanRegex(PREFIX+response);
+			checkAll(response,expected);
+			logger.log("Generated response ("+response.length()+" characters): OK");
+		}
+		logger.decreaseOffset();
+		
+		logger.log("Checking the responses the former cleaning did not handle");
+		logger.increaseOffset();
+		for(String[] response: SPECIAL)
+		{	checkAll(response[0],response[1]);
+			// the strings must be the same in both versions
+			String original = collectStrings(new JSONArray(response[1]));
+			String cleaned = collectStrings(new JSONArray(clean((PREFIX+response[0]).getBytes("UTF-8"),8192)));
+			if(!original.equals(cleaned))
+				throw new IllegalStateException("Strings modified: "+original+" vs. "+cleaned);
+			logger.log(response[0]+": OK");
+		}
+		logger.decreaseOffset();
+		logger.log("All responses cleaned correctly");
+	}
+	
+	/**
+	 * Cleans the specified response with and without
+	 * prefix, using various buffer sizes, and checks
+	 * the result is the expected one each time. The
+	 * result must also be valid JSON.
+	 * 
+	 * @param response
+	 * 		Response, without the prefix.
+	 * @param expected
+	 * 		Expected result.
+	 * 
+	 * @throws IOException
+	 * 		Problem while reading the response.
+	 * @throws JSONException
+	 * 		Problem while parsing the cleaned response.
+	 */
+	private static void checkAll(String response, String expected) throws IOException, JSONException
+	{	for(int size: BUFFER_SIZES)
+		{	String withPrefix = clean((PREFIX+response).getBytes("UTF-8"),size);
+			check(response,"with prefix, buffer="+size,expected,withPrefix);
+			String withoutPrefix = clean(response.getBytes("UTF-8"),size);
+			check(response,"without prefix, buffer="+size,expected,withoutPrefix);
+		}
+		new JSONArray(expected);
+	}
+	
+	/**
+	 * Throws an exception if the specified
+	 * results are different.
+	 * 
+	 * @param response
+	 * 		The cleaned response.
+	 * @param description
+	 * 		Description of the conditions of the test.
+	 * @param expected
+	 * 		Expected result.
+	 * @param actual
+	 * 		Obtained result.
+	 */
+	private static void check(String response, String description, String expected, String actual)
+	{	if(!expected.equals(actual))
+			throw new IllegalStateException("Different results for "+response+" ("+description+"): expected "+expected+", got "+actual);
+	}
+	
+	/**
+	 * Concatenates all the strings contained
+	 * in the specified JSON array (recursively).
+	 * 
+	 * @param json
+	 * 		The JSON array.
+	 * @return
+	 * 		The concatenated strings, separated by {@code |}.
+	 * 
+	 * @throws JSONException
+	 * 		Problem while accessing the array.
+	 */
+	private static String collectStrings(JSONArray json) throws JSONException
+	{	String result = "";
+		for(int i=0;i<json.length();i++)
+		{	Object obj = json.get(i);
+			if(obj instanceof String)
+				result = result + obj + "|";
+			else if(obj instanceof JSONArray)
+				result = result + collectStrings((JSONArray)obj);
+			else if(obj!=null)
+				result = result + obj.toString() + "|";
+		}
+		return result;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// CLEANING		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Empty slots after an opening character */
+	private static final Pattern PRE = Pattern.compile("([\\[{,]),");
+	/** Empty slots before a closing character */
+	private static final Pattern POST = Pattern.compile(",([\\]},])");
+	
+	/**
+	 * Former cleaning method: the prefix is removed,
+	 * then the empty slots are filled by two regular 
+	 * expressions, including inside the strings.
+	 * 
+	 * @param response
+	 * 		Raw response.
+	 * @return
+	 * 		Cleaned response.
+	 */
+	private static String cleanRegex(String response)
+	{	String result = response.substring(5);
+		result = PRE.matcher(result).replaceAll("$1null,");
+		result = POST.matcher(result).replaceAll(",null$1");
+		return result;
+	}
+	
+	/**
+	 * Cleans the specified response using a
+	 * {@link GoogleJSONInputStream}, read with
+	 * a buffer of the specified size.
+	 * 
+	 * @param response
+	 * 		Raw response.
+	 * @param bufferSize
+	 * 		Size of the read buffer.
+	 * @return
+	 * 		Cleaned response.
+	 * 
+	 * @throws IOException
+	 * 		Problem while reading the response.
+	 */
+	private static String clean(byte[] response, int bufferSize) throws IOException
+	{	InputStream in = new GoogleJSONInputStream(new ByteArrayInputStream(response));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[bufferSize];
+		int n;
+		while((n=in.read(buffer))!=-1)
+			out.write(buffer,0,n);
+		in.close();
+		String result = out.toString("UTF-8");
+		return result;
+	}
+	
+	/**
+	 * Builds a raw follower list similar to
+	 * those sent by Google+ (without the prefix).
+	 * 
+	 * @param neighborNbr
+	 * 		Number of followers in the list.
+	 * @return
+	 * 		Raw response.
+	 * 
+	 * @throws IOException
+	 * 		Problem while encoding the response.
+	 */
+	private static byte[] buildResponse(int neighborNbr) throws IOException
+	{	StringBuffer str = new StringBuffer();
+		str.append("[[\"sg.lv\",,[");
+		for(int i=0;i<neighborNbr;i++)
+		{	if(i>0)
+				str.append(",");
+			String neighbor = StubServer.formatId(i);
+			str.append("[[,,\""+neighbor+"\"],,[,,,\"0.5\",[],,{}]]");
+		}
+		str.append("]],,,,"+neighborNbr+"]");
+		byte[] result = str.toString().getBytes("UTF-8");
+		return result;
+	}
+}
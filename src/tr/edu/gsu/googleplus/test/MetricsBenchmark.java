@@ -0,0 +1,140 @@
+package tr.edu.gsu.googleplus.test;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+import tr.edu.gsu.googleplus.tool.metrics.Histogram;
+import tr.edu.gsu.googleplus.tool.metrics.HistogramSnapshot;
+
+/**
+ * Checks the percentiles computed by a {@link Histogram},
+ * and compares the cost of recording a value in a histogram
+ * and in a running average protected by a lock (the way the
+ * access times used to be measured), when several threads
+ * record values concurrently.
+ *
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class MetricsBenchmark
+{
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+
+	/////////////////////////////////////////////////////////////////
+	// PROCESSING	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Number of values recorded by each thread */
+	private static final int VALUE_NBR = 5000000;
+	/** Numbers of threads to be tested */
+	private static final int[] THREAD_NBRS = {1, 4, 16};
+	/** Running average (old way) */
+	private static double average = 0;
+	/** Number of values in the running average */
+	private static double count = 0;
+	/** Lock protecting the running average */
+	private static final Lock lock = new ReentrantLock();
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param arg
+	 * 		Not used.
+	 *
+	 * @throws InterruptedException
+	 * 		Problem while waiting for the threads.
+	 */
+	public static void main(String arg[]) throws InterruptedException
+	{	logger.setName("MetricsBenchmark");
+		NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
+		nf.setMaximumFractionDigits(2);
+		
+		// accuracy
+		Histogram histogram = new Histogram("uniform","us");
+		for(int i=1;i<=100000;i++)
+			histogram.record(i);
+		HistogramSnapshot snapshot = histogram.snapshot();
+		logger.log("Uniform values from 1 to 100000: "+snapshot);
+		
+		// cost
+		for(int threadNbr: THREAD_NBRS)
+		{	long lockTime = run(threadNbr,null);
+			long histoTime = run(threadNbr,new Histogram("benchmark","us"));
+			logger.log(threadNbr+" threads: lock="+nf.format(lockTime/(double)VALUE_NBR)+" ns/value - histogram="+nf.format(histoTime/(double)VALUE_NBR)+" ns/value");
+		}
+	}
+	
+	/**
+	 * Makes several threads record values,
+	 * either in the specified histogram or
+	 * in the locked running average.
+	 *
+	 * @param threadNbr
+	 * 		Number of threads.
+	 * @param histogram
+	 * 		Histogram receiving the values, or {@code null}
+	 * 		to use the running average.
+	 * @return
+	 * 		Elapsed time (in ns).
+	 *
+	 * @throws InterruptedException
+	 * 		Problem while waiting for the threads.
+	 */
+	private static long run(int threadNbr, final Histogram histogram) throws InterruptedException
+	{	Thread threads[] = new Thread[threadNbr];
+		for(int t=0;t<threadNbr;t++)
+		{	threads[t] = new Thread(new Runnable()
+			{	@Override
+				public void run()
+				{	for(int i=0;i<VALUE_NBR;i++)
+					{	long value = i & 1023;
+						if(histogram==null)
+						{	lock.lock();
+							average = average*(count/(count+1)) + value/(count+1);
+							count++;
+							lock.unlock();
+						}
+						else
+							histogram.record(value);
+					}
+				}
+			});
+		}
+		long start = System.nanoTime();
+		for(Thread thread: threads)
+			thread.start();
+		for(Thread thread: threads)
+			thread.join();
+		long result = System.nanoTime() - start;
+		return result;
+	}
+}
@@ -0,0 +1,175 @@
+package tr.edu.gsu.googleplus.test;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.sql.SQLException;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+import tr.edu.gsu.googleplus.data.Person;
+import tr.edu.gsu.googleplus.data.Relationship;
+import tr.edu.gsu.googleplus.data.RelationshipWriter;
+import tr.edu.gsu.googleplus.tool.DbTools;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+
+/**
+ * Compares the two ways of writing the relationships
+ * of a person in the DB: one relationship at a time 
+ * ({@link Relationship#insertDb()}), and the whole
+ * neighborhood at once ({@link RelationshipWriter}).
+ * The neighborhoods come from a {@link SyntheticGraph},
+ * and are written in a dedicated DB file which already
+ * contains the persons (like after the sitemap loading).
+ * Half the persons are processed each way, the old way
+ * first: the table is then smaller, which favors it.
+ *
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class RelationshipWriterBenchmark
+{
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+
+	/////////////////////////////////////////////////////////////////
+	// PROCESSING	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Mean number of followees in the synthetic graph */
+	private static final double MEAN_DEGREE = 10;
+	/** Exponent of the degree distribution */
+	private static final double EXPONENT = 2.1;
+	/** Seed used to generate the graph */
+	private static final long SEED = 0;
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param arg
+	 * 		Optional number of users in the graph, 
+	 * 		and number of users processed each way.
+	 *
+	 * @throws ClassNotFoundException
+	 * 		Problem while loading the DB driver.
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static void main(String arg[]) throws ClassNotFoundException, SQLException
+	{	logger.setName("RelationshipWriterBenchmark");
+		int nodeNbr = 100000;
+		int processedNbr = 2000;
+		if(arg.length>0)
+			nodeNbr = Integer.parseInt(arg[0]);
+		if(arg.length>1)
+			processedNbr = Integer.parseInt(arg[1]);
+		NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
+		nf.setMaximumFractionDigits(2);
+		
+		// init the DB
+		SyntheticGraph graph = new SyntheticGraph(nodeNbr,MEAN_DEGREE,EXPONENT,SEED);
+		DbTools.setDbName("writerbenchmark");
+		DbTools.openDb();
+		try
+		{	DbTools.removeTables();
+		}
+		catch(SQLException e)
+		{	// first run: the tables do not exist yet
+		}
+		DbTools.createTables();
+		List<String> ids = new ArrayList<String>();
+		for(int i=0;i<nodeNbr;i++)
+		{	ids.add(graph.getId(i));
+			if(ids.size()==10000 || i==nodeNbr-1)
+			{	Person.insertDb(ids);
+				ids.clear();
+			}
+		}
+		logger.log("Graph: "+nodeNbr+" users, "+graph.getEdgeNbr()+" edges");
+		
+		// one relationship at a time
+		long edgeNbr = 0;
+		long start = System.currentTimeMillis();
+		for(int i=0;i<processedNbr;i++)
+		{	Set<Relationship> relationships = getNeighborhood(graph,i);
+			for(Relationship relationship: relationships)
+				relationship.insertDb();
+			edgeNbr = edgeNbr + relationships.size();
+		}
+		long elapsed = System.currentTimeMillis() - start;
+		double oldRate = edgeNbr*1000.0/Math.max(1,elapsed);
+		logger.log("Relationship.insertDb: "+edgeNbr+" edges in "+elapsed+" ms ("+nf.format(oldRate)+" edges/s)");
+		
+		// whole neighborhoods
+		RelationshipWriter writer = new RelationshipWriter();
+		edgeNbr = 0;
+		start = System.currentTimeMillis();
+		for(int i=processedNbr;i<2*processedNbr;i++)
+		{	Set<Relationship> relationships = getNeighborhood(graph,i);
+			writer.write(relationships);
+			edgeNbr = edgeNbr + relationships.size();
+		}
+		elapsed = System.currentTimeMillis() - start;
+		double newRate = edgeNbr*1000.0/Math.max(1,elapsed);
+		writer.close();
+		logger.log("RelationshipWriter: "+edgeNbr+" edges in "+elapsed+" ms ("+nf.format(newRate)+" edges/s)");
+		logger.log("Speedup: "+nf.format(newRate/oldRate));
+		
+		DbTools.closeDb();
+	}
+	
+	/**
+	 * Builds the relationships of the specified
+	 * user, as they would be retrieved by the crawler.
+	 * 
+	 * @param graph
+	 * 		Graph containing the user.
+	 * @param index
+	 * 		Index of the user in the graph.
+	 * @return
+	 * 		Incoming and outgoing relationships of the user.
+	 */
+	private static Set<Relationship> getNeighborhood(SyntheticGraph graph, int index)
+	{	Set<Relationship> result = new TreeSet<Relationship>();
+		String id = graph.getId(index);
+		for(int followee: graph.getFollowees(index))
+		{	Relationship relationship = new Relationship();
+			relationship.setSourceId(id);
+			relationship.setTargetId(graph.getId(followee));
+			result.add(relationship);
+		}
+		for(int follower: graph.getFollowers(index))
+		{	Relationship relationship = new Relationship();
+			relationship.setSourceId(graph.getId(follower));
+			relationship.setTargetId(id);
+			result.add(relationship);
+		}
+		return result;
+	}
+}
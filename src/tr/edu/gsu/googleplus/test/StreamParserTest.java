@@ -0,0 +1,269 @@
+package tr.edu.gsu.googleplus.test;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+import tr.edu.gsu.googleplus.parser.GooglePlusParser.Mode;
+import tr.edu.gsu.googleplus.parser.RelationshipHandler;
+import tr.edu.gsu.googleplus.parser.RelationshipStreamParser;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+
+/**
+ * Checks the {@link RelationshipStreamParser} against
+ * the former parser (regex cleaning, Jettison tree and
+ * positional access), on responses following the layout
+ * of the Google+ follower/followee lists: the same
+ * relationships (including strengths), the same number 
+ * of neighbors and the same announced total must be 
+ * obtained. The responses include self-relationships,
+ * empty slots, nested objects, escape sequences, and
+ * strings containing quotes, brackets or commas, which
+ * must not disturb the tracking of the position of the
+ * ids ({@code [0][2][i][0][2]}). An exception is thrown
+ * at the first difference.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class StreamParserTest
+{	
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+
+	/////////////////////////////////////////////////////////////////
+	// RESPONSES	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Id of the user whose neighbors are listed */
+	private static final String ID = "100000000000000000001";
+	/** Anti-XSSI prefix sent by Google+ */
+	private static final String PREFIX = ")]}'\n";
+	/** Tested responses: description, mode and content */
+	private static final Object[][] RESPONSES =
+	{	{	"followers with strengths", Mode.FOLLOWER,
+			PREFIX+"[[\"sg.lv\",,[[[,,\"100000000000000000002\"],,[,,,\"0.5\",[],,{}]],[[,,\"100000000000000000003\"],,[,,,\"1.25\",[],,{}]]]],,,,2]"
+		},
+		{	"followees without strength", Mode.FOLLOWEE,
+			PREFIX+"[[\"sg.lv\",,[[[,,\"100000000000000000002\"]],[[,,\"100000000000000000004\"],,[,,,,[],,{}]]]]]"
+		},
+		{	"self-relationship", Mode.FOLLOWER,
+			PREFIX+"[[\"sg.lv\",,[[[,,\""+ID+"\"],,[,,,\"0.1\",[],,{}]],[[,,\"100000000000000000005\"],,[,,,\"0.2\",[],,{}]]]],,,,3]"
+		},
+		{	"total larger than the list", Mode.FOLLOWER,
+			PREFIX+"[[\"sg.lv\",,[[[,,\"100000000000000000006\"],,[,,,\"0.3\",[],,{}]]]],,,,1500]"
+		},
+		{	"empty list", Mode.FOLLOWER,
+			PREFIX+"[[\"sg.lv\",,[]],,,,0]"
+		},
+		{	"strings containing delimiters", Mode.FOLLOWER,
+			PREFIX+"[[\"sg.lv [,] \\\"x\\\"\",,[[[,,\"100000000000000000007\",\"a\\\"],[b\"],\"Jo \\\"[Bob]\\\", ,, {x}\",[,,,\"0.75\",[\"]\",\"[\",\",,\"],,{\"k\":\"v]\\\\\"}]],"
+				+"[[,,\"100000000000000000008\",\"\\\\\"],\"\\\\\\\"\",[,,,\"0.5\",[],,{\"a\":[1,2,{\"b\":\"c,,]\"}]}]]]],,,,2]"
+		},
+		{	"escape sequences in the kept values", Mode.FOLLOWEE,
+			PREFIX+"[[\"sg.lv\",,[[[,,\"1000000000000000000\\u00309\"],\"\\u00e9\\u4e2d\\n\",[,,,\"0.\\u0035\",[],,{}]],[[,,\"100000000000000000010\"],,[,,,\"1e-1\",[],,{}]]]]]"
+		},
+		{	"numbers, booleans and spaces", Mode.FOLLOWER,
+			PREFIX+"[[\"sg.lv\" , 12 , [ [ [ , , \"100000000000000000011\" , true ] , null , [ 1 , 2.5 , false , \"0.9\" , [ ] , , { \"n\" : -3 } ] ] ] ] , , , , 1 ]"
+		},
+	};
+
+	/////////////////////////////////////////////////////////////////
+	// PROCESSING	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Parses each response with both
+	 * parsers and compares the results.
+	 * 
+	 * @param arg
+	 * 		Not used.
+	 * 
+	 * @throws IOException
+	 * 		Problem while reading a response.
+	 * @throws JSONException
+	 * 		Problem while parsing a response with the former parser.
+	 */
+	public static void main(String arg[]) throws IOException, JSONException
+	{	logger.setName("StreamParserTest");
+		logger.log("Comparing the streaming and former parsers");
+		logger.increaseOffset();
+		for(Object[] response: RESPONSES)
+		{	String description = (String)response[0];
+			Mode mode = (Mode)response[1];
+			byte[] content = ((String)response[2]).getBytes("UTF-8");
+			
+			// former parser
+			Set<String> expected = new TreeSet<String>();
+			int expectedNumbers[] = parseTree(content,mode,expected);
+			
+			// streaming parser
+			final Set<String> actual = new TreeSet<String>();
+			RelationshipStreamParser parser = new RelationshipStreamParser(new ByteArrayInputStream(content),ID,mode);
+			parser.parse(new RelationshipHandler()
+			{	@Override
+				public void handleRelationship(String sourceId, String targetId, Float strength)
+				{	actual.add(format(sourceId,targetId,strength));
+				}
+			});
+			
+			check(description,"relationships",expected,actual);
+			check(description,"count",expectedNumbers[0],parser.getCount());
+			check(description,"total",expectedNumbers[1],parser.getTotal());
+			logger.log(description+": OK ("+actual.size()+" relationships)");
+		}
+		logger.decreaseOffset();
+		logger.log("All responses parsed identically");
+	}
+	
+	/**
+	 * Throws an exception if the specified
+	 * values are different.
+	 * 
+	 * @param description
+	 * 		Description of the tested response.
+	 * @param name
+	 * 		Name of the compared values.
+	 * @param expected
+	 * 		Value obtained with the former parser.
+	 * @param actual
+	 * 		Value obtained with the streaming parser.
+	 */
+	private static void check(String description, String name, Object expected, Object actual)
+	{	if(!expected.equals(actual))
+			throw new IllegalStateException(description+": different "+name+" (expected "+expected+", got "+actual+")");
+	}
+	
+	/**
+	 * Represents a relationship as a string,
+	 * so that the results can be compared.
+	 * 
+	 * @param sourceId
+	 * 		Id of the source person.
+	 * @param targetId
+	 * 		Id of the target person.
+	 * @param strength
+	 * 		Strength of the relationship (can be {@code null}).
+	 * @return
+	 * 		String representing the relationship.
+	 */
+	private static String format(String sourceId, String targetId, Float strength)
+	{	String result = sourceId + ">" + targetId + " (" + strength + ")";
+		return result;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// FORMER PARSER	/////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Empty slots after an opening character */
+	private static final Pattern PRE = Pattern.compile("([\\[{,]),");
+	/** Empty slots before a closing character */
+	private static final Pattern POST = Pattern.compile(",([\\]},])");
+	
+	/**
+	 * Former parsing method: the response is cleaned
+	 * by regular expressions, converted to a JSON tree,
+	 * and the relationships are accessed by their position.
+	 * 
+	 * @param response
+	 * 		Raw response.
+	 * @param mode
+	 * 		The type of relationship (follower/followee).
+	 * @param relationships
+	 * 		Set receiving the retrieved relationships (self-relationships excepted).
+	 * @return
+	 * 		Number of neighbors in the list, and announced total of followers.
+	 * 
+	 * @throws IOException
+	 * 		Problem while decoding the response.
+	 * @throws JSONException
+	 * 		Problem while parsing the response.
+	 */
+	private static int[] parseTree(byte[] response, Mode mode, Set<String> relationships) throws IOException, JSONException
+	{	String str = new String(response,"UTF-8");
+		str = str.substring(5);
+		str = PRE.matcher(str).replaceAll("$1null,");
+		str = POST.matcher(str).replaceAll(",null$1");
+		JSONArray json = new JSONArray(str);
+		
+		JSONArray personList = (JSONArray)getFromArray(json,0,2);
+		int result[] = {personList.length(), 0};
+		if(mode==Mode.FOLLOWER && json.length()==5)
+			result[1] = json.getInt(4);
+		
+		for(int i=0;i<personList.length();i++)
+		{	JSONArray array = personList.getJSONArray(i);
+			String id2 = (String)getFromArray(array,0,2);
+			if(!ID.equals(id2))
+			{	Float strength = null;
+				if(array.length()>2)
+				{	Object temp = getFromArray(array,2,3);
+					if(temp!=null)
+						strength = Float.valueOf((String)temp);
+				}
+				if(mode==Mode.FOLLOWEE)
+					relationships.add(format(ID,id2,strength));
+				else
+					relationships.add(format(id2,ID,strength));
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Former positional access to
+	 * the content of a JSON tree.
+	 * 
+	 * @param json
+	 * 		The JSON array containing the requested object.
+	 * @param i
+	 * 		The location of the requested object.
+	 * @return
+	 * 		The requested object, or {@code null} for an empty slot.
+	 * 
+	 * @throws JSONException
+	 * 		Object not found in the specified JSON object.
+	 */
+	private static Object getFromArray(JSONArray json, int... i) throws JSONException
+	{	Object result = null;
+		Object obj = json.get(i[0]);
+		if(obj instanceof JSONArray && i.length>1)
+		{	int[] nextLevel = new int[i.length-1];
+			System.arraycopy(i,1,nextLevel,0,nextLevel.length);
+			result = getFromArray((JSONArray)obj,nextLevel);
+		}
+		else if(obj!=JSONObject.NULL)
+			result = obj;
+		return result;
+	}
+}
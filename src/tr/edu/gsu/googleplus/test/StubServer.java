@@ -0,0 +1,454 @@
+package tr.edu.gsu.googleplus.test;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+
+/**
+ * Local HTTP server mimicking the (undocumented)
+ * Google+ services used by the parser. It answers
+ * the profile, followee and follower requests using
+ * the same prefixed, sparse JSON format as Google+,
+ * so that the parser and the extractors can be tested
+ * and benchmarked without accessing the actual service.<br/>
+ * The neighborhood of a user is generated from its id,
+ * so the answers are reproducible. Like Google+, the server
+ * compresses its answers when the client accepts it, and it
+ * counts the connections opened by the clients, which allows
+ * checking they are kept alive. It also counts how many times
+ * the followees of each user were sent, which allows checking
+ * each user is processed only once. It can also answer a certain
+ * proportion of the requests with an error, in order to test
+ * the retry and rate control mechanisms.<br/>
+ * Cf. {@link GraphStubServer} for a server based on a synthetic
+ * power-law graph.
+ *
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class StubServer
+{
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+	static
+	{	// otherwise the headers and body are sent separately, and Nagle's algorithm delays each answer
+		System.setProperty("sun.net.httpserver.nodelay","true");
+	}
+
+	/////////////////////////////////////////////////////////////////
+	// INIT			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Builds a new stub server listening
+	 * on the specified port.
+	 *
+	 * @param port
+	 * 		Port to listen on (0 for any free port).
+	 * @param latency
+	 * 		Time (in ms) the server waits before answering.
+	 * @param neighborNbr
+	 * 		Number of followers/followees of each user.
+	 *
+	 * @throws IOException
+	 * 		Problem while opening the server socket.
+	 */
+	public StubServer(int port, long latency, int neighborNbr) throws IOException
+	{	this.latency = latency;
+		this.neighborNbr = neighborNbr;
+		server = HttpServer.create(new InetSocketAddress("localhost",port),0);
+		server.createContext("/_/profiles/get/",new HttpHandler()
+		{	@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{	String path = exchange.getRequestURI().getPath();
+				String id = path.substring(path.lastIndexOf('/')+1);
+				answer(exchange,buildProfile(id));
+			}
+		});
+		server.createContext("/_/socialgraph/lookup/visible/",new HttpHandler()
+		{	@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{	String id = extractId(exchange);
+				if(answer(exchange,buildRelationships(id,false)))
+					countFetch(id);
+			}
+		});
+		server.createContext("/_/socialgraph/lookup/incoming/",new HttpHandler()
+		{	@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{	String id = extractId(exchange);
+				answer(exchange,buildRelationships(id,true));
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool(new ThreadFactory()
+		{	@Override
+			public Thread newThread(Runnable runnable)
+			{	Thread result = new Thread(runnable,"stub-server");
+				result.setDaemon(true);
+				return result;
+			}
+		}));
+	}
+
+	/////////////////////////////////////////////////////////////////
+	// SERVER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Underlying HTTP server */
+	private final HttpServer server;
+	/** Time (in ms) the server waits before answering */
+	private final long latency;
+	/** Number of followers/followees of each user */
+	private final int neighborNbr;
+	/** Addresses of the clients connected so far (one for each connection) */
+	private final Set<InetSocketAddress> clients = Collections.newSetFromMap(new ConcurrentHashMap<InetSocketAddress,Boolean>());
+	/** Number of requests received so far */
+	private final AtomicLong requestCount = new AtomicLong(0);
+	/** Number of requests answered with an error so far */
+	private final AtomicLong errorCount = new AtomicLong(0);
+	/** Number of times the followees of each user were successfully sent */
+	private final ConcurrentHashMap<String,AtomicInteger> fetchCounts = new ConcurrentHashMap<String,AtomicInteger>();
+	/** Proportion of requests answered with an error */
+	private double errorRate = 0;
+	/** Random generator used to inject the errors */
+	private Random random = new Random(0);
+
+	/**
+	 * Starts the server.
+	 */
+	public void start()
+	{	server.start();
+		logger.log("Stub server listening on "+getRoot());
+	}
+
+	/**
+	 * Stops the server.
+	 */
+	public void stop()
+	{	server.stop(0);
+		logger.log("Stub server stopped");
+	}
+
+	/**
+	 * Returns the root URL of this server,
+	 * to be used with {@link tr.edu.gsu.googleplus.parser.GooglePlusParser#setServiceRoot(String)}.
+	 *
+	 * @return
+	 * 		Root URL of the server.
+	 */
+	public String getRoot()
+	{	InetSocketAddress address = server.getAddress();
+		String result = "http://localhost:" + address.getPort();
+		return result;
+	}
+
+	/**
+	 * Returns the number of connections
+	 * opened by the clients so far.
+	 *
+	 * @return
+	 * 		Number of connections.
+	 */
+	public int getConnectionCount()
+	{	return clients.size();
+	}
+
+	/**
+	 * Returns the number of requests
+	 * received so far.
+	 *
+	 * @return
+	 * 		Number of requests.
+	 */
+	public long getRequestCount()
+	{	return requestCount.get();
+	}
+
+	/**
+	 * Returns the number of requests
+	 * answered with an error so far.
+	 *
+	 * @return
+	 * 		Number of errors.
+	 */
+	public long getErrorCount()
+	{	return errorCount.get();
+	}
+
+	/**
+	 * Returns the number of times the followees
+	 * of the specified user were successfully sent.
+	 * The requests answered with an error are not
+	 * counted, since the client must send them again.
+	 *
+	 * @param id
+	 * 		Id of the concerned user.
+	 * @return
+	 * 		Number of times the user was fetched.
+	 */
+	public int getFetchCount(String id)
+	{	int result = 0;
+		AtomicInteger count = fetchCounts.get(id);
+		if(count!=null)
+			result = count.get();
+		return result;
+	}
+
+	/**
+	 * Records that the followees of the
+	 * specified user were sent.
+	 *
+	 * @param id
+	 * 		Id of the concerned user.
+	 */
+	private void countFetch(String id)
+	{	AtomicInteger count = fetchCounts.get(id);
+		if(count==null)
+		{	fetchCounts.putIfAbsent(id,new AtomicInteger(0));
+			count = fetchCounts.get(id);
+		}
+		count.incrementAndGet();
+	}
+
+	/**
+	 * Makes the server answer a certain proportion
+	 * of the requests with a 503 error, like Google+
+	 * does when it is overloaded.
+	 *
+	 * @param errorRate
+	 * 		Proportion of errors (between 0 and 1).
+	 * @param seed
+	 * 		Seed of the generator deciding which requests fail.
+	 */
+	public synchronized void setErrorRate(double errorRate, long seed)
+	{	this.errorRate = errorRate;
+		random = new Random(seed);
+	}
+
+	/**
+	 * Decides whether the current
+	 * request should fail.
+	 *
+	 * @return
+	 * 		{@code true} if an error must be sent.
+	 */
+	private synchronized boolean drawError()
+	{	boolean result = errorRate>0 && random.nextDouble()<errorRate;
+		return result;
+	}
+
+	/**
+	 * Sends the specified body, using the
+	 * Google+ anti-XSSI prefix.
+	 *
+	 * @param exchange
+	 * 		Current HTTP exchange.
+	 * @param body
+	 * 		JSON content to be sent.
+	 * @return
+	 * 		{@code true} if the content was sent, {@code false} if an error was sent instead.
+	 *
+	 * @throws IOException
+	 * 		Problem while sending the answer.
+	 */
+	private boolean answer(HttpExchange exchange, String body) throws IOException
+	{	boolean result;
+		if(latency>0)
+		{	try
+			{	Thread.sleep(latency);
+			}
+			catch (InterruptedException e)
+			{	e.printStackTrace();
+			}
+		}
+
+		clients.add(exchange.getRemoteAddress());
+		requestCount.incrementAndGet();
+		if(drawError())
+		{	errorCount.incrementAndGet();
+			exchange.sendResponseHeaders(503,-1);
+			exchange.close();
+			result = false;
+		}
+		else
+		{	result = true;
+			byte[] bytes = (")]}'\n" + body).getBytes("UTF-8");
+			exchange.getResponseHeaders().set("Content-Type","application/json; charset=UTF-8");
+			String encoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+			if(encoding!=null && encoding.contains("gzip"))
+			{	exchange.getResponseHeaders().set("Content-Encoding","gzip");
+				exchange.sendResponseHeaders(200,0);
+				OutputStream os = new GZIPOutputStream(exchange.getResponseBody());
+				os.write(bytes);
+				os.close();
+			}
+			else
+			{	exchange.sendResponseHeaders(200,bytes.length);
+				OutputStream os = exchange.getResponseBody();
+				os.write(bytes);
+				os.close();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Retrieves the id of the concerned user
+	 * from a relationship request, whose query
+	 * looks like {@code o=[null,null,"id"]}.
+	 *
+	 * @param exchange
+	 * 		Current HTTP exchange.
+	 * @return
+	 * 		Id of the concerned user.
+	 */
+	private static String extractId(HttpExchange exchange)
+	{	String query = exchange.getRequestURI().getQuery();
+		int end = query.lastIndexOf('"');
+		int start = query.lastIndexOf('"',end-1);
+		String result = query.substring(start+1,end);
+		return result;
+	}
+
+	/////////////////////////////////////////////////////////////////
+	// CONTENT		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Builds the JSON profile of the specified user.
+	 *
+	 * @param id
+	 * 		Id of the concerned user.
+	 * @return
+	 * 		Corresponding JSON content (without prefix).
+	 */
+	protected String buildProfile(String id)
+	{	String result = "[[\"op.gp\",[\""+id+"\",,[,,\"https://plus.google.com/"+id+"\",\"//lh3.googleusercontent.com/"+id+"/photo.jpg\",[,\"First"+id+"\",\"Last"+id+"\"]]]]]";
+		return result;
+	}
+
+	/**
+	 * Builds the JSON list of followers or followees
+	 * of the specified user.
+	 *
+	 * @param id
+	 * 		Id of the concerned user.
+	 * @param followers
+	 * 		{@code true} for followers, {@code false} for followees.
+	 * @return
+	 * 		Corresponding JSON content (without prefix).
+	 */
+	protected String buildRelationships(String id, boolean followers)
+	{	String neighbors[] = new String[neighborNbr];
+		long base = Math.abs(id.hashCode()) * 1000L + (followers?0:500);
+		for(int i=0;i<neighborNbr;i++)
+			neighbors[i] = formatId(base+i);
+		String result = formatRelationships(neighbors,followers);
+		return result;
+	}
+
+	/**
+	 * Formats a list of followers or followees
+	 * using the Google+ JSON format.
+	 *
+	 * @param neighbors
+	 * 		Ids of the followers/followees.
+	 * @param followers
+	 * 		{@code true} for followers, {@code false} for followees.
+	 * @return
+	 * 		Corresponding JSON content (without prefix).
+	 */
+	protected static String formatRelationships(String neighbors[], boolean followers)
+	{	StringBuilder result = new StringBuilder(neighbors.length*48+32);
+		result.append("[[\"sg.lv\",,[");
+		for(int i=0;i<neighbors.length;i++)
+		{	if(i>0)
+				result.append(",");
+			result.append("[[,,\"").append(neighbors[i]).append("\"],,[,,,\"0.5\"]]");
+		}
+		result.append("]]");
+		if(followers)
+			result.append(",,,,"+neighbors.length);
+		result.append("]");
+		return result.toString();
+	}
+
+	/**
+	 * Formats a number as a 21-digit
+	 * Google+ id.
+	 *
+	 * @param value
+	 * 		The number to format.
+	 * @return
+	 * 		The corresponding id.
+	 */
+	protected static String formatId(long value)
+	{	String result = "1" + String.format("%020d",value);
+		return result;
+	}
+
+	/////////////////////////////////////////////////////////////////
+	// MAIN			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Launches a stand-alone stub server.
+	 *
+	 * @param arg
+	 * 		Optional port, latency and number of neighbors.
+	 *
+	 * @throws IOException
+	 * 		Problem while opening the server socket.
+	 */
+	public static void main(String arg[]) throws IOException
+	{	logger.setName("StubServer");
+		int port = 8080;
+		long latency = 0;
+		int neighborNbr = 100;
+		if(arg.length>0)
+			port = Integer.parseInt(arg[0]);
+		if(arg.length>1)
+			latency = Long.parseLong(arg[1]);
+		if(arg.length>2)
+			neighborNbr = Integer.parseInt(arg[2]);
+		StubServer server = new StubServer(port,latency,neighborNbr);
+		server.start();
+	}
+}
@@ -0,0 +1,262 @@
+package tr.edu.gsu.googleplus.test;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.util.Arrays;
+import java.util.Random;
+
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+
+/**
+ * Random directed graph whose degrees follow a
+ * power law, like those of the actual Google+ network.
+ * Each node first draws its number of followees from a
+ * Pareto distribution, then picks them with a probability
+ * proportional to their popularity, itself drawn from the
+ * same distribution: a few nodes therefore have a huge number
+ * of followers. The generation is seeded, so the same parameters
+ * always produce the same graph.<br/>
+ * Node {@code i} is identified by the Google+ id
+ * {@link StubServer#formatId(long) formatId(i)}. Both adjacency
+ * lists are stored as arrays of indices (CSR format), so
+ * that graphs of a few million edges fit in memory.
+ *
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class SyntheticGraph
+{
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+
+	/////////////////////////////////////////////////////////////////
+	// INIT			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Generates a new graph.
+	 *
+	 * @param nodeNbr
+	 * 		Number of nodes.
+	 * @param meanDegree
+	 * 		Expected average number of followees.
+	 * @param exponent
+	 * 		Exponent of the power law (must be greater than 2).
+	 * @param seed
+	 * 		Seed of the random generator.
+	 */
+	public SyntheticGraph(int nodeNbr, double meanDegree, double exponent, long seed)
+	{	logger.log("Generating a graph of "+nodeNbr+" nodes (mean degree: "+meanDegree+", exponent: "+exponent+", seed: "+seed+")");
+		Random random = new Random(seed);
+		this.nodeNbr = nodeNbr;
+		
+		// popularity of the nodes, cumulated to allow a binary search
+		double cumulated[] = new double[nodeNbr];
+		double total = 0;
+		for(int i=0;i<nodeNbr;i++)
+		{	total = total + pareto(random,1,exponent);
+			cumulated[i] = total;
+		}
+		
+		// followees (the minimal degree is chosen so that the mean of the distribution is the expected one)
+		double minDegree = meanDegree * (exponent-2) / (exponent-1);
+		followeeOffsets = new int[nodeNbr+1];
+		int marks[] = new int[nodeNbr];	// marks[j]==i+1 iff node j was already picked by node i
+		int targets[] = new int[(int)Math.min(Integer.MAX_VALUE-8,(long)(nodeNbr*meanDegree*1.2)+16)];
+		int edgeNbr = 0;
+		for(int i=0;i<nodeNbr;i++)
+		{	int degree = (int)Math.min(Math.min(nodeNbr-1,MAX_FOLLOWEE_NBR),Math.round(pareto(random,minDegree,exponent)));
+			int neighbors[] = new int[degree];
+			int count = 0;
+			int attempts = 0;
+			while(count<degree && attempts<degree*10)
+			{	attempts++;
+				int j = Arrays.binarySearch(cumulated,random.nextDouble()*total);
+				if(j<0)
+					j = -j - 1;
+				if(j!=i && marks[j]!=i+1)
+				{	marks[j] = i+1;
+					neighbors[count] = j;
+					count++;
+				}
+			}
+			Arrays.sort(neighbors,0,count);
+			if(edgeNbr+count>targets.length)
+				targets = Arrays.copyOf(targets,Math.max(edgeNbr+count,targets.length*3/2));
+			System.arraycopy(neighbors,0,targets,edgeNbr,count);
+			edgeNbr = edgeNbr + count;
+			followeeOffsets[i+1] = edgeNbr;
+		}
+		followees = Arrays.copyOf(targets,edgeNbr);
+		
+		// followers (obtained by transposing the followees)
+		followerOffsets = new int[nodeNbr+1];
+		for(int target: followees)
+			followerOffsets[target+1]++;
+		for(int i=0;i<nodeNbr;i++)
+			followerOffsets[i+1] = followerOffsets[i+1] + followerOffsets[i];
+		followers = new int[edgeNbr];
+		int positions[] = Arrays.copyOf(followerOffsets,nodeNbr);
+		for(int i=0;i<nodeNbr;i++)
+		{	for(int k=followeeOffsets[i];k<followeeOffsets[i+1];k++)
+			{	int target = followees[k];
+				followers[positions[target]] = i;
+				positions[target]++;
+			}
+		}
+		
+		logger.log("Generated "+edgeNbr+" edges (max number of followers: "+getMaxFollowerNbr()+")");
+	}
+	
+	/**
+	 * Draws a value from a Pareto distribution.
+	 *
+	 * @param random
+	 * 		Random generator.
+	 * @param min
+	 * 		Minimal value.
+	 * @param exponent
+	 * 		Exponent of the density.
+	 * @return
+	 * 		The drawn value.
+	 */
+	private static double pareto(Random random, double min, double exponent)
+	{	double result = min * Math.pow(1-random.nextDouble(),-1/(exponent-1));
+		return result;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// STRUCTURE	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Maximal number of followees of a node (Google+ limited the circles to 5000 persons) */
+	private static final int MAX_FOLLOWEE_NBR = 5000;
+	/** Number of nodes */
+	private final int nodeNbr;
+	/** Position of the followees of each node */
+	private final int followeeOffsets[];
+	/** Followees of all the nodes */
+	private final int followees[];
+	/** Position of the followers of each node */
+	private final int followerOffsets[];
+	/** Followers of all the nodes */
+	private final int followers[];
+	
+	/**
+	 * Returns the number of nodes.
+	 *
+	 * @return
+	 * 		Number of nodes.
+	 */
+	public int getNodeNbr()
+	{	return nodeNbr;
+	}
+	
+	/**
+	 * Returns the number of edges.
+	 *
+	 * @return
+	 * 		Number of edges.
+	 */
+	public int getEdgeNbr()
+	{	return followees.length;
+	}
+	
+	/**
+	 * Returns the largest number of
+	 * followers of a node.
+	 *
+	 * @return
+	 * 		Maximal in-degree.
+	 */
+	public int getMaxFollowerNbr()
+	{	int result = 0;
+		for(int i=0;i<nodeNbr;i++)
+			result = Math.max(result,followerOffsets[i+1]-followerOffsets[i]);
+		return result;
+	}
+	
+	/**
+	 * Returns the index of the node corresponding
+	 * to the specified Google+ id.
+	 *
+	 * @param id
+	 * 		Google+ id.
+	 * @return
+	 * 		Index of the node, or {@code -1} if
+	 * 		the id does not belong to the graph.
+	 */
+	public int getIndex(String id)
+	{	int result = -1;
+		try
+		{	long value = Long.parseLong(id.substring(1));
+			if(id.length()==21 && id.charAt(0)=='1' && value>=0 && value<nodeNbr)
+				result = (int)value;
+		}
+		catch(NumberFormatException e)
+		{	// not an id of the graph
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns the Google+ id of
+	 * the specified node.
+	 *
+	 * @param index
+	 * 		Index of the node.
+	 * @return
+	 * 		Corresponding Google+ id.
+	 */
+	public String getId(int index)
+	{	return StubServer.formatId(index);
+	}
+	
+	/**
+	 * Returns the followees of
+	 * the specified node.
+	 *
+	 * @param index
+	 * 		Index of the node.
+	 * @return
+	 * 		Indices of its followees.
+	 */
+	public int[] getFollowees(int index)
+	{	return Arrays.copyOfRange(followees,followeeOffsets[index],followeeOffsets[index+1]);
+	}
+	
+	/**
+	 * Returns the followers of
+	 * the specified node.
+	 *
+	 * @param index
+	 * 		Index of the node.
+	 * @return
+	 * 		Indices of its followers.
+	 */
+	public int[] getFollowers(int index)
+	{	return Arrays.copyOfRange(followers,followerOffsets[index],followerOffsets[index+1]);
+	}
+}
@@ -0,0 +1,166 @@
+package tr.edu.gsu.googleplus.tool;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Thread-safe set of Google+ ids. The ids are spread
+ * over several independent {@link GidSet}s (stripes), 
+ * each one protected by its own lock, so that threads
+ * accessing different stripes do not block each other.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class ConcurrentGidSet
+{	
+	/////////////////////////////////////////////////////////////////
+	// INIT			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Default number of stripes */
+	private static final int DEFAULT_STRIPE_BITS = 6;
+	
+	/**
+	 * Builds a new on-heap set.
+	 * 
+	 * @param expectedSize
+	 * 		Expected number of ids (the set grows if needed).
+	 */
+	public ConcurrentGidSet(long expectedSize)
+	{	this(expectedSize,false);
+	}
+	
+	/**
+	 * Builds a new set.
+	 * 
+	 * @param expectedSize
+	 * 		Expected number of ids (the set grows if needed).
+	 * @param offHeap
+	 * 		Whether the set should be stored outside of the Java heap.
+	 */
+	public ConcurrentGidSet(long expectedSize, boolean offHeap)
+	{	int stripeNbr = 1 << DEFAULT_STRIPE_BITS;
+		stripes = new GidSet[stripeNbr];
+		for(int i=0;i<stripeNbr;i++)
+			stripes[i] = new GidSet(expectedSize/stripeNbr+1,offHeap);
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// STRIPES		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Independent sets, each one used as its own lock */
+	private final GidSet[] stripes;
+	
+	/**
+	 * Returns the stripe containing the specified gid.
+	 * The highest bits of the hash code are used, since
+	 * the lowest ones are used inside the stripe.
+	 * 
+	 * @param high
+	 * 		High part of the gid.
+	 * @param low
+	 * 		Low part of the gid.
+	 * @return
+	 * 		The concerned stripe.
+	 */
+	private GidSet getStripe(long high, long low)
+	{	int index = (int)(Gid.hash(high,low) >>> (64-DEFAULT_STRIPE_BITS));
+		GidSet result = stripes[index];
+		return result;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// ACCESS		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Adds the specified gid to this set.
+	 * 
+	 * @param gid
+	 * 		The gid to add.
+	 * @return
+	 * 		{@code true} if the gid was not already present.
+	 */
+	public boolean add(String gid)
+	{	long high = Gid.high(gid);
+		long low = Gid.low(gid);
+		GidSet stripe = getStripe(high,low);
+		boolean result;
+		synchronized(stripe)
+		{	result = stripe.add(high,low);
+		}
+		return result;
+	}
+	
+	/**
+	 * Indicates whether the specified
+	 * gid is contained in this set.
+	 * 
+	 * @param gid
+	 * 		The gid of interest.
+	 * @return
+	 * 		{@code true} if the gid is present.
+	 */
+	public boolean contains(String gid)
+	{	long high = Gid.high(gid);
+		long low = Gid.low(gid);
+		GidSet stripe = getStripe(high,low);
+		boolean result;
+		synchronized(stripe)
+		{	result = stripe.contains(high,low);
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns the number of gids
+	 * contained in this set.
+	 * 
+	 * @return
+	 * 		Number of gids.
+	 */
+	public long size()
+	{	long result = 0;
+		for(GidSet stripe: stripes)
+		{	synchronized(stripe)
+			{	result = result + stripe.size();
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns the memory used by
+	 * the slots of this set.
+	 * 
+	 * @return
+	 * 		Size of the storage (in bytes).
+	 */
+	public long getMemorySize()
+	{	long result = 0;
+		for(GidSet stripe: stripes)
+		{	synchronized(stripe)
+			{	result = result + stripe.getMemorySize();
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,296 @@
+package tr.edu.gsu.googleplus.tool;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+import tr.edu.gsu.googleplus.tool.metrics.Counter;
+import tr.edu.gsu.googleplus.tool.metrics.Histogram;
+import tr.edu.gsu.googleplus.tool.metrics.MetricsRegistry;
+
+/**
+ * Fixed-size pool of connections to the DB, allowing
+ * each thread to work on its own connection instead
+ * of sharing a single one (on which H2 processes the
+ * statements one after the other, and where the 
+ * transaction of a thread includes the statements of
+ * all the others). The connections are opened when 
+ * first needed. When all of them are in use, a thread
+ * waits until another one releases its connection.
+ * <br/>
+ * The pool also keeps the prepared statements of each
+ * connection, so that the frequent queries are parsed
+ * only once per connection (cf. {@link #prepare(Connection, String)}).
+ * <br/>
+ * This class is used through {@link DbTools}.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class ConnectionPool
+{	
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+
+	/////////////////////////////////////////////////////////////////
+	// INIT			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Builds a new pool. No connection
+	 * is opened at this stage.
+	 * 
+	 * @param size
+	 * 		Maximal number of connections.
+	 */
+	public ConnectionPool(int size)
+	{	this.size = size;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// STATISTICS	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** for statistical purposes : time to obtain a connection (in us) */
+	private static final Histogram waitTimer = MetricsRegistry.getTimer("db.pool.wait");
+	/** for statistical purposes : number of statements prepared */
+	private static final Counter preparedCounter = MetricsRegistry.getCounter("db.statements.prepared");
+	/** for statistical purposes : number of prepared statements reused */
+	private static final Counter reusedCounter = MetricsRegistry.getCounter("db.statements.reused");
+	
+	/**
+	 * Returns the number of connections
+	 * currently not used by any thread.
+	 * 
+	 * @return
+	 * 		Number of idle connections.
+	 */
+	public int getIdle()
+	{	int result = idle.size() + size - opened.size();
+		return result;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// CONNECTIONS	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Maximal time a thread waits for a connection (in ms) */
+	private static final long ACQUIRE_TIMEOUT = 5*60*1000;
+	/** Maximal number of connections */
+	private final int size;
+	/** Connections currently not used */
+	private final BlockingQueue<Connection> idle = new LinkedBlockingQueue<Connection>();
+	/** All the connections opened so far */
+	private final List<Connection> opened = new ArrayList<Connection>();
+	
+	/**
+	 * Returns a connection for the exclusive use
+	 * of the calling thread, which must release it
+	 * once done (cf. {@link #release(Connection)}).
+	 * The connection is in auto-commit mode.
+	 * 
+	 * @return
+	 * 		A connection to the DB.
+	 * 
+	 * @throws SQLException
+	 * 		No connection became available, or problem while opening one.
+	 */
+	public Connection acquire() throws SQLException
+	{	long before = System.nanoTime();
+		Connection result = idle.poll();
+		if(result==null)
+			result = open();
+		if(result==null)
+		{	try
+			{	result = idle.poll(ACQUIRE_TIMEOUT,TimeUnit.MILLISECONDS);
+			}
+			catch(InterruptedException e)
+			{	throw new SQLException("Interrupted while waiting for a DB connection",e);
+			}
+			if(result==null)
+				throw new SQLException("No DB connection available after "+ACQUIRE_TIMEOUT+" ms (pool size: "+size+")");
+		}
+		waitTimer.recordSince(before);
+		return result;
+	}
+	
+	/**
+	 * Opens a new connection, if the pool
+	 * size allows it.
+	 * 
+	 * @return
+	 * 		The new connection, or {@code null} if the pool is full.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while opening the connection.
+	 */
+	private synchronized Connection open() throws SQLException
+	{	Connection result = null;
+		if(opened.size()<size)
+		{	result = DbTools.openConnection();
+			opened.add(result);
+			logger.log("Opened DB connection "+opened.size()+"/"+size);
+		}
+		return result;
+	}
+	
+	/**
+	 * Gives back a connection obtained through
+	 * {@link #acquire()}, so that other threads
+	 * can use it. A transaction left open is
+	 * rolled back.
+	 * 
+	 * @param connection
+	 * 		The released connection.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public void release(Connection connection) throws SQLException
+	{	if(!connection.getAutoCommit())
+		{	logger.log("WARNING: a DB connection was released during a transaction, which is rolled back");
+			connection.rollback();
+			connection.setAutoCommit(true);
+		}
+		idle.add(connection);
+	}
+	
+	/**
+	 * Closes all the connections opened by
+	 * this pool, as well as their statements.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public synchronized void close() throws SQLException
+	{	for(Connection connection: opened)
+		{	clearCache(connection);
+			connection.close();
+		}
+		opened.clear();
+		idle.clear();
+	}
+
+	/////////////////////////////////////////////////////////////////
+	// STATEMENTS	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Maximal number of statements kept for each connection */
+	private static final int CACHE_SIZE = 64;
+	/** Statements prepared for each connection, by query */
+	private final Map<Connection,Map<String,PreparedStatement>> caches = new ConcurrentHashMap<Connection,Map<String,PreparedStatement>>();
+	
+	/**
+	 * Returns a statement prepared for the specified
+	 * query on the specified connection. If the same
+	 * query was already prepared on this connection,
+	 * the same statement is returned again, so it must
+	 * not be closed by the caller. The least recently
+	 * used statements are closed when the cache is full.
+	 * <br/>
+	 * Like the connection itself, the statement must 
+	 * be used by a single thread at once.
+	 * 
+	 * @param connection
+	 * 		Connection of the calling thread.
+	 * @param query
+	 * 		The SQL query to prepare.
+	 * @return
+	 * 		A statement ready to receive its parameters.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public PreparedStatement prepare(Connection connection, String query) throws SQLException
+	{	Map<String,PreparedStatement> cache = caches.get(connection);
+		if(cache==null)
+		{	cache = new LinkedHashMap<String,PreparedStatement>(16,0.75f,true)
+			{	/** Class id */
+				private static final long serialVersionUID = 1L;
+				
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String,PreparedStatement> eldest)
+				{	boolean result = size()>CACHE_SIZE;
+					if(result)
+						closeStatement(eldest.getValue());
+					return result;
+				}
+			};
+			caches.put(connection,cache);
+		}
+		
+		PreparedStatement result = cache.get(query);
+		if(result==null)
+		{	result = connection.prepareStatement(query);
+			cache.put(query,result);
+			preparedCounter.increment();
+		}
+		else
+		{	result.clearParameters();
+			result.clearBatch();
+			reusedCounter.increment();
+		}
+		return result;
+	}
+	
+	/**
+	 * Closes all the statements prepared
+	 * for the specified connection.
+	 * 
+	 * @param connection
+	 * 		The concerned connection.
+	 */
+	public void clearCache(Connection connection)
+	{	Map<String,PreparedStatement> cache = caches.remove(connection);
+		if(cache!=null)
+		{	for(PreparedStatement statement: cache.values())
+				closeStatement(statement);
+		}
+	}
+	
+	/**
+	 * Closes a statement removed from the cache.
+	 * 
+	 * @param statement
+	 * 		The statement to close.
+	 */
+	private static void closeStatement(PreparedStatement statement)
+	{	try
+		{	statement.close();
+		}
+		catch(SQLException e)
+		{	logger.log("WARNING: could not close a cached statement ("+e.getMessage()+")");
+		}
+	}
+}
@@ -30,6 +30,7 @@ import java.io.UnsupportedEncodingException;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -38,6 +39,7 @@ import org.h2.tools.Server;
 
 import tr.edu.gsu.googleplus.data.Person;
 import tr.edu.gsu.googleplus.data.Relationship;
+import tr.edu.gsu.googleplus.data.Snapshot;
 import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
 import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
 
@@ -76,7 +78,7 @@ public class DbTools
 //	public static String dbUrl = "jdbc:h2:/home/vlabatut/eclipse/workspaces/Extraction/Database/googleplus/databases/googleplus.bis.data;create=true";
 //	public static String dbUrl = "jdbc:h2:C:\\Eclipse\\workspaces\\Extraction\\Database\\googleplus\\databases\\googleplus.data;create=true";
 	public static String dbUrl = null;
-	/** Current connection to the DB */
+	/** Common connection to the DB, used by the thread which opened it */
 	public static Connection connection = null;
 	static { setDbName("googleplus");}
 	
@@ -97,16 +99,38 @@ public class DbTools
 	}
 	
 	/**
-	 * Open a connection to the DB.
+	 * Makes the program access the DB through
+	 * an H2 server running on another machine (cf. 
+	 * {@link #startServer(int)}), instead of opening
+	 * the local DB file. This allows several crawler
+	 * processes to share the same DB. This must be 
+	 * done before the DB is opened.
+	 * 
+	 * @param host
+	 * 		Name or address of the machine running the server.
+	 * @param port
+	 * 		Port the server listens on.
+	 */
+	public static void setServer(String host, int port)
+	{	// the server resolves the DB name relatively to its own folder
+		dbUrl = "jdbc:h2:tcp://" + host + ":" + port + "/" + dbFileName;
+	}
+	
+	/**
+	 * Open a connection to the DB. This common
+	 * connection is used by the calling thread. 
+	 * The other threads use their own connections,
+	 * obtained through {@link #getConnection()}.
+	 * The H2 concurrent feature (MVCC) is always used,
+	 * otherwise these connections would lock whole
+	 * tables, and block each other.
 	 * 
-	 * @param concurrent 
-	 * 		If {@code true}, H2 concurrent feature is used. 
 	 * @throws ClassNotFoundException
 	 * 		Problem while accessing the DB driver.
 	 * @throws SQLException
 	 * 		Problem while accessing the DB.
 	 */
-	public static void openDb(boolean concurrent) throws ClassNotFoundException, SQLException
+	public static void openDb() throws ClassNotFoundException, SQLException
 	{	if(connection==null)
 		{	// load DB driver
 			logger.log("Load JDBC driver");
@@ -115,11 +139,126 @@ public class DbTools
 		    
 		    // DB connection
 			logger.log("Connect to DB");
-			String url = dbUrl;
-			if(concurrent)
-				url = url + ";MVCC=TRUE";
-		    connection = DriverManager.getConnection(url);
+		    connection = openConnection();
+		    pool = new ConnectionPool(poolSize);
+		    leased.set(connection);
+		}
+	}
+	
+	/** Time a connection waits for a lock held by another connection (in ms) */
+	private final static int LOCK_TIMEOUT = 10000;
+	
+	/**
+	 * Opens a new connection to the DB, in addition
+	 * to the common one. It allows a thread to perform
+	 * its own transactions, without interfering with
+	 * the statements of the other threads. The DB
+	 * must have been opened before, using 
+	 * {@link #openDb()}. The caller is in 
+	 * charge of closing the connection.
+	 * 
+	 * @return
+	 * 		The new connection.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static Connection openConnection() throws SQLException
+	{	// without MVCC, H2 locks whole tables, and the connections of the other threads would wait for each other
+		String url = dbUrl + ";MVCC=TRUE";
+		// the transactions of the other connections must not make this one fail
+		url = url + ";LOCK_TIMEOUT=" + LOCK_TIMEOUT;
+		Connection result = DriverManager.getConnection(url);
+		return result;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// POOL				/////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Maximal number of connections used by the other threads */
+	private static int poolSize = 16;
+	/** Connections used by the other threads */
+	private static ConnectionPool pool = null;
+	/** Connection currently used by each thread */
+	private static final ThreadLocal<Connection> leased = new ThreadLocal<Connection>();
+	
+	/**
+	 * Changes the maximal number of connections
+	 * used by the threads other than the one which
+	 * opened the DB (cf. {@link #getConnection()}). 
+	 * When they are all in use, the threads wait
+	 * for one of them to be released. This must be 
+	 * done before the DB is opened.
+	 * 
+	 * @param size
+	 * 		The new pool size.
+	 */
+	public static void setPoolSize(int size)
+	{	poolSize = size;
+	}
+	
+	/**
+	 * Returns the connection of the calling thread.
+	 * For the thread which opened the DB, it is the
+	 * common connection. The other threads obtain one
+	 * from a pool, and keep it until they release it
+	 * (cf. {@link #releaseConnection()}). This way, 
+	 * each thread performs its own transactions, and 
+	 * the threads do not wait for each other's statements
+	 * on a single connection.
+	 * 
+	 * @return
+	 * 		The connection of the calling thread.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static Connection getConnection() throws SQLException
+	{	Connection result = leased.get();
+		if(result==null)
+		{	result = pool.acquire();
+			leased.set(result);
 		}
+		return result;
+	}
+	
+	/**
+	 * Gives back the connection of the calling thread
+	 * to the pool. Threads accessing the DB only from time
+	 * to time should call this method after each access,
+	 * so that the pool can be smaller than the number of
+	 * threads. Does nothing if the thread has no connection,
+	 * or if it uses the common connection.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static void releaseConnection() throws SQLException
+	{	Connection conn = leased.get();
+		if(conn!=null && conn!=connection)
+		{	leased.remove();
+			pool.release(conn);
+		}
+	}
+	
+	/**
+	 * Returns a statement prepared for the specified
+	 * query on the connection of the calling thread.
+	 * The statements are cached by connection, so the
+	 * query is parsed only once: the returned statement
+	 * must not be closed (cf. {@link ConnectionPool#prepare(Connection, String)}).
+	 * 
+	 * @param query
+	 * 		The SQL query to prepare.
+	 * @return
+	 * 		A statement ready to receive its parameters.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while accessing the DB.
+	 */
+	public static PreparedStatement prepareStatement(String query) throws SQLException
+	{	PreparedStatement result = pool.prepare(getConnection(),query);
+		return result;
 	}
 	
 	/**
@@ -153,6 +292,47 @@ public class DbTools
 		}
 	}
 	
+	/////////////////////////////////////////////////////////////////
+	// SERVER			/////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Default port of the H2 server */
+	public final static int DEFAULT_PORT = 9092;
+	/** H2 server giving access to the DB to other processes, if any */
+	private static Server server = null;
+	
+	/**
+	 * Starts an H2 server giving access
+	 * to the DB folder to the crawler processes
+	 * running on other machines (cf. {@link #setServer(String, int)}).
+	 * The server keeps running until {@link #stopServer()}
+	 * is called.
+	 * 
+	 * @param port
+	 * 		Port the server must listen on.
+	 * 
+	 * @throws SQLException
+	 * 		Problem while starting the server.
+	 */
+	public static void startServer(int port) throws SQLException
+	{	if(server==null)
+		{	String args[] = {"-tcpPort", Integer.toString(port), "-tcpAllowOthers", "-baseDir", dbFolderPath};
+			server = Server.createTcpServer(args).start();
+			logger.log("DB server listening on "+server.getURL());
+		}
+	}
+	
+	/**
+	 * Stops the H2 server started
+	 * by {@link #startServer(int)}, if any.
+	 */
+	public static void stopServer()
+	{	if(server!=null)
+		{	server.stop();
+			server = null;
+			logger.log("DB server stopped");
+		}
+	}
+	
 	/**
 	 * Closes the current connection
 	 * to the DB. 
@@ -164,6 +344,9 @@ public class DbTools
 	{	logger.log("Close connection");
 	    // http://db.apache.org/derby/docs/10.8/getstart/getstart-single.html#rwwdactivity3
 	    //DriverManager.getConnection(url + ";shutdown=true");
+	    pool.clearCache(connection);
+	    pool.close();
+	    leased.remove();
 	    connection.close();
 	}
 
@@ -191,8 +374,8 @@ public class DbTools
 	}
 	
 	/**
-	 * Creates both PERSON and RELATIONSHIP
-	 * tables in the DB.
+	 * Creates the PERSON, RELATIONSHIP and
+	 * snapshot tables in the DB.
 	 * 
 	 * @throws SQLException
 	 * 		Problem while accessing the DB.
@@ -205,17 +388,25 @@ public class DbTools
 		// create relationship table
 		logger.log("Create RELATIONSHIP table");
 		Relationship.createTable();
+		
+		// create snapshot tables
+		logger.log("Create SNAPSHOT tables");
+		Snapshot.createTable();
 	}
 	
 	/**
-	 * Removes both PERSON and RELATIONSHIP
-	 * tables from the DB.
+	 * Removes the PERSON, RELATIONSHIP and
+	 * snapshot tables from the DB.
 	 * 
 	 * @throws SQLException
 	 * 		Problem while accessing the DB.
 	 */
 	public static void removeTables() throws SQLException
-	{	// remove relationship table
+	{	// remove snapshot tables
+		logger.log("Drop SNAPSHOT tables");
+		Snapshot.dropTable();
+		
+		// remove relationship table
 		logger.log("Drop RELATIONSHIP table");
 		Relationship.dropTable();
 		
@@ -253,7 +444,7 @@ public class DbTools
 				{"6189465196848974351323",date,"FFFFF","fffff","2"}
 			};
 			for(String d[]: data)
-			{	String query = "INSERT INTO PERSON VALUES ('"+d[0]+"', '"+d[1]+"', '"+d[2]+"', '"+d[3]+"', "+d[4]+")";
+			{	String query = "INSERT INTO PERSON (GOOGLE_ID,DATE_RETRIEVED,FIRSTNAME,LASTNAME,PROCESSED) VALUES ('"+d[0]+"', '"+d[1]+"', '"+d[2]+"', '"+d[3]+"', "+d[4]+")";
 				logger.log(query);
 				Statement statement = connection.createStatement();
 				statement.execute(query);
@@ -274,7 +465,7 @@ public class DbTools
 				{"6189465196848974351323","5178291815178155912142",date}
 			};
 			for(String d[]: data)
-			{	String query = "INSERT INTO RELATIONSHIP VALUES ('"+d[0]+"', '"+d[1]+"', '"+d[2]+"')";
+			{	String query = "INSERT INTO RELATIONSHIP SELECT S.ID, T.ID, '"+d[2]+"' FROM PERSON S, PERSON T WHERE S.GOOGLE_ID='"+d[0]+"' AND T.GOOGLE_ID='"+d[1]+"'";
 				Statement statement = connection.createStatement();
 				statement.execute(query);
 				statement.close();
@@ -352,7 +543,7 @@ public class DbTools
 		// fill with relationships
 		Statement statement = DbTools.connection.createStatement();
 //        ResultSet results = statement.executeQuery("SELECT * FROM RELATIONSHIP_OLD");
-		ResultSet results = statement.executeQuery("SELECT * FROM RELATIONSHIP");
+		ResultSet results = statement.executeQuery(Relationship.SELECT_QUERY);
         int count = 0;
         while(results.next())
         {	count++;
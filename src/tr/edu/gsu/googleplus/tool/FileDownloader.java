@@ -0,0 +1,220 @@
+package tr.edu.gsu.googleplus.tool;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+
+/**
+ * Downloads a list of files using a bounded
+ * pool of threads. Each file is downloaded through
+ * {@link FileTools#downloadFile(String, String)}, so
+ * it is never left truncated, and an interrupted 
+ * download is resumed instead of restarted. A failed
+ * download is retried a few times before giving up.
+ * <br/>
+ * Files already present locally are skipped, provided
+ * their size matches the one announced by the server:
+ * this allows detecting the truncated files left by
+ * earlier versions of the downloader.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class FileDownloader
+{	
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+
+	/////////////////////////////////////////////////////////////////
+	// INIT			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Builds a new downloader.
+	 * 
+	 * @param threadNbr
+	 * 		Number of files downloaded at the same time.
+	 * @param maxAttempts
+	 * 		Number of attempts for each file before giving up.
+	 */
+	public FileDownloader(int threadNbr, int maxAttempts)
+	{	this.threadNbr = threadNbr;
+		this.maxAttempts = maxAttempts;
+	}
+
+	/** Number of files downloaded at the same time */
+	private final int threadNbr;
+	/** Number of attempts for each file before giving up */
+	private final int maxAttempts;
+	/** Time waited before the first retry (in ms), doubled after each attempt */
+	private static final long RETRY_DELAY = 1000;
+
+	/////////////////////////////////////////////////////////////////
+	// PROCESSING	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Downloads the files at the specified URLs.
+	 * The method returns once all the files are
+	 * downloaded, or all the attempts failed.
+	 * 
+	 * @param urlStrs
+	 * 		URLs of the files to be downloaded.
+	 * @param pathStrs
+	 * 		Paths of the corresponding local files.
+	 * @param force
+	 * 		Download the files even if they already exist.
+	 * @return
+	 * 		Number of files actually downloaded (i.e. not skipped).
+	 * 
+	 * @throws IOException
+	 * 		Some files could not be downloaded.
+	 * @throws InterruptedException
+	 * 		Problem while waiting for the downloading threads.
+	 */
+	public int download(List<String> urlStrs, List<String> pathStrs, final boolean force) throws IOException, InterruptedException
+	{	logger.log("Downloading "+urlStrs.size()+" files using "+threadNbr+" threads");
+		logger.increaseOffset();
+		long before = System.currentTimeMillis();
+		
+		// download each file separately
+		ExecutorService executor = Executors.newFixedThreadPool(threadNbr);
+		List<Future<Long>> futures = new ArrayList<Future<Long>>();
+		for(int i=0;i<urlStrs.size();i++)
+		{	final String urlStr = urlStrs.get(i);
+			final String pathStr = pathStrs.get(i);
+			Future<Long> future = executor.submit(new Callable<Long>()
+			{	@Override
+				public Long call() throws IOException, InterruptedException
+				{	long result = downloadFile(urlStr,pathStr,force);
+					return result;
+				}
+			});
+			futures.add(future);
+		}
+		executor.shutdown();
+		
+		// the other files are downloaded even if one fails
+		int count = 0;
+		long size = 0;
+		int failures = 0;
+		for(int i=0;i<futures.size();i++)
+		{	try
+			{	long bytes = futures.get(i).get();
+				if(bytes>=0)
+				{	count++;
+					size = size + bytes;
+				}
+			}
+			catch(ExecutionException e)
+			{	failures++;
+				logger.log("ERROR: could not download "+urlStrs.get(i)+" ("+e.getCause().getMessage()+")");
+			}
+		}
+		
+		long elapsed = System.currentTimeMillis() - before;
+		NumberFormat nf = NumberFormat.getInstance();
+		nf.setMaximumFractionDigits(2);
+		logger.log(count+" files downloaded ("+size/1024+" kB), "+(urlStrs.size()-count-failures)+" skipped, "+failures+" failed, in "+elapsed+" ms ("+nf.format(size/1024.0*1000/Math.max(1,elapsed))+" kB/s)");
+		logger.decreaseOffset();
+		if(failures>0)
+			throw new IOException(failures+" files could not be downloaded");
+		return count;
+	}
+	
+	/**
+	 * Downloads a single file, unless it
+	 * already exists locally.
+	 * 
+	 * @param urlStr
+	 * 		URL of the file.
+	 * @param pathStr
+	 * 		Path of the local file.
+	 * @param force
+	 * 		Download the file even if it already exists.
+	 * @return
+	 * 		Size of the downloaded file, or {@code -1} if it was skipped.
+	 * 
+	 * @throws IOException
+	 * 		All the attempts failed.
+	 * @throws InterruptedException
+	 * 		Problem while waiting between two attempts.
+	 */
+	private long downloadFile(String urlStr, String pathStr, boolean force) throws IOException, InterruptedException
+	{	long result = -1;
+		File file = new File(pathStr);
+		File part = new File(pathStr+FileTools.PART_EXTENSION);
+		boolean needed = true;
+		if(force)
+		{	file.delete();
+			part.delete();
+		}
+		else if(file.exists())
+		{	long remote = FileTools.getRemoteSize(urlStr);
+			if(remote<0 || remote==file.length())
+				needed = false;
+			// truncated file: the missing part is downloaded
+			else if(file.length()<remote && !part.exists())
+			{	logger.log("File "+pathStr+" is truncated ("+file.length()+"/"+remote+" bytes), resuming it");
+				file.renameTo(part);
+			}
+			else
+				logger.log("File "+pathStr+" has the wrong size ("+file.length()+"/"+remote+" bytes), downloading it again");
+		}
+		
+		if(needed)
+		{	int attempt = 1;
+			long delay = RETRY_DELAY;
+			boolean done = false;
+			while(!done)
+			{	try
+				{	FileTools.downloadFile(urlStr,pathStr);
+					result = file.length();
+					done = true;
+				}
+				catch(IOException e)
+				{	if(attempt>=maxAttempts)
+						throw e;
+					logger.log("WARNING: attempt "+attempt+"/"+maxAttempts+" failed for "+urlStr+" ("+e.getMessage()+")");
+					Thread.sleep(delay);
+					delay = delay * 2;
+					attempt++;
+				}
+			}
+		}
+		return result;
+	}
+}
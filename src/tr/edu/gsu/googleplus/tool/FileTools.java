@@ -26,13 +26,21 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Scanner;
 
+import com.sun.jersey.core.util.Base64;
+
 import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
 import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
 
@@ -61,6 +69,8 @@ public class FileTools
 	public final static String LOG_FOLDER = "log"; 
 	/** folder containing the outputted text files */
 	public final static String OUT_FOLDER = RES_FOLDER + File.separator + "out"; 
+	/** folder containing the archived Google+ responses */
+	public final static String ARCHIVE_FOLDER = RES_FOLDER + File.separator + "archive"; 
 	
 	/////////////////////////////////////////////////////////////////
 	// LOGGER		/////////////////////////////////////////////////
@@ -68,9 +78,30 @@ public class FileTools
 	/** Common object used for logging */
 	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
 
+	/////////////////////////////////////////////////////////////////
+	// DOWNLOAD		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Extension of the files being downloaded */
+	public final static String PART_EXTENSION = ".part";
+	/** Time allowed to connect to the server (in ms) */
+	private final static int CONNECT_TIMEOUT = 10*1000;
+	/** Time allowed to wait for data from the server (in ms) */
+	private final static int READ_TIMEOUT = 2*60*1000;
+	/** Maximal number of bytes transferred at once to the output file */
+	private final static long CHUNK_SIZE = 1024*1024;
+	
 	/**
 	 * Download the file at the
-	 * specified URL.
+	 * specified URL.<br/>
+	 * The data is first written in a temporary
+	 * file (same name, plus {@link #PART_EXTENSION}),
+	 * which is renamed only once it is complete, so 
+	 * the output file is never left truncated. If the
+	 * temporary file already exists (interrupted download),
+	 * only the missing bytes are requested from the server.
+	 * The size of the file is checked against the one
+	 * announced by the server, and so is its MD5 checksum
+	 * when the server provides one ({@code Content-MD5}).
 	 * 
 	 * @param input
 	 * 		Input URL as a {@code String}. 
@@ -80,29 +111,175 @@ public class FileTools
 	 * 		Problem while accessing the URL or the output file. 
 	 */
 	public static void downloadFile(String input, String output) throws IOException
-	{	// open connection
-		URL url = new URL(input);
-		logger.log("Opening connection to " + input);
-        InputStream in = url.openStream();
-
-        // copying file
-		logger.log("Copying file "+output);
-        FileOutputStream out = new FileOutputStream(output);
-        byte[] buffer = new byte[1024];
-        int bytesRead,total=0;
-        while((bytesRead=in.read(buffer)) != -1)
-        {	total = total + bytesRead;
-        	out.write(buffer,0,bytesRead);
-        	//System.out.print(".");
-        }
-    	//System.out.println();
-        
-        // close streams
-		logger.log("Done: "+total+" bytes read ("+total/1024+" kB)");
-        in.close();
-        out.close();
+	{	URL url = new URL(input);
+		File file = new File(output);
+		File part = new File(output+PART_EXTENSION);
+		
+		// open connection (possibly resuming a previous download)
+		long offset = 0;
+		if(part.exists())
+			offset = part.length();
+		HttpURLConnection connection = openConnection(url,offset);
+		int code = connection.getResponseCode();
+		if(offset>0 && code==HttpURLConnection.HTTP_PARTIAL)
+		{	String range = connection.getHeaderField("Content-Range");
+			if(range==null || !range.startsWith("bytes "+offset+"-"))
+			{	logger.log("Unexpected range "+range+", restarting the download");
+				connection.disconnect();
+				offset = 0;
+				connection = openConnection(url,offset);
+				code = connection.getResponseCode();
+			}
+		}
+		// the partial file is at least as large as the remote one
+		else if(offset>0 && code==416)
+		{	logger.log("Partial file invalid, restarting the download");
+			connection.disconnect();
+			offset = 0;
+			connection = openConnection(url,offset);
+			code = connection.getResponseCode();
+		}
+		// the server ignored the range
+		else if(code==HttpURLConnection.HTTP_OK)
+			offset = 0;
+		if(code!=HttpURLConnection.HTTP_OK && code!=HttpURLConnection.HTTP_PARTIAL)
+		{	connection.disconnect();
+			throw new IOException("Server returned HTTP "+code+" for "+input);
+		}
+		long length = connection.getContentLengthLong();
+		long expected = -1;
+		if(length>=0)
+			expected = offset + length;
+		
+		// copying file
+		if(offset>0)
+			logger.log("Resuming file "+output+" at byte "+offset);
+		else
+			logger.log("Copying file "+output);
+		ReadableByteChannel in = Channels.newChannel(connection.getInputStream());
+		RandomAccessFile out = new RandomAccessFile(part,"rw");
+		long position = offset;
+		try
+		{	out.setLength(offset);
+			FileChannel channel = out.getChannel();
+			long bytesRead;
+			while((bytesRead=channel.transferFrom(in,position,CHUNK_SIZE)) > 0)
+				position = position + bytesRead;
+		}
+		finally
+		{	// the partial file is kept, so that the download can be resumed
+			in.close();
+			out.close();
+		}
+		
+		// check the file
+		if(expected>=0 && position!=expected)
+			throw new IOException("Truncated file "+output+": "+position+" bytes instead of "+expected);
+		String md5 = connection.getHeaderField("Content-MD5");
+		if(md5!=null && code==HttpURLConnection.HTTP_OK)
+		{	byte[] actual = computeMd5(part);
+			if(!MessageDigest.isEqual(Base64.decode(md5.trim()),actual))
+			{	part.delete();
+				throw new IOException("Corrupted file "+output+": MD5 checksum does not match "+md5);
+			}
+		}
+		
+		// the file is complete
+		if(file.exists() && !file.delete())
+			throw new IOException("Could not replace file "+output);
+		if(!part.renameTo(file))
+			throw new IOException("Could not rename file "+part+" to "+output);
+		logger.log("Done: "+position+" bytes ("+position/1024+" kB)");
+	}
+	
+	/**
+	 * Returns the size of the file at
+	 * the specified URL, as announced by
+	 * the server, without downloading it.
+	 * 
+	 * @param input
+	 * 		Input URL as a {@code String}. 
+	 * @return
+	 * 		Size of the remote file, or {@code -1} if unknown.
+	 * 
+	 * @throws IOException
+	 * 		Problem while accessing the URL.
+	 */
+	public static long getRemoteSize(String input) throws IOException
+	{	URL url = new URL(input);
+		HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+		connection.setConnectTimeout(CONNECT_TIMEOUT);
+		connection.setReadTimeout(READ_TIMEOUT);
+		connection.setRequestMethod("HEAD");
+		long result = -1;
+		if(connection.getResponseCode()==HttpURLConnection.HTTP_OK)
+			result = connection.getContentLengthLong();
+		connection.disconnect();
+		return result;
+	}
+	
+	/**
+	 * Opens a connection to the specified URL,
+	 * requesting the data starting from the 
+	 * specified offset.
+	 * 
+	 * @param url
+	 * 		URL of the file.
+	 * @param offset
+	 * 		Position of the first requested byte.
+	 * @return
+	 * 		The open connection.
+	 * 
+	 * @throws IOException
+	 * 		Problem while accessing the URL.
+	 */
+	private static HttpURLConnection openConnection(URL url, long offset) throws IOException
+	{	logger.log("Opening connection to " + url);
+		HttpURLConnection result = (HttpURLConnection)url.openConnection();
+		result.setConnectTimeout(CONNECT_TIMEOUT);
+		result.setReadTimeout(READ_TIMEOUT);
+		if(offset>0)
+			result.setRequestProperty("Range","bytes="+offset+"-");
+		return result;
 	}
 	
+	/**
+	 * Computes the MD5 checksum of the specified
+	 * file.
+	 * 
+	 * @param file
+	 * 		File to process.
+	 * @return
+	 * 		Checksum of the file.
+	 * 
+	 * @throws IOException
+	 * 		Problem while reading the file.
+	 */
+	private static byte[] computeMd5(File file) throws IOException
+	{	MessageDigest digest;
+		try
+		{	digest = MessageDigest.getInstance("MD5");
+		}
+		catch(NoSuchAlgorithmException e)
+		{	throw new IOException(e);
+		}
+		FileInputStream in = new FileInputStream(file);
+		try
+		{	byte[] buffer = new byte[64*1024];
+			int bytesRead;
+			while((bytesRead=in.read(buffer)) != -1)
+				digest.update(buffer,0,bytesRead);
+		}
+		finally
+		{	in.close();
+		}
+		byte[] result = digest.digest();
+		return result;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// CONVERSION	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
 	/**
 	 * Re-number an edge list file,
 	 * starting from 1 instead of 0.
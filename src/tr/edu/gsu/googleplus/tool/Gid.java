@@ -0,0 +1,170 @@
+package tr.edu.gsu.googleplus.tool;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Methods used to represent a Google+ id (gid) using
+ * two {@code long} values instead of a {@code String}.
+ * A gid is a 21-digit decimal number, which does not fit
+ * in a single {@code long}: its last 18 digits are stored
+ * in the <i>low</i> part, and the remaining leading digits
+ * in the <i>high</i> part. Both parts are non-negative.<br/>
+ * The conversion does not allocate any object, so it can 
+ * be used to process large numbers of ids. It is used by
+ * the compact collections of this package ({@link GidSet},
+ * {@link GidMap}, {@link GidBloomFilter}...).
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class Gid
+{	
+	/////////////////////////////////////////////////////////////////
+	// CONVERSION	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Number of digits in the low part */
+	private static final int LOW_DIGITS = 18;
+	/** Maximal number of digits in a gid */
+	private static final int MAX_DIGITS = 2*LOW_DIGITS;
+	
+	/**
+	 * Checks that the specified string can be 
+	 * represented by a pair of {@code long} values:
+	 * it must contain only digits, no leading zero
+	 * (except for 0 itself), and at most 36 digits.
+	 * 
+	 * @param gid
+	 * 		The string to check.
+	 * 
+	 * @throws IllegalArgumentException
+	 * 		If the string is not a valid gid.
+	 */
+	private static void check(String gid)
+	{	int length = gid.length();
+		if(length==0 || length>MAX_DIGITS || (length>1 && gid.charAt(0)=='0'))
+			throw new IllegalArgumentException("Invalid gid '"+gid+"'");
+		for(int i=0;i<length;i++)
+		{	char c = gid.charAt(i);
+			if(c<'0' || c>'9')
+				throw new IllegalArgumentException("Invalid gid '"+gid+"'");
+		}
+	}
+	
+	/**
+	 * Returns the high part of the
+	 * specified gid, i.e. its leading
+	 * digits.
+	 * 
+	 * @param gid
+	 * 		The gid to convert.
+	 * @return
+	 * 		Its high part.
+	 * 
+	 * @throws IllegalArgumentException
+	 * 		If the string is not a valid gid.
+	 */
+	public static long high(String gid)
+	{	check(gid);
+		long result = 0;
+		int end = gid.length() - LOW_DIGITS;
+		for(int i=0;i<end;i++)
+			result = result*10 + (gid.charAt(i)-'0');
+		return result;
+	}
+	
+	/**
+	 * Returns the low part of the
+	 * specified gid, i.e. its last
+	 * 18 digits.
+	 * 
+	 * @param gid
+	 * 		The gid to convert.
+	 * @return
+	 * 		Its low part.
+	 * 
+	 * @throws IllegalArgumentException
+	 * 		If the string is not a valid gid.
+	 */
+	public static long low(String gid)
+	{	check(gid);
+		long result = 0;
+		int start = Math.max(0,gid.length()-LOW_DIGITS);
+		for(int i=start;i<gid.length();i++)
+			result = result*10 + (gid.charAt(i)-'0');
+		return result;
+	}
+	
+	/**
+	 * Rebuilds the string representation
+	 * of a gid from its two parts.
+	 * 
+	 * @param high
+	 * 		High part of the gid.
+	 * @param low
+	 * 		Low part of the gid.
+	 * @return
+	 * 		The corresponding gid.
+	 */
+	public static String toString(long high, long low)
+	{	String result;
+		if(high==0)
+			result = Long.toString(low);
+		else
+		{	StringBuilder temp = new StringBuilder(MAX_DIGITS);
+			temp.append(high);
+			String lowStr = Long.toString(low);
+			for(int i=lowStr.length();i<LOW_DIGITS;i++)
+				temp.append('0');
+			temp.append(lowStr);
+			result = temp.toString();
+		}
+		return result;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// HASH			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Computes a well-mixed 64-bit hash code 
+	 * for the specified gid, so that all the bits
+	 * can be used (e.g. the lowest ones to index
+	 * a table and the highest ones to select a stripe).
+	 * 
+	 * @param high
+	 * 		High part of the gid.
+	 * @param low
+	 * 		Low part of the gid.
+	 * @return
+	 * 		The hash code.
+	 */
+	public static long hash(long high, long low)
+	{	long result = low*0x9E3779B97F4A7C15L + high;
+		// finalization step of MurmurHash3
+		result ^= result >>> 33;
+		result *= 0xff51afd7ed558ccdL;
+		result ^= result >>> 33;
+		result *= 0xc4ceb9fe1a85ec53L;
+		result ^= result >>> 33;
+		return result;
+	}
+}
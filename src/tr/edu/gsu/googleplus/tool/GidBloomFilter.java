@@ -0,0 +1,180 @@
+package tr.edu.gsu.googleplus.tool;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter for Google+ ids: an approximate, thread-safe
+ * set which never misses an id it contains, but can wrongly
+ * claim to contain an id, with a controlled probability. 
+ * It needs only about 10 bits per id for a 1% error rate,
+ * and can therefore replace a {@link GidSet} when a few
+ * false positives are acceptable (e.g. to skip most of the
+ * already seen ids before checking the DB), or when the
+ * number of ids is too large to fit in memory otherwise.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class GidBloomFilter
+{	
+	/////////////////////////////////////////////////////////////////
+	// INIT			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Builds a filter sized for the specified number
+	 * of ids and false positive probability.
+	 * 
+	 * @param expectedSize
+	 * 		Expected number of ids.
+	 * @param falsePositiveRate
+	 * 		Desired false positive probability (e.g. 0.01).
+	 */
+	public GidBloomFilter(long expectedSize, double falsePositiveRate)
+	{	long n = Math.max(1,expectedSize);
+		long m = (long)Math.ceil(-n*Math.log(falsePositiveRate)/(Math.log(2)*Math.log(2)));
+		int words = (int)Math.min(Integer.MAX_VALUE,(m+63)/64);
+		bits = new AtomicLongArray(words);
+		bitNbr = (long)words * 64;
+		hashNbr = Math.max(1,(int)Math.round((double)bitNbr/n*Math.log(2)));
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// BITS			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Bit array */
+	private final AtomicLongArray bits;
+	/** Number of bits */
+	private final long bitNbr;
+	/** Number of hash functions */
+	private final int hashNbr;
+	
+	/**
+	 * Returns the number of hash 
+	 * functions used by this filter.
+	 * 
+	 * @return
+	 * 		Number of hash functions.
+	 */
+	public int getHashNbr()
+	{	return hashNbr;
+	}
+	
+	/**
+	 * Returns the memory used by
+	 * the bits of this filter.
+	 * 
+	 * @return
+	 * 		Size of the bit array (in bytes).
+	 */
+	public long getMemorySize()
+	{	long result = bitNbr / 8;
+		return result;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// ACCESS		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Adds the specified gid to this filter.
+	 * The positions of the bits are obtained by
+	 * double hashing.
+	 * 
+	 * @param high
+	 * 		High part of the gid.
+	 * @param low
+	 * 		Low part of the gid.
+	 * @return
+	 * 		{@code true} if the gid was certainly absent before.
+	 */
+	public boolean put(long high, long low)
+	{	long h1 = Gid.hash(high,low);
+		long h2 = Gid.hash(low,h1) | 1;
+		boolean result = false;
+		for(int i=0;i<hashNbr;i++)
+		{	long bit = ((h1 + i*h2) & Long.MAX_VALUE) % bitNbr;
+			int word = (int)(bit >>> 6);
+			long m = 1L << (bit & 63);
+			long old = bits.get(word);
+			while((old & m)==0 && !bits.compareAndSet(word,old,old|m))
+				old = bits.get(word);
+			if((old & m)==0)
+				result = true;
+		}
+		return result;
+	}
+	
+	/**
+	 * Adds the specified gid to this filter.
+	 * 
+	 * @param gid
+	 * 		The gid to add.
+	 * @return
+	 * 		{@code true} if the gid was certainly absent before.
+	 */
+	public boolean put(String gid)
+	{	boolean result = put(Gid.high(gid),Gid.low(gid));
+		return result;
+	}
+	
+	/**
+	 * Indicates whether the specified gid 
+	 * might have been added to this filter.
+	 * 
+	 * @param high
+	 * 		High part of the gid.
+	 * @param low
+	 * 		Low part of the gid.
+	 * @return
+	 * 		{@code false} if the gid was certainly not added,
+	 * 		{@code true} if it was probably added.
+	 */
+	public boolean mightContain(long high, long low)
+	{	long h1 = Gid.hash(high,low);
+		long h2 = Gid.hash(low,h1) | 1;
+		boolean result = true;
+		for(int i=0;i<hashNbr && result;i++)
+		{	long bit = ((h1 + i*h2) & Long.MAX_VALUE) % bitNbr;
+			int word = (int)(bit >>> 6);
+			long m = 1L << (bit & 63);
+			result = (bits.get(word) & m)!=0;
+		}
+		return result;
+	}
+	
+	/**
+	 * Indicates whether the specified gid 
+	 * might have been added to this filter.
+	 * 
+	 * @param gid
+	 * 		The gid of interest.
+	 * @return
+	 * 		{@code false} if the gid was certainly not added,
+	 * 		{@code true} if it was probably added.
+	 */
+	public boolean mightContain(String gid)
+	{	boolean result = mightContain(Gid.high(gid),Gid.low(gid));
+		return result;
+	}
+}
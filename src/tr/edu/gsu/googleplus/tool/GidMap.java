@@ -0,0 +1,190 @@
+package tr.edu.gsu.googleplus.tool;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Map associating Google+ ids to {@code long} values,
+ * based on a compact open-addressing table (cf. {@link GidTable}).
+ * Each entry takes 24 bytes per slot, instead of the
+ * hundreds of bytes needed by a {@code HashMap<String,Integer>}.
+ * This class is not thread-safe.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class GidMap extends GidTable
+{	
+	/** Field containing the value in each slot */
+	private static final int VALUE = 2;
+	
+	/**
+	 * Builds a new on-heap map.
+	 * 
+	 * @param expectedSize
+	 * 		Expected number of ids (the map grows if needed).
+	 */
+	public GidMap(long expectedSize)
+	{	this(expectedSize,false);
+	}
+	
+	/**
+	 * Builds a new map.
+	 * 
+	 * @param expectedSize
+	 * 		Expected number of ids (the map grows if needed).
+	 * @param offHeap
+	 * 		Whether the map should be stored outside of the Java heap.
+	 */
+	public GidMap(long expectedSize, boolean offHeap)
+	{	super(3,expectedSize,offHeap);
+	}
+	
+	/**
+	 * Returns the value associated to the
+	 * specified gid.
+	 * 
+	 * @param high
+	 * 		High part of the gid.
+	 * @param low
+	 * 		Low part of the gid.
+	 * @param defaultValue
+	 * 		Value returned if the gid is not in the map.
+	 * @return
+	 * 		The associated value, or {@code defaultValue} if there is none.
+	 */
+	public long get(long high, long low, long defaultValue)
+	{	long slot = locate(high,low);
+		long result = defaultValue;
+		if(!isFree(slot))
+			result = getField(slot,VALUE);
+		return result;
+	}
+	
+	/**
+	 * Returns the value associated to the
+	 * specified gid.
+	 * 
+	 * @param gid
+	 * 		The gid of interest.
+	 * @param defaultValue
+	 * 		Value returned if the gid is not in the map.
+	 * @return
+	 * 		The associated value, or {@code defaultValue} if there is none.
+	 */
+	public long get(String gid, long defaultValue)
+	{	long result = get(Gid.high(gid),Gid.low(gid),defaultValue);
+		return result;
+	}
+	
+	/**
+	 * Associates the specified value
+	 * to the specified gid.
+	 * 
+	 * @param high
+	 * 		High part of the gid.
+	 * @param low
+	 * 		Low part of the gid.
+	 * @param value
+	 * 		The value.
+	 * @return
+	 * 		{@code true} if the gid was not already present.
+	 */
+	public boolean put(long high, long low, long value)
+	{	long slot = locate(high,low);
+		boolean result = isFree(slot);
+		setField(slot,VALUE,value);
+		if(result)
+			occupy(slot,high,low);
+		return result;
+	}
+	
+	/**
+	 * Associates the specified value
+	 * to the specified gid.
+	 * 
+	 * @param gid
+	 * 		The gid of interest.
+	 * @param value
+	 * 		The value.
+	 * @return
+	 * 		{@code true} if the gid was not already present.
+	 */
+	public boolean put(String gid, long value)
+	{	boolean result = put(Gid.high(gid),Gid.low(gid),value);
+		return result;
+	}
+	
+	/**
+	 * Associates the specified value to the specified 
+	 * gid, only if the gid is not already present.
+	 * 
+	 * @param gid
+	 * 		The gid of interest.
+	 * @param value
+	 * 		The value.
+	 * @return
+	 * 		The value associated to the gid after the call.
+	 */
+	public long putIfAbsent(String gid, long value)
+	{	long high = Gid.high(gid);
+		long low = Gid.low(gid);
+		long slot = locate(high,low);
+		long result;
+		if(isFree(slot))
+		{	setField(slot,VALUE,value);
+			occupy(slot,high,low);
+			result = value;
+		}
+		else
+			result = getField(slot,VALUE);
+		return result;
+	}
+	
+	@Override
+	public MapCursor cursor()
+	{	MapCursor result = new MapCursor();
+		return result;
+	}
+	
+	/**
+	 * Cursor also giving access to
+	 * the values of the map.
+	 * 
+	 * @since 1
+	 * @version 1
+	 * @author Vincent Labatut
+	 */
+	public class MapCursor extends Cursor
+	{	/**
+		 * Returns the value associated
+		 * to the current gid.
+		 * 
+		 * @return
+		 * 		The current value.
+		 */
+		public long getValue()
+		{	long result = getField(slot,VALUE);
+			return result;
+		}
+	}
+}
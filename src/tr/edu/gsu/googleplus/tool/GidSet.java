@@ -0,0 +1,89 @@
+package tr.edu.gsu.googleplus.tool;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+/**
+ * Set of Google+ ids, based on a compact
+ * open-addressing table (cf. {@link GidTable}).
+ * Each id takes 16 bytes per slot, instead of 
+ * the hundreds of bytes needed by a {@code HashSet<String>}.
+ * This class is not thread-safe (cf. {@link ConcurrentGidSet}).
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class GidSet extends GidTable
+{	
+	/**
+	 * Builds a new on-heap set.
+	 * 
+	 * @param expectedSize
+	 * 		Expected number of ids (the set grows if needed).
+	 */
+	public GidSet(long expectedSize)
+	{	this(expectedSize,false);
+	}
+	
+	/**
+	 * Builds a new set.
+	 * 
+	 * @param expectedSize
+	 * 		Expected number of ids (the set grows if needed).
+	 * @param offHeap
+	 * 		Whether the set should be stored outside of the Java heap.
+	 */
+	public GidSet(long expectedSize, boolean offHeap)
+	{	super(2,expectedSize,offHeap);
+	}
+	
+	/**
+	 * Adds the specified gid to this set.
+	 * 
+	 * @param high
+	 * 		High part of the gid.
+	 * @param low
+	 * 		Low part of the gid.
+	 * @return
+	 * 		{@code true} if the gid was not already present.
+	 */
+	public boolean add(long high, long low)
+	{	long slot = locate(high,low);
+		boolean result = isFree(slot);
+		if(result)
+			occupy(slot,high,low);
+		return result;
+	}
+	
+	/**
+	 * Adds the specified gid to this set.
+	 * 
+	 * @param gid
+	 * 		The gid to add.
+	 * @return
+	 * 		{@code true} if the gid was not already present.
+	 */
+	public boolean add(String gid)
+	{	boolean result = add(Gid.high(gid),Gid.low(gid));
+		return result;
+	}
+}
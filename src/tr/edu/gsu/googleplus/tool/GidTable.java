@@ -0,0 +1,458 @@
+package tr.edu.gsu.googleplus.tool;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * Open-addressing hash table whose keys are Google+ ids,
+ * stored as pairs of {@code long} values (cf. {@link Gid}).
+ * Each slot occupies a fixed number of {@code long} values: 
+ * the two parts of the key, possibly followed by some
+ * additional fields (e.g. the value of a map). No object
+ * is allocated per entry, so the table needs only a few
+ * dozens of bytes per id, instead of the hundreds needed
+ * by {@code HashSet<String>} or {@code TreeSet<String>}.<br/>
+ * The slots are stored in fixed-size pages, either on the 
+ * Java heap or in direct (off-heap) buffers. In the latter
+ * case, the table does not weigh on the garbage collector,
+ * and its size is only limited by the 
+ * {@code -XX:MaxDirectMemorySize} JVM option.<br/>
+ * Collisions are resolved by linear probing. Entries cannot
+ * be removed. This class is not thread-safe.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public abstract class GidTable
+{	
+	/////////////////////////////////////////////////////////////////
+	// INIT			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Builds a new table.
+	 * 
+	 * @param width
+	 * 		Number of {@code long} values in each slot (at least 2).
+	 * @param expectedSize
+	 * 		Expected number of entries (the table grows if needed).
+	 * @param offHeap
+	 * 		Whether the table should be stored outside of the Java heap.
+	 */
+	protected GidTable(int width, long expectedSize, boolean offHeap)
+	{	this.width = width;
+		this.offHeap = offHeap;
+		long cap = MIN_CAPACITY;
+		while(cap*LOAD_FACTOR<expectedSize)
+			cap = cap * 2;
+		allocate(cap);
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// STORAGE		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Minimal number of slots */
+	private static final long MIN_CAPACITY = 16;
+	/** Maximal ratio of used slots */
+	private static final float LOAD_FACTOR = 0.75f;
+	/** Number of bits used to index a value inside a page */
+	private static final int PAGE_BITS = 20;
+	/** Number of {@code long} values in a page */
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	/** Mask used to index a value inside a page */
+	private static final long PAGE_MASK = PAGE_SIZE - 1;
+	/** Number of {@code long} values in each slot */
+	private final int width;
+	/** Whether the table is stored outside of the Java heap */
+	private final boolean offHeap;
+	/** Number of slots */
+	private long capacity;
+	/** Mask used to get a slot from a hash code */
+	private long mask;
+	/** Number of used slots above which the table grows */
+	private long threshold;
+	/** Number of used slots */
+	private long size = 0;
+	/** Pages of the table (on-heap storage) */
+	private long[][] heapPages;
+	/** Pages of the table (off-heap storage) */
+	private LongBuffer[] directPages;
+	
+	/**
+	 * Allocates the pages for the
+	 * specified number of slots.
+	 * Empty slots contain only zeros.
+	 * 
+	 * @param capacity
+	 * 		Number of slots.
+	 */
+	private void allocate(long capacity)
+	{	this.capacity = capacity;
+		mask = capacity - 1;
+		threshold = (long)(capacity*LOAD_FACTOR);
+		long total = capacity * width;
+		int pageNbr = (int)((total+PAGE_SIZE-1) / PAGE_SIZE);
+		int lastSize = (int)(total - (long)(pageNbr-1)*PAGE_SIZE);
+		if(offHeap)
+		{	heapPages = null;
+			directPages = new LongBuffer[pageNbr];
+			for(int p=0;p<pageNbr;p++)
+			{	int pageSize = (p==pageNbr-1)?lastSize:PAGE_SIZE;
+				// direct buffers are initialized with zeros
+				ByteBuffer buffer = ByteBuffer.allocateDirect(pageSize*8).order(ByteOrder.nativeOrder());
+				directPages[p] = buffer.asLongBuffer();
+			}
+		}
+		else
+		{	directPages = null;
+			heapPages = new long[pageNbr][];
+			for(int p=0;p<pageNbr;p++)
+			{	int pageSize = (p==pageNbr-1)?lastSize:PAGE_SIZE;
+				heapPages[p] = new long[pageSize];
+			}
+		}
+	}
+	
+	/**
+	 * Returns the value at the specified
+	 * position in the storage.
+	 * 
+	 * @param index
+	 * 		Position of the value.
+	 * @return
+	 * 		The value.
+	 */
+	private long get(long index)
+	{	int page = (int)(index >>> PAGE_BITS);
+		int offset = (int)(index & PAGE_MASK);
+		long result;
+		if(offHeap)
+			result = directPages[page].get(offset);
+		else
+			result = heapPages[page][offset];
+		return result;
+	}
+	
+	/**
+	 * Changes the value at the specified
+	 * position in the storage.
+	 * 
+	 * @param index
+	 * 		Position of the value.
+	 * @param value
+	 * 		The new value.
+	 */
+	private void set(long index, long value)
+	{	int page = (int)(index >>> PAGE_BITS);
+		int offset = (int)(index & PAGE_MASK);
+		if(offHeap)
+			directPages[page].put(offset,value);
+		else
+			heapPages[page][offset] = value;
+	}
+	
+	/**
+	 * Doubles the number of slots
+	 * and re-inserts all the entries.
+	 */
+	private void grow()
+	{	long[][] oldHeap = heapPages;
+		LongBuffer[] oldDirect = directPages;
+		long oldCapacity = capacity;
+		allocate(capacity*2);
+		
+		long[] slot = new long[width];
+		for(long s=0;s<oldCapacity;s++)
+		{	long base = s * width;
+			for(int f=0;f<width;f++)
+			{	long index = base + f;
+				int page = (int)(index >>> PAGE_BITS);
+				int offset = (int)(index & PAGE_MASK);
+				if(oldDirect!=null)
+					slot[f] = oldDirect[page].get(offset);
+				else
+					slot[f] = oldHeap[page][offset];
+			}
+			if(slot[0]!=0)
+			{	long newSlot = locate(slot[0]-1,slot[1]);
+				long newBase = newSlot * width;
+				for(int f=0;f<width;f++)
+					set(newBase+f,slot[f]);
+			}
+		}
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// SLOTS		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Returns the slot containing the specified gid or,
+	 * if it is not in the table, the free slot where it
+	 * should be inserted. The high part is stored with 
+	 * an offset of 1, so that 0 denotes a free slot.
+	 * 
+	 * @param high
+	 * 		High part of the gid.
+	 * @param low
+	 * 		Low part of the gid.
+	 * @return
+	 * 		The corresponding slot.
+	 */
+	protected final long locate(long high, long low)
+	{	long stored = high + 1;
+		long result = Gid.hash(high,low) & mask;
+		long base = result * width;
+		long h = get(base);
+		while(h!=0 && (h!=stored || get(base+1)!=low))
+		{	result = (result+1) & mask;
+			base = result * width;
+			h = get(base);
+		}
+		return result;
+	}
+	
+	/**
+	 * Indicates whether the specified slot is free.
+	 * 
+	 * @param slot
+	 * 		The slot of interest.
+	 * @return
+	 * 		{@code true} if the slot is free.
+	 */
+	protected final boolean isFree(long slot)
+	{	boolean result = get(slot*width)==0;
+		return result;
+	}
+	
+	/**
+	 * Stores the specified gid in the specified free slot. 
+	 * The additional fields must be set before calling
+	 * this method, since the table might grow, which 
+	 * invalidates the slot numbers.
+	 * 
+	 * @param slot
+	 * 		A free slot obtained with {@link #locate(long, long)}.
+	 * @param high
+	 * 		High part of the gid.
+	 * @param low
+	 * 		Low part of the gid.
+	 */
+	protected final void occupy(long slot, long high, long low)
+	{	long base = slot * width;
+		set(base,high+1);
+		set(base+1,low);
+		size++;
+		if(size>threshold)
+			grow();
+	}
+	
+	/**
+	 * Returns an additional field
+	 * of the specified slot.
+	 * 
+	 * @param slot
+	 * 		The slot of interest.
+	 * @param field
+	 * 		Number of the field (starting from 2).
+	 * @return
+	 * 		Value of the field.
+	 */
+	protected final long getField(long slot, int field)
+	{	long result = get(slot*width+field);
+		return result;
+	}
+	
+	/**
+	 * Changes an additional field
+	 * of the specified slot.
+	 * 
+	 * @param slot
+	 * 		The slot of interest.
+	 * @param field
+	 * 		Number of the field (starting from 2).
+	 * @param value
+	 * 		New value of the field.
+	 */
+	protected final void setField(long slot, int field, long value)
+	{	set(slot*width+field,value);
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// ACCESS		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Returns the number of gids
+	 * contained in this table.
+	 * 
+	 * @return
+	 * 		Number of gids.
+	 */
+	public long size()
+	{	return size;
+	}
+	
+	/**
+	 * Returns the number of slots
+	 * (used or free) in this table.
+	 * 
+	 * @return
+	 * 		Number of slots.
+	 */
+	public long capacity()
+	{	return capacity;
+	}
+	
+	/**
+	 * Returns the memory used by
+	 * the slots of this table.
+	 * 
+	 * @return
+	 * 		Size of the storage (in bytes).
+	 */
+	public long getMemorySize()
+	{	long result = capacity * width * 8;
+		return result;
+	}
+	
+	/**
+	 * Indicates whether this table is stored
+	 * outside of the Java heap.
+	 * 
+	 * @return
+	 * 		{@code true} for off-heap storage.
+	 */
+	public boolean isOffHeap()
+	{	return offHeap;
+	}
+	
+	/**
+	 * Indicates whether the specified
+	 * gid is contained in this table.
+	 * 
+	 * @param high
+	 * 		High part of the gid.
+	 * @param low
+	 * 		Low part of the gid.
+	 * @return
+	 * 		{@code true} if the gid is present.
+	 */
+	public boolean contains(long high, long low)
+	{	long slot = locate(high,low);
+		boolean result = !isFree(slot);
+		return result;
+	}
+	
+	/**
+	 * Indicates whether the specified
+	 * gid is contained in this table.
+	 * 
+	 * @param gid
+	 * 		The gid of interest.
+	 * @return
+	 * 		{@code true} if the gid is present.
+	 */
+	public boolean contains(String gid)
+	{	boolean result = contains(Gid.high(gid),Gid.low(gid));
+		return result;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// ITERATION	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Returns a new cursor positioned
+	 * before the first entry of this table.
+	 * 
+	 * @return
+	 * 		A new cursor.
+	 */
+	public Cursor cursor()
+	{	Cursor result = new Cursor();
+		return result;
+	}
+	
+	/**
+	 * Allows iterating over the entries of the table,
+	 * without allocating an object for each one of them.
+	 * The table must not be modified during the iteration.
+	 * 
+	 * @since 1
+	 * @version 1
+	 * @author Vincent Labatut
+	 */
+	public class Cursor
+	{	/** Current slot */
+		protected long slot = -1;
+		
+		/**
+		 * Moves to the next entry.
+		 * 
+		 * @return
+		 * 		{@code false} if there is no more entry.
+		 */
+		public boolean next()
+		{	do
+				slot++;
+			while(slot<capacity && isFree(slot));
+			boolean result = slot<capacity;
+			return result;
+		}
+		
+		/**
+		 * Returns the high part of
+		 * the current gid.
+		 * 
+		 * @return
+		 * 		High part of the gid.
+		 */
+		public long getHigh()
+		{	long result = get(slot*width) - 1;
+			return result;
+		}
+		
+		/**
+		 * Returns the low part of
+		 * the current gid.
+		 * 
+		 * @return
+		 * 		Low part of the gid.
+		 */
+		public long getLow()
+		{	long result = get(slot*width+1);
+			return result;
+		}
+		
+		/**
+		 * Returns the current gid.
+		 * 
+		 * @return
+		 * 		The current gid.
+		 */
+		public String getGid()
+		{	String result = Gid.toString(getHigh(),getLow());
+			return result;
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package tr.edu.gsu.googleplus.tool.metrics;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free counter, meant to be incremented by
+ * many threads at the same time. Like for the
+ * {@link Histogram}, the count is split over several
+ * cells, each thread always updating the same cell.
+ * The cells are spaced out in the array, so that
+ * they do not share the same cache line.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class Counter
+{	
+	/////////////////////////////////////////////////////////////////
+	// INIT			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Builds a new counter, initially
+	 * set to zero.
+	 * 
+	 * @param name
+	 * 		Name of the counted quantity.
+	 */
+	public Counter(String name)
+	{	this.name = name;
+		int cellNbr = Integer.highestOneBit(Math.max(1,Runtime.getRuntime().availableProcessors()-1)) * 2;
+		cellMask = cellNbr - 1;
+		cells = new AtomicLongArray(cellNbr*PADDING);
+	}
+	
+	/** Name of the counted quantity */
+	private final String name;
+	
+	/**
+	 * Returns the name of the counted
+	 * quantity.
+	 * 
+	 * @return
+	 * 		Name of the counter.
+	 */
+	public String getName()
+	{	return name;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// CELLS		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Distance between two cells (8 longs make a 64-byte cache line) */
+	private static final int PADDING = 8;
+	/** Mask used to select the cell of a thread */
+	private final int cellMask;
+	/** Partial counts */
+	private final AtomicLongArray cells;
+	
+	/**
+	 * Adds 1 to the counter.
+	 */
+	public void increment()
+	{	add(1);
+	}
+	
+	/**
+	 * Adds the specified value
+	 * to the counter.
+	 * 
+	 * @param value
+	 * 		Value to add.
+	 */
+	public void add(long value)
+	{	int cell = ((int)Thread.currentThread().getId() & cellMask) * PADDING;
+		cells.addAndGet(cell,value);
+	}
+	
+	/**
+	 * Returns the current value
+	 * of the counter.
+	 * 
+	 * @return
+	 * 		Sum of the partial counts.
+	 */
+	public long get()
+	{	long result = 0;
+		for(int i=0;i<cells.length();i=i+PADDING)
+			result = result + cells.get(i);
+		return result;
+	}
+	
+	@Override
+	public String toString()
+	{	String result = name + ": " + get();
+		return result;
+	}
+}
@@ -0,0 +1,271 @@
+package tr.edu.gsu.googleplus.tool.metrics;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations (or any positive
+ * values), used to measure the latency of the various
+ * stages of the process. The values are counted in
+ * log-linear buckets, like in HdrHistogram: each power
+ * of two is divided into 32 sub-buckets, so the relative
+ * error on a percentile is less than about 3%, whatever the
+ * magnitude of the values. The buckets are replicated in 
+ * several stripes, and each thread always updates the same
+ * stripe, so that concurrent threads rarely touch the
+ * same counters.<br/>
+ * Recording a value only costs a few atomic additions, and
+ * a snapshot can be taken at any time from any thread
+ * (cf. {@link HistogramSnapshot}).
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class Histogram
+{	
+	/////////////////////////////////////////////////////////////////
+	// INIT			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Builds an empty histogram.
+	 * 
+	 * @param name
+	 * 		Name of the measured quantity.
+	 * @param unit
+	 * 		Unit of the values (only used for display).
+	 */
+	public Histogram(String name, String unit)
+	{	this.name = name;
+		this.unit = unit;
+		int stripeNbr = Integer.highestOneBit(Math.max(1,Runtime.getRuntime().availableProcessors()-1)) * 2;
+		stripeMask = stripeNbr - 1;
+		stripes = new Stripe[stripeNbr];
+		for(int i=0;i<stripeNbr;i++)
+			stripes[i] = new Stripe();
+	}
+	
+	/** Name of the measured quantity */
+	private final String name;
+	/** Unit of the values */
+	private final String unit;
+	
+	/**
+	 * Returns the name of the measured
+	 * quantity.
+	 * 
+	 * @return
+	 * 		Name of the histogram.
+	 */
+	public String getName()
+	{	return name;
+	}
+	
+	/**
+	 * Returns the unit of the
+	 * recorded values.
+	 * 
+	 * @return
+	 * 		Unit of the values.
+	 */
+	public String getUnit()
+	{	return unit;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// BUCKETS		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Number of bits used to divide each power of two */
+	private static final int SUB_BITS = 5;
+	/** Number of sub-buckets in each power of two */
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	/** Largest value distinguished by the histogram (larger values are counted with it) */
+	static final long MAX_VALUE = (1L << 40) - 1;
+	/** Total number of buckets */
+	static final int BUCKET_NBR = getBucket(MAX_VALUE) + 1;
+	
+	/**
+	 * Returns the bucket containing
+	 * the specified value.
+	 * 
+	 * @param value
+	 * 		Value of interest.
+	 * @return
+	 * 		Index of the corresponding bucket.
+	 */
+	static int getBucket(long value)
+	{	int result;
+		if(value<SUB_COUNT)
+			result = (int)Math.max(0,value);
+		else
+		{	long v = Math.min(value,MAX_VALUE);
+			int exponent = 63 - Long.numberOfLeadingZeros(v);
+			int shift = exponent - SUB_BITS;
+			result = (shift+1)*SUB_COUNT + (int)(v>>>shift) - SUB_COUNT;
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns the largest value
+	 * counted in the specified bucket.
+	 * 
+	 * @param bucket
+	 * 		Index of the bucket.
+	 * @return
+	 * 		Upper bound of the bucket.
+	 */
+	static long getUpperBound(int bucket)
+	{	long result;
+		if(bucket<SUB_COUNT)
+			result = bucket;
+		else
+		{	int shift = bucket/SUB_COUNT - 1;
+			long sub = bucket%SUB_COUNT + SUB_COUNT;
+			result = ((sub+1) << shift) - 1;
+		}
+		return result;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// STRIPES		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Mask used to select the stripe of a thread */
+	private final int stripeMask;
+	/** Independent copies of the counters */
+	private final Stripe stripes[];
+	
+	/**
+	 * Counters updated by a subset
+	 * of the threads.
+	 * 
+	 * @since 1
+	 * @version 1
+	 * @author Vincent Labatut
+	 */
+	private static class Stripe
+	{	/** Number of values in each bucket */
+		final AtomicLongArray counts = new AtomicLongArray(BUCKET_NBR);
+		/** Number of recorded values */
+		final AtomicLong count = new AtomicLong(0);
+		/** Sum of the recorded values */
+		final AtomicLong sum = new AtomicLong(0);
+		/** Largest recorded value */
+		final AtomicLong max = new AtomicLong(0);
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// RECORD		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Records a new value.
+	 * 
+	 * @param value
+	 * 		The value to record (negative values are counted as 0).
+	 */
+	public void record(long value)
+	{	long v = Math.max(0,value);
+		Stripe stripe = stripes[(int)Thread.currentThread().getId() & stripeMask];
+		stripe.counts.incrementAndGet(getBucket(v));
+		stripe.count.incrementAndGet();
+		stripe.sum.addAndGet(v);
+		long max = stripe.max.get();
+		while(v>max && !stripe.max.compareAndSet(max,v))
+			max = stripe.max.get();
+	}
+	
+	/**
+	 * Records the time elapsed since the specified
+	 * instant, in microseconds.
+	 * 
+	 * @param start
+	 * 		Start of the measured operation, 
+	 * 		as returned by {@link System#nanoTime()}.
+	 */
+	public void recordSince(long start)
+	{	record((System.nanoTime()-start)/1000);
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// READ			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Returns the number of values
+	 * recorded so far.
+	 * 
+	 * @return
+	 * 		Number of values.
+	 */
+	public long getCount()
+	{	long result = 0;
+		for(Stripe stripe: stripes)
+			result = result + stripe.count.get();
+		return result;
+	}
+	
+	/**
+	 * Returns the mean of the values
+	 * recorded so far. This is much cheaper
+	 * than taking a snapshot.
+	 * 
+	 * @return
+	 * 		Mean value, or 0 if no value was recorded.
+	 */
+	public double getMean()
+	{	long count = 0;
+		long sum = 0;
+		for(Stripe stripe: stripes)
+		{	count = count + stripe.count.get();
+			sum = sum + stripe.sum.get();
+		}
+		double result = 0;
+		if(count>0)
+			result = sum / (double)count;
+		return result;
+	}
+	
+	/**
+	 * Builds a snapshot of the current state
+	 * of the histogram. Values recorded concurrently
+	 * may or may not be included in the snapshot.
+	 * 
+	 * @return
+	 * 		A copy of the counters.
+	 */
+	public HistogramSnapshot snapshot()
+	{	long counts[] = new long[BUCKET_NBR];
+		long count = 0;
+		long sum = 0;
+		long max = 0;
+		for(Stripe stripe: stripes)
+		{	for(int i=0;i<BUCKET_NBR;i++)
+				counts[i] = counts[i] + stripe.counts.get(i);
+			count = count + stripe.count.get();
+			sum = sum + stripe.sum.get();
+			max = Math.max(max,stripe.max.get());
+		}
+		HistogramSnapshot result = new HistogramSnapshot(name,unit,counts,count,sum,max);
+		return result;
+	}
+}
@@ -0,0 +1,173 @@
+package tr.edu.gsu.googleplus.tool.metrics;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.text.NumberFormat;
+import java.util.Locale;
+
+/**
+ * Immutable copy of the state of a
+ * {@link Histogram} at a given time,
+ * allowing to compute its percentiles.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class HistogramSnapshot
+{	
+	/////////////////////////////////////////////////////////////////
+	// INIT			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Builds a new snapshot.
+	 * 
+	 * @param name
+	 * 		Name of the measured quantity.
+	 * @param unit
+	 * 		Unit of the values.
+	 * @param counts
+	 * 		Number of values in each bucket.
+	 * @param count
+	 * 		Total number of values.
+	 * @param sum
+	 * 		Sum of the values.
+	 * @param max
+	 * 		Largest value.
+	 */
+	HistogramSnapshot(String name, String unit, long counts[], long count, long sum, long max)
+	{	this.name = name;
+		this.unit = unit;
+		this.counts = counts;
+		this.sum = sum;
+		this.max = max;
+		// the total is recomputed, since the buckets may have been updated after the count
+		long total = 0;
+		for(long c: counts)
+			total = total + c;
+		this.count = total;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// DATA			/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Name of the measured quantity */
+	private final String name;
+	/** Unit of the values */
+	private final String unit;
+	/** Number of values in each bucket */
+	private final long counts[];
+	/** Total number of values */
+	private final long count;
+	/** Sum of the values */
+	private final long sum;
+	/** Largest value */
+	private final long max;
+	
+	/**
+	 * Returns the name of the 
+	 * measured quantity.
+	 * 
+	 * @return
+	 * 		Name of the histogram.
+	 */
+	public String getName()
+	{	return name;
+	}
+	
+	/**
+	 * Returns the number of values.
+	 * 
+	 * @return
+	 * 		Number of values.
+	 */
+	public long getCount()
+	{	return count;
+	}
+	
+	/**
+	 * Returns the mean of the values.
+	 * 
+	 * @return
+	 * 		Mean value, or 0 if the histogram is empty.
+	 */
+	public double getMean()
+	{	double result = 0;
+		if(count>0)
+			result = sum / (double)count;
+		return result;
+	}
+	
+	/**
+	 * Returns the largest value.
+	 * 
+	 * @return
+	 * 		Maximal value.
+	 */
+	public long getMax()
+	{	return max;
+	}
+	
+	/**
+	 * Returns the value below which the
+	 * specified proportion of the values fall.
+	 * 
+	 * @param percentile
+	 * 		Percentile of interest (between 0 and 100).
+	 * @return
+	 * 		Corresponding value (upper bound of its bucket),
+	 * 		or 0 if the histogram is empty.
+	 */
+	public long getPercentile(double percentile)
+	{	long result = 0;
+		if(count>0)
+		{	long rank = (long)Math.ceil(percentile/100*count);
+			rank = Math.max(1,Math.min(count,rank));
+			long cumulated = 0;
+			int i = 0;
+			while(cumulated<rank)
+			{	cumulated = cumulated + counts[i];
+				i++;
+			}
+			result = Math.min(max,Histogram.getUpperBound(i-1));
+		}
+		return result;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// STRING		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	@Override
+	public String toString()
+	{	NumberFormat nf = NumberFormat.getInstance(Locale.ENGLISH);
+		nf.setMaximumFractionDigits(2);
+		String result = name+": n="+count;
+		if(count>0)
+		{	result = result + " mean="+nf.format(getMean())+unit;
+			result = result + " p50="+nf.format(getPercentile(50))+unit;
+			result = result + " p90="+nf.format(getPercentile(90))+unit;
+			result = result + " p99="+nf.format(getPercentile(99))+unit;
+			result = result + " max="+nf.format(max)+unit;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,170 @@
+package tr.edu.gsu.googleplus.tool.metrics;
+
+/*
+ * Google+ Network Extractor
+ * Copyright 2011-2012 Vincent Labatut 
+ * 
+ * This file is part of Google+ Network Extractor.
+ * 
+ * Google+ Network Extractor is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ * 
+ * Google+ Network Extractor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Google+ Network Extractor.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLogger;
+import tr.edu.gsu.googleplus.tool.log.HierarchicalLoggerManager;
+
+/**
+ * Registry containing all the {@link Histogram} and
+ * {@link Counter} objects used to monitor the process.
+ * They are identified by their name, and created on the
+ * fly the first time they are requested. The components
+ * are expected to retrieve them once and keep a reference,
+ * so that the registry is not accessed on the hot path.
+ * 
+ * @since 1
+ * @version 1
+ * @author Vincent Labatut
+ */
+public class MetricsRegistry
+{	
+	/////////////////////////////////////////////////////////////////
+	// LOGGER		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Common object used for logging */
+	private static HierarchicalLogger logger = HierarchicalLoggerManager.getHierarchicalLogger();
+
+	/////////////////////////////////////////////////////////////////
+	// HISTOGRAMS	/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Histograms indexed by name */
+	private static final ConcurrentMap<String,Histogram> histograms = new ConcurrentHashMap<String,Histogram>();
+	
+	/**
+	 * Returns the histogram of durations with the
+	 * specified name, creating it if necessary. The 
+	 * durations are expressed in microseconds.
+	 * 
+	 * @param name
+	 * 		Name of the histogram.
+	 * @return
+	 * 		The corresponding histogram.
+	 */
+	public static Histogram getTimer(String name)
+	{	Histogram result = getHistogram(name,"us");
+		return result;
+	}
+	
+	/**
+	 * Returns the histogram with the specified
+	 * name, creating it if necessary.
+	 * 
+	 * @param name
+	 * 		Name of the histogram.
+	 * @param unit
+	 * 		Unit of the values, used if the histogram is created.
+	 * @return
+	 * 		The corresponding histogram.
+	 */
+	public static Histogram getHistogram(String name, String unit)
+	{	Histogram result = histograms.get(name);
+		if(result==null)
+		{	Histogram histogram = new Histogram(name,unit);
+			result = histograms.putIfAbsent(name,histogram);
+			if(result==null)
+				result = histogram;
+		}
+		return result;
+	}
+	
+	/**
+	 * Takes a snapshot of all the histograms,
+	 * in the alphabetical order of their names.
+	 * 
+	 * @return
+	 * 		List of snapshots.
+	 */
+	public static List<HistogramSnapshot> getSnapshots()
+	{	List<String> names = new ArrayList<String>(histograms.keySet());
+		Collections.sort(names);
+		List<HistogramSnapshot> result = new ArrayList<HistogramSnapshot>();
+		for(String name: names)
+			result.add(histograms.get(name).snapshot());
+		return result;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// COUNTERS		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/** Counters indexed by name */
+	private static final ConcurrentMap<String,Counter> counters = new ConcurrentHashMap<String,Counter>();
+	
+	/**
+	 * Returns the counter with the specified
+	 * name, creating it if necessary.
+	 * 
+	 * @param name
+	 * 		Name of the counter.
+	 * @return
+	 * 		The corresponding counter.
+	 */
+	public static Counter getCounter(String name)
+	{	Counter result = counters.get(name);
+		if(result==null)
+		{	Counter counter = new Counter(name);
+			result = counters.putIfAbsent(name,counter);
+			if(result==null)
+				result = counter;
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns all the counters, in the
+	 * alphabetical order of their names.
+	 * 
+	 * @return
+	 * 		List of counters.
+	 */
+	public static List<Counter> getCounters()
+	{	List<String> names = new ArrayList<String>(counters.keySet());
+		Collections.sort(names);
+		List<Counter> result = new ArrayList<Counter>();
+		for(String name: names)
+			result.add(counters.get(name));
+		return result;
+	}
+	
+	/////////////////////////////////////////////////////////////////
+	// DISPLAY		/////////////////////////////////////////////////
+	/////////////////////////////////////////////////////////////////
+	/**
+	 * Logs the current state of all
+	 * the counters and histograms.
+	 */
+	public static void logStatistics()
+	{	logger.log("Metrics:");
+		logger.increaseOffset();
+		for(Counter counter: getCounters())
+			logger.log(counter.toString());
+		for(HistogramSnapshot snapshot: getSnapshots())
+			logger.log(snapshot.toString());
+		logger.decreaseOffset();
+	}
+}